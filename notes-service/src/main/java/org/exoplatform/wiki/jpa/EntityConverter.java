@@ -34,6 +34,7 @@ import org.exoplatform.wiki.model.*;
 import org.exoplatform.wiki.service.IDType;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -121,6 +122,40 @@ public class EntityConverter {
     return page;
   }
 
+  /**
+   * Converts a page summary to a page without content nor permissions
+   *
+   * @param pageSummary the page summary
+   * @return the page
+   */
+  public static Page convertPageSummaryToPage(PageSummary pageSummary) {
+    Page page = null;
+    if (pageSummary != null) {
+      page = new Page();
+      page.setId(String.valueOf(pageSummary.getId()));
+      page.setName(pageSummary.getName());
+      page.setWikiId(String.valueOf(pageSummary.getWikiId()));
+      page.setWikiType(pageSummary.getWikiType());
+      page.setWikiOwner(pageSummary.getWikiOwner());
+      if (pageSummary.getParentPageId() != null) {
+        page.setParentPageId(String.valueOf(pageSummary.getParentPageId()));
+        page.setParentPageName(pageSummary.getParentPageName());
+      }
+      page.setTitle(pageSummary.getTitle());
+      page.setOwner(pageSummary.getOwner());
+      page.setAuthor(pageSummary.getAuthor());
+      page.setSyntax(pageSummary.getSyntax());
+      page.setCreatedDate(pageSummary.getCreatedDate());
+      page.setUpdatedDate(pageSummary.getUpdatedDate());
+      page.setMinorEdit(pageSummary.isMinorEdit());
+      page.setComment(pageSummary.getComment());
+      page.setUrl(pageSummary.getUrl());
+      page.setActivityId(pageSummary.getActivityId());
+      page.setDeleted(pageSummary.isDeleted());
+    }
+    return page;
+  }
+
   public static List<PermissionEntry> convertPermissionEntitiesToPermissionEntries(List<PermissionEntity> permissionEntities,
                                                                                    List<PermissionType> filteredPermissionTypes) {
     List<PermissionEntry> permissionEntries = new ArrayList<>();
@@ -228,18 +263,16 @@ public class EntityConverter {
         createdDate.setTime(attachmentEntity.getCreatedDate());
         attachment.setCreatedDate(createdDate);
       }
+      Long attachmentFileId = attachmentEntity.getAttachmentFileID();
       try {
-        if (loadContent) {
-          fileItem = fileService.getFile(attachmentEntity.getAttachmentFileID());
-        } else {
-          FileInfo fileInfo = fileService.getFileInfo(attachmentEntity.getAttachmentFileID());
-          fileItem = new FileItem(fileInfo, null);
-        }
+        FileInfo fileInfo = fileService.getFileInfo(attachmentFileId);
+        fileItem = fileInfo == null ? null : new FileItem(fileInfo, null);
       } catch (Exception e) {
         throw new WikiException("Cannot get attachment file ID "+ attachmentEntity.getAttachmentFileID() + " from storage", e.getCause());
       }
       if (fileItem != null) {
-        attachment.setName(fileItem.getFileInfo().getName());
+        // the file may be shared by attachments with different names
+        attachment.setName(attachmentEntity.getName() != null ? attachmentEntity.getName() : fileItem.getFileInfo().getName());
         String fullTitle = attachment.getFullTitle();
         if (fullTitle != null && !StringUtils.isEmpty(fullTitle)) {
           int index = fullTitle.lastIndexOf(".");
@@ -250,7 +283,17 @@ public class EntityConverter {
           }
         }
         
-        attachment.setContent(fileItem.getAsByte());
+        if (loadContent) {
+          // the content is read from the file storage only when it is used
+          attachment.setContentStreamProvider(() -> {
+            try {
+              FileItem file = fileService.getFile(attachmentFileId);
+              return file == null ? null : file.getAsStream();
+            } catch (Exception e) {
+              throw new IOException("Cannot get attachment file ID " + attachmentFileId + " from storage", e);
+            }
+          });
+        }
         attachment.setMimeType(fileItem.getFileInfo().getMimetype());
         attachment.setWeightInBytes(fileItem.getFileInfo().getSize());
         attachment.setCreator(fileItem.getFileInfo().getUpdater());
@@ -265,39 +308,12 @@ public class EntityConverter {
     return attachment;
   }
 
-  public static PageAttachmentEntity convertAttachmentToPageAttachmentEntity(FileService fileService, Attachment attachment) throws WikiException {
+  public static PageAttachmentEntity convertAttachmentToPageAttachmentEntity(Long attachmentFileId, Attachment attachment) {
     PageAttachmentEntity attachmentEntity = null;
-    FileItem fileItem = null;
-
     if (attachment != null) {
-      try {
-        Date updatedDate;
-        if(attachment.getUpdatedDate() != null){
-          updatedDate = attachment.getUpdatedDate().getTime();
-        }
-        else{
-          updatedDate = GregorianCalendar.getInstance().getTime();
-        }
-        long size = 0;
-        if(attachment.getContent() != null){
-          size = attachment.getContent().length;
-        }
-        fileItem = new FileItem(null,
-                                attachment.getName(),
-                                attachment.getMimeType(),
-                                JPADataStorage.WIKI_FILES_NAMESPACE_NAME,
-                                size,
-                                updatedDate,
-                                attachment.getCreator(),
-                                false,
-                                new ByteArrayInputStream(attachment.getContent()));
-
-        fileItem = fileService.writeFile(fileItem);
-      } catch (Exception ex) {
-        throw new WikiException("Cannot persist page attachment file NAME "+  attachment.getName() + " on file storage", ex.getCause());
-      }
       attachmentEntity = new PageAttachmentEntity();
-      attachmentEntity.setAttachmentFileID(fileItem.getFileInfo().getId());
+      attachmentEntity.setAttachmentFileID(attachmentFileId);
+      attachmentEntity.setName(attachment.getName());
       if(attachment.getFullTitle() == null){
         attachmentEntity.setFullTitle(attachment.getName());
       }
@@ -311,42 +327,16 @@ public class EntityConverter {
     return attachmentEntity;
   }
 
-  public static DraftPageAttachmentEntity convertAttachmentToDraftPageAttachmentEntity(FileService fileService,
-                                                                                       Attachment attachment) throws WikiException {
+  public static DraftPageAttachmentEntity convertAttachmentToDraftPageAttachmentEntity(Long attachmentFileId,
+                                                                                       Attachment attachment) {
     DraftPageAttachmentEntity attachmentEntity = null;
-    FileItem fileItem = null;
     if (attachment != null) {
-      try {
-        Date updatedDate;
-        if(attachment.getUpdatedDate() != null){
-          updatedDate = attachment.getUpdatedDate().getTime();
-        }
-        else{
-          updatedDate = GregorianCalendar.getInstance().getTime();
-        }
-        int size =0;
-        if(attachment.getContent() != null){
-          size = attachment.getContent().length;
-        }
-        fileItem = new FileItem(null,
-                                attachment.getName(),
-                                attachment.getMimeType(),
-                                JPADataStorage.WIKI_FILES_NAMESPACE_NAME,
-                                size,
-                                updatedDate,
-                                attachment.getCreator(),
-                                false,
-                                new ByteArrayInputStream(attachment.getContent()));
-
-        fileItem = fileService.writeFile(fileItem);
-      } catch (Exception ex) {
-        throw new WikiException("Cannot persist draft attachment file NAME "+  attachment.getName() + " on file storage", ex.getCause());
-      }
       if (attachment.getUpdatedDate() == null) {
         attachment.setUpdatedDate(GregorianCalendar.getInstance());
       }
       attachmentEntity = new DraftPageAttachmentEntity();
-      attachmentEntity.setAttachmentFileID(fileItem.getFileInfo().getId());
+      attachmentEntity.setAttachmentFileID(attachmentFileId);
+      attachmentEntity.setName(attachment.getName());
       if(attachment.getFullTitle() == null){
         attachmentEntity.setFullTitle(attachment.getName());
       }
@@ -360,6 +350,36 @@ public class EntityConverter {
     return attachmentEntity;
   }
 
+  /**
+   * Build the file item to write the content of an attachment to the file
+   * storage
+   *
+   * @param attachment the attachment
+   * @return the file item
+   */
+  public static FileItem convertAttachmentToFileItem(Attachment attachment) throws Exception {
+    Date updatedDate;
+    if(attachment.getUpdatedDate() != null){
+      updatedDate = attachment.getUpdatedDate().getTime();
+    }
+    else{
+      updatedDate = GregorianCalendar.getInstance().getTime();
+    }
+    long size = 0;
+    if(attachment.getContent() != null){
+      size = attachment.getContent().length;
+    }
+    return new FileItem(null,
+                        attachment.getName(),
+                        attachment.getMimeType(),
+                        JPADataStorage.WIKI_FILES_NAMESPACE_NAME,
+                        size,
+                        updatedDate,
+                        attachment.getCreator(),
+                        false,
+                        new ByteArrayInputStream(attachment.getContent()));
+  }
+
   public static DraftPage convertDraftPageEntityToDraftPage(DraftPageEntity draftPageEntity) {
     DraftPage draftPage = null;
     if (draftPageEntity != null) {
@@ -22,34 +22,46 @@ package org.exoplatform.wiki.jpa;
 import org.apache.commons.lang.StringUtils;
 import org.exoplatform.commons.api.persistence.DataInitializer;
 import org.exoplatform.commons.api.persistence.ExoTransactional;
+import org.exoplatform.commons.file.model.FileInfo;
+import org.exoplatform.commons.file.model.FileItem;
 import org.exoplatform.commons.file.services.FileService;
 import org.exoplatform.commons.utils.ObjectPageList;
 import org.exoplatform.commons.utils.PageList;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.configuration.ConfigurationManager;
+import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValuesParam;
 import org.exoplatform.portal.config.UserACL;
 import org.exoplatform.portal.config.UserPortalConfig;
 import org.exoplatform.portal.config.UserPortalConfigService;
 import org.exoplatform.portal.config.model.PortalConfig;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityConstants;
 import org.exoplatform.wiki.WikiException;
+import org.exoplatform.wiki.jpa.cache.PageCache;
 import org.exoplatform.wiki.jpa.dao.*;
 import org.exoplatform.wiki.jpa.entity.*;
+import org.exoplatform.wiki.jpa.entity.PageVersionEntity.ContentStorage;
 import org.exoplatform.wiki.jpa.search.WikiElasticSearchServiceConnector;
 import org.exoplatform.wiki.model.*;
 import org.exoplatform.wiki.service.DataStorage;
 import org.exoplatform.wiki.service.IDType;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.service.search.*;
 import org.exoplatform.wiki.utils.Utils;
 import org.exoplatform.wiki.utils.VersionNameComparatorDesc;
 import org.exoplatform.wiki.utils.NoteConstants;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
 import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import static org.exoplatform.wiki.jpa.EntityConverter.*;
@@ -64,6 +76,14 @@ public class JPADataStorage implements DataStorage {
   public static final String WIKI_FILES_NAMESPACE_NAME = "wiki";
   public static final String WIKI_FILES_NAMESPACE_DESCRIPTION = "wiki application files";
 
+  private static final Log LOG = ExoLogger.getLogger(JPADataStorage.class);
+
+  private static final String VERSIONS_STORAGE_PARAM = "versionsStorage";
+
+  private static final String VERSIONS_SNAPSHOT_INTERVAL_PARAM = "versionsSnapshotInterval";
+
+  private static final String DELTA_VERSIONS_STORAGE = "delta";
+
   private WikiDAO        wikiDAO;
   private PageDAO        pageDAO;
   private PageAttachmentDAO  pageAttachmentDAO;
@@ -72,8 +92,14 @@ public class JPADataStorage implements DataStorage {
   private PageVersionDAO pageVersionDAO;
   private PageMoveDAO    pageMoveDAO;
   private TemplateDAO    templateDAO;
+  private AttachmentFileDAO attachmentFileDAO;
   private FileService fileService;
   private UserACL userACL;
+  private PageCache pageCache;
+
+  private boolean deltaVersionsStorage = true;
+
+  private int versionsSnapshotInterval = 10;
   
 
   public JPADataStorage(WikiDAO wikiDAO,
@@ -84,8 +110,11 @@ public class JPADataStorage implements DataStorage {
                         PageVersionDAO pageVersionDAO,
                         PageMoveDAO pageMoveDAO,
                         TemplateDAO templateDAO,
+                        AttachmentFileDAO attachmentFileDAO,
                         FileService fileService,
-                        UserACL userACL) {
+                        UserACL userACL,
+                        PageCache pageCache,
+                        InitParams initParams) {
     this.wikiDAO = wikiDAO;
     this.pageDAO = pageDAO;
     this.pageAttachmentDAO = pageAttachmentDAO;
@@ -94,8 +123,18 @@ public class JPADataStorage implements DataStorage {
     this.pageVersionDAO = pageVersionDAO;
     this.pageMoveDAO = pageMoveDAO;
     this.templateDAO = templateDAO;
+    this.attachmentFileDAO = attachmentFileDAO;
     this.fileService = fileService;
     this.userACL = userACL;
+    this.pageCache = pageCache;
+    if (initParams != null) {
+      if (initParams.getValueParam(VERSIONS_STORAGE_PARAM) != null) {
+        this.deltaVersionsStorage = DELTA_VERSIONS_STORAGE.equals(initParams.getValueParam(VERSIONS_STORAGE_PARAM).getValue());
+      }
+      if (initParams.getValueParam(VERSIONS_SNAPSHOT_INTERVAL_PARAM) != null) {
+        this.versionsSnapshotInterval = Integer.parseInt(initParams.getValueParam(VERSIONS_SNAPSHOT_INTERVAL_PARAM).getValue());
+      }
+    }
   }
 
   @Override
@@ -209,6 +248,7 @@ public class JPADataStorage implements DataStorage {
     }
 
     pageEntity.setDeleted(false);
+    updateTreePath(pageEntity, parentPageEntity);
 
     PageEntity createdPageEntity = pageDAO.create(pageEntity);
 
@@ -229,13 +269,51 @@ public class JPADataStorage implements DataStorage {
     if(WIKI_TYPE_DRAFT.equals(wikiType)) {
       return convertDraftPageEntityToDraftPage(draftPageDAO.findLatestDraftPageByUserAndName(wikiOwner, pageName));
     } else {
-      return convertPageEntityToPage(pageDAO.getPageOfWikiByName(wikiType, wikiOwner, pageName));
+      Page page = pageCache.getPageByName(wikiType, wikiOwner, pageName);
+      if (page == null) {
+        page = convertPageEntityToPage(pageDAO.getPageOfWikiByName(wikiType, wikiOwner, pageName));
+        pageCache.putPage(page);
+      }
+      return page;
+    }
+  }
+
+  @Override
+  public Map<String, Page> getPagesOfWikiByNames(String wikiType,
+                                                 String wikiOwner,
+                                                 Collection<String> pageNames) throws WikiException {
+    if (wikiType == null || wikiOwner == null || WIKI_TYPE_DRAFT.equals(wikiType)) {
+      return DataStorage.super.getPagesOfWikiByNames(wikiType, wikiOwner, pageNames);
+    }
+    Map<String, Page> pagesByName = new HashMap<>();
+    Set<String> missingPageNames = new HashSet<>();
+    for (String pageName : pageNames) {
+      Page page = pageCache.getPageByName(wikiType, wikiOwner, pageName);
+      if (page == null) {
+        missingPageNames.add(pageName);
+      } else {
+        pagesByName.put(pageName, page);
+      }
     }
+    if (!missingPageNames.isEmpty()) {
+      for (PageEntity pageEntity : pageDAO.getPagesOfWikiByNames(wikiType, wikiOwner, missingPageNames)) {
+        Page page = convertPageEntityToPage(pageEntity);
+        pageCache.putPage(page);
+        pagesByName.put(page.getName(), page);
+      }
+    }
+    return pagesByName;
   }
 
   @Override
   public Page getPageById(String id) throws WikiException {
-    return convertPageEntityToPage(pageDAO.find(Long.parseLong(id)));
+    long pageId = Long.parseLong(id);
+    Page page = pageCache.getPageById(pageId);
+    if (page == null) {
+      page = convertPageEntityToPage(pageDAO.find(pageId));
+      pageCache.putPage(page);
+    }
+    return page;
   }
 
   @Override
@@ -247,15 +325,15 @@ public class JPADataStorage implements DataStorage {
   public Page getParentPageOf(Page page) throws WikiException {
     Page parentPage = null;
 
-    PageEntity childPageEntity = null;
+    Page childPage = null;
     if (page.getId() != null && !page.getId().isEmpty()) {
-      childPageEntity = pageDAO.find(Long.parseLong(page.getId()));
+      childPage = getPageById(page.getId());
     } else {
-      childPageEntity = pageDAO.getPageOfWikiByName(page.getWikiType(), page.getWikiOwner(), page.getName());
+      childPage = getPageOfWikiByName(page.getWikiType(), page.getWikiOwner(), page.getName());
     }
 
-    if (childPageEntity != null) {
-      parentPage = convertPageEntityToPage(childPageEntity.getParentPage());
+    if (childPage != null && childPage.getParentPageId() != null) {
+      parentPage = getPageById(childPage.getParentPageId());
     }
 
     return parentPage;
@@ -263,23 +341,18 @@ public class JPADataStorage implements DataStorage {
 
   @Override
   public List<Page> getChildrenPageOf(Page page, String userId, boolean withDrafts) throws WikiException {
-    PageEntity pageEntity = pageDAO.getPageOfWikiByName(page.getWikiType(), page.getWikiOwner(), page.getName());
-    if (pageEntity == null) {
+    Page parentPage = getPageOfWikiByName(page.getWikiType(), page.getWikiOwner(), page.getName());
+    if (parentPage == null) {
       throw new WikiException("Cannot get children of page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
               + page.getName() + " because page does not exist.");
     }
+    long parentPageId = Long.parseLong(parentPage.getId());
 
-    List<Page> childrenPages = new ArrayList<>();
-    List<PageEntity> childrenPagesEntities = pageDAO.getChildrenPages(pageEntity);
-    if (childrenPagesEntities != null) {
-      for (PageEntity childPageEntity : childrenPagesEntities) {
-        childrenPages.add(convertPageEntityToPage(childPageEntity));
-      }
-    }
+    List<Page> childrenPages = convertPageSummariesToPages(pageDAO.getChildrenPagesSummaries(parentPageId));
     
     if (withDrafts) {
       List<DraftPageEntity> draftPageEntities;
-      draftPageEntities = draftPageDAO.findDraftPagesByUserAndParentPage(userId, pageEntity.getId());
+      draftPageEntities = draftPageDAO.findDraftPagesByUserAndParentPage(userId, parentPageId);
 
       if (!draftPageEntities.isEmpty()) {
         for (DraftPageEntity draftPageEntity : draftPageEntities) {
@@ -296,37 +369,254 @@ public class JPADataStorage implements DataStorage {
     return pageDAO.countPageChildrenById(noteId) > 0;
   }
 
+  @Override
+  public Map<Long, Long> countChildren(Collection<Long> pageIds) throws WikiException {
+    return pageDAO.countPagesChildrenByIds(pageIds);
+  }
+
+  @Override
+  public Map<Long, Long> countChildren(Collection<Long> pageIds, String userId, boolean withDrafts) throws WikiException {
+    Map<Long, Long> childrenCount = pageDAO.countPagesChildrenByIds(pageIds);
+    if (withDrafts) {
+      draftPageDAO.countDraftPagesByUserAndParentPages(userId, pageIds).forEach((pageId, draftsCount) -> childrenCount.merge(pageId, draftsCount, Long::sum));
+    }
+    return childrenCount;
+  }
+
   @Override
   @ExoTransactional
+  public List<Page> getDescendantsOfPage(Page page, String userId, int depth, boolean withDrafts) throws WikiException {
+    PageEntity pageEntity = fetchPageEntity(page);
+    if (pageEntity == null) {
+      throw new WikiException("Cannot get descendants of page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+          + page.getName() + " because page does not exist.");
+    }
+    initSubtreeTreePaths(pageEntity);
+
+    List<Page> descendants = convertPageSummariesToPages(pageDAO.getDescendantPagesSummaries(pageEntity, depth));
+    Set<Long> parentIds = new HashSet<>();
+    parentIds.add(pageEntity.getId());
+    for (Page descendant : descendants) {
+      parentIds.add(Long.parseLong(descendant.getId()));
+    }
+
+    if (withDrafts) {
+      for (DraftPageEntity draftPageEntity : draftPageDAO.findDraftPagesByUser(userId)) {
+        if (draftPageEntity.getParentPage() != null && parentIds.contains(draftPageEntity.getParentPage().getId())) {
+          descendants.add(convertDraftPageEntityToDraftPage(draftPageEntity));
+        }
+      }
+    }
+    return descendants;
+  }
+
+  @Override
+  @ExoTransactional
+  public List<Page> getAncestorsOfPage(String pageId) throws WikiException {
+    long id = Long.parseLong(pageId);
+    String treePath = pageDAO.getPageTreePath(id);
+    if (treePath == null) {
+      // pages not reached yet by the tree paths upgrade get their path computed here
+      PageEntity pageEntity = pageDAO.find(id);
+      if (pageEntity == null) {
+        throw new WikiException("Cannot get ancestors of page " + pageId + " because page does not exist.");
+      }
+      initTreePath(pageEntity);
+      treePath = pageEntity.getTreePath();
+    }
+
+    List<Long> ancestorsIds = new ArrayList<>();
+    for (String ancestorId : StringUtils.split(treePath, "/")) {
+      ancestorsIds.add(Long.parseLong(ancestorId));
+    }
+    if (ancestorsIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    // the tree path gives the ancestors order, from the wiki home page
+    Map<String, Page> ancestorsById = new HashMap<>();
+    for (Page ancestor : convertPageSummariesToPages(pageDAO.getPagesSummariesByIds(ancestorsIds))) {
+      ancestorsById.put(ancestor.getId(), ancestor);
+    }
+    List<Page> ancestors = new ArrayList<>();
+    for (Long ancestorId : ancestorsIds) {
+      Page ancestor = ancestorsById.get(String.valueOf(ancestorId));
+      if (ancestor != null) {
+        ancestors.add(ancestor);
+      }
+    }
+    return ancestors;
+  }
+
+  @Override
   public void deletePage(String wikiType, String wikiOwner, String pageName) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      deletePageTree(wikiType, wikiOwner, pageName);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private void deletePageTree(String wikiType, String wikiOwner, String pageName) throws WikiException {
     PageEntity pageEntity = pageDAO.getPageOfWikiByName(wikiType, wikiOwner, pageName);
     if (pageEntity == null) {
       throw new WikiException("Cannot delete page " + wikiType + ":" + wikiOwner + ":" + pageName
           + " because page does not exist.");
     }
 
-    // delete the page and all its children pages (listeners call on delete page
+    // delete the page and all its descendants (listeners call on delete page
     // event is done on service layer)
-    deletePageEntity(pageEntity);
+    initSubtreeTreePaths(pageEntity);
+    List<Long> deletedPagesIds = new ArrayList<>(pageDAO.getDescendantPagesIds(pageEntity));
+    deletedPagesIds.add(pageEntity.getId());
+    Date deletedDate = new Date();
+    pageDAO.deletePageTree(pageEntity, deletedDate);
+    // keep the loaded entity consistent with the bulk update
+    pageEntity.setDeleted(true);
+    pageEntity.setDeletedDate(deletedDate);
+    for (Long deletedPageId : deletedPagesIds) {
+      pageCache.removePage(deletedPageId);
+    }
+  }
+
+  @Override
+  public int purgeDeletedPages(Date deletedBefore, int maxPages) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      return purgeDeletedPagesBatch(deletedBefore, maxPages);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private int purgeDeletedPagesBatch(Date deletedBefore, int maxPages) throws WikiException {
+    List<Long> pageIds = pageDAO.getPurgeableDeletedPagesIds(deletedBefore, maxPages);
+    for (Long pageId : pageIds) {
+      PageEntity pageEntity = pageDAO.find(pageId);
+      if (pageEntity == null) {
+        continue;
+      }
+      for (DraftPageEntity draftPageEntity : draftPageDAO.findDraftPagesOfPage(pageId)) {
+        if (draftPageEntity.getAttachments() != null) {
+          for (DraftPageAttachmentEntity attachmentEntity : draftPageEntity.getAttachments()) {
+            deleteAttachmentFile(attachmentEntity);
+          }
+        }
+        draftPageDAO.delete(draftPageEntity);
+      }
+      for (PageEntity relatingPageEntity : pageDAO.getPagesRelatedToPage(pageId)) {
+        relatingPageEntity.getRelatedPages().remove(pageEntity);
+      }
+      if (pageEntity.getAttachments() != null) {
+        for (PageAttachmentEntity attachmentEntity : pageEntity.getAttachments()) {
+          deleteAttachmentFile(attachmentEntity);
+        }
+      }
+      // the versions and moves are deleted in bulk, the attachments, the
+      // watchers and the permissions are deleted with the page
+      pageVersionDAO.deleteVersionsOfPage(pageId);
+      pageMoveDAO.deleteMovesOfPage(pageId);
+      pageDAO.delete(pageEntity);
+      pageCache.removePage(pageId);
+    }
+    return pageIds.size();
+  }
+
+  @Override
+  public long countDeletedPages(Date deletedBefore) throws WikiException {
+    return pageDAO.countDeletedPages(deletedBefore);
+  }
+
+  @Override
+  @ExoTransactional
+  public long reconcileAttachmentFiles(long fromId, int maxAttachmentFiles, Date updatedBefore) {
+    List<AttachmentFileEntity> attachmentFiles = attachmentFileDAO.getAttachmentFiles(fromId, updatedBefore, maxAttachmentFiles);
+    for (AttachmentFileEntity attachmentFile : attachmentFiles) {
+      long refCount = pageAttachmentDAO.countByAttachmentFileId(attachmentFile.getAttachmentFileId())
+          + draftPageAttachmentDAO.countByAttachmentFileId(attachmentFile.getAttachmentFileId());
+      // the conditional queries leave the files referenced or released by an
+      // attachment meanwhile, the attachment may not be committed yet
+      if (refCount == 0) {
+        if (attachmentFileDAO.deleteNotUpdatedAttachmentFile(attachmentFile.getId(), updatedBefore) > 0) {
+          fileService.deleteFile(attachmentFile.getAttachmentFileId());
+        }
+      } else if (refCount != attachmentFile.getRefCount()
+          && attachmentFileDAO.updateNotUpdatedRefCount(attachmentFile.getId(), (int) refCount, updatedBefore) > 0) {
+        LOG.info("Fix the references count of attachment file {} from {} to {}",
+                 attachmentFile.getAttachmentFileId(),
+                 attachmentFile.getRefCount(),
+                 refCount);
+      }
+    }
+    return attachmentFiles.isEmpty() ? 0 : attachmentFiles.get(attachmentFiles.size() - 1).getId();
+  }
+
+  @Override
+  @ExoTransactional
+  public long initPagesTreePaths(long fromId, int maxPages) {
+    List<PageEntity> pagesWithoutTreePath = pageDAO.getPagesWithoutTreePath(fromId, maxPages);
+    for (PageEntity pageWithoutTreePath : pagesWithoutTreePath) {
+      initTreePath(pageWithoutTreePath);
+    }
+    return pagesWithoutTreePath.isEmpty() ? 0 : pagesWithoutTreePath.get(pagesWithoutTreePath.size() - 1).getId();
   }
 
   /**
-   * Recursively deletes a page and all its children pages
+   * Write the content of an attachment to the file storage, or reference the
+   * file already holding the same content
    *
-   * @param pageEntity the root page to delete
+   * @return the id of the file holding the attachment content
    */
-  private void deletePageEntity(PageEntity pageEntity) {
-    List<PageEntity> childrenPages = pageDAO.getChildrenPages(pageEntity);
-    if (childrenPages != null) {
-      for (PageEntity childPage : childrenPages) {
-        deletePageEntity(childPage);
+  private Long writeAttachmentFile(Attachment attachment) throws WikiException {
+    try {
+      String contentHash = getContentHash(attachment.getContent());
+      AttachmentFileEntity attachmentFile = contentHash == null ? null
+                                                                : attachmentFileDAO.getAttachmentFileByContentHash(contentHash);
+      // the referenced file may have been deleted in between
+      FileInfo fileInfo = attachmentFile == null ? null : fileService.getFileInfo(attachmentFile.getAttachmentFileId());
+      if (fileInfo != null && !fileInfo.isDeleted() && attachmentFileDAO.incrementRefCount(attachmentFile.getId()) > 0) {
+        return attachmentFile.getAttachmentFileId();
+      }
+      FileItem fileItem = fileService.writeFile(convertAttachmentToFileItem(attachment));
+      Long attachmentFileId = fileItem.getFileInfo().getId();
+      if (contentHash != null) {
+        attachmentFile = new AttachmentFileEntity();
+        attachmentFile.setContentHash(contentHash);
+        attachmentFile.setAttachmentFileId(attachmentFileId);
+        attachmentFile.setRefCount(1);
+        attachmentFile.setUpdatedDate(new Date());
+        attachmentFileDAO.create(attachmentFile);
       }
+      return attachmentFileId;
+    } catch (Exception e) {
+      throw new WikiException("Cannot persist attachment file NAME " + attachment.getName() + " on file storage", e);
     }
+  }
 
-    pageEntity.setDeleted(true);
-    pageDAO.update(pageEntity);
+  /**
+   * Release the file holding the content of a deleted attachment, the file is
+   * deleted once no attachment references it
+   */
+  private void deleteAttachmentFile(AttachmentEntity attachmentEntity) {
+    Long attachmentFileId = attachmentEntity.getAttachmentFileID();
+    if (attachmentFileId != null) {
+      // the files written before the content deduplication are not shared
+      if (attachmentFileDAO.decrementRefCount(attachmentFileId) == 0
+          || attachmentFileDAO.deleteUnreferencedAttachmentFile(attachmentFileId) > 0) {
+        fileService.deleteFile(attachmentFileId);
+      }
+    }
   }
 
+  private static String getContentHash(byte[] content) throws NoSuchAlgorithmException {
+    if (content == null) {
+      return null;
+    }
+    byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+    return String.format("%064x", new BigInteger(1, hash));
+  }
 
   @Override
   public void deleteDraftOfPage(Page page, String username) throws WikiException {
@@ -349,8 +639,17 @@ public class JPADataStorage implements DataStorage {
   }
 
   @Override
-  @ExoTransactional
   public void renamePage(String wikiType, String wikiOwner, String pageName, String newName, String newTitle) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      renamePageEntity(wikiType, wikiOwner, pageName, newName, newTitle);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private void renamePageEntity(String wikiType, String wikiOwner, String pageName, String newName, String newTitle) throws WikiException {
     PageEntity pageEntity = pageDAO.getPageOfWikiByName(wikiType, wikiOwner, pageName);
     if (pageEntity == null) {
       throw new WikiException("Cannot rename page " + wikiType + ":" + wikiOwner + ":" + pageName
@@ -373,11 +672,21 @@ public class JPADataStorage implements DataStorage {
     pageEntity.setMoves(pageMoves);
 
     pageDAO.update(pageEntity);
+    invalidatePageAndChildren(pageEntity);
   }
 
   @Override
-  @ExoTransactional
   public void movePage(WikiPageParams currentLocationParams, WikiPageParams newLocationParams) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      movePageTree(currentLocationParams, newLocationParams);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private void movePageTree(WikiPageParams currentLocationParams, WikiPageParams newLocationParams) throws WikiException {
     PageEntity pageEntity = pageDAO.getPageOfWikiByName(currentLocationParams.getType(),
         currentLocationParams.getOwner(),
         currentLocationParams.getPageName());
@@ -406,8 +715,24 @@ public class JPADataStorage implements DataStorage {
     // move must be saved here because of Hibernate bug HHH-6776
     pageMoveDAO.create(move);
 
+    // the descendants are moved with the page by rewriting their tree path
+    // prefix, in one update query
+    initSubtreeTreePaths(pageEntity);
+    List<Long> movedPagesIds = new ArrayList<>(pageDAO.getDescendantPagesIds(pageEntity));
+    movedPagesIds.add(pageEntity.getId());
+    String descendantsTreePath = pageEntity.getDescendantsTreePath();
+    int treeDepth = pageEntity.getTreeDepth();
+
     pageEntity.setParentPage(destinationPageEntity);
-    updateWikiOfPageTree(destinationPageEntity.getWiki(), pageEntity);
+    pageEntity.setWiki(destinationPageEntity.getWiki());
+    updateTreePath(pageEntity, destinationPageEntity);
+    pageDAO.moveDescendantPages(descendantsTreePath,
+                                pageEntity.getDescendantsTreePath(),
+                                pageEntity.getTreeDepth() - treeDepth,
+                                destinationPageEntity.getWiki());
+    for (Long movedPageId : movedPagesIds) {
+      pageCache.removePage(movedPageId);
+    }
 
     pageMoves.add(move);
     pageEntity.setMoves(pageMoves);
@@ -416,17 +741,67 @@ public class JPADataStorage implements DataStorage {
   }
 
   /**
-   * Recursively update wiki of children pages
-   * @param wikiEntity The new wiki
+   * Removes from the page cache a page and its children pages, which hold the
+   * name of their parent page
+   * @param pageEntity The page to invalidate
+   */
+  private void invalidatePageAndChildren(PageEntity pageEntity) {
+    pageCache.removePage(pageEntity.getId());
+    List<PageEntity> childrenPages = pageDAO.getChildrenPages(pageEntity);
+    if (childrenPages != null) {
+      for (PageEntity childrenPageEntity : childrenPages) {
+        pageCache.removePage(childrenPageEntity.getId());
+      }
+    }
+  }
+
+  /**
+   * Sets the tree path and depth of a page from the ones of its parent page
    * @param pageEntity The page to update
+   * @param parentPageEntity The parent page, null for a wiki home page
    */
-  private void updateWikiOfPageTree(WikiEntity wikiEntity, PageEntity pageEntity) {
-    pageEntity.setWiki(wikiEntity);
+  private void updateTreePath(PageEntity pageEntity, PageEntity parentPageEntity) {
+    if (parentPageEntity == null) {
+      pageEntity.setTreePath("/");
+      pageEntity.setTreeDepth(0);
+    } else {
+      initTreePath(parentPageEntity);
+      pageEntity.setTreePath(parentPageEntity.getDescendantsTreePath());
+      pageEntity.setTreeDepth(parentPageEntity.getTreeDepth() + 1);
+    }
+  }
+
+  /**
+   * Computes and saves the tree path of a page, and of its ancestors, if not
+   * already done
+   * @param pageEntity The page to update
+   */
+  private void initTreePath(PageEntity pageEntity) {
+    if (pageEntity.getTreePath() == null || pageEntity.getTreeDepth() == null) {
+      updateTreePath(pageEntity, pageEntity.getParentPage());
+      pageDAO.update(pageEntity);
+    }
+  }
 
+  /**
+   * Computes the tree path of a page, and the ones of its descendants while
+   * the tree paths upgrade is not finished, so that the subtree queries match
+   * all the descendants of the page
+   * @param pageEntity The root page of the subtree
+   */
+  private void initSubtreeTreePaths(PageEntity pageEntity) {
+    initTreePath(pageEntity);
+    if (!pageDAO.getPagesWithoutTreePath(0, 1).isEmpty()) {
+      initDescendantsTreePaths(pageEntity);
+    }
+  }
+
+  private void initDescendantsTreePaths(PageEntity pageEntity) {
     List<PageEntity> childrenPages = pageDAO.getChildrenPages(pageEntity);
-    if(childrenPages != null) {
-      for (PageEntity childrenPageEntity : childrenPages) {
-        updateWikiOfPageTree(wikiEntity, childrenPageEntity);
+    if (childrenPages != null) {
+      for (PageEntity childPageEntity : childrenPages) {
+        initTreePath(childPageEntity);
+        initDescendantsTreePaths(childPageEntity);
       }
     }
   }
@@ -524,10 +899,34 @@ public class JPADataStorage implements DataStorage {
     if (StringUtils.isBlank(wikiType)) {
       throw new IllegalArgumentException("wikiType is mandatory argument");
     }
-    List<PageEntity> pagesOfWiki = pageDAO.getPagesOfWiki(wikiType, wikiOwner, false);
+    return convertPageSummariesToPages(pageDAO.getPagesSummariesOfWiki(wikiType, wikiOwner, false));
+  }
+
+  /**
+   * Converts page summaries to pages whose permissions are loaded in one query
+   * and whose content is loaded on first access
+   *
+   * @param pageSummaries the page summaries
+   * @return the pages
+   */
+  private List<Page> convertPageSummariesToPages(List<PageSummary> pageSummaries) {
     List<Page> pages = new ArrayList<>();
-    for (PageEntity pageEntity : pagesOfWiki) {
-      pages.add(convertPageEntityToPage(pageEntity));
+    if (pageSummaries == null || pageSummaries.isEmpty()) {
+      return pages;
+    }
+    List<Long> pageIds = new ArrayList<>();
+    for (PageSummary pageSummary : pageSummaries) {
+      pageIds.add(pageSummary.getId());
+    }
+    Map<Long, List<PermissionEntity>> pagesPermissions = pageDAO.getPermissionsOfPages(pageIds);
+    for (PageSummary pageSummary : pageSummaries) {
+      long pageId = pageSummary.getId();
+      Page page = convertPageSummaryToPage(pageSummary);
+      page.setPermissions(convertPermissionEntitiesToPermissionEntries(pagesPermissions.get(pageId),
+                                                                       Arrays.asList(PermissionType.VIEWPAGE,
+                                                                                     PermissionType.EDITPAGE)));
+      page.setContentLoader(() -> pageDAO.getPageContent(pageId));
+      pages.add(page);
     }
     return pages;
   }
@@ -773,26 +1172,163 @@ public class JPADataStorage implements DataStorage {
     List<Attachment> attachments = new ArrayList<>();
     if (attachmentsEntities != null) {
       for (AttachmentEntity attachmentEntity : attachmentsEntities) {
-        Attachment attachment = convertAttachmentEntityToAttachment(fileService, attachmentEntity, loadContent);
-        // set title and full title if not there
-        if (attachment.getTitle() == null || StringUtils.isEmpty(attachment.getTitle())) {
-          int index = attachment.getName().lastIndexOf(".");
-          if (index != -1) {
-            attachment.setTitle(attachment.getName().substring(0, index));
-          } else {
-            attachment.setTitle(attachment.getName());
+        attachments.add(convertAttachmentEntity(attachmentEntity, loadContent, wikiType, wikiOwner, pageName));
+      }
+    }
+
+    return attachments;
+  }
+
+  @Override
+  public int countAttachments(Page page) throws WikiException {
+    if (page.isDraftPage()) {
+      DraftPageEntity draftPageEntity = draftPageDAO.findLatestDraftPageByUserAndName(page.getAuthor(), page.getName());
+      if (draftPageEntity == null) {
+        throw new WikiException("Cannot count attachments of draft page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+            + page.getName() + " because draft page does not exist.");
+      }
+      return draftPageEntity.getAttachments() == null ? 0 : draftPageEntity.getAttachments().size();
+    }
+    PageEntity pageEntity = fetchPageEntity(page);
+    if (pageEntity == null) {
+      throw new WikiException("Cannot count attachments of page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+          + page.getName() + " because page does not exist.");
+    }
+    return (int) pageAttachmentDAO.countByPageId(pageEntity.getId());
+  }
+
+  @Override
+  public Map<String, Integer> countAttachments(List<String> pagesIds) throws WikiException {
+    Map<String, Integer> countByPageId = new HashMap<>();
+    List<Long> ids = new ArrayList<>();
+    for (String pageId : pagesIds) {
+      countByPageId.put(pageId, 0);
+      ids.add(Long.parseLong(pageId));
+    }
+    if (!ids.isEmpty()) {
+      pageAttachmentDAO.countByPageIds(ids)
+                       .forEach((pageId, count) -> countByPageId.put(String.valueOf(pageId), count.intValue()));
+    }
+    return countByPageId;
+  }
+
+  @Override
+  @ExoTransactional
+  public Attachment getAttachmentOfPageByName(String attachmentName, Page page, boolean loadContent) throws WikiException {
+    AttachmentEntity attachmentEntity;
+    String wikiType;
+    String wikiOwner;
+    String pageName;
+    if (page.isDraftPage()) {
+      DraftPageEntity draftPageEntity = draftPageDAO.findLatestDraftPageByUserAndName(page.getAuthor(), page.getName());
+      if (draftPageEntity == null) {
+        throw new WikiException("Cannot get attachment of draft page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+            + page.getName() + " because draft page does not exist.");
+      }
+      attachmentEntity = getDraftPageAttachmentEntityByName(attachmentName, draftPageEntity);
+      if (draftPageEntity.isNewPage()) {
+        wikiType = WIKI_TYPE_DRAFT;
+        wikiOwner = draftPageEntity.getAuthor();
+        pageName = draftPageEntity.getName();
+      } else {
+        PageEntity targetPage = draftPageEntity.getTargetPage();
+        WikiEntity wiki = targetPage.getWiki();
+        wikiType = wiki.getType();
+        wikiOwner = wiki.getOwner();
+        pageName = targetPage.getName();
+      }
+    } else {
+      PageEntity pageEntity = fetchPageEntity(page);
+      if (pageEntity == null) {
+        throw new WikiException("Cannot get attachment of page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+            + page.getName() + " because page does not exist.");
+      }
+      attachmentEntity = getPageAttachmentEntityByName(attachmentName, pageEntity);
+      WikiEntity wikiEntity = pageEntity.getWiki();
+      wikiType = wikiEntity.getType();
+      wikiOwner = wikiEntity.getOwner();
+      pageName = pageEntity.getName();
+    }
+    if (attachmentEntity == null) {
+      return null;
+    }
+    return convertAttachmentEntity(attachmentEntity, loadContent, wikiType, wikiOwner, pageName);
+  }
+
+  private Attachment convertAttachmentEntity(AttachmentEntity attachmentEntity,
+                                             boolean loadContent,
+                                             String wikiType,
+                                             String wikiOwner,
+                                             String pageName) throws WikiException {
+    Attachment attachment = convertAttachmentEntityToAttachment(fileService, attachmentEntity, loadContent);
+    // set title and full title if not there
+    if (attachment.getTitle() == null || StringUtils.isEmpty(attachment.getTitle())) {
+      int index = attachment.getName().lastIndexOf(".");
+      if (index != -1) {
+        attachment.setTitle(attachment.getName().substring(0, index));
+      } else {
+        attachment.setTitle(attachment.getName());
+      }
+    }
+    if (attachment.getFullTitle() == null || StringUtils.isEmpty(attachment.getFullTitle())) {
+      attachment.setFullTitle(attachment.getName());
+    }
+    // build download url
+    attachment.setDownloadURL(getDownloadURL(wikiType, wikiOwner, pageName, attachment));
+    return attachment;
+  }
+
+  /**
+   * Get the attachment of a page by its name. The name of the attachments
+   * created before it was stored with them is read from the file storage and
+   * stored on the first lookup missing them.
+   */
+  private PageAttachmentEntity getPageAttachmentEntityByName(String attachmentName, PageEntity pageEntity) {
+    PageAttachmentEntity attachmentEntity = pageAttachmentDAO.getAttachmentOfPageByName(pageEntity.getId(), attachmentName);
+    if (attachmentEntity == null) {
+      for (PageAttachmentEntity unnamedAttachmentEntity : pageAttachmentDAO.getAttachmentsOfPageWithoutName(pageEntity.getId())) {
+        if (storeAttachmentName(unnamedAttachmentEntity)) {
+          pageAttachmentDAO.update(unnamedAttachmentEntity);
+          if (attachmentEntity == null && attachmentName.equals(unnamedAttachmentEntity.getName())) {
+            attachmentEntity = unnamedAttachmentEntity;
           }
         }
-        if (attachment.getFullTitle() == null || StringUtils.isEmpty(attachment.getFullTitle())) {
-          attachment.setFullTitle(attachment.getName());
+      }
+    }
+    return attachmentEntity;
+  }
+
+  /**
+   * Get the attachment of a draft page by its name, storing the missing names
+   * as in {@link #getPageAttachmentEntityByName(String, PageEntity)}
+   */
+  private DraftPageAttachmentEntity getDraftPageAttachmentEntityByName(String attachmentName, DraftPageEntity draftPageEntity) {
+    DraftPageAttachmentEntity attachmentEntity =
+                                               draftPageAttachmentDAO.getAttachmentOfDraftPageByName(draftPageEntity.getId(),
+                                                                                                     attachmentName);
+    if (attachmentEntity == null) {
+      for (DraftPageAttachmentEntity unnamedAttachmentEntity : draftPageAttachmentDAO.getAttachmentsOfDraftPageWithoutName(draftPageEntity.getId())) {
+        if (storeAttachmentName(unnamedAttachmentEntity)) {
+          draftPageAttachmentDAO.update(unnamedAttachmentEntity);
+          if (attachmentEntity == null && attachmentName.equals(unnamedAttachmentEntity.getName())) {
+            attachmentEntity = unnamedAttachmentEntity;
+          }
         }
-        // build download url
-        attachment.setDownloadURL(getDownloadURL(wikiType, wikiOwner, pageName, attachment));
-        attachments.add(attachment);
       }
     }
+    return attachmentEntity;
+  }
 
-    return attachments;
+  private boolean storeAttachmentName(AttachmentEntity attachmentEntity) {
+    if (attachmentEntity.getAttachmentFileID() == null) {
+      return false;
+    }
+    FileInfo fileInfo = fileService.getFileInfo(attachmentEntity.getAttachmentFileID());
+    if (fileInfo == null || fileInfo.getName() == null) {
+      return false;
+    }
+    attachmentEntity.setName(fileInfo.getName());
+    return true;
   }
 
   @Override
@@ -801,7 +1337,7 @@ public class JPADataStorage implements DataStorage {
 
     if(page.isDraftPage()) {
 
-      DraftPageAttachmentEntity attachmentEntity = convertAttachmentToDraftPageAttachmentEntity(fileService, attachment);
+      DraftPageAttachmentEntity attachmentEntity = convertAttachmentToDraftPageAttachmentEntity(writeAttachmentFile(attachment), attachment);
       Date now = GregorianCalendar.getInstance().getTime();
       if (attachmentEntity.getCreatedDate() == null) {
         attachmentEntity.setCreatedDate(now);
@@ -830,7 +1366,7 @@ public class JPADataStorage implements DataStorage {
       draftPageDAO.update(draftPageEntity);
     } else {
 
-      PageAttachmentEntity attachmentEntity = convertAttachmentToPageAttachmentEntity(fileService, attachment);
+      PageAttachmentEntity attachmentEntity = convertAttachmentToPageAttachmentEntity(writeAttachmentFile(attachment), attachment);
       Date now = GregorianCalendar.getInstance().getTime();
       if (attachmentEntity.getCreatedDate() == null) {
         attachmentEntity.setCreatedDate(now);
@@ -855,7 +1391,6 @@ public class JPADataStorage implements DataStorage {
       PageAttachmentEntity pageAttachmentEntity = attachmentEntity;
       pageAttachmentEntity.setPage(pageEntity);
       attachmentsEntities.add(pageAttachmentEntity);
-      pageEntity.setAttachments(attachmentsEntities);
       pageDAO.update(pageEntity);
     }
   }
@@ -889,26 +1424,19 @@ public class JPADataStorage implements DataStorage {
   }
 
   private boolean deletePageAttachementEntity(String attachmentName, PageEntity pageEntity, boolean attachmentFound) {
-    List<PageAttachmentEntity> attachmentsEntities = pageEntity.getAttachments();
-    if (attachmentsEntities != null) {
-      for (int i = 0; i < attachmentsEntities.size(); i++) {
-        AttachmentEntity attachmentEntity = attachmentsEntities.get(i);
-        String name = null;
-        if(attachmentEntity.getAttachmentFileID() != null){
-           name = fileService.getFileInfo(attachmentEntity.getAttachmentFileID()).getName();
-        }
-        if (name != null && name.equals(attachmentName)) {
-          attachmentFound = true;
-          attachmentsEntities.remove(i);
-          
-          fileService.deleteFile(attachmentEntity.getAttachmentFileID());
-          pageAttachmentDAO.delete((PageAttachmentEntity) attachmentEntity);
- 
-          pageEntity.setAttachments(attachmentsEntities);
-          pageDAO.update(pageEntity);
-          break;
-        }
+    PageAttachmentEntity attachmentEntity = getPageAttachmentEntityByName(attachmentName, pageEntity);
+    if (attachmentEntity != null) {
+      attachmentFound = true;
+      List<PageAttachmentEntity> attachmentsEntities = pageEntity.getAttachments();
+      if (attachmentsEntities != null) {
+        attachmentsEntities.remove(attachmentEntity);
+        pageEntity.setAttachments(attachmentsEntities);
       }
+
+      deleteAttachmentFile(attachmentEntity);
+      pageAttachmentDAO.delete(attachmentEntity);
+
+      pageDAO.update(pageEntity);
     }
     return attachmentFound;
   }
@@ -916,26 +1444,19 @@ public class JPADataStorage implements DataStorage {
   private boolean deleteDraftPageAttachementEntity(String attachmentName,
                                                    DraftPageEntity draftPageEntity,
                                                    boolean attachmentFound) {
-    List<DraftPageAttachmentEntity> draftAttachmentsEntities = draftPageEntity.getAttachments();
-    if (draftAttachmentsEntities != null) {
-      for (int i = 0; i < draftAttachmentsEntities.size(); i++) {
-        AttachmentEntity attachmentEntity = draftAttachmentsEntities.get(i);
-        String name = null;
-        if(attachmentEntity.getAttachmentFileID() != null){
-           name = fileService.getFileInfo(attachmentEntity.getAttachmentFileID()).getName();
-        }
-        if (name != null && name.equals(attachmentName)) {
-          attachmentFound = true;
-          draftAttachmentsEntities.remove(i);
+    DraftPageAttachmentEntity attachmentEntity = getDraftPageAttachmentEntityByName(attachmentName, draftPageEntity);
+    if (attachmentEntity != null) {
+      attachmentFound = true;
+      List<DraftPageAttachmentEntity> draftAttachmentsEntities = draftPageEntity.getAttachments();
+      if (draftAttachmentsEntities != null) {
+        draftAttachmentsEntities.remove(attachmentEntity);
+        draftPageEntity.setAttachments(draftAttachmentsEntities);
+      }
 
-          fileService.deleteFile(attachmentEntity.getAttachmentFileID());
-          draftPageAttachmentDAO.delete((DraftPageAttachmentEntity) attachmentEntity);
+      deleteAttachmentFile(attachmentEntity);
+      draftPageAttachmentDAO.delete(attachmentEntity);
 
-          draftPageEntity.setAttachments(draftAttachmentsEntities);
-          draftPageDAO.update(draftPageEntity);
-          break;
-        }
-      }
+      draftPageDAO.update(draftPageEntity);
     }
     return attachmentFound;
   }
@@ -1020,38 +1541,19 @@ public class JPADataStorage implements DataStorage {
    * @return true of the user has the given permission type in the list of the given permission entries
    */
   private boolean hasPermission(List<PermissionEntry> resourcePermissions, Identity identity, PermissionType permissionType) {
-    String userId = identity.getUserId();
-    // for each permission set on the page
-    for(PermissionEntry pagePermission : resourcePermissions) {
-      // for each type of permission (VIEWPAGE, EDITPAGE, ...)
-      for(Permission permission : pagePermission.getPermissions()) {
-        // if the permission type equals the type we want to test
-        if(permission.isAllowed() && permission.getPermissionType().equals(permissionType)) {
-          // if the user belongs to this identity (user, membership or any)
-          if(IdentityConstants.ANY.equals(pagePermission.getId())) {
-            return true;
-          } else {
-            switch(pagePermission.getIdType()) {
-              case USER:
-                if(userId.equals(pagePermission.getId())) {
-                  return true;
-                }
-              case GROUP:
-                if(identity.isMemberOf(pagePermission.getId())) {
-                  return true;
-                }
-              case MEMBERSHIP:
-                UserACL.Permission membershipPermission = new UserACL.Permission();
-                membershipPermission.setPermissionExpression(pagePermission.getId());
-                if(identity.isMemberOf(membershipPermission.getGroupId(), membershipPermission.getMembership())) {
-                  return true;
-                }
-            }
-          }
-        }
-      }
-    }
-    return false;
+    return new PermissionEvaluator(identity).hasPermission(resourcePermissions, permissionType);
+  }
+
+  @Override
+  public Map<Long, List<PermissionEntry>> getPermissionsOfPages(Collection<Long> pageIds) throws WikiException {
+    Map<Long, List<PermissionEntity>> permissionEntities = pageDAO.getPermissionsOfPages(pageIds);
+    Map<Long, List<PermissionEntry>> pagesPermissions = new HashMap<>();
+    for (Long pageId : pageIds) {
+      pagesPermissions.put(pageId, convertPermissionEntitiesToPermissionEntries(permissionEntities.get(pageId),
+                                                                                Arrays.asList(PermissionType.VIEWPAGE,
+                                                                                              PermissionType.EDITPAGE)));
+    }
+    return pagesPermissions;
   }
 
   @Override
@@ -1066,8 +1568,11 @@ public class JPADataStorage implements DataStorage {
     List<PageVersion> pageVersions = new ArrayList<>();
     List<PageVersionEntity> pageVersionEntities = pageEntity.getVersions();
     if(pageVersionEntities != null) {
+      Map<Long, String> versionsContent = getVersionsContent(pageVersionEntities);
       for (PageVersionEntity pageVersionEntity : pageVersionEntities) {
-        pageVersions.add(convertPageVersionEntityToPageVersion(pageVersionEntity));
+        PageVersion pageVersion = convertPageVersionEntityToPageVersion(pageVersionEntity);
+        pageVersion.setContent(versionsContent.get(pageVersionEntity.getVersionNumber()));
+        pageVersions.add(pageVersion);
       }
     }
 
@@ -1088,14 +1593,47 @@ public class JPADataStorage implements DataStorage {
     List<PageHistory> pageVersionsHistory = new ArrayList<>();
     List<PageVersionEntity> pageVersionEntities = pageEntity.getVersions();
     if(pageVersionEntities != null) {
+      Map<Long, String> versionsContent = getVersionsContent(pageVersionEntities);
       for (PageVersionEntity pageVersionEntity : pageVersionEntities) {
         PageHistory pageHistory = convertPageVersionEntityToPageHistory(pageVersionEntity);
+        pageHistory.setContent(versionsContent.get(pageVersionEntity.getVersionNumber()));
         pageVersionsHistory.add(pageHistory);
       }
     }
     return pageVersionsHistory;
   }
 
+  @Override
+  public List<PageHistory> getHistoryOfPage(Page page, int offset, int limit) throws WikiException {
+    List<Object[]> versions = pageVersionDAO.getHistoryOfPage(getPageIdOf(page), offset, limit);
+    List<PageHistory> pageVersionsHistory = new ArrayList<>(versions.size());
+    for (Object[] version : versions) {
+      PageHistory pageHistory = new PageHistory();
+      pageHistory.setVersionNumber((Long) version[0]);
+      pageHistory.setAuthor((String) version[1]);
+      pageHistory.setCreatedDate((Date) version[2]);
+      pageHistory.setUpdatedDate((Date) version[3]);
+      pageVersionsHistory.add(pageHistory);
+    }
+    return pageVersionsHistory;
+  }
+
+  @Override
+  public Long getLatestVersionNumberOfPage(Page page) throws WikiException {
+    return pageVersionDAO.getLastversionNumberOfPage(getPageIdOf(page));
+  }
+
+  @Override
+  public long countVersionsOfPage(Page page) throws WikiException {
+    return pageVersionDAO.countVersionsOfPage(getPageIdOf(page));
+  }
+
+  @Override
+  public String getVersionContentOfPage(Page page, long versionNumber) throws WikiException {
+    PageVersionEntity pageVersionEntity = pageVersionDAO.getPageversionByPageIdAndVersion(getPageIdOf(page), versionNumber);
+    return pageVersionEntity == null ? null : getVersionContent(pageVersionEntity);
+  }
+
   @Override
   @ExoTransactional
   public void addPageVersion(Page page , String userName) throws WikiException {
@@ -1125,7 +1663,8 @@ public class JPADataStorage implements DataStorage {
       } else{
       pageVersionEntity.setAuthor(pageEntity.getAuthor());
       }
-      pageVersionEntity.setContent(pageEntity.getContent());
+      PageVersionEntity snapshot = getSnapshotOfNextVersion(pageEntity.getId(), versionNumber);
+      setVersionContent(pageVersionEntity, pageEntity.getContent(), snapshot, snapshot == null ? null : getVersionContent(snapshot));
       pageVersionEntity.setSyntax(pageEntity.getSyntax());
       pageVersionEntity.setMinorEdit(pageEntity.isMinorEdit());
       pageVersionEntity.setComment(pageEntity.getComment());
@@ -1150,8 +1689,186 @@ public class JPADataStorage implements DataStorage {
     }
   }
 
+  @Override
+  public long compressPageVersions(long fromPageId, int maxPages) {
+    if (!deltaVersionsStorage) {
+      return 0;
+    }
+    List<Long> pageIds = pageVersionDAO.getPageIdsWithFullContentVersions(fromPageId, maxPages);
+    for (Long pageId : pageIds) {
+      try {
+        compressVersionsOfPage(pageId);
+      } catch (Exception e) {
+        // the page is skipped so that it does not block the conversion of the
+        // next ones, its versions stay readable as they are
+        LOG.warn("Cannot compress the versions of page {}, they are kept with their full content", pageId, e);
+        pageVersionDAO.getEntityManager().clear();
+      }
+    }
+    return pageIds.isEmpty() ? 0 : pageIds.get(pageIds.size() - 1);
+  }
+
+  /**
+   * Convert the versions of a page in its own transaction, so that a failure
+   * only rolls back the conversion of this page
+   */
+  @ExoTransactional
+  private void compressVersionsOfPage(long pageId) throws WikiException {
+    PageVersionEntity snapshot = null;
+    String snapshotContent = null;
+    for (PageVersionEntity pageVersionEntity : pageVersionDAO.getVersionsOfPage(pageId)) {
+      String content = null;
+      if (pageVersionEntity.getContentStorage() == ContentStorage.FULL) {
+        content = pageVersionEntity.getContent();
+        if (snapshot != null && pageVersionEntity.getVersionNumber() - snapshot.getVersionNumber() >= versionsSnapshotInterval) {
+          snapshot = null;
+        }
+        setVersionContent(pageVersionEntity, content, snapshot, snapshotContent);
+        pageVersionDAO.update(pageVersionEntity);
+      }
+      if (pageVersionEntity.getContentStorage() == ContentStorage.SNAPSHOT) {
+        snapshot = pageVersionEntity;
+        snapshotContent = content == null ? getVersionContent(pageVersionEntity) : content;
+      }
+    }
+  }
+
+  /**
+   * @param pageId the page id
+   * @param versionNumber the number of the version to create
+   * @return the snapshot the version can be stored as a delta from, null if
+   *         the version must be stored as a snapshot
+   */
+  private PageVersionEntity getSnapshotOfNextVersion(long pageId, long versionNumber) {
+    if (!deltaVersionsStorage || versionNumber == 1) {
+      return null;
+    }
+    PageVersionEntity previousVersion = pageVersionDAO.getPageversionByPageIdAndVersion(pageId, versionNumber - 1);
+    if (previousVersion == null || previousVersion.getContentStorage() == ContentStorage.FULL) {
+      return null;
+    }
+    long snapshotVersionNumber = previousVersion.getContentStorage() == ContentStorage.SNAPSHOT ? previousVersion.getVersionNumber()
+                                                                                               : previousVersion.getBaseVersionNumber();
+    if (versionNumber - snapshotVersionNumber >= versionsSnapshotInterval) {
+      return null;
+    }
+    return snapshotVersionNumber == previousVersion.getVersionNumber() ? previousVersion
+                                                                       : pageVersionDAO.getPageversionByPageIdAndVersion(pageId,
+                                                                                                                         snapshotVersionNumber);
+  }
+
+  /**
+   * Store the content of a version as is, as a compressed snapshot or as a
+   * compressed delta from the given snapshot, depending on the versions
+   * storage mode. The delta is stored only when it is smaller than half of the
+   * compressed content, so that a new snapshot is started when the content
+   * has diverged too much.
+   *
+   * @param pageVersionEntity the version
+   * @param content the content of the version
+   * @param snapshot the snapshot to compute the delta from, null to store the
+   *          version as a snapshot
+   * @param snapshotContent the content of the snapshot
+   */
+  private void setVersionContent(PageVersionEntity pageVersionEntity,
+                                 String content,
+                                 PageVersionEntity snapshot,
+                                 String snapshotContent) throws WikiException {
+    if (!deltaVersionsStorage) {
+      pageVersionEntity.setContent(content);
+      pageVersionEntity.setContentStorage(ContentStorage.FULL);
+      return;
+    }
+    if (content == null) {
+      content = "";
+    }
+    try {
+      byte[] contentData = PageVersionContentCodec.compress(content);
+      // the entity getter turns a null content into an empty one
+      pageVersionEntity.setContent("");
+      pageVersionEntity.setContentStorage(ContentStorage.SNAPSHOT);
+      pageVersionEntity.setBaseVersionNumber(null);
+      pageVersionEntity.setContentData(contentData);
+      if (snapshot != null) {
+        byte[] delta = PageVersionContentCodec.encodeDelta(snapshotContent, content);
+        if (delta.length < contentData.length / 2) {
+          pageVersionEntity.setContentStorage(ContentStorage.DELTA);
+          pageVersionEntity.setBaseVersionNumber(snapshot.getVersionNumber());
+          pageVersionEntity.setContentData(delta);
+        }
+      }
+    } catch (IOException e) {
+      throw new WikiException("Cannot encode content of version " + pageVersionEntity.getVersionNumber(), e);
+    }
+  }
+
+  private String getVersionContent(PageVersionEntity pageVersionEntity) throws WikiException {
+    switch (pageVersionEntity.getContentStorage()) {
+    case SNAPSHOT:
+      return decodeVersionContent(pageVersionEntity, null);
+    case DELTA:
+      PageVersionEntity snapshot = pageVersionDAO.getPageversionByPageIdAndVersion(pageVersionEntity.getPage().getId(),
+                                                                                   pageVersionEntity.getBaseVersionNumber());
+      if (snapshot == null) {
+        throw new WikiException("Cannot find snapshot " + pageVersionEntity.getBaseVersionNumber() + " of version "
+            + pageVersionEntity.getVersionNumber());
+      }
+      return decodeVersionContent(pageVersionEntity, getVersionContent(snapshot));
+    default:
+      return pageVersionEntity.getContent();
+    }
+  }
+
+  /**
+   * @param pageVersionEntities all the versions of a page
+   * @return the content of the versions by version number, each snapshot being
+   *         decompressed once
+   */
+  private Map<Long, String> getVersionsContent(List<PageVersionEntity> pageVersionEntities) throws WikiException {
+    Map<Long, String> versionsContent = new HashMap<>();
+    for (PageVersionEntity pageVersionEntity : pageVersionEntities) {
+      if (pageVersionEntity.getContentStorage() != ContentStorage.DELTA) {
+        versionsContent.put(pageVersionEntity.getVersionNumber(), getVersionContent(pageVersionEntity));
+      }
+    }
+    for (PageVersionEntity pageVersionEntity : pageVersionEntities) {
+      if (pageVersionEntity.getContentStorage() == ContentStorage.DELTA) {
+        String snapshotContent = versionsContent.get(pageVersionEntity.getBaseVersionNumber());
+        versionsContent.put(pageVersionEntity.getVersionNumber(),
+                            snapshotContent == null ? getVersionContent(pageVersionEntity)
+                                                    : decodeVersionContent(pageVersionEntity, snapshotContent));
+      }
+    }
+    return versionsContent;
+  }
+
+  private String decodeVersionContent(PageVersionEntity pageVersionEntity, String snapshotContent) throws WikiException {
+    try {
+      if (pageVersionEntity.getContentStorage() == ContentStorage.DELTA) {
+        return PageVersionContentCodec.applyDelta(snapshotContent, pageVersionEntity.getContentData());
+      }
+      return PageVersionContentCodec.decompress(pageVersionEntity.getContentData());
+    } catch (IOException e) {
+      LOG.error("Content of version {} of page {} is corrupted",
+                pageVersionEntity.getVersionNumber(),
+                pageVersionEntity.getPage().getId(),
+                e);
+      throw new WikiException("Cannot decode content of version " + pageVersionEntity.getVersionNumber(), e);
+    }
+  }
+
   @Override
   public void restoreVersionOfPage(String versionName, Page page) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      restorePageVersion(versionName, page);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private void restorePageVersion(String versionName, Page page) throws WikiException {
     if(page != null) {
       PageEntity pageEntity = fetchPageEntity(page);
 
@@ -1162,9 +1879,10 @@ public class JPADataStorage implements DataStorage {
 
       PageVersionEntity versionToRestore = pageVersionDAO.getPageversionByPageIdAndVersion(Long.parseLong(page.getId()), Long.parseLong(versionName));
       if(versionToRestore != null) {
-        pageEntity.setContent(versionToRestore.getContent());
+        pageEntity.setContent(getVersionContent(versionToRestore));
         pageEntity.setUpdatedDate(Calendar.getInstance().getTime());
         pageDAO.update(pageEntity);
+        pageCache.removePage(pageEntity.getId());
       } else {
         throw new WikiException("Cannot restore version " + versionName + " of a page " + page.getWikiType() + ":"
             + page.getWikiOwner() + ":" + page.getName() + " because version does not exist.");
@@ -1175,8 +1893,17 @@ public class JPADataStorage implements DataStorage {
   }
 
   @Override
-  @ExoTransactional
   public Page updatePage(Page page) throws WikiException {
+    pageCache.startInvalidation();
+    try {
+      return updatePageEntity(page);
+    } finally {
+      pageCache.endInvalidation();
+    }
+  }
+
+  @ExoTransactional
+  private Page updatePageEntity(Page page) throws WikiException {
     if (page.isDraftPage()) {
       DraftPageEntity draftPageEntity = draftPageDAO.findLatestDraftPageByUserAndName(page.getAuthor(), page.getName());
 
@@ -1198,6 +1925,7 @@ public class JPADataStorage implements DataStorage {
                 + " because page does not exist.");
       }
 
+      boolean renamed = !StringUtils.equals(pageEntity.getName(), page.getName());
       pageEntity.setName(page.getName());
       pageEntity.setTitle(page.getTitle());
       pageEntity.setAuthor(page.getAuthor());
@@ -1211,7 +1939,13 @@ public class JPADataStorage implements DataStorage {
       pageEntity.setPermissions(convertPermissionEntriesToPermissionEntities(page.getPermissions()));
       pageEntity.setActivityId(page.getActivityId());
 
-      return convertPageEntityToPage(pageDAO.update(pageEntity));
+      Page updatedPage = convertPageEntityToPage(pageDAO.update(pageEntity));
+      if (renamed) {
+        invalidatePageAndChildren(pageEntity);
+      } else {
+        pageCache.removePage(pageEntity.getId());
+      }
+      return updatedPage;
     }
   }
 
@@ -1289,7 +2023,7 @@ public class JPADataStorage implements DataStorage {
       for (int i = 0; i < attachmentsEntities.size(); i++) {
         AttachmentEntity attachmentEntity = attachmentsEntities.get(i);
         attachmentsEntities.remove(i);
-        fileService.deleteFile(attachmentEntity.getAttachmentFileID());
+        deleteAttachmentFile(attachmentEntity);
         draftPageAttachmentDAO.delete((DraftPageAttachmentEntity) attachmentEntity);
       }
       page.setAttachments(attachmentsEntities);
@@ -1297,6 +2031,30 @@ public class JPADataStorage implements DataStorage {
     }
   }
 
+  /**
+   * Get the id of a page domain object, without loading the page when the
+   * object holds its id
+   *
+   * @param page The page domain object
+   * @return The page id
+   * @throws WikiException if the page does not exist
+   */
+  private Long getPageIdOf(Page page) throws WikiException {
+    if (StringUtils.isNotEmpty(page.getId()) && !page.isDraftPage()) {
+      try {
+        return Long.parseLong(page.getId());
+      } catch (NumberFormatException e) {
+        // resolve the page by its name
+      }
+    }
+    PageEntity pageEntity = pageDAO.getPageOfWikiByName(page.getWikiType(), page.getWikiOwner(), page.getName());
+    if (pageEntity == null) {
+      throw new WikiException("Cannot get versions of page " + page.getWikiType() + ":" + page.getWikiOwner() + ":"
+          + page.getName() + " because page does not exist.");
+    }
+    return pageEntity.getId();
+  }
+
   /**
    * Fecth Page Entity from a Page domain object
    *
@@ -0,0 +1,203 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.jpa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Encoding of the page versions content: the snapshots are the deflated
+ * content, the deltas are the deflated list of copy and insert operations
+ * which rebuild the content of a version from the content of its snapshot.
+ */
+public final class PageVersionContentCodec {
+
+  private static final int  BLOCK_SIZE       = 16;
+
+  private static final int  HASH_MULTIPLIER  = 31;
+
+  private static final byte END_OPERATION    = 0;
+
+  private static final byte COPY_OPERATION   = 1;
+
+  private static final byte INSERT_OPERATION = 2;
+
+  private PageVersionContentCodec() {
+  }
+
+  /**
+   * @param content the content to compress
+   * @return the deflated UTF-8 bytes of the content
+   */
+  public static byte[] compress(String content) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream outputStream = deflate(bytes)) {
+      outputStream.write(content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param data the data returned by {@link #compress(String)}
+   * @return the content
+   */
+  public static String decompress(byte[] data) throws IOException {
+    try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(data))) {
+      return new String(IOUtils.toByteArray(inputStream), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Compute the operations to rebuild the target content from the base
+   * content: the base is indexed by blocks, the blocks of the target found in
+   * the base are extended as much as possible and encoded as copies, the
+   * remaining characters are encoded as inserts.
+   *
+   * @param base the content of the snapshot
+   * @param target the content of the version
+   * @return the deflated delta
+   */
+  public static byte[] encodeDelta(String base, String target) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream outputStream = new DataOutputStream(deflate(bytes))) {
+      outputStream.writeInt(target.length());
+      Map<Integer, Integer> blocks = new HashMap<>();
+      for (int position = 0; position + BLOCK_SIZE <= base.length(); position += BLOCK_SIZE) {
+        blocks.putIfAbsent(hash(base, position), position);
+      }
+      long highestPower = 1;
+      for (int i = 1; i < BLOCK_SIZE; i++) {
+        highestPower *= HASH_MULTIPLIER;
+      }
+      int insertStart = 0;
+      int position = 0;
+      int hash = target.length() >= BLOCK_SIZE ? hash(target, 0) : 0;
+      while (position + BLOCK_SIZE <= target.length()) {
+        Integer basePosition = blocks.get(hash);
+        if (basePosition != null && base.regionMatches(basePosition, target, position, BLOCK_SIZE)) {
+          int copyStart = position;
+          int baseStart = basePosition;
+          while (copyStart > insertStart && baseStart > 0 && target.charAt(copyStart - 1) == base.charAt(baseStart - 1)) {
+            copyStart--;
+            baseStart--;
+          }
+          int copyEnd = position + BLOCK_SIZE;
+          int baseEnd = basePosition + BLOCK_SIZE;
+          while (copyEnd < target.length() && baseEnd < base.length() && target.charAt(copyEnd) == base.charAt(baseEnd)) {
+            copyEnd++;
+            baseEnd++;
+          }
+          writeInsert(outputStream, target, insertStart, copyStart);
+          outputStream.writeByte(COPY_OPERATION);
+          outputStream.writeInt(baseStart);
+          outputStream.writeInt(copyEnd - copyStart);
+          position = copyEnd;
+          insertStart = copyEnd;
+          if (position + BLOCK_SIZE <= target.length()) {
+            hash = hash(target, position);
+          }
+        } else {
+          if (position + BLOCK_SIZE < target.length()) {
+            hash = (int) ((hash - target.charAt(position) * highestPower) * HASH_MULTIPLIER + target.charAt(position + BLOCK_SIZE));
+          }
+          position++;
+        }
+      }
+      writeInsert(outputStream, target, insertStart, target.length());
+      outputStream.writeByte(END_OPERATION);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @param base the content of the snapshot
+   * @param delta the data returned by {@link #encodeDelta(String, String)}
+   * @return the content of the version
+   */
+  public static String applyDelta(String base, byte[] delta) throws IOException {
+    try (DataInputStream inputStream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(delta)))) {
+      int length = inputStream.readInt();
+      StringBuilder content = new StringBuilder(length);
+      byte operation;
+      while ((operation = inputStream.readByte()) != END_OPERATION) {
+        if (operation == COPY_OPERATION) {
+          int offset = inputStream.readInt();
+          int copyLength = inputStream.readInt();
+          if (offset < 0 || copyLength < 0 || offset + copyLength > base.length()) {
+            throw new IOException("Delta copy out of the base content bounds");
+          }
+          content.append(base, offset, offset + copyLength);
+        } else if (operation == INSERT_OPERATION) {
+          int insertLength = inputStream.readInt();
+          for (int i = 0; i < insertLength; i++) {
+            content.append(inputStream.readChar());
+          }
+        } else {
+          throw new IOException("Unknown delta operation " + operation);
+        }
+      }
+      if (content.length() != length) {
+        throw new IOException("Delta content length " + content.length() + " does not match the expected length " + length);
+      }
+      return content.toString();
+    }
+  }
+
+  private static void writeInsert(DataOutputStream outputStream, String target, int start, int end) throws IOException {
+    if (end > start) {
+      outputStream.writeByte(INSERT_OPERATION);
+      outputStream.writeInt(end - start);
+      // raw UTF-16 chars, the copies can split a surrogate pair
+      outputStream.writeChars(target.substring(start, end));
+    }
+  }
+
+  private static int hash(String content, int position) {
+    int hash = 0;
+    for (int i = position; i < position + BLOCK_SIZE; i++) {
+      hash = hash * HASH_MULTIPLIER + content.charAt(i);
+    }
+    return hash;
+  }
+
+  private static OutputStream deflate(OutputStream outputStream) {
+    return new DeflaterOutputStream(outputStream, new Deflater(Deflater.BEST_COMPRESSION)) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          def.end();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.jpa.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.model.WikiType;
+
+/**
+ * Cache of page snapshots keyed by page id, with a secondary index from the
+ * wiki type, the wiki owner and the page name to the page id. The index is
+ * only a hint: the snapshot it points to is checked against the requested
+ * name, so a stale index entry left by another cluster node can only lead to a
+ * cache miss. Both caches are meant to be configured in invalidation mode in
+ * cluster so that writes only need to remove entries. As a concurrent read
+ * can cache the page again between its removal and the commit of the
+ * transaction modifying it, the writes remove the pages again once the
+ * transaction is committed, see {@link #startInvalidation()}.
+ */
+public class PageCache {
+
+  public static final String           PAGE_CACHE_NAME      = "wiki.PageCache";
+
+  public static final String           PAGE_NAME_CACHE_NAME = "wiki.PageNameCache";
+
+  private final ExoCache<Long, PageData> pageCache;
+
+  private final ExoCache<String, Long>   pageNameCache;
+
+  private final ThreadLocal<Set<Long>>   removedPagesIds      = new ThreadLocal<>();
+
+  public PageCache(CacheService cacheService) {
+    this.pageCache = cacheService.getCacheInstance(PAGE_CACHE_NAME);
+    this.pageNameCache = cacheService.getCacheInstance(PAGE_NAME_CACHE_NAME);
+  }
+
+  /**
+   * @param pageId the page id
+   * @return a copy of the cached page, null if not cached
+   */
+  public Page getPageById(long pageId) {
+    PageData pageData = pageCache.get(pageId);
+    return pageData == null ? null : pageData.build();
+  }
+
+  /**
+   * @param wikiType the wiki type
+   * @param wikiOwner the wiki owner
+   * @param pageName the page name
+   * @return a copy of the cached page if it is not deleted, null if not cached
+   */
+  public Page getPageByName(String wikiType, String wikiOwner, String pageName) {
+    String nameKey = getNameKey(wikiType, wikiOwner, pageName);
+    Long pageId = pageNameCache.get(nameKey);
+    if (pageId == null) {
+      return null;
+    }
+    PageData pageData = pageCache.get(pageId);
+    if (pageData == null || pageData.isDeleted() || !nameKey.equals(getNameKey(pageData.getWikiType(),
+                                                                                pageData.getWikiOwner(),
+                                                                                pageData.getName()))) {
+      return null;
+    }
+    return pageData.build();
+  }
+
+  /**
+   * Store a snapshot of the page and index it by name
+   *
+   * @param page the page loaded from the database
+   */
+  public void putPage(Page page) {
+    if (page == null || page.isDraftPage() || StringUtils.isBlank(page.getId())) {
+      return;
+    }
+    long pageId = Long.parseLong(page.getId());
+    pageCache.put(pageId, new PageData(page));
+    if (!page.isDeleted()) {
+      pageNameCache.put(getNameKey(page.getWikiType(), page.getWikiOwner(), page.getName()), pageId);
+    }
+  }
+
+  /**
+   * Remove the snapshot of a page and its name index entry
+   *
+   * @param pageId the page id
+   */
+  public void removePage(long pageId) {
+    PageData pageData = pageCache.remove(pageId);
+    if (pageData != null) {
+      pageNameCache.remove(getNameKey(pageData.getWikiType(), pageData.getWikiOwner(), pageData.getName()));
+    }
+    Set<Long> pendingPagesIds = removedPagesIds.get();
+    if (pendingPagesIds != null) {
+      pendingPagesIds.add(pageId);
+    }
+  }
+
+  /**
+   * Start recording the pages removed by the current thread, to be called
+   * before the transaction removing them starts
+   */
+  public void startInvalidation() {
+    removedPagesIds.set(new HashSet<>());
+  }
+
+  /**
+   * Remove again the pages removed by the current thread since
+   * {@link #startInvalidation()}, to be called once the transaction removing
+   * them is committed
+   */
+  public void endInvalidation() {
+    Set<Long> pendingPagesIds = removedPagesIds.get();
+    removedPagesIds.remove();
+    if (pendingPagesIds != null) {
+      for (Long pageId : pendingPagesIds) {
+        removePage(pageId);
+      }
+    }
+  }
+
+  public void clearCache() {
+    pageCache.clearCache();
+    pageNameCache.clearCache();
+  }
+
+  private String getNameKey(String wikiType, String wikiOwner, String pageName) {
+    // group wiki owners are stored with a leading slash but can be requested
+    // without it
+    if (WikiType.GROUP.isSame(wikiType) && wikiOwner != null && !wikiOwner.startsWith("/")) {
+      wikiOwner = "/" + wikiOwner;
+    }
+    return wikiType + ":" + wikiOwner + ":" + pageName;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.jpa.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.model.Permission;
+import org.exoplatform.wiki.model.PermissionEntry;
+import org.exoplatform.wiki.rendering.cache.CacheData;
+
+/**
+ * Immutable snapshot of a page stored in the page cache. Each call to
+ * {@link #build()} returns a new {@link Page} so that callers can modify it
+ * without altering the cached data.
+ */
+public class PageData implements CacheData<Page> {
+
+  private static final long           serialVersionUID = -6184206911683476720L;
+
+  private final String                id;
+
+  private final String                name;
+
+  private final String                owner;
+
+  private final String                author;
+
+  private final Long                  createdDate;
+
+  private final Long                  updatedDate;
+
+  private final String                content;
+
+  private final String                syntax;
+
+  private final String                title;
+
+  private final String                comment;
+
+  private final String                url;
+
+  private final String                activityId;
+
+  private final String                wikiId;
+
+  private final String                wikiType;
+
+  private final String                wikiOwner;
+
+  private final String                parentPageId;
+
+  private final String                parentPageName;
+
+  private final boolean               minorEdit;
+
+  private final boolean               deleted;
+
+  private final List<PermissionEntry> permissions;
+
+  public PageData(Page page) {
+    this.id = page.getId();
+    this.name = page.getName();
+    this.owner = page.getOwner();
+    this.author = page.getAuthor();
+    this.createdDate = page.getCreatedDate() == null ? null : page.getCreatedDate().getTime();
+    this.updatedDate = page.getUpdatedDate() == null ? null : page.getUpdatedDate().getTime();
+    this.content = page.getContent();
+    this.syntax = page.getSyntax();
+    this.title = page.getTitle();
+    this.comment = page.getComment();
+    this.url = page.getUrl();
+    this.activityId = page.getActivityId();
+    this.wikiId = page.getWikiId();
+    this.wikiType = page.getWikiType();
+    this.wikiOwner = page.getWikiOwner();
+    this.parentPageId = page.getParentPageId();
+    this.parentPageName = page.getParentPageName();
+    this.minorEdit = page.isMinorEdit();
+    this.deleted = page.isDeleted();
+    this.permissions = copyPermissions(page.getPermissions());
+  }
+
+  @Override
+  public Page build() {
+    Page page = new Page();
+    page.setId(id);
+    page.setName(name);
+    page.setOwner(owner);
+    page.setAuthor(author);
+    page.setCreatedDate(createdDate == null ? null : new Date(createdDate));
+    page.setUpdatedDate(updatedDate == null ? null : new Date(updatedDate));
+    page.setContent(content);
+    page.setSyntax(syntax);
+    page.setTitle(title);
+    page.setComment(comment);
+    page.setUrl(url);
+    page.setActivityId(activityId);
+    page.setWikiId(wikiId);
+    page.setWikiType(wikiType);
+    page.setWikiOwner(wikiOwner);
+    page.setParentPageId(parentPageId);
+    page.setParentPageName(parentPageName);
+    page.setMinorEdit(minorEdit);
+    page.setDeleted(deleted);
+    page.setPermissions(copyPermissions(permissions));
+    return page;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getWikiType() {
+    return wikiType;
+  }
+
+  public String getWikiOwner() {
+    return wikiOwner;
+  }
+
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+  private static List<PermissionEntry> copyPermissions(List<PermissionEntry> permissionEntries) {
+    if (permissionEntries == null) {
+      return null;
+    }
+    List<PermissionEntry> copiedPermissionEntries = new ArrayList<>(permissionEntries.size());
+    for (PermissionEntry permissionEntry : permissionEntries) {
+      Permission[] permissions = null;
+      if (permissionEntry.getPermissions() != null) {
+        permissions = new Permission[permissionEntry.getPermissions().length];
+        for (int i = 0; i < permissions.length; i++) {
+          Permission permission = permissionEntry.getPermissions()[i];
+          permissions[i] = new Permission(permission.getPermissionType(), permission.isAllowed());
+        }
+      }
+      copiedPermissionEntries.add(new PermissionEntry(permissionEntry.getId(),
+                                                      permissionEntry.getFullName(),
+                                                      permissionEntry.getIdType(),
+                                                      permissions));
+    }
+    return copiedPermissionEntries;
+  }
+}
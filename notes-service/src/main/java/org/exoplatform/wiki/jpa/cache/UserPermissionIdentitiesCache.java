@@ -0,0 +1,78 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.jpa.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+/**
+ * Cache of the identity ids a user is granted to read in the notes search
+ * index, that is the ids of the user identity and of the identities of the
+ * spaces the user is member of, keyed by user name. Entries are removed when
+ * the space memberships of the user change, the cache is meant to be
+ * configured in invalidation mode in cluster.
+ */
+public class UserPermissionIdentitiesCache {
+
+  public static final String                     USER_PERMISSION_IDENTITIES_CACHE_NAME = "wiki.UserPermissionIdentitiesCache";
+
+  private final ExoCache<String, HashSet<String>> userPermissionIdentitiesCache;
+
+  public UserPermissionIdentitiesCache(CacheService cacheService) {
+    this.userPermissionIdentitiesCache = cacheService.getCacheInstance(USER_PERMISSION_IDENTITIES_CACHE_NAME);
+  }
+
+  /**
+   * @param userId the user name
+   * @return the cached permission identity ids of the user, null if not cached
+   */
+  public Set<String> getPermissionIdentityIds(String userId) {
+    HashSet<String> identityIds = userPermissionIdentitiesCache.get(userId);
+    return identityIds == null ? null : Collections.unmodifiableSet(identityIds);
+  }
+
+  /**
+   * Store the permission identity ids of a user
+   *
+   * @param userId the user name
+   * @param identityIds the ids of the user identity and of its spaces identities
+   */
+  public void putPermissionIdentityIds(String userId, Set<String> identityIds) {
+    userPermissionIdentitiesCache.put(userId, new HashSet<>(identityIds));
+  }
+
+  /**
+   * Remove the permission identity ids of a user, to be called when the space
+   * memberships of the user change
+   *
+   * @param userId the user name
+   */
+  public void removePermissionIdentityIds(String userId) {
+    if (userId != null) {
+      userPermissionIdentitiesCache.remove(userId);
+    }
+  }
+
+  public void clearCache() {
+    userPermissionIdentitiesCache.clearCache();
+  }
+}
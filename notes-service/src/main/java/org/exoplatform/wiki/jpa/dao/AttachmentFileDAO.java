@@ -0,0 +1,118 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.jpa.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import org.exoplatform.wiki.jpa.entity.AttachmentFileEntity;
+
+public class AttachmentFileDAO extends WikiBaseDAO<AttachmentFileEntity, Long> {
+
+  /**
+   * @param contentHash the hex encoded SHA-256 hash of the content
+   * @return the file with this content, null if none
+   */
+  public AttachmentFileEntity getAttachmentFileByContentHash(String contentHash) {
+    List<AttachmentFileEntity> attachmentFiles =
+                                               getEntityManager().createNamedQuery("wikiAttachmentFile.getAttachmentFileByContentHash",
+                                                                                   AttachmentFileEntity.class)
+                                                                 .setParameter("contentHash", contentHash)
+                                                                 .setMaxResults(1)
+                                                                 .getResultList();
+    return attachmentFiles.isEmpty() ? null : attachmentFiles.get(0);
+  }
+
+  /**
+   * @param fromId the id to start after
+   * @param updatedBefore the date before which the files were last updated
+   * @param limit the maximum number of files
+   * @return the files with an id greater than fromId not updated since the
+   *         given date, ordered by id
+   */
+  public List<AttachmentFileEntity> getAttachmentFiles(long fromId, Date updatedBefore, int limit) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.getAttachmentFiles", AttachmentFileEntity.class)
+                             .setParameter("id", fromId)
+                             .setParameter("updatedBefore", updatedBefore)
+                             .setMaxResults(limit)
+                             .getResultList();
+  }
+
+  /**
+   * @param id the file entry id
+   * @return the number of updated files, 0 if the file entry no longer exists
+   */
+  public int incrementRefCount(long id) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.incrementRefCount")
+                             .setParameter("id", id)
+                             .setParameter("updatedDate", new Date())
+                             .executeUpdate();
+  }
+
+  /**
+   * @param attachmentFileId the id of the file in the file storage
+   * @return the number of updated files, 0 if the file is not shared
+   */
+  public int decrementRefCount(long attachmentFileId) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.decrementRefCount")
+                             .setParameter("attachmentFileId", attachmentFileId)
+                             .setParameter("updatedDate", new Date())
+                             .executeUpdate();
+  }
+
+  /**
+   * Set the references count of a file unless it was updated since the given
+   * date, by an attachment being added or deleted
+   *
+   * @param id the file entry id
+   * @param refCount the references count
+   * @param updatedBefore the date before which the file was last updated
+   * @return the number of updated files, 0 if the file was updated meanwhile
+   */
+  public int updateNotUpdatedRefCount(long id, int refCount, Date updatedBefore) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.updateNotUpdatedRefCount")
+                             .setParameter("id", id)
+                             .setParameter("refCount", refCount)
+                             .setParameter("updatedBefore", updatedBefore)
+                             .executeUpdate();
+  }
+
+  /**
+   * Delete a file entry unless it was updated since the given date, by an
+   * attachment being added or deleted
+   *
+   * @param id the file entry id
+   * @param updatedBefore the date before which the file was last updated
+   * @return the number of deleted files, 0 if the file was updated meanwhile
+   */
+  public int deleteNotUpdatedAttachmentFile(long id, Date updatedBefore) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.deleteNotUpdatedAttachmentFile")
+                             .setParameter("id", id)
+                             .setParameter("updatedBefore", updatedBefore)
+                             .executeUpdate();
+  }
+
+  /**
+   * @param attachmentFileId the id of the file in the file storage
+   * @return the number of deleted files, 0 if the file is still referenced
+   */
+  public int deleteUnreferencedAttachmentFile(long attachmentFileId) {
+    return getEntityManager().createNamedQuery("wikiAttachmentFile.deleteUnreferencedAttachmentFile")
+                             .setParameter("attachmentFileId", attachmentFileId)
+                             .executeUpdate();
+  }
+}
@@ -34,4 +34,42 @@ public class DraftPageAttachmentDAO extends WikiBaseDAO<DraftPageAttachmentEntit
     return getEntityManager().createNamedQuery("draftAttachment.getAllIds").setFirstResult(offset).setMaxResults(limit).getResultList();
   }
 
+  /**
+   * @param draftPageId the draft page id
+   * @param name the attachment name
+   * @return the attachment of the draft page with the given name, null if
+   *         none
+   */
+  public DraftPageAttachmentEntity getAttachmentOfDraftPageByName(long draftPageId, String name) {
+    List<DraftPageAttachmentEntity> attachments =
+                                                getEntityManager().createNamedQuery("draftAttachment.getAttachmentOfDraftPageByName",
+                                                                                    DraftPageAttachmentEntity.class)
+                                                                  .setParameter("draftPageId", draftPageId)
+                                                                  .setParameter("name", name)
+                                                                  .setMaxResults(1)
+                                                                  .getResultList();
+    return attachments.isEmpty() ? null : attachments.get(0);
+  }
+
+  /**
+   * @param draftPageId the draft page id
+   * @return the attachments of the draft page created before the attachments
+   *         name was stored
+   */
+  public List<DraftPageAttachmentEntity> getAttachmentsOfDraftPageWithoutName(long draftPageId) {
+    return getEntityManager().createNamedQuery("draftAttachment.getAttachmentsOfDraftPageWithoutName",
+                                               DraftPageAttachmentEntity.class)
+                             .setParameter("draftPageId", draftPageId)
+                             .getResultList();
+  }
+
+  /**
+   * @param attachmentFileId the id of the file in the file storage
+   * @return the number of attachments referencing the file
+   */
+  public long countByAttachmentFileId(long attachmentFileId) {
+    return getEntityManager().createNamedQuery("draftAttachment.countByAttachmentFileId", Long.class)
+                             .setParameter("attachmentFileId", attachmentFileId)
+                             .getSingleResult();
+  }
 }
@@ -24,7 +24,11 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by The eXo Platform SAS
@@ -34,12 +38,25 @@ import java.util.List;
  */
 public class DraftPageDAO extends WikiBaseDAO<DraftPageEntity, Long> {
 
+  private static final int MAX_IN_CLAUSE_SIZE = 500;
+
   public List<DraftPageEntity> findDraftPagesByUser(String username) {
     TypedQuery<DraftPageEntity> query = getEntityManager().createNamedQuery("wikiDraftPage.findDraftPagesByUser", DraftPageEntity.class)
             .setParameter("username", username);
     return query.getResultList();
   }
 
+  /**
+   * @param pageId the page id
+   * @return the drafts of all the users targeting the page or created under
+   *         the page
+   */
+  public List<DraftPageEntity> findDraftPagesOfPage(long pageId) {
+    return getEntityManager().createNamedQuery("wikiDraftPage.findDraftPagesOfPage", DraftPageEntity.class)
+                             .setParameter("pageId", pageId)
+                             .getResultList();
+  }
+
   public DraftPageEntity findLatestDraftPageByUserAndName(String username, String draftPageName) {
     TypedQuery<DraftPageEntity> query = getEntityManager().createNamedQuery("wikiDraftPage.findDraftPageByUserAndName", DraftPageEntity.class)
             .setParameter("username", username).setMaxResults(1)
@@ -73,6 +90,32 @@ public class DraftPageDAO extends WikiBaseDAO<DraftPageEntity, Long> {
     return query.getResultList();
   }
 
+  /**
+   * Counts the draft pages of a user under each of the given parent pages
+   *
+   * @param username the author of the draft pages
+   * @param parentPageIds ids of the parent pages
+   * @return number of draft pages by parent page id, parent pages without draft
+   *         pages are not in the map
+   */
+  public Map<Long, Long> countDraftPagesByUserAndParentPages(String username, Collection<Long> parentPageIds) {
+    Map<Long, Long> draftPagesCount = new HashMap<>();
+    if (parentPageIds == null || parentPageIds.isEmpty()) {
+      return draftPagesCount;
+    }
+    List<Long> parentPageIdsList = new ArrayList<>(parentPageIds);
+    for (int i = 0; i < parentPageIdsList.size(); i += MAX_IN_CLAUSE_SIZE) {
+      List<Long> parentPageIdsBatch = parentPageIdsList.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, parentPageIdsList.size()));
+      TypedQuery<Object[]> query = getEntityManager().createNamedQuery("wikiDraftPage.countDraftPagesByUserAndParentPages", Object[].class)
+              .setParameter("username", username)
+              .setParameter("parentPageIds", parentPageIdsBatch);
+      for (Object[] result : query.getResultList()) {
+        draftPagesCount.put((Long) result[0], (Long) result[1]);
+      }
+    }
+    return draftPagesCount;
+  }
+
   @ExoTransactional
   public void deleteDraftPagesByUserAndTargetPage(String username, long targetPageId) {
 
@@ -20,7 +20,9 @@ import org.exoplatform.commons.persistence.impl.GenericDAOJPAImpl;
 import org.exoplatform.wiki.jpa.entity.AttachmentEntity;
 import org.exoplatform.wiki.jpa.entity.PageAttachmentEntity;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by The eXo Platform SAS
@@ -30,6 +32,8 @@ import java.util.List;
  */
 public class PageAttachmentDAO extends WikiBaseDAO<PageAttachmentEntity,Long> {
 
+  private static final int MAX_IN_CLAUSE_SIZE = 500;
+
   public List<Long> findAllIds(int offset, int limit) {
     return getEntityManager().createNamedQuery("pageAttachment.getAllIds").setFirstResult(offset).setMaxResults(limit).getResultList();
   }
@@ -37,4 +41,71 @@ public class PageAttachmentDAO extends WikiBaseDAO<PageAttachmentEntity,Long> {
   public List<Long> getAttachmentIdByPageId(long pageId) {
     return getEntityManager().createNamedQuery("pageAttachment.getAllIdsByPageId").setParameter("pageId", pageId).getResultList();
   }
+
+  /**
+   * @param pageId the page id
+   * @param name the attachment name
+   * @return the attachment of the page with the given name, null if none
+   */
+  public PageAttachmentEntity getAttachmentOfPageByName(long pageId, String name) {
+    List<PageAttachmentEntity> attachments =
+                                           getEntityManager().createNamedQuery("pageAttachment.getAttachmentOfPageByName",
+                                                                               PageAttachmentEntity.class)
+                                                             .setParameter("pageId", pageId)
+                                                             .setParameter("name", name)
+                                                             .setMaxResults(1)
+                                                             .getResultList();
+    return attachments.isEmpty() ? null : attachments.get(0);
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the attachments of the page created before the attachments name
+   *         was stored
+   */
+  public List<PageAttachmentEntity> getAttachmentsOfPageWithoutName(long pageId) {
+    return getEntityManager().createNamedQuery("pageAttachment.getAttachmentsOfPageWithoutName", PageAttachmentEntity.class)
+                             .setParameter("pageId", pageId)
+                             .getResultList();
+  }
+
+  /**
+   * @param attachmentFileId the id of the file in the file storage
+   * @return the number of attachments referencing the file
+   */
+  public long countByAttachmentFileId(long attachmentFileId) {
+    return getEntityManager().createNamedQuery("pageAttachment.countByAttachmentFileId", Long.class)
+                             .setParameter("attachmentFileId", attachmentFileId)
+                             .getSingleResult();
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the number of attachments of the page
+   */
+  public long countByPageId(long pageId) {
+    return getEntityManager().createNamedQuery("pageAttachment.countByPageId", Long.class)
+                             .setParameter("pageId", pageId)
+                             .getSingleResult();
+  }
+
+  /**
+   * @param pageIds the pages ids
+   * @return the number of attachments of each page having attachments, by page
+   *         id
+   */
+  public Map<Long, Long> countByPageIds(List<Long> pageIds) {
+    Map<Long, Long> countByPageId = new HashMap<>();
+    // split the ids list as some databases limit the size of IN clauses
+    for (int fromIndex = 0; fromIndex < pageIds.size(); fromIndex += MAX_IN_CLAUSE_SIZE) {
+      List<Long> pageIdsChunk = pageIds.subList(fromIndex, Math.min(fromIndex + MAX_IN_CLAUSE_SIZE, pageIds.size()));
+      List<Object[]> results = getEntityManager().createNamedQuery("pageAttachment.countByPageIds", Object[].class)
+                                                 .setParameter("pageIds", pageIdsChunk)
+                                                 .getResultList();
+      for (Object[] result : results) {
+        countByPageId.put((Long) result[0], (Long) result[1]);
+      }
+    }
+    return countByPageId;
+  }
 }
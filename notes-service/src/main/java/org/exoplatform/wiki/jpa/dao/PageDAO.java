@@ -19,12 +19,20 @@
 
 package org.exoplatform.wiki.jpa.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.TypedQuery;
 
 import org.exoplatform.wiki.jpa.entity.PageEntity;
+import org.exoplatform.wiki.jpa.entity.PageSummary;
+import org.exoplatform.wiki.jpa.entity.PermissionEntity;
+import org.exoplatform.wiki.jpa.entity.WikiEntity;
 import org.exoplatform.wiki.model.WikiType;
 
 /**
@@ -33,6 +41,8 @@ import org.exoplatform.wiki.model.WikiType;
  */
 public class PageDAO extends WikiBaseDAO<PageEntity, Long> {
 
+  private static final int MAX_IN_CLAUSE_SIZE = 500;
+
   public List<PageEntity> getAllPagesOfWiki(String wikiType, String wikiOwner) {
 
     //We need to add the first "/" on the wiki owner if it's  wiki group
@@ -91,12 +101,116 @@ public class PageDAO extends WikiBaseDAO<PageEntity, Long> {
     return pageEntity;
   }
 
+  /**
+   * Get the not deleted pages of a wiki with the given names, with a query
+   * per batch of names
+   *
+   * @param wikiType the wiki type
+   * @param wikiOwner the wiki owner
+   * @param pageNames the pages names
+   * @return the pages found, names are compared with case sensitivity
+   */
+  public List<PageEntity> getPagesOfWikiByNames(String wikiType, String wikiOwner, Collection<String> pageNames) {
+    if (WikiType.GROUP.isSame(wikiType)) wikiOwner = validateGroupWikiOwner(wikiOwner);
+
+    List<String> pageNamesList = new ArrayList<>(pageNames);
+    List<PageEntity> pageEntities = new ArrayList<>();
+    for (int i = 0; i < pageNamesList.size(); i += MAX_IN_CLAUSE_SIZE) {
+      List<String> pageNamesBatch = pageNamesList.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, pageNamesList.size()));
+      List<PageEntity> results = getEntityManager().createNamedQuery("wikiPage.getPagesOfWikiByNames", PageEntity.class)
+                                                   .setParameter("names", pageNamesBatch)
+                                                   .setParameter("type", wikiType)
+                                                   .setParameter("owner", wikiOwner)
+                                                   .getResultList();
+      // same case sensitive post-processing than getPageOfWikiByName
+      for (PageEntity pageEntity : results) {
+        if (pageNamesBatch.contains(pageEntity.getName())) {
+          pageEntities.add(pageEntity);
+        }
+      }
+    }
+    return pageEntities;
+  }
+
   public List<PageEntity> getChildrenPages(PageEntity page) {
     TypedQuery<PageEntity> query = getEntityManager().createNamedQuery("wikiPage.getChildrenPages", PageEntity.class)
                                                .setParameter("id", page.getId());
     return query.getResultList();
   }
 
+  /**
+   * Get the children pages of a page without their content
+   *
+   * @param pageId id of the parent page
+   * @return summaries of the children pages ordered by name
+   */
+  public List<PageSummary> getChildrenPagesSummaries(long pageId) {
+    TypedQuery<PageSummary> query = getEntityManager().createNamedQuery("wikiPage.getChildrenPagesSummaries", PageSummary.class)
+                                                      .setParameter("id", pageId);
+    return query.getResultList();
+  }
+
+  /**
+   * Get the pages of a wiki without their content
+   *
+   * @param wikiType the wiki type
+   * @param wikiOwner the wiki owner
+   * @param deleted true to get the deleted pages
+   * @return summaries of the pages of the wiki
+   */
+  public List<PageSummary> getPagesSummariesOfWiki(String wikiType, String wikiOwner, boolean deleted) {
+
+    //We need to add the first "/" on the wiki owner if it's  wiki group
+    if (WikiType.GROUP.isSame(wikiType)) wikiOwner = validateGroupWikiOwner(wikiOwner);
+
+    TypedQuery<PageSummary> query = getEntityManager().createNamedQuery("wikiPage.getPagesSummariesOfWiki", PageSummary.class)
+                                                      .setParameter("type", wikiType)
+                                                      .setParameter("owner", wikiOwner)
+                                                      .setParameter("deleted", deleted);
+    return query.getResultList();
+  }
+
+  /**
+   * Get pages by their ids without their content
+   *
+   * @param pageIds ids of the pages
+   * @return summaries of the found pages, in no particular order
+   */
+  public List<PageSummary> getPagesSummariesByIds(List<Long> pageIds) {
+    List<PageSummary> pageSummaries = new ArrayList<>();
+    // split the ids to keep the IN clause under the databases limits
+    for (int i = 0; i < pageIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+      List<Long> pageIdsBatch = pageIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, pageIds.size()));
+      pageSummaries.addAll(getEntityManager().createNamedQuery("wikiPage.getPagesSummariesByIds", PageSummary.class)
+                                             .setParameter("ids", pageIdsBatch)
+                                             .getResultList());
+    }
+    return pageSummaries;
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the tree path of the page, null if the page does not exist or if
+   *         its tree path is not computed yet
+   */
+  public String getPageTreePath(long pageId) {
+    List<String> treePaths = getEntityManager().createNamedQuery("wikiPage.getPageTreePath", String.class)
+                                               .setParameter("id", pageId)
+                                               .getResultList();
+    return treePaths.isEmpty() ? null : treePaths.get(0);
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the content of the page, null if the page does not exist
+   */
+  public String getPageContent(long pageId) {
+    List<String> contents = getEntityManager().createNamedQuery("wikiPage.getPageContent", String.class)
+                                              .setParameter("id", pageId)
+                                              .getResultList();
+    return contents.isEmpty() ? null : contents.get(0);
+  }
+
 
   public List<Long> findAllIds(int offset, int limit) {
     TypedQuery<Long> query = getEntityManager().createNamedQuery("wikiPage.getAllIds", Long.class);
@@ -109,6 +223,24 @@ public class PageDAO extends WikiBaseDAO<PageEntity, Long> {
     return query.getResultList();
   }
 
+  /**
+   * Get the ids of the not deleted pages following the given id. Unlike
+   * {@link #findAllIds(int, int)}, the cost of a query does not grow with the
+   * number of ids already scanned.
+   *
+   * @param lastId the last id of the previous batch, 0 to start the scan
+   * @param limit the maximum number of ids, 0 for no limit
+   * @return the ids, in ascending order
+   */
+  public List<Long> findAllIdsAfter(long lastId, int limit) {
+    TypedQuery<Long> query = getEntityManager().createNamedQuery("wikiPage.getAllIdsAfter", Long.class)
+                                               .setParameter("id", lastId);
+    if (limit > 0) {
+      query.setMaxResults(limit);
+    }
+    return query.getResultList();
+  }
+
   public Long countAllIds() {
     return (Long) getEntityManager().createNamedQuery("wikiPage.countAllIds").getSingleResult();
   }
@@ -132,4 +264,202 @@ public class PageDAO extends WikiBaseDAO<PageEntity, Long> {
             .getSingleResult();
   }
 
+  /**
+   * Counts the not deleted children of each of the given pages in one query
+   *
+   * @param pageIds ids of the parent pages
+   * @return number of children by parent page id, pages without children are
+   *         not in the map
+   */
+  public Map<Long, Long> countPagesChildrenByIds(Collection<Long> pageIds) {
+    Map<Long, Long> childrenCount = new HashMap<>();
+    if (pageIds == null || pageIds.isEmpty()) {
+      return childrenCount;
+    }
+    List<Long> pageIdsList = new ArrayList<>(pageIds);
+    for (int i = 0; i < pageIdsList.size(); i += MAX_IN_CLAUSE_SIZE) {
+      List<Long> pageIdsBatch = pageIdsList.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, pageIdsList.size()));
+      TypedQuery<Object[]> query = getEntityManager().createNamedQuery("wikiPage.countPagesChildrenByIds", Object[].class)
+                                                     .setParameter("ids", pageIdsBatch);
+      for (Object[] result : query.getResultList()) {
+        childrenCount.put((Long) result[0], (Long) result[1]);
+      }
+    }
+    return childrenCount;
+  }
+
+  /**
+   * Loads the permissions of several pages in one query
+   *
+   * @param pageIds ids of the pages
+   * @return permissions by page id, pages without permissions are not in the
+   *         map
+   */
+  public Map<Long, List<PermissionEntity>> getPermissionsOfPages(Collection<Long> pageIds) {
+    Map<Long, List<PermissionEntity>> permissions = new HashMap<>();
+    if (pageIds == null || pageIds.isEmpty()) {
+      return permissions;
+    }
+    List<Long> pageIdsList = new ArrayList<>(pageIds);
+    // split the ids to keep the IN clause under the databases limits
+    for (int i = 0; i < pageIdsList.size(); i += MAX_IN_CLAUSE_SIZE) {
+      List<Long> pageIdsBatch = pageIdsList.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, pageIdsList.size()));
+      TypedQuery<Object[]> query = getEntityManager().createNamedQuery("wikiPage.getPermissionsOfPages", Object[].class)
+                                                     .setParameter("ids", pageIdsBatch);
+      for (Object[] result : query.getResultList()) {
+        permissions.computeIfAbsent((Long) result[0], pageId -> new ArrayList<>()).add((PermissionEntity) result[1]);
+      }
+    }
+    return permissions;
+  }
+
+  /**
+   * Loads the not deleted descendants of a page in one query, using the
+   * materialized tree path.
+   *
+   * @param page the root page of the subtree
+   * @param depth maximum depth of descendants to load, relative to the given
+   *          page, a negative value means the whole subtree
+   * @return descendant pages ordered by depth then by name
+   */
+  public List<PageEntity> getDescendantPages(PageEntity page, int depth) {
+    int treeDepth = page.getTreeDepth() == null ? 0 : page.getTreeDepth();
+    int maxDepth = depth < 0 ? Integer.MAX_VALUE : treeDepth + depth;
+    TypedQuery<PageEntity> query = getEntityManager().createNamedQuery("wikiPage.getDescendantPages", PageEntity.class)
+                                                     .setParameter("treePath", getDescendantsTreePathPattern(page.getDescendantsTreePath()))
+                                                     .setParameter("treeDepth", maxDepth);
+    return query.getResultList();
+  }
+
+  /**
+   * Get the descendants of a page without their content, see
+   * {@link #getDescendantPages(PageEntity, int)}
+   *
+   * @param page the root page
+   * @param depth number of levels to load, all the levels if negative
+   * @return summaries of the descendant pages ordered by depth then by name
+   */
+  public List<PageSummary> getDescendantPagesSummaries(PageEntity page, int depth) {
+    int treeDepth = page.getTreeDepth() == null ? 0 : page.getTreeDepth();
+    int maxDepth = depth < 0 ? Integer.MAX_VALUE : treeDepth + depth;
+    TypedQuery<PageSummary> query = getEntityManager().createNamedQuery("wikiPage.getDescendantPagesSummaries", PageSummary.class)
+                                                      .setParameter("treePath", getDescendantsTreePathPattern(page.getDescendantsTreePath()))
+                                                      .setParameter("treeDepth", maxDepth);
+    return query.getResultList();
+  }
+
+  /**
+   * @param fromId the id of the last page returned by the previous call, 0 to
+   *          start from the first page
+   * @param limit the maximum number of pages to return
+   * @return the pages created before the tree path existed, ordered by id
+   */
+  public List<PageEntity> getPagesWithoutTreePath(long fromId, int limit) {
+    return getEntityManager().createNamedQuery("wikiPage.getPagesWithoutTreePath", PageEntity.class)
+                             .setParameter("id", fromId)
+                             .setMaxResults(limit)
+                             .getResultList();
+  }
+
+  /**
+   * @param page the root page of the subtree, with its tree path computed
+   * @return ids of the not deleted descendants of the page, in no particular
+   *         order
+   */
+  public List<Long> getDescendantPagesIds(PageEntity page) {
+    return getEntityManager().createNamedQuery("wikiPage.getDescendantPagesIds", Long.class)
+                             .setParameter("treePath", getDescendantsTreePathPattern(page.getDescendantsTreePath()))
+                             .getResultList();
+  }
+
+  /**
+   * Marks a page and all its descendants as deleted in one update query. The
+   * updated pages which are already loaded in the persistence context are not
+   * refreshed.
+   *
+   * @param page the root page of the subtree, with its tree path computed
+   * @param deletedDate the deletion date
+   * @return the number of deleted pages
+   */
+  public int deletePageTree(PageEntity page, Date deletedDate) {
+    return getEntityManager().createNamedQuery("wikiPage.deletePageTree")
+                             .setParameter("id", page.getId())
+                             .setParameter("deletedDate", deletedDate)
+                             .setParameter("treePath", getDescendantsTreePathPattern(page.getDescendantsTreePath()))
+                             .executeUpdate();
+  }
+
+  /**
+   * Moves the descendants of a moved page in one update query: their wiki is
+   * replaced and the tree path prefix of the moved page is replaced by its
+   * new one. The updated pages which are already loaded in the persistence
+   * context are not refreshed.
+   *
+   * @param descendantsTreePath the tree path of the children of the moved page
+   *          before the move
+   * @param newDescendantsTreePath the tree path of the children of the moved
+   *          page after the move
+   * @param treeDepthShift the depth difference of the moved page
+   * @param wiki the wiki of the moved page after the move
+   * @return the number of moved descendants
+   */
+  public int moveDescendantPages(String descendantsTreePath,
+                                 String newDescendantsTreePath,
+                                 int treeDepthShift,
+                                 WikiEntity wiki) {
+    String treePathPattern = getDescendantsTreePathPattern(descendantsTreePath);
+    return getEntityManager().createNamedQuery("wikiPage.moveDescendantPages")
+                             .setParameter("wiki", wiki)
+                             .setParameter("newTreePath", newDescendantsTreePath)
+                             .setParameter("treePathStart", descendantsTreePath.length() + 1)
+                             .setParameter("treeDepthShift", treeDepthShift)
+                             .setParameter("treePath", treePathPattern)
+                             .executeUpdate();
+  }
+
+  private String getDescendantsTreePathPattern(String descendantsTreePath) {
+    if (descendantsTreePath == null) {
+      throw new IllegalArgumentException("The tree path of the page is not computed");
+    }
+    return descendantsTreePath + "%";
+  }
+
+  /**
+   * Get the deleted pages which can be purged: the pages deleted before the
+   * given date and without children, so that a subtree is purged from its
+   * leaves to its root
+   *
+   * @param deletedDate the date before which the pages have been deleted, the
+   *          pages deleted without a deletion date are always returned
+   * @param limit the maximum number of ids to return
+   * @return ids of the pages to purge
+   */
+  public List<Long> getPurgeableDeletedPagesIds(Date deletedDate, int limit) {
+    return getEntityManager().createNamedQuery("wikiPage.getPurgeableDeletedPagesIds", Long.class)
+                             .setParameter("deletedDate", deletedDate)
+                             .setMaxResults(limit)
+                             .getResultList();
+  }
+
+  /**
+   * @param deletedDate the date before which the pages have been deleted
+   * @return the number of pages deleted before the date, or without a
+   *         deletion date
+   */
+  public long countDeletedPages(Date deletedDate) {
+    return getEntityManager().createNamedQuery("wikiPage.countDeletedPages", Long.class)
+                             .setParameter("deletedDate", deletedDate)
+                             .getSingleResult();
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the pages having the given page in their related pages
+   */
+  public List<PageEntity> getPagesRelatedToPage(long pageId) {
+    return getEntityManager().createNamedQuery("wikiPage.getPagesRelatedToPage", PageEntity.class)
+                             .setParameter("id", pageId)
+                             .getResultList();
+  }
+
 }
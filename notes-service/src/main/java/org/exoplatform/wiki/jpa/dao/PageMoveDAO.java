@@ -38,4 +38,16 @@ public class PageMoveDAO extends WikiBaseDAO<PageMoveEntity,Long> {
     return query.getResultList();
   }
 
+  /**
+   * Deletes the moves history of a page in one query
+   *
+   * @param pageId the page id
+   * @return the number of deleted moves
+   */
+  public int deleteMovesOfPage(long pageId) {
+    return getEntityManager().createNamedQuery("wikiPageMove.deleteMovesOfPage")
+                             .setParameter("pageId", pageId)
+                             .executeUpdate();
+  }
+
 }
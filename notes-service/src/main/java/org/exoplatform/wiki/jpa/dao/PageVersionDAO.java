@@ -62,4 +62,67 @@ public class PageVersionDAO extends WikiBaseDAO<PageVersionEntity, Long> {
             .setParameter("syntax", syntax)
             .getSingleResult();
   }
+
+  /**
+   * Deletes all the versions of a page in one query
+   *
+   * @param pageId the page id
+   * @return the number of deleted versions
+   */
+  public int deleteVersionsOfPage(Long pageId) {
+    return getEntityManager().createNamedQuery("wikiPageVersion.deleteVersionsOfPage")
+                             .setParameter("pageId", pageId)
+                             .executeUpdate();
+  }
+
+  public long countVersionsOfPage(Long pageId) {
+    return getEntityManager().createNamedQuery("wikiPageVersion.countVersionsOfPage", Long.class)
+                             .setParameter("pageId", pageId)
+                             .getSingleResult();
+  }
+
+  /**
+   * @param pageId the page id
+   * @return the versions of the page, ordered by version number
+   */
+  public List<PageVersionEntity> getVersionsOfPage(Long pageId) {
+    return getEntityManager().createNamedQuery("wikiPageVersion.getVersionsOfPage", PageVersionEntity.class)
+                             .setParameter("pageId", pageId)
+                             .getResultList();
+  }
+
+  /**
+   * @param fromPageId the last page id returned by the previous call, 0 to
+   *          start from the first page
+   * @param limit the maximum number of page ids
+   * @return the ids of the pages having versions with a full content, stored
+   *         as is, ordered by page id
+   */
+  public List<Long> getPageIdsWithFullContentVersions(long fromPageId, int limit) {
+    return getEntityManager().createNamedQuery("wikiPageVersion.getPageIdsWithFullContentVersions", Long.class)
+                             .setParameter("pageId", fromPageId)
+                             .setParameter("contentStorage", PageVersionEntity.ContentStorage.FULL)
+                             .setMaxResults(limit)
+                             .getResultList();
+  }
+
+  /**
+   * @param pageId the page id
+   * @param offset the offset of the first version, starting from the latest
+   * @param limit the maximum number of versions, 0 for all
+   * @return the version number, the author, the created date and the updated
+   *         date of the versions of the page, latest first, without their
+   *         content
+   */
+  public List<Object[]> getHistoryOfPage(Long pageId, int offset, int limit) {
+    TypedQuery<Object[]> query = getEntityManager().createNamedQuery("wikiPageVersion.getHistoryOfPage", Object[].class)
+                                                   .setParameter("pageId", pageId);
+    if (offset > 0) {
+      query.setFirstResult(offset);
+    }
+    if (limit > 0) {
+      query.setMaxResults(limit);
+    }
+    return query.getResultList();
+  }
 }
@@ -48,6 +48,13 @@ public class AttachmentEntity {
   @Column(name = "ATTACHMENT_FILE_ID")
   private Long attachmentFileID;
 
+  /**
+   * Name of the attachment file, copied from the file storage to look up the
+   * attachments by name
+   */
+  @Column(name = "NAME")
+  private String name;
+
   public long getId(){return this.id;}
 
   public void setId(Long id) {
@@ -78,4 +85,12 @@ public class AttachmentEntity {
     this.attachmentFileID = attachmentFileID;
   }
 
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
 }
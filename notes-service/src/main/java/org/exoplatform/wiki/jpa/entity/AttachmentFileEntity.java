@@ -0,0 +1,105 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.jpa.entity;
+
+import java.util.Date;
+
+import javax.persistence.*;
+
+import org.exoplatform.commons.api.persistence.ExoEntity;
+
+/**
+ * File of the file storage holding an attachment content, shared by all the
+ * page and draft attachments with the same content. The file is identified by
+ * the SHA-256 hash of its content and deleted once it is no longer referenced.
+ * The update date is changed with the references count, so that the
+ * reconciliation of the references count leaves the files being referenced.
+ */
+@Entity(name = "WikiAttachmentFileEntity")
+@ExoEntity
+@Table(name = "WIKI_ATTACHMENT_FILES")
+@NamedQueries({
+    @NamedQuery(name = "wikiAttachmentFile.getAttachmentFileByContentHash", query = "SELECT f FROM WikiAttachmentFileEntity f WHERE f.contentHash = :contentHash ORDER BY f.id"),
+    @NamedQuery(name = "wikiAttachmentFile.getAttachmentFiles", query = "SELECT f FROM WikiAttachmentFileEntity f WHERE f.id > :id AND f.updatedDate < :updatedBefore ORDER BY f.id"),
+    @NamedQuery(name = "wikiAttachmentFile.incrementRefCount", query = "UPDATE WikiAttachmentFileEntity f SET f.refCount = f.refCount + 1, f.updatedDate = :updatedDate WHERE f.id = :id"),
+    @NamedQuery(name = "wikiAttachmentFile.decrementRefCount", query = "UPDATE WikiAttachmentFileEntity f SET f.refCount = f.refCount - 1, f.updatedDate = :updatedDate WHERE f.attachmentFileId = :attachmentFileId"),
+    @NamedQuery(name = "wikiAttachmentFile.updateNotUpdatedRefCount", query = "UPDATE WikiAttachmentFileEntity f SET f.refCount = :refCount WHERE f.id = :id AND f.updatedDate < :updatedBefore"),
+    @NamedQuery(name = "wikiAttachmentFile.deleteNotUpdatedAttachmentFile", query = "DELETE FROM WikiAttachmentFileEntity f WHERE f.id = :id AND f.updatedDate < :updatedBefore"),
+    @NamedQuery(name = "wikiAttachmentFile.deleteUnreferencedAttachmentFile", query = "DELETE FROM WikiAttachmentFileEntity f WHERE f.attachmentFileId = :attachmentFileId AND f.refCount <= 0")
+})
+public class AttachmentFileEntity {
+
+  @Id
+  @SequenceGenerator(name = "SEQ_WIKI_ATTACHMENT_FILES_ID", sequenceName = "SEQ_WIKI_ATTACHMENT_FILES_ID", allocationSize = 1)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_WIKI_ATTACHMENT_FILES_ID")
+  @Column(name = "ATTACHMENT_FILE_ENTRY_ID")
+  private long   id;
+
+  /**
+   * Hex encoded SHA-256 hash of the file content
+   */
+  @Column(name = "CONTENT_HASH", nullable = false)
+  private String contentHash;
+
+  @Column(name = "ATTACHMENT_FILE_ID", nullable = false)
+  private Long   attachmentFileId;
+
+  /**
+   * Number of attachments referencing the file
+   */
+  @Column(name = "REF_COUNT", nullable = false)
+  private int    refCount;
+
+  @Column(name = "UPDATED_DATE", nullable = false)
+  private Date   updatedDate;
+
+  public long getId() {
+    return id;
+  }
+
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  public void setContentHash(String contentHash) {
+    this.contentHash = contentHash;
+  }
+
+  public Long getAttachmentFileId() {
+    return attachmentFileId;
+  }
+
+  public void setAttachmentFileId(Long attachmentFileId) {
+    this.attachmentFileId = attachmentFileId;
+  }
+
+  public int getRefCount() {
+    return refCount;
+  }
+
+  public void setRefCount(int refCount) {
+    this.refCount = refCount;
+  }
+
+  public Date getUpdatedDate() {
+    return updatedDate;
+  }
+
+  public void setUpdatedDate(Date updatedDate) {
+    this.updatedDate = updatedDate;
+  }
+}
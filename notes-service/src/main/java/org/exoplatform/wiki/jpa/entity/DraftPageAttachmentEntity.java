@@ -30,7 +30,10 @@ import javax.persistence.*;
 @ExoEntity
 @Table(name = "WIKI_DRAFT_ATTACHMENTS")
 @NamedQueries({
-    @NamedQuery(name = "draftAttachment.getAllIds", query = "SELECT a.id FROM WikiDraftPageAttachmentEntity a ORDER BY a.id")
+    @NamedQuery(name = "draftAttachment.getAllIds", query = "SELECT a.id FROM WikiDraftPageAttachmentEntity a ORDER BY a.id"),
+    @NamedQuery(name = "draftAttachment.getAttachmentOfDraftPageByName", query = "SELECT a FROM WikiDraftPageAttachmentEntity a WHERE a.draftPage.id = :draftPageId AND a.name = :name"),
+    @NamedQuery(name = "draftAttachment.getAttachmentsOfDraftPageWithoutName", query = "SELECT a FROM WikiDraftPageAttachmentEntity a WHERE a.draftPage.id = :draftPageId AND a.name IS NULL"),
+    @NamedQuery(name = "draftAttachment.countByAttachmentFileId", query = "SELECT COUNT(a) FROM WikiDraftPageAttachmentEntity a WHERE a.attachmentFileID = :attachmentFileId")
 })
 public class DraftPageAttachmentEntity extends AttachmentEntity {
 
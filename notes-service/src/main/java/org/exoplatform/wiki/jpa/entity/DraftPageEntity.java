@@ -35,7 +35,9 @@ import java.util.List;
         @NamedQuery(name = "wikiDraftPage.findDraftPageByUserAndName", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.author = :username AND d.name = :draftPageName ORDER BY d.updatedDate DESC"),
         @NamedQuery(name = "wikiDraftPage.findLatestDraftPageByUserAndTargetPage", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.author = :username AND d.targetPage.id = :targetPageId ORDER BY d.updatedDate DESC"),
         @NamedQuery(name = "wikiDraftPage.findDraftPageByUserAndTargetPage", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.author = :username AND d.targetPage.id = :targetPageId"),
-        @NamedQuery(name = "wikiDraftPage.findDraftPagesByUserAndParentPage", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.author = :username AND d.parentPage.id = :parentPageId")
+        @NamedQuery(name = "wikiDraftPage.findDraftPagesByUserAndParentPage", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.author = :username AND d.parentPage.id = :parentPageId"),
+        @NamedQuery(name = "wikiDraftPage.countDraftPagesByUserAndParentPages", query = "SELECT d.parentPage.id, COUNT(d) FROM WikiDraftPageEntity d WHERE d.author = :username AND d.parentPage.id IN :parentPageIds GROUP BY d.parentPage.id"),
+        @NamedQuery(name = "wikiDraftPage.findDraftPagesOfPage", query = "SELECT d FROM WikiDraftPageEntity d WHERE d.targetPage.id = :pageId OR d.parentPage.id = :pageId")
 })
 public class DraftPageEntity extends BasePageEntity {
 
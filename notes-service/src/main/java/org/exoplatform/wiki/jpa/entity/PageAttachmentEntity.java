@@ -31,7 +31,12 @@ import javax.persistence.*;
 @Table(name = "WIKI_PAGE_ATTACHMENTS")
 @NamedQueries({
     @NamedQuery(name = "pageAttachment.getAllIds", query = "SELECT a.id FROM WikiPageAttachmentEntity a ORDER BY a.id"),
-    @NamedQuery(name = "pageAttachment.getAllIdsByPageId", query = "SELECT a.id FROM WikiPageAttachmentEntity a WHERE a.page.id = :pageId")
+    @NamedQuery(name = "pageAttachment.getAllIdsByPageId", query = "SELECT a.id FROM WikiPageAttachmentEntity a WHERE a.page.id = :pageId"),
+    @NamedQuery(name = "pageAttachment.getAttachmentOfPageByName", query = "SELECT a FROM WikiPageAttachmentEntity a WHERE a.page.id = :pageId AND a.name = :name"),
+    @NamedQuery(name = "pageAttachment.getAttachmentsOfPageWithoutName", query = "SELECT a FROM WikiPageAttachmentEntity a WHERE a.page.id = :pageId AND a.name IS NULL"),
+    @NamedQuery(name = "pageAttachment.countByPageId", query = "SELECT COUNT(a) FROM WikiPageAttachmentEntity a WHERE a.page.id = :pageId"),
+    @NamedQuery(name = "pageAttachment.countByPageIds", query = "SELECT a.page.id, COUNT(a) FROM WikiPageAttachmentEntity a WHERE a.page.id IN (:pageIds) GROUP BY a.page.id"),
+    @NamedQuery(name = "pageAttachment.countByAttachmentFileId", query = "SELECT COUNT(a) FROM WikiPageAttachmentEntity a WHERE a.attachmentFileID = :attachmentFileId")
 })
 public class PageAttachmentEntity extends AttachmentEntity {
 
@@ -23,6 +23,7 @@ import org.exoplatform.commons.api.persistence.ExoEntity;
 
 import javax.persistence.*;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -38,13 +39,31 @@ import java.util.Set;
 @Table(name = "WIKI_PAGES")
 @NamedQueries({
     @NamedQuery(name = "wikiPage.getAllIds", query = "SELECT p.id FROM WikiPageEntity p  WHERE p.deleted = false ORDER BY p.id"),
+    @NamedQuery(name = "wikiPage.getAllIdsAfter", query = "SELECT p.id FROM WikiPageEntity p  WHERE p.deleted = false AND p.id > :id ORDER BY p.id"),
     @NamedQuery(name = "wikiPage.countAllIds", query = "SELECT COUNT(*) FROM WikiPageEntity p  WHERE p.deleted = false"),
     @NamedQuery(name = "wikiPage.getPageOfWikiByName", query = "SELECT p FROM WikiPageEntity p JOIN p.wiki w WHERE p.name = :name AND w.type = :type AND w.owner = :owner AND p.deleted = false"),
+    @NamedQuery(name = "wikiPage.getPagesOfWikiByNames", query = "SELECT p FROM WikiPageEntity p JOIN p.wiki w WHERE p.name IN (:names) AND w.type = :type AND w.owner = :owner AND p.deleted = false"),
     @NamedQuery(name = "wikiPage.getAllPagesOfWiki", query = "SELECT p FROM WikiPageEntity p JOIN p.wiki w WHERE w.type = :type AND w.owner = :owner"),
     @NamedQuery(name = "wikiPage.getPagesOfWiki", query = "SELECT p FROM WikiPageEntity p JOIN p.wiki w WHERE w.type = :type AND w.owner = :owner AND p.deleted = :deleted"),
     @NamedQuery(name = "wikiPage.getChildrenPages", query = "SELECT p FROM WikiPageEntity p WHERE p.parentPage.id = :id AND p.deleted = false ORDER BY p.name"),
+    @NamedQuery(name = "wikiPage.getPagesSummariesOfWiki", query = "SELECT NEW org.exoplatform.wiki.jpa.entity.PageSummary(p.id, p.name, p.title, p.owner, p.author, p.syntax, p.comment, p.url, p.activityId, p.minorEdit, p.deleted, p.createdDate, p.updatedDate, pp.id, pp.name, w.id, w.type, w.owner) FROM WikiPageEntity p JOIN p.wiki w LEFT JOIN p.parentPage pp WHERE w.type = :type AND w.owner = :owner AND p.deleted = :deleted"),
+    @NamedQuery(name = "wikiPage.getChildrenPagesSummaries", query = "SELECT NEW org.exoplatform.wiki.jpa.entity.PageSummary(p.id, p.name, p.title, p.owner, p.author, p.syntax, p.comment, p.url, p.activityId, p.minorEdit, p.deleted, p.createdDate, p.updatedDate, pp.id, pp.name, w.id, w.type, w.owner) FROM WikiPageEntity p JOIN p.wiki w LEFT JOIN p.parentPage pp WHERE pp.id = :id AND p.deleted = false ORDER BY p.name"),
+    @NamedQuery(name = "wikiPage.getDescendantPagesSummaries", query = "SELECT NEW org.exoplatform.wiki.jpa.entity.PageSummary(p.id, p.name, p.title, p.owner, p.author, p.syntax, p.comment, p.url, p.activityId, p.minorEdit, p.deleted, p.createdDate, p.updatedDate, pp.id, pp.name, w.id, w.type, w.owner) FROM WikiPageEntity p JOIN p.wiki w LEFT JOIN p.parentPage pp WHERE p.treePath LIKE :treePath AND p.treeDepth <= :treeDepth AND p.deleted = false ORDER BY p.treeDepth, p.name"),
+    @NamedQuery(name = "wikiPage.getPagesSummariesByIds", query = "SELECT NEW org.exoplatform.wiki.jpa.entity.PageSummary(p.id, p.name, p.title, p.owner, p.author, p.syntax, p.comment, p.url, p.activityId, p.minorEdit, p.deleted, p.createdDate, p.updatedDate, pp.id, pp.name, w.id, w.type, w.owner) FROM WikiPageEntity p JOIN p.wiki w LEFT JOIN p.parentPage pp WHERE p.id IN :ids"),
+    @NamedQuery(name = "wikiPage.getPageTreePath", query = "SELECT p.treePath FROM WikiPageEntity p WHERE p.id = :id"),
+    @NamedQuery(name = "wikiPage.getPageContent", query = "SELECT p.content FROM WikiPageEntity p WHERE p.id = :id"),
     @NamedQuery(name = "wikiPage.getAllPagesBySyntax", query = "SELECT p FROM WikiPageEntity p WHERE p.syntax = :syntax OR p.syntax IS NULL ORDER BY p.updatedDate DESC"),
     @NamedQuery(name = "wikiPage.countPageChildrenById", query = "SELECT COUNT(*) FROM WikiPageEntity p WHERE p.parentPage.id = :id"),
+    @NamedQuery(name = "wikiPage.countPagesChildrenByIds", query = "SELECT p.parentPage.id, COUNT(p) FROM WikiPageEntity p WHERE p.parentPage.id IN :ids AND p.deleted = false GROUP BY p.parentPage.id"),
+    @NamedQuery(name = "wikiPage.getPermissionsOfPages", query = "SELECT p.id, perm FROM WikiPageEntity p JOIN p.permissions perm WHERE p.id IN :ids"),
+    @NamedQuery(name = "wikiPage.getDescendantPages", query = "SELECT p FROM WikiPageEntity p WHERE p.treePath LIKE :treePath AND p.treeDepth <= :treeDepth AND p.deleted = false ORDER BY p.treeDepth, p.name"),
+    @NamedQuery(name = "wikiPage.getPagesWithoutTreePath", query = "SELECT p FROM WikiPageEntity p WHERE p.treePath IS NULL AND p.id > :id ORDER BY p.id"),
+    @NamedQuery(name = "wikiPage.getDescendantPagesIds", query = "SELECT p.id FROM WikiPageEntity p WHERE p.treePath LIKE :treePath AND p.deleted = false"),
+    @NamedQuery(name = "wikiPage.deletePageTree", query = "UPDATE WikiPageEntity p SET p.deleted = true, p.deletedDate = :deletedDate WHERE (p.id = :id OR p.treePath LIKE :treePath) AND p.deleted = false"),
+    @NamedQuery(name = "wikiPage.getPurgeableDeletedPagesIds", query = "SELECT p.id FROM WikiPageEntity p WHERE p.deleted = true AND p.deletedDate < :deletedDate AND NOT EXISTS (SELECT c.id FROM WikiPageEntity c WHERE c.parentPage.id = p.id) ORDER BY p.id"),
+    @NamedQuery(name = "wikiPage.countDeletedPages", query = "SELECT COUNT(p) FROM WikiPageEntity p WHERE p.deleted = true AND p.deletedDate < :deletedDate"),
+    @NamedQuery(name = "wikiPage.getPagesRelatedToPage", query = "SELECT p FROM WikiPageEntity p JOIN p.relatedPages r WHERE r.id = :id"),
+    @NamedQuery(name = "wikiPage.moveDescendantPages", query = "UPDATE WikiPageEntity p SET p.wiki = :wiki, p.treePath = CONCAT(:newTreePath, SUBSTRING(p.treePath, :treePathStart)), p.treeDepth = p.treeDepth + :treeDepthShift WHERE p.treePath LIKE :treePath"),
 })
 public class PageEntity extends BasePageEntity {
 
@@ -111,6 +130,19 @@ public class PageEntity extends BasePageEntity {
   @Column(name = "DELETED")
   private boolean deleted;
 
+  @Column(name = "DELETED_DATE")
+  private Date deletedDate;
+
+  /**
+   * Ids of the ancestors of the page, from the root page, separated and
+   * terminated by "/" (for instance "/1/5/"). The wiki home page path is "/".
+   */
+  @Column(name = "TREE_PATH")
+  private String treePath;
+
+  @Column(name = "TREE_DEPTH")
+  private Integer treeDepth;
+
   public long getId() {
     return id;
   }
@@ -226,4 +258,35 @@ public class PageEntity extends BasePageEntity {
   public void setDeleted(boolean deleted) {
     this.deleted = deleted;
   }
+
+  public Date getDeletedDate() {
+    return deletedDate;
+  }
+
+  public void setDeletedDate(Date deletedDate) {
+    this.deletedDate = deletedDate;
+  }
+
+  public String getTreePath() {
+    return treePath;
+  }
+
+  public void setTreePath(String treePath) {
+    this.treePath = treePath;
+  }
+
+  public Integer getTreeDepth() {
+    return treeDepth;
+  }
+
+  public void setTreeDepth(Integer treeDepth) {
+    this.treeDepth = treeDepth;
+  }
+
+  /**
+   * @return the tree path prefix shared by all the descendants of this page
+   */
+  public String getDescendantsTreePath() {
+    return treePath == null ? null : treePath + id + "/";
+  }
 }
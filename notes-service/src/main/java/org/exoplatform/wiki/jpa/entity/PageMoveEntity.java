@@ -32,7 +32,8 @@ import java.util.List;
 @ExoEntity
 @Table(name = "WIKI_PAGE_MOVES")
 @NamedQueries({
-        @NamedQuery(name = "wikiPageMove.getPreviousPage", query = "SELECT p FROM WikiPageMoveEntity p WHERE p.wikiType = :wikiType AND p.wikiOwner = :wikiOwner AND p.pageName = :pageName")
+        @NamedQuery(name = "wikiPageMove.getPreviousPage", query = "SELECT p FROM WikiPageMoveEntity p WHERE p.wikiType = :wikiType AND p.wikiOwner = :wikiOwner AND p.pageName = :pageName"),
+        @NamedQuery(name = "wikiPageMove.deleteMovesOfPage", query = "DELETE FROM WikiPageMoveEntity p WHERE p.page.id = :pageId")
 })
 public class PageMoveEntity {
 
@@ -0,0 +1,173 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.jpa.entity;
+
+import java.util.Date;
+
+/**
+ * Projection of a {@link PageEntity} without its content, used by the queries
+ * listing pages which do not need to read the page bodies.
+ */
+public class PageSummary {
+
+  private final long    id;
+
+  private final String  name;
+
+  private final String  title;
+
+  private final String  owner;
+
+  private final String  author;
+
+  private final String  syntax;
+
+  private final String  comment;
+
+  private final String  url;
+
+  private final String  activityId;
+
+  private final boolean minorEdit;
+
+  private final boolean deleted;
+
+  private final Date    createdDate;
+
+  private final Date    updatedDate;
+
+  private final Long    parentPageId;
+
+  private final String  parentPageName;
+
+  private final long    wikiId;
+
+  private final String  wikiType;
+
+  private final String  wikiOwner;
+
+  public PageSummary(long id,
+                     String name,
+                     String title,
+                     String owner,
+                     String author,
+                     String syntax,
+                     String comment,
+                     String url,
+                     String activityId,
+                     boolean minorEdit,
+                     boolean deleted,
+                     Date createdDate,
+                     Date updatedDate,
+                     Long parentPageId,
+                     String parentPageName,
+                     long wikiId,
+                     String wikiType,
+                     String wikiOwner) {
+    this.id = id;
+    this.name = name;
+    this.title = title;
+    this.owner = owner;
+    this.author = author;
+    this.syntax = syntax;
+    this.comment = comment;
+    this.url = url;
+    this.activityId = activityId;
+    this.minorEdit = minorEdit;
+    this.deleted = deleted;
+    this.createdDate = createdDate;
+    this.updatedDate = updatedDate;
+    this.parentPageId = parentPageId;
+    this.parentPageName = parentPageName;
+    this.wikiId = wikiId;
+    this.wikiType = wikiType;
+    this.wikiOwner = wikiOwner;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public String getSyntax() {
+    return syntax;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getActivityId() {
+    return activityId;
+  }
+
+  public boolean isMinorEdit() {
+    return minorEdit;
+  }
+
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+  public Date getCreatedDate() {
+    return createdDate;
+  }
+
+  public Date getUpdatedDate() {
+    return updatedDate;
+  }
+
+  public Long getParentPageId() {
+    return parentPageId;
+  }
+
+  public String getParentPageName() {
+    return parentPageName;
+  }
+
+  public long getWikiId() {
+    return wikiId;
+  }
+
+  public String getWikiType() {
+    return wikiType;
+  }
+
+  public String getWikiOwner() {
+    return wikiOwner;
+  }
+}
@@ -36,9 +36,31 @@ import javax.persistence.*;
         @NamedQuery(name = "wikiPageVersion.getLastversionNumberOfPage", query = "SELECT max(p.versionNumber) FROM WikiPageVersionEntity p WHERE p.page.id = :pageId"),
         @NamedQuery(name = "wikiPageVersion.getPageversionByPageIdAndVersion", query = "SELECT p FROM WikiPageVersionEntity p WHERE p.page.id = :pageId AND p.versionNumber = :versionNumber"),
         @NamedQuery(name = "wikiPageVersion.getAllPagesVersionsBySyntax", query = "SELECT p FROM WikiPageVersionEntity p WHERE p.syntax = :syntax OR p.syntax IS NULL ORDER BY p.updatedDate DESC"),
-        @NamedQuery(name = "wikiPageVersion.countAllPagesVersionsBySyntax", query = "SELECT COUNT(p) FROM WikiPageVersionEntity p WHERE p.syntax = :syntax OR p.syntax IS NULL")
+        @NamedQuery(name = "wikiPageVersion.countAllPagesVersionsBySyntax", query = "SELECT COUNT(p) FROM WikiPageVersionEntity p WHERE p.syntax = :syntax OR p.syntax IS NULL"),
+        @NamedQuery(name = "wikiPageVersion.countVersionsOfPage", query = "SELECT COUNT(p) FROM WikiPageVersionEntity p WHERE p.page.id = :pageId"),
+        @NamedQuery(name = "wikiPageVersion.getVersionsOfPage", query = "SELECT p FROM WikiPageVersionEntity p WHERE p.page.id = :pageId ORDER BY p.versionNumber ASC"),
+        @NamedQuery(name = "wikiPageVersion.getPageIdsWithFullContentVersions", query = "SELECT DISTINCT p.page.id FROM WikiPageVersionEntity p WHERE p.page.id > :pageId AND (p.contentStorage IS NULL OR p.contentStorage = :contentStorage) ORDER BY p.page.id"),
+        @NamedQuery(name = "wikiPageVersion.deleteVersionsOfPage", query = "DELETE FROM WikiPageVersionEntity p WHERE p.page.id = :pageId"),
+        @NamedQuery(name = "wikiPageVersion.getHistoryOfPage", query = "SELECT p.versionNumber, p.author, p.createdDate, p.updatedDate FROM WikiPageVersionEntity p WHERE p.page.id = :pageId ORDER BY p.versionNumber DESC")
 })
 public class PageVersionEntity extends BasePageEntity {
+
+  /**
+   * How the content of a version is stored, the versions created before the
+   * introduction of this column have a null storage and a full content.
+   */
+  public enum ContentStorage {
+    /** The content is stored as is in the CONTENT column */
+    FULL,
+    /** The content is compressed in the CONTENT_DATA column */
+    SNAPSHOT,
+    /**
+     * The CONTENT_DATA column contains the compressed delta from the snapshot
+     * identified by the base version number
+     */
+    DELTA
+  }
+
   @Id
   @SequenceGenerator(name="SEQ_WIKI_PAGE_VERSIONS_VERS_ID", sequenceName="SEQ_WIKI_PAGE_VERSIONS_VERS_ID", allocationSize = 1)
   @GeneratedValue(strategy=GenerationType.AUTO, generator="SEQ_WIKI_PAGE_VERSIONS_VERS_ID")
@@ -58,6 +80,16 @@ public class PageVersionEntity extends BasePageEntity {
   @Column(name = "MINOR_EDIT")
   private boolean minorEdit;
 
+  @Column(name = "CONTENT_STORAGE")
+  @Enumerated(EnumType.STRING)
+  private ContentStorage contentStorage;
+
+  @Column(name = "BASE_VERSION_NUMBER")
+  private Long baseVersionNumber;
+
+  @Column(name = "CONTENT_DATA", length = 20971520)
+  private byte[] contentData;
+
   public long getId() {
     return id;
   }
@@ -93,4 +125,28 @@ public class PageVersionEntity extends BasePageEntity {
   public void setMinorEdit(boolean minorEdit) {
     this.minorEdit = minorEdit;
   }
+
+  public ContentStorage getContentStorage() {
+    return contentStorage == null ? ContentStorage.FULL : contentStorage;
+  }
+
+  public void setContentStorage(ContentStorage contentStorage) {
+    this.contentStorage = contentStorage;
+  }
+
+  public Long getBaseVersionNumber() {
+    return baseVersionNumber;
+  }
+
+  public void setBaseVersionNumber(Long baseVersionNumber) {
+    this.baseVersionNumber = baseVersionNumber;
+  }
+
+  public byte[] getContentData() {
+    return contentData;
+  }
+
+  public void setContentData(byte[] contentData) {
+    this.contentData = contentData;
+  }
 }
@@ -24,6 +24,7 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.organization.Group;
 import org.exoplatform.services.organization.GroupEventListener;
+import org.exoplatform.wiki.jpa.cache.PageCache;
 import org.exoplatform.wiki.jpa.dao.PageDAO;
 import org.exoplatform.wiki.jpa.dao.TemplateDAO;
 import org.exoplatform.wiki.jpa.dao.WikiDAO;
@@ -49,12 +50,18 @@ public class WikiGroupEventListener extends GroupEventListener {
   private PageDAO pageDAO;
   private TemplateDAO templateDAO;
   private IndexingService indexingService;
+  private PageCache pageCache;
 
-  public WikiGroupEventListener(WikiDAO wikiDAO, PageDAO pageDAO, TemplateDAO templateDAO, IndexingService indexingService) {
+  public WikiGroupEventListener(WikiDAO wikiDAO,
+                                PageDAO pageDAO,
+                                TemplateDAO templateDAO,
+                                IndexingService indexingService,
+                                PageCache pageCache) {
     this.wikiDAO = wikiDAO;
     this.pageDAO = pageDAO;
     this.templateDAO = templateDAO;
     this.indexingService = indexingService;
+    this.pageCache = pageCache;
   }
 
   @Override
@@ -70,6 +77,9 @@ public class WikiGroupEventListener extends GroupEventListener {
         indexingService.unindex(WikiPageIndexingServiceConnector.TYPE, String.valueOf(page.getId()));
       }
       pageDAO.deleteAll(pages);
+      for (PageEntity page : pages) {
+        pageCache.removePage(page.getId());
+      }
     }
 
     //Then remove template
@@ -0,0 +1,55 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.jpa.organization;
+
+import org.exoplatform.services.organization.Membership;
+import org.exoplatform.services.organization.MembershipEventListener;
+import org.exoplatform.wiki.jpa.cache.UserPermissionIdentitiesCache;
+
+/**
+ * Removes the cached search permission identities of the users whose
+ * memberships of a space group are changed directly through the
+ * OrganizationService (administration, LDAP or IdP synchronization), which
+ * fire no space lifecycle event.
+ */
+public class WikiSpaceGroupMembershipListener extends MembershipEventListener {
+
+  private static final String                 SPACES_GROUP_PREFIX = "/spaces/";
+
+  private final UserPermissionIdentitiesCache permissionIdentitiesCache;
+
+  public WikiSpaceGroupMembershipListener(UserPermissionIdentitiesCache permissionIdentitiesCache) {
+    this.permissionIdentitiesCache = permissionIdentitiesCache;
+  }
+
+  @Override
+  public void postSave(Membership membership, boolean isNew) throws Exception {
+    removePermissionIdentityIds(membership);
+  }
+
+  @Override
+  public void postDelete(Membership membership) throws Exception {
+    removePermissionIdentityIds(membership);
+  }
+
+  private void removePermissionIdentityIds(Membership membership) {
+    if (membership != null && membership.getGroupId() != null && membership.getGroupId().startsWith(SPACES_GROUP_PREFIX)) {
+      permissionIdentitiesCache.removePermissionIdentityIds(membership.getUserName());
+    }
+  }
+
+}
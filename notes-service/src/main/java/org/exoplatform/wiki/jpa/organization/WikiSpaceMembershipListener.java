@@ -0,0 +1,115 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.jpa.organization;
+
+import org.exoplatform.social.core.space.SpaceListenerPlugin;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.spi.SpaceLifeCycleEvent;
+import org.exoplatform.wiki.jpa.cache.UserPermissionIdentitiesCache;
+
+/**
+ * Removes the cached search permission identities of the users whose space
+ * memberships change.
+ */
+public class WikiSpaceMembershipListener extends SpaceListenerPlugin {
+
+  private final UserPermissionIdentitiesCache permissionIdentitiesCache;
+
+  public WikiSpaceMembershipListener(UserPermissionIdentitiesCache permissionIdentitiesCache) {
+    this.permissionIdentitiesCache = permissionIdentitiesCache;
+  }
+
+  @Override
+  public void spaceCreated(SpaceLifeCycleEvent event) {
+    permissionIdentitiesCache.removePermissionIdentityIds(event.getTarget());
+  }
+
+  @Override
+  public void spaceRemoved(SpaceLifeCycleEvent event) {
+    Space space = event.getSpace();
+    if (space == null || space.getMembers() == null) {
+      permissionIdentitiesCache.clearCache();
+      return;
+    }
+    for (String member : space.getMembers()) {
+      permissionIdentitiesCache.removePermissionIdentityIds(member);
+    }
+  }
+
+  @Override
+  public void joined(SpaceLifeCycleEvent event) {
+    permissionIdentitiesCache.removePermissionIdentityIds(event.getTarget());
+  }
+
+  @Override
+  public void left(SpaceLifeCycleEvent event) {
+    permissionIdentitiesCache.removePermissionIdentityIds(event.getTarget());
+  }
+
+  @Override
+  public void applicationActivated(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void applicationAdded(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void applicationDeactivated(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void applicationRemoved(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void grantedLead(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void revokedLead(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void spaceRenamed(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void spaceDescriptionEdited(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void spaceAvatarEdited(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void spaceAccessEdited(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void addInvitedUser(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void addPendingUser(SpaceLifeCycleEvent event) {
+  }
+
+  @Override
+  public void spaceBannerEdited(SpaceLifeCycleEvent event) {
+  }
+
+}
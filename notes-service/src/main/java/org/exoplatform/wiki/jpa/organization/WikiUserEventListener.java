@@ -23,6 +23,7 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.organization.User;
 import org.exoplatform.services.organization.UserEventListener;
+import org.exoplatform.wiki.jpa.cache.PageCache;
 import org.exoplatform.wiki.jpa.dao.PageDAO;
 import org.exoplatform.wiki.jpa.dao.TemplateDAO;
 import org.exoplatform.wiki.jpa.dao.WikiDAO;
@@ -48,12 +49,18 @@ public class WikiUserEventListener extends UserEventListener {
   private PageDAO pageDAO;
   private TemplateDAO templateDAO;
   private IndexingService indexingService;
+  private PageCache pageCache;
 
-  public WikiUserEventListener(WikiDAO wikiDAO, PageDAO pageDAO, TemplateDAO templateDAO, IndexingService indexingService) {
+  public WikiUserEventListener(WikiDAO wikiDAO,
+                               PageDAO pageDAO,
+                               TemplateDAO templateDAO,
+                               IndexingService indexingService,
+                               PageCache pageCache) {
     this.wikiDAO = wikiDAO;
     this.pageDAO = pageDAO;
     this.templateDAO = templateDAO;
     this.indexingService = indexingService;
+    this.pageCache = pageCache;
   }
 
   /**
@@ -74,6 +81,9 @@ public class WikiUserEventListener extends UserEventListener {
         indexingService.unindex(WikiPageIndexingServiceConnector.TYPE, String.valueOf(page.getId()));
       }
       pageDAO.deleteAll(pages);
+      for (PageEntity page : pages) {
+        pageCache.removePage(page.getId());
+      }
     }
 
     //Then remove the template
@@ -18,39 +18,56 @@
  */
 package org.exoplatform.wiki.jpa.search;
 
+import java.util.List;
+
 import org.exoplatform.commons.search.index.IndexingService;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.service.PageIndexingOperation;
+import org.exoplatform.wiki.service.PageIndexingQueue;
+import org.exoplatform.wiki.service.PageIndexingQueue.OperationType;
 import org.exoplatform.wiki.service.PageUpdateType;
 import org.exoplatform.wiki.service.listener.PageWikiListener;
 
 /**
- * Listener on pages creation/update/deletion to index them
+ * Listener on pages creation/update/deletion to index them. The operations go
+ * through the pages indexing queue which merges the successive operations of a
+ * page.
  */
 public class PageIndexingListener extends PageWikiListener {
 
-  private IndexingService indexingService;
+  public static final String      INDEXING_HANDLER_NAME = "PageIndexingListener";
+
+  private final IndexingService   indexingService;
 
+  private final PageIndexingQueue indexingQueue;
 
-  public PageIndexingListener(IndexingService indexingService) {
+  public PageIndexingListener(IndexingService indexingService, PageIndexingQueue indexingQueue) {
     this.indexingService = indexingService;
+    this.indexingQueue = indexingQueue;
+    this.indexingQueue.addHandler(INDEXING_HANDLER_NAME, this::handle);
   }
 
   @Override
   public void postAddPage(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
-    indexingService.index(WikiPageIndexingServiceConnector.TYPE, page.getId());
+    indexingQueue.enqueue(INDEXING_HANDLER_NAME, OperationType.INDEX, wikiType, wikiOwner, pageId, page);
   }
 
   @Override
   public void postUpdatePage(String wikiType, String wikiOwner, String pageId, Page page, PageUpdateType wikiUpdateType) throws WikiException {
     if (!page.isDraftPage()) {
-      indexingService.reindex(WikiPageIndexingServiceConnector.TYPE, page.getId());
+      indexingQueue.enqueue(INDEXING_HANDLER_NAME, OperationType.REINDEX, wikiType, wikiOwner, pageId, page);
     }
   }
 
   @Override
   public void postDeletePage(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
-    indexingService.unindex(WikiPageIndexingServiceConnector.TYPE, page.getId());
+    indexingQueue.enqueue(INDEXING_HANDLER_NAME, OperationType.UNINDEX, wikiType, wikiOwner, pageId, page);
+  }
+
+  @Override
+  public void postDeletePages(List<Page> pages) throws WikiException {
+    indexingQueue.enqueue(INDEXING_HANDLER_NAME, OperationType.UNINDEX, pages);
   }
 
   @Override
@@ -63,4 +80,21 @@ public class PageIndexingListener extends PageWikiListener {
 
   }
 
+  private void handle(PageIndexingOperation operation) {
+    String id = operation.getPage().getId();
+    switch (operation.getType()) {
+    case INDEX:
+      indexingService.index(WikiPageIndexingServiceConnector.TYPE, id);
+      break;
+    case REINDEX:
+      indexingService.reindex(WikiPageIndexingServiceConnector.TYPE, id);
+      break;
+    case UNINDEX:
+      indexingService.unindex(WikiPageIndexingServiceConnector.TYPE, id);
+      break;
+    default:
+      break;
+    }
+  }
+
 }
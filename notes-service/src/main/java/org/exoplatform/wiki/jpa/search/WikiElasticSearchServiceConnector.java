@@ -16,7 +16,7 @@
  */
 package org.exoplatform.wiki.jpa.search;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.text.Normalizer;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -24,19 +24,16 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
 import org.exoplatform.social.metadata.favorite.FavoriteService;
 import org.exoplatform.wiki.utils.Utils;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import org.exoplatform.commons.search.es.ElasticSearchException;
 import org.exoplatform.commons.search.es.ElasticSearchServiceConnector;
 import org.exoplatform.commons.search.es.client.ElasticSearchingClient;
 import org.exoplatform.commons.utils.CommonsUtils;
-import org.exoplatform.commons.utils.IOUtil;
 import org.exoplatform.commons.utils.ListAccess;
-import org.exoplatform.commons.utils.PropertyManager;
-import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.services.log.ExoLogger;
@@ -47,6 +44,7 @@ import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
+import org.exoplatform.wiki.jpa.cache.UserPermissionIdentitiesCache;
 import org.exoplatform.wiki.service.search.SearchResult;
 import org.exoplatform.wiki.service.search.SearchResultType;
 
@@ -58,32 +56,20 @@ public class WikiElasticSearchServiceConnector extends ElasticSearchServiceConne
 
   private static final Log           LOG                          = ExoLogger.getLogger(WikiElasticSearchServiceConnector.class);
 
-  private static final String        SEARCH_QUERY_FILE_PATH_PARAM = "query.file.path";
+  private static final JsonFactory   JSON_FACTORY                 = new JsonFactory();
 
   private final IdentityManager      identityManager;
 
-  private final ConfigurationManager configurationManager;
-
-  private String                     searchQuery;
+  private final UserPermissionIdentitiesCache permissionIdentitiesCache;
 
-  private String                     searchQueryFilePath;
-
-  public WikiElasticSearchServiceConnector(ConfigurationManager configurationManager,
-                                           InitParams initParams,
+  public WikiElasticSearchServiceConnector(InitParams initParams,
                                            ElasticSearchingClient client,
-                                           IdentityManager identityManager) {
+                                           IdentityManager identityManager,
+                                           UserPermissionIdentitiesCache permissionIdentitiesCache) {
     super(initParams, client);
-    this.configurationManager = configurationManager;
     this.identityManager = identityManager;
+    this.permissionIdentitiesCache = permissionIdentitiesCache;
     PropertiesParam param = initParams.getPropertiesParam("constructor.params");
-    if (initParams.containsKey(SEARCH_QUERY_FILE_PATH_PARAM)) {
-      searchQueryFilePath = initParams.getValueParam(SEARCH_QUERY_FILE_PATH_PARAM).getValue();
-      try {
-        retrieveSearchQuery();
-      } catch (Exception e) {
-        LOG.error("Can't read elasticsearch search query from path {}", searchQueryFilePath, e);
-      }
-    }
   }
 
   @Override
@@ -137,26 +123,14 @@ public class WikiElasticSearchServiceConnector extends ElasticSearchServiceConne
       return word;
     }).collect(Collectors.toList());
     Map<String, List<String>> metadataFilters = buildMetadataFilter(isFavorites, userId);
-    String metadataQuery = buildMetadataQueryStatement(metadataFilters);
     String termQuery = StringUtils.join(termsQuery, " AND ");
-    return retrieveSearchQuery().replace("@term@", term)
-                                .replace("@term_query@", termQuery)
-                                .replace("@metadatas_query@", metadataQuery)
-                                .replace("@permissions@", StringUtils.join(calendarOwnersOfUser, ","))
-                                .replace("@offset@", String.valueOf(offset))
-                                .replace("@limit@", String.valueOf(limit));
-  }
-
-  private String retrieveSearchQuery() {
-    if (StringUtils.isBlank(this.searchQuery) || PropertyManager.isDevelopping()) {
-      try {
-        InputStream queryFileIS = this.configurationManager.getInputStream(searchQueryFilePath);
-        this.searchQuery = IOUtil.getStreamContentAsString(queryFileIS);
-      } catch (Exception e) {
-        throw new IllegalStateException("Error retrieving search query from file: " + searchQueryFilePath, e);
-      }
-    }
-    return this.searchQuery;
+    return new WikiSearchQueryBuilder().term(term)
+                                       .termQuery(termQuery)
+                                       .permissions(calendarOwnersOfUser)
+                                       .metadataFilters(metadataFilters)
+                                       .offset(offset)
+                                       .limit(limit)
+                                       .build();
   }
 
   private String removeSpecialCharacters(String string) {
@@ -166,142 +140,185 @@ public class WikiElasticSearchServiceConnector extends ElasticSearchServiceConne
   }
 
   protected List<SearchResult> buildWikiResult(String jsonResponse) {
-
-    List<SearchResult> wikiResults = new ArrayList<>();
-    JSONParser parser = new JSONParser();
-    Map json;
-    try {
-      json = (Map) parser.parse(jsonResponse);
-    } catch (ParseException e) {
-      throw new ElasticSearchException("Unable to parse JSON response", e);
-    }
-
-    JSONObject jsonResult = (JSONObject) json.get("hits");
-    JSONArray jsonHits = (JSONArray) jsonResult.get("hits");
-
-    for (Object jsonHit : jsonHits) {
-
-      long score = ((Double) ((JSONObject) jsonHit).get("_score")).longValue();
-
-      JSONObject hitSource = (JSONObject) ((JSONObject) jsonHit).get("_source");
-
-      String title = (String) hitSource.get("title");
-      String url = (String) hitSource.get("url");
-
-      String wikiType = (String) hitSource.get("wikiType");
-      String wikiOwner = (String) hitSource.get("wikiOwner");
-      String owner = (String) hitSource.get("owner");
-
-      Calendar createdDate = Calendar.getInstance();
-      createdDate.setTimeInMillis(Long.parseLong((String) hitSource.get("createdDate")));
-      Calendar updatedDate = Calendar.getInstance();
-      updatedDate.setTimeInMillis(Long.parseLong((String) hitSource.get("updatedDate")));
-
-      SearchResultType type = SearchResultType.PAGE;
-      String pageName = (String) hitSource.get("name");
-      String attachmentName = null;
-
-      // Result can be an attachment
-      if (((JSONObject) jsonHit).get("_type").equals("wiki-attachment")) {
-        pageName = (String) hitSource.get("pageName");
-        attachmentName = (String) hitSource.get("name");
+    List<WikiSearchHit> hits = new ArrayList<>();
+    try (JsonParser parser = JSON_FACTORY.createParser(jsonResponse)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new ElasticSearchException("Unable to parse JSON response: not an object");
       }
-
-      // Get the excerpt
-      JSONObject hitHighlight = (JSONObject) ((JSONObject) jsonHit).get("highlight");
-      StringBuilder excerpt = new StringBuilder();
-      if (hitHighlight != null) {
-        Iterator<?> keys = hitHighlight.keySet().iterator();
-        while (keys.hasNext()) {
-          String key = (String) keys.next();
-          JSONArray highlights = (JSONArray) hitHighlight.get(key);
-          for (Object highlight : highlights) {
-            excerpt.append("... ").append(highlight);
-          }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        parser.nextToken();
+        if ("hits".equals(fieldName)) {
+          parseHits(parser, hits);
+        } else {
+          parser.skipChildren();
         }
       }
+    } catch (IOException e) {
+      throw new ElasticSearchException("Unable to parse JSON response", e);
+    }
 
-      // Create the wiki search result
-      SearchResult wikiSearchResult = new SearchResult();
-      wikiSearchResult.setWikiType(wikiType);
-      wikiSearchResult.setWikiOwner(wikiOwner);
-      wikiSearchResult.setPageName(pageName);
-      wikiSearchResult.setAttachmentName(attachmentName);
-
-      // replace HTML tag for indexing page
-      String content = Utils.html2text(excerpt.toString());
-      wikiSearchResult.setExcerpt(content);
-      wikiSearchResult.setTitle(title);
-      wikiSearchResult.setType(type);
-      wikiSearchResult.setCreatedDate(createdDate);
-      wikiSearchResult.setUpdatedDate(updatedDate);
-      wikiSearchResult.setUrl(url);
-      wikiSearchResult.setScore(score);
-
+    // resolve each distinct identity once for all the hits
+    Map<String, Identity> wikiOwnerIdentities = new HashMap<>();
+    Map<String, Identity> posterIdentities = new HashMap<>();
+    List<SearchResult> wikiResults = new ArrayList<>(hits.size());
+    for (WikiSearchHit hit : hits) {
+      SearchResult wikiSearchResult = hit.searchResult;
+      String wikiOwner = wikiSearchResult.getWikiOwner();
       if (wikiOwner != null && wikiOwner.startsWith("/spaces/")) {
         String wikiOwnerPrettyName = wikiOwner.split("/spaces/")[1];
-        Identity wikiOwnerIdentity = identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME, wikiOwnerPrettyName, true);
-        wikiSearchResult.setWikiOwnerIdentity(wikiOwnerIdentity);
+        wikiSearchResult.setWikiOwnerIdentity(wikiOwnerIdentities.computeIfAbsent(wikiOwnerPrettyName,
+                                                                                  prettyName -> identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME,
+                                                                                                                                    prettyName,
+                                                                                                                                    true)));
       }
-
-      if (owner != null) {
-        Identity posterIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, owner);
-        wikiSearchResult.setPoster(posterIdentity);
+      if (hit.owner != null) {
+        wikiSearchResult.setPoster(posterIdentities.computeIfAbsent(hit.owner,
+                                                                    owner -> identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
+                                                                                                                 owner)));
       }
-
-      // Add the wiki search result to the list of search results
       wikiResults.add(wikiSearchResult);
+    }
+    return wikiResults;
+  }
 
+  private void parseHits(JsonParser parser, List<WikiSearchHit> hits) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.START_ARRAY && "hits".equals(fieldName)) {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          hits.add(parseHit(parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
     }
+  }
 
-    return wikiResults;
+  private WikiSearchHit parseHit(JsonParser parser) throws IOException {
+    String hitType = null;
+    double score = 0;
+    Map<String, String> hitSource = new HashMap<>();
+    StringBuilder excerpt = new StringBuilder();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken valueToken = parser.nextToken();
+      if ("_type".equals(fieldName)) {
+        hitType = parser.getValueAsString();
+      } else if ("_score".equals(fieldName)) {
+        score = parser.getValueAsDouble();
+      } else if ("_source".equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String sourceField = parser.getCurrentName();
+          if (parser.nextToken().isScalarValue()) {
+            hitSource.put(sourceField, parser.getValueAsString());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else if ("highlight".equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          if (parser.nextToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+              excerpt.append("... ").append(parser.getValueAsString());
+            }
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    Calendar createdDate = Calendar.getInstance();
+    createdDate.setTimeInMillis(Long.parseLong(hitSource.get("createdDate")));
+    Calendar updatedDate = Calendar.getInstance();
+    updatedDate.setTimeInMillis(Long.parseLong(hitSource.get("updatedDate")));
+
+    String pageName = hitSource.get("name");
+    String attachmentName = null;
+    // Result can be an attachment
+    if ("wiki-attachment".equals(hitType)) {
+      pageName = hitSource.get("pageName");
+      attachmentName = hitSource.get("name");
+    }
 
+    // Create the wiki search result
+    SearchResult wikiSearchResult = new SearchResult();
+    wikiSearchResult.setWikiType(hitSource.get("wikiType"));
+    wikiSearchResult.setWikiOwner(hitSource.get("wikiOwner"));
+    wikiSearchResult.setPageName(pageName);
+    wikiSearchResult.setAttachmentName(attachmentName);
+    // replace HTML tag for indexing page
+    wikiSearchResult.setExcerpt(Utils.html2text(excerpt.toString()));
+    wikiSearchResult.setTitle(hitSource.get("title"));
+    wikiSearchResult.setType(SearchResultType.PAGE);
+    wikiSearchResult.setCreatedDate(createdDate);
+    wikiSearchResult.setUpdatedDate(updatedDate);
+    wikiSearchResult.setUrl(hitSource.get("url"));
+    wikiSearchResult.setScore((long) score);
+    return new WikiSearchHit(wikiSearchResult, hitSource.get("owner"));
   }
 
+  /**
+   * Get the ids of the identities the user is granted to read in the index:
+   * the user identity and the identities of the spaces the user is member of.
+   * The ids are cached per user until the space memberships of the user change.
+   *
+   * @param userId the user name
+   * @return the permission identity ids of the user
+   */
   protected Set<String> getUserSpaceIds(String userId) {
     if (StringUtils.isEmpty(userId)) {
       throw new IllegalStateException("No Identity found: userId is empty");
-    }  else {
-      Set<String> permissions = new HashSet<>();
-      IdentityManager identityManager = CommonsUtils.getService(IdentityManager.class);
+    }
+    Set<String> permissions = permissionIdentitiesCache.getPermissionIdentityIds(userId);
+    if (permissions == null) {
       SpaceService spaceService = CommonsUtils.getService(SpaceService.class);
       ListAccess<Space> userSpaces = spaceService.getMemberSpaces(userId);
-      List<Space> spaceList = new ArrayList<>();
+      List<Space> spaceList;
       try {
         spaceList = Arrays.asList(userSpaces.load(0, userSpaces.getSize()));
       } catch (Exception e) {
-        LOG.warn("Can't get user space Ids");
-      }
-      for (Space space : spaceList) {
-        if (space != null) {
-          permissions.add(identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName()).getId());
-        }
-      }
-      Identity userIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
-              userId);
-      if (userId != null) {
-        permissions.add(userIdentity.getId());
+        // not cached, so that the spaces of the user are searched again on
+        // next search
+        LOG.warn("Can't get the spaces of user {}, only the notes of the user are searched", userId, e);
+        return loadUserSpaceIds(userId, Collections.emptyList());
       }
-      return permissions;
+      permissions = loadUserSpaceIds(userId, spaceList);
+      permissionIdentitiesCache.putPermissionIdentityIds(userId, permissions);
     }
-
+    return permissions;
   }
-  public void setSearchQuery(String searchQuery){
-    this.searchQuery=searchQuery;
+
+  private Set<String> loadUserSpaceIds(String userId, List<Space> spaceList) {
+    Set<String> permissions = new HashSet<>();
+    for (Space space : spaceList) {
+      if (space != null) {
+        permissions.add(identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME, space.getPrettyName()).getId());
+      }
+    }
+    Identity userIdentity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId);
+    if (userIdentity != null) {
+      permissions.add(userIdentity.getId());
+    }
+    return permissions;
   }
 
-  private String buildMetadataQueryStatement(Map<String, List<String>> metadataFilters) {
-    StringBuilder metadataQuerySB = new StringBuilder();
-    Set<Map.Entry<String, List<String>>> metadataFilterEntries = metadataFilters.entrySet();
-    for (Map.Entry<String, List<String>> metadataFilterEntry : metadataFilterEntries) {
-      metadataQuerySB.append("{\"terms\":{\"metadatas.")
-                     .append(metadataFilterEntry.getKey())
-                     .append(".metadataName.keyword")
-                     .append("\": [\"")
-                     .append(StringUtils.join(metadataFilterEntry.getValue(), "\",\""))
-                     .append("\"]}},");
+  private static class WikiSearchHit {
+    private final SearchResult searchResult;
+
+    private final String       owner;
+
+    private WikiSearchHit(SearchResult searchResult, String owner) {
+      this.searchResult = searchResult;
+      this.owner = owner;
     }
-    return metadataQuerySB.toString();
   }
 
   private Map<String, List<String>> buildMetadataFilter(boolean isFavorites, String userId) {
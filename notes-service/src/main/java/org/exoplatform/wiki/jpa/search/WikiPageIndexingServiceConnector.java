@@ -53,13 +53,15 @@ import java.util.Set;
  */
 public class WikiPageIndexingServiceConnector extends ElasticIndexingServiceConnector {
 
-  public static final String    TYPE   = "wiki-page";
+  public static final String       TYPE   = "wiki-page";
 
-  private static final Log      LOGGER = ExoLogger.getExoLogger(WikiPageIndexingServiceConnector.class);
+  private static final Log         LOGGER = ExoLogger.getExoLogger(WikiPageIndexingServiceConnector.class);
 
-  private final PageDAO         dao;
+  private final PageDAO            dao;
 
-  private final MetadataService metadataService;
+  private final MetadataService    metadataService;
+
+  private volatile IdsScanPosition idsScanPosition;
 
   public WikiPageIndexingServiceConnector(InitParams initParams, PageDAO dao, MetadataService metadataService) {
     super(initParams);
@@ -184,22 +186,46 @@ public class WikiPageIndexingServiceConnector extends ElasticIndexingServiceConn
     return permissions;
   }
 
+  /**
+   * Get the ids of the pages to index. The ids are scanned by keyset: when the
+   * requested offset follows the previous batch, the ids following the last id
+   * of this batch are queried, so the cost of a batch does not grow with the
+   * offset. Other offsets fall back to an offset query.
+   */
   @Override
   public List<String> getAllIds(int offset, int limit) {
-    List<String> result;
-
-    List<Long> ids = this.dao.findAllIds(offset, limit);
-    if (ids == null) {
-      result = new ArrayList<>(0);
+    List<Long> ids;
+    IdsScanPosition position = idsScanPosition;
+    if (offset == 0) {
+      ids = this.dao.findAllIdsAfter(0, limit);
+    } else if (position != null && position.nextOffset == offset) {
+      ids = this.dao.findAllIdsAfter(position.lastId, limit);
     } else {
-      result = new ArrayList<>(ids.size());
-      for (Long id : ids) {
-        result.add(String.valueOf(id));
-      }
+      ids = this.dao.findAllIds(offset, limit);
+    }
+    if (ids == null || ids.isEmpty()) {
+      idsScanPosition = null;
+      return new ArrayList<>(0);
+    }
+    idsScanPosition = new IdsScanPosition(offset + ids.size(), ids.get(ids.size() - 1));
+    List<String> result = new ArrayList<>(ids.size());
+    for (Long id : ids) {
+      result.add(String.valueOf(id));
     }
     return result;
   }
 
+  private static class IdsScanPosition {
+    private final int  nextOffset;
+
+    private final long lastId;
+
+    private IdsScanPosition(int nextOffset, long lastId) {
+      this.nextOffset = nextOffset;
+      this.lastId = lastId;
+    }
+  }
+
   private void addDocumentMetadata(DocumentWithMetadata document, String documentId) {
     MetadataObject metadataObject = new MetadataObject(Utils.NOTES_METADATA_OBJECT_TYPE, documentId);
     List<MetadataItem> metadataItems = metadataService.getMetadataItemsByObject(metadataObject);
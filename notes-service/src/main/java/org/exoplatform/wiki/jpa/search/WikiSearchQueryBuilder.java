@@ -0,0 +1,209 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.jpa.search;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.exoplatform.commons.search.es.ElasticSearchException;
+
+/**
+ * Builds the Elasticsearch request of the notes search. The request is
+ * written with a streaming JSON generator, so the searched term, the metadata
+ * names and the permissions are escaped and no intermediate template string
+ * is copied for each parameter.
+ */
+public class WikiSearchQueryBuilder {
+
+  private static final JsonFactory         JSON_FACTORY       = new JsonFactory();
+
+  private static final String[]            SEARCH_FIELDS      = { "name", "title^5", "content", "comment", "attachment.content" };
+
+  private static final String[]            HIGHLIGHT_FIELDS   = { "description", "summary", "location" };
+
+  private static final String              HIGHLIGHT_PRE_TAG  = "<span class='searchMatchExcerpt'>";
+
+  private static final String              HIGHLIGHT_POST_TAG = "</span>";
+
+  private String                           term;
+
+  private String                           termQuery;
+
+  private Collection<String>               permissions        = Collections.emptyList();
+
+  private Map<String, List<String>>        metadataFilters    = Collections.emptyMap();
+
+  private long                             offset;
+
+  private long                             limit;
+
+  /**
+   * @param term the searched term, matched as a phrase in the attachments
+   * @return this builder
+   */
+  public WikiSearchQueryBuilder term(String term) {
+    this.term = term;
+    return this;
+  }
+
+  /**
+   * @param termQuery the query string syntax query of the searched term
+   * @return this builder
+   */
+  public WikiSearchQueryBuilder termQuery(String termQuery) {
+    this.termQuery = termQuery;
+    return this;
+  }
+
+  /**
+   * @param permissions the identity ids the user is granted to read
+   * @return this builder
+   */
+  public WikiSearchQueryBuilder permissions(Collection<String> permissions) {
+    this.permissions = permissions;
+    return this;
+  }
+
+  /**
+   * @param metadataFilters the metadata names to filter on, by metadata type
+   * @return this builder
+   */
+  public WikiSearchQueryBuilder metadataFilters(Map<String, List<String>> metadataFilters) {
+    this.metadataFilters = metadataFilters;
+    return this;
+  }
+
+  public WikiSearchQueryBuilder offset(long offset) {
+    this.offset = offset;
+    return this;
+  }
+
+  public WikiSearchQueryBuilder limit(long limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  /**
+   * @return the JSON request to send to Elasticsearch
+   */
+  public String build() {
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+      generator.writeStartObject();
+      generator.writeNumberField("from", offset);
+      generator.writeNumberField("size", limit);
+      generator.writeObjectFieldStart("query");
+      generator.writeObjectFieldStart("bool");
+      writeFilter(generator);
+      writeShould(generator);
+      writeMust(generator);
+      writeMustNot(generator);
+      generator.writeEndObject();
+      generator.writeEndObject();
+      writeHighlight(generator);
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new ElasticSearchException("Unable to build the notes search query", e);
+    }
+    return writer.toString();
+  }
+
+  private void writeFilter(JsonGenerator generator) throws IOException {
+    generator.writeArrayFieldStart("filter");
+    for (Map.Entry<String, List<String>> metadataFilter : metadataFilters.entrySet()) {
+      generator.writeStartObject();
+      generator.writeObjectFieldStart("terms");
+      generator.writeArrayFieldStart("metadatas." + metadataFilter.getKey() + ".metadataName.keyword");
+      for (String metadataName : metadataFilter.getValue()) {
+        generator.writeString(metadataName);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+      generator.writeEndObject();
+    }
+    generator.writeStartObject();
+    generator.writeObjectFieldStart("terms");
+    generator.writeArrayFieldStart("permissions");
+    for (String permission : permissions) {
+      generator.writeString(permission);
+    }
+    generator.writeEndArray();
+    generator.writeEndObject();
+    generator.writeEndObject();
+    generator.writeEndArray();
+  }
+
+  private void writeShould(JsonGenerator generator) throws IOException {
+    generator.writeObjectFieldStart("should");
+    generator.writeObjectFieldStart("match_phrase");
+    generator.writeObjectFieldStart("attachment.content");
+    generator.writeStringField("query", term);
+    generator.writeNumberField("boost", 5);
+    generator.writeEndObject();
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  private void writeMust(JsonGenerator generator) throws IOException {
+    generator.writeObjectFieldStart("must");
+    generator.writeObjectFieldStart("query_string");
+    generator.writeArrayFieldStart("fields");
+    for (String searchField : SEARCH_FIELDS) {
+      generator.writeString(searchField);
+    }
+    generator.writeEndArray();
+    generator.writeStringField("query", termQuery);
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  private void writeMustNot(JsonGenerator generator) throws IOException {
+    generator.writeObjectFieldStart("must_not");
+    generator.writeObjectFieldStart("exists");
+    generator.writeStringField("field", "sites");
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+
+  private void writeHighlight(JsonGenerator generator) throws IOException {
+    generator.writeObjectFieldStart("highlight");
+    generator.writeNumberField("number_of_fragments", 2);
+    generator.writeNumberField("fragment_size", 150);
+    generator.writeNumberField("no_match_size", 0);
+    generator.writeStringField("order", "score");
+    generator.writeObjectFieldStart("fields");
+    for (String highlightField : HIGHLIGHT_FIELDS) {
+      generator.writeObjectFieldStart(highlightField);
+      generator.writeArrayFieldStart("pre_tags");
+      generator.writeString(HIGHLIGHT_PRE_TAG);
+      generator.writeEndArray();
+      generator.writeArrayFieldStart("post_tags");
+      generator.writeString(HIGHLIGHT_POST_TAG);
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+  }
+}
@@ -18,9 +18,15 @@
  */
 package org.exoplatform.wiki.model;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Calendar;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+
 public class Attachment {
 
   private String                name;
@@ -65,6 +71,11 @@ public class Attachment {
    */
   private byte[]                content;
 
+  /**
+   * Opens the content of the attachment when it is not loaded yet
+   */
+  private ContentStreamProvider contentStreamProvider;
+
   /**
    * Mime type of the attachment
    */
@@ -139,7 +150,19 @@ public class Attachment {
     this.fullTitle = fullTitle;
   }
 
+  /**
+   * @return the content of the attachment, read from the storage on the first
+   *         call when it is provided as a stream
+   */
   public byte[] getContent() {
+    if (content == null && contentStreamProvider != null) {
+      try (InputStream contentStream = contentStreamProvider.open()) {
+        content = contentStream == null ? null : IOUtils.toByteArray(contentStream);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot read the content of the attachment " + name, e);
+      }
+      contentStreamProvider = null;
+    }
     return content;
   }
 
@@ -147,6 +170,24 @@ public class Attachment {
     this.content = content;
   }
 
+  /**
+   * Opens the content of the attachment without loading it in memory. The
+   * caller must close the returned stream.
+   *
+   * @return the content stream, null if the attachment has no content
+   * @throws IOException if the content cannot be read from the storage
+   */
+  public InputStream openContentStream() throws IOException {
+    if (content != null) {
+      return new ByteArrayInputStream(content);
+    }
+    return contentStreamProvider == null ? null : contentStreamProvider.open();
+  }
+
+  public void setContentStreamProvider(ContentStreamProvider contentStreamProvider) {
+    this.contentStreamProvider = contentStreamProvider;
+  }
+
   public String getMimeType() {
     return mimeType;
   }
@@ -162,4 +203,12 @@ public class Attachment {
   public void setPermissions(List<PermissionEntry> permissions) {
     this.permissions = permissions;
   }
+
+  /**
+   * Opens the content of an attachment from its storage
+   */
+  @FunctionalInterface
+  public interface ContentStreamProvider {
+    InputStream open() throws IOException;
+  }
 }
@@ -21,14 +21,21 @@ package org.exoplatform.wiki.model;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import org.exoplatform.social.metadata.model.MetadataItem;
 import org.exoplatform.wiki.service.BreadcrumbData;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
 @Data
 @NoArgsConstructor
@@ -49,6 +56,7 @@ public class Page {
 
   private Date                            updatedDate;
 
+  @ToString.Exclude
   private String                          content;
 
   private String                          syntax;
@@ -99,6 +107,11 @@ public class Page {
 
   private Map<String, List<MetadataItem>> metadatas;
 
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  @ToString.Exclude
+  private transient Supplier<String>      contentLoader;
+
   public Page(String name) {
     this.name = name;
   }
@@ -113,4 +126,49 @@ public class Page {
     return false;
   }
 
+  @JsonIgnore
+  public String getContent() {
+    if (content == null && contentLoader != null) {
+      content = contentLoader.get();
+      contentLoader = null;
+    }
+    return content;
+  }
+
+  @JsonProperty("content")
+  public void setContent(String content) {
+    this.content = content;
+    this.contentLoader = null;
+  }
+
+  /**
+   * Loads the content of the page if its loading is deferred, so that it is
+   * serialized with the page
+   */
+  public void loadContent() {
+    getContent();
+  }
+
+  /**
+   * @return the content of the page to serialize, null while its loading is
+   *         deferred, so that serializing the pages of a listing does not load
+   *         their content, see {@link #loadContent()}
+   */
+  @JsonProperty("content")
+  public String getLoadedContent() {
+    return content;
+  }
+
+  /**
+   * Defers the loading of the page content to the first call of
+   * {@link #getContent()}
+   *
+   * @param contentLoader loads the content of the page
+   */
+  @JsonIgnore
+  public void setContentLoader(Supplier<String> contentLoader) {
+    this.content = null;
+    this.contentLoader = contentLoader;
+  }
+
 }
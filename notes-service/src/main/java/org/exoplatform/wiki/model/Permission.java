@@ -19,7 +19,12 @@
 
 package org.exoplatform.wiki.model;
 
-public class Permission {
+import java.io.Serializable;
+
+public class Permission implements Serializable {
+
+  private static final long serialVersionUID = -4216474203316917236L;
+
   private PermissionType permissionType;
 
   private boolean        isAllowed = false;
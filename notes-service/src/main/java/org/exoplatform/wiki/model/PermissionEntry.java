@@ -19,11 +19,15 @@
 
 package org.exoplatform.wiki.model;
 
+import java.io.Serializable;
 import java.util.Arrays;
 
 import org.exoplatform.wiki.service.IDType;
 
-public class PermissionEntry {
+public class PermissionEntry implements Serializable {
+
+  private static final long serialVersionUID = 3573287455286317412L;
+
   private String       id;
 
   private String       fullName;
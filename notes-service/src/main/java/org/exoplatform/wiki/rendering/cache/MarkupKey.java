@@ -17,15 +17,28 @@
 package org.exoplatform.wiki.rendering.cache;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import org.exoplatform.wiki.service.WikiPageParams;
 
+/**
+ * Key of the caches of page markups and attachments count. It only holds the
+ * wiki type, the wiki owner, the page name and the section edit flag so that
+ * it is compact, serializable for cluster replication and free of hash
+ * collisions between pages.
+ */
 public class MarkupKey implements Serializable {
 
-  private WikiPageParams pageParams;
+  private static final long serialVersionUID = -2412760416823357218L;
+
+  private final String      wikiType;
+
+  private final String      wikiOwner;
+
+  private final String      pageName;
+
+  private final boolean     supportSectionEdit;
 
-  private boolean        supportSectionEdit;
-  
   /**
    * Instance new markup key
    *
@@ -33,42 +46,43 @@ public class MarkupKey implements Serializable {
    * @param supportSectionEdit the content supports section editing or not
    */
   public MarkupKey(WikiPageParams pageParams, boolean supportSectionEdit) {
-    this.pageParams = pageParams;
+    this.wikiType = pageParams.getType();
+    this.wikiOwner = pageParams.getOwner();
+    this.pageName = pageParams.getPageName();
     this.supportSectionEdit = supportSectionEdit;
   }
 
-  /* (non-Javadoc)
-   * @see java.lang.Object#hashCode()
-   */
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((pageParams == null) ? 0 : pageParams.hashCode());
-    result = prime * result + (supportSectionEdit ? 1231 : 1237);
-    return result;
+    return Objects.hash(wikiType, wikiOwner, pageName, supportSectionEdit);
   }
 
-  /* (non-Javadoc)
-   * @see java.lang.Object#equals(java.lang.Object)
-   */
   @Override
   public boolean equals(Object obj) {
     if (this == obj)
       return true;
-    if (obj == null)
-      return false;
-    if (getClass() != obj.getClass())
+    if (obj == null || getClass() != obj.getClass())
       return false;
     MarkupKey other = (MarkupKey) obj;
-    if (pageParams == null) {
-      if (other.pageParams != null)
-        return false;
-    } else if (!pageParams.equals(other.pageParams))
-      return false;
-    if (supportSectionEdit != other.supportSectionEdit)
-      return false;
-    return true;
+    return supportSectionEdit == other.supportSectionEdit && Objects.equals(wikiType, other.wikiType)
+        && Objects.equals(wikiOwner, other.wikiOwner) && Objects.equals(pageName, other.pageName);
+  }
+
+  @Override
+  public String toString() {
+    return wikiType + ":" + wikiOwner + ":" + pageName + (supportSectionEdit ? ":sectionEdit" : "");
+  }
+
+  public String getWikiType() {
+    return wikiType;
+  }
+
+  public String getWikiOwner() {
+    return wikiOwner;
+  }
+
+  public String getPageName() {
+    return pageName;
   }
 
   /**
@@ -79,9 +93,9 @@ public class MarkupKey implements Serializable {
   }
 
   /**
-   * @param supportSectionEdit the supportSectionEdit to set
+   * @return the same key with the given section edit flag
    */
-  public void setSupportSectionEdit(boolean supportSectionEdit) {
-    this.supportSectionEdit = supportSectionEdit;
+  public MarkupKey withSupportSectionEdit(boolean supportSectionEdit) {
+    return new MarkupKey(new WikiPageParams(wikiType, wikiOwner, pageName), supportSectionEdit);
   }
 }
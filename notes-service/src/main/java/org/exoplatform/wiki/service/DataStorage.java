@@ -30,7 +30,11 @@ import org.exoplatform.wiki.service.search.TemplateSearchData;
 import org.exoplatform.wiki.service.search.TemplateSearchResult;
 import org.exoplatform.wiki.service.search.WikiSearchData;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public interface DataStorage {
 
@@ -53,6 +57,28 @@ public interface DataStorage {
    */
   public Page getPageOfWikiByName(String wikiType, String wikiOwner, String pageName) throws WikiException;
 
+  /**
+   * Get the pages of a wiki by their names
+   *
+   * @param wikiType The wiki type
+   * @param wikiOwner The wiki owner
+   * @param pageNames The names of the pages in the wiki
+   * @return The pages found, by page name
+   * @throws WikiException if an error occured
+   */
+  public default Map<String, Page> getPagesOfWikiByNames(String wikiType,
+                                                          String wikiOwner,
+                                                          Collection<String> pageNames) throws WikiException {
+    Map<String, Page> pagesByName = new HashMap<>();
+    for (String pageName : pageNames) {
+      Page page = getPageOfWikiByName(wikiType, wikiOwner, pageName);
+      if (page != null) {
+        pagesByName.put(pageName, page);
+      }
+    }
+    return pagesByName;
+  }
+
   /**
    * Get a wiki page by its unique id
    *
@@ -79,8 +105,108 @@ public interface DataStorage {
 
   public boolean hasChildren(long noteId) throws WikiException;
 
+  /**
+   * Count the children notes of several pages in one lookup
+   *
+   * @param pageIds ids of the parent pages
+   * @return number of children notes by page id, pages without children are
+   *         not in the map
+   * @throws WikiException if an error occured
+   */
+  public Map<Long, Long> countChildren(Collection<Long> pageIds) throws WikiException;
+
+  /**
+   * Count the children notes, and optionally the draft notes of a user, of
+   * several pages in one lookup
+   *
+   * @param pageIds ids of the parent pages
+   * @param userId the user whose draft notes are counted
+   * @param withDrafts if set to true counts the draft notes too
+   * @return number of children by page id, pages without children are not in
+   *         the map
+   * @throws WikiException if an error occured
+   */
+  public Map<Long, Long> countChildren(Collection<Long> pageIds, String userId, boolean withDrafts) throws WikiException;
+
+  /**
+   * Get the descendant notes of a page, and optionally the draft notes of the
+   * user attached to them, using the materialized page tree index
+   *
+   * @param page the root page of the subtree
+   * @param userId the user whose draft notes are retrieved
+   * @param depth maximum depth of the descendants relatively to the page, a
+   *          negative value to retrieve the whole subtree
+   * @param withDrafts if set to true returns the draft notes of the user too
+   * @return descendant notes ordered by depth and name, followed by the draft
+   *         notes
+   * @throws WikiException if the page does not exist
+   */
+  public List<Page> getDescendantsOfPage(Page page, String userId, int depth, boolean withDrafts) throws WikiException;
+
+  /**
+   * Get the ancestors of a page in one lookup of the materialized page tree
+   * index
+   *
+   * @param pageId id of the page
+   * @return the ancestor pages, from the wiki home page to the parent page, an
+   *         empty list for a wiki home page
+   * @throws WikiException if the page does not exist
+   */
+  public List<Page> getAncestorsOfPage(String pageId) throws WikiException;
+
   public void deletePage(String wikiType, String wikiOwner, String pageId) throws WikiException;
 
+  /**
+   * Hard delete the pages flagged as deleted before a date, with their
+   * versions, attachments, moves history and the drafts targeting them. A
+   * page is purged only once its children are purged, so a deleted subtree is
+   * purged from its leaves to its root over successive calls.
+   *
+   * @param deletedBefore the date before which the pages have been deleted,
+   *          the pages deleted without a deletion date are always purged
+   * @param maxPages the maximum number of pages to purge
+   * @return the number of purged pages, 0 when there is nothing left to purge
+   * @throws WikiException if an error occured
+   */
+  public int purgeDeletedPages(Date deletedBefore, int maxPages) throws WikiException;
+
+  /**
+   * @param deletedBefore the date before which the pages have been deleted
+   * @return the number of deleted pages left to purge
+   * @throws WikiException if an error occured
+   */
+  public long countDeletedPages(Date deletedBefore) throws WikiException;
+
+  /**
+   * Fix the references count of a batch of the attachment files shared by the
+   * attachments with the same content, and delete the files no longer
+   * referenced. The files updated since the given date are left unchanged, as
+   * the attachments referencing them may not be committed yet.
+   *
+   * @param fromId the id of the last checked attachment file, 0 to start from
+   *          the first one
+   * @param maxAttachmentFiles the maximum number of attachment files to check
+   * @param updatedBefore the date before which the checked files were last
+   *          updated
+   * @return the id of the last checked attachment file, 0 when there is nothing
+   *         left to check
+   * @throws WikiException if an error occured
+   */
+  public long reconcileAttachmentFiles(long fromId, int maxAttachmentFiles, Date updatedBefore) throws WikiException;
+
+  /**
+   * Compute the tree path of a batch of the pages created before the tree path
+   * existed, and of their ancestors
+   *
+   * @param fromId the id of the last page of the previous batch, 0 to start
+   *          from the first page
+   * @param maxPages the maximum number of pages to compute the tree path of
+   * @return the id of the last page of the batch, 0 when there is nothing left
+   *         to compute
+   * @throws WikiException if an error occured
+   */
+  public long initPagesTreePaths(long fromId, int maxPages) throws WikiException;
+
   public void deleteDraftOfPage(Page page, String username) throws WikiException;
 
   public void deleteDraftByName(String newDraftPageName, String username) throws WikiException;
@@ -151,12 +277,63 @@ public interface DataStorage {
 
   public List<Attachment> getAttachmentsOfPage(Page page) throws WikiException;
 
+  /**
+   * @param page the page
+   * @return the number of attachments of the page
+   * @throws WikiException if the page does not exist
+   */
+  public default int countAttachments(Page page) throws WikiException {
+    List<Attachment> attachments = getAttachmentsOfPage(page);
+    return attachments == null ? 0 : attachments.size();
+  }
+
+  /**
+   * @param pagesIds the ids of the pages
+   * @return the number of attachments of each page, by page id
+   * @throws WikiException if an error occured
+   */
+  public default Map<String, Integer> countAttachments(List<String> pagesIds) throws WikiException {
+    Map<String, Integer> countByPageId = new HashMap<>();
+    for (String pageId : pagesIds) {
+      Page page = getPageById(pageId);
+      countByPageId.put(pageId, page == null ? 0 : countAttachments(page));
+    }
+    return countByPageId;
+  }
+
+  /**
+   * Get the attachment of a page by its name
+   *
+   * @param attachmentName the attachment name
+   * @param page the page
+   * @param loadContent whether the attachment content can be read
+   * @return the attachment, null if the page has no attachment with this name
+   * @throws WikiException if the page does not exist
+   */
+  public default Attachment getAttachmentOfPageByName(String attachmentName, Page page, boolean loadContent) throws WikiException {
+    for (Attachment attachment : getAttachmentsOfPage(page, loadContent)) {
+      if (attachment.getName().equals(attachmentName)) {
+        return attachment;
+      }
+    }
+    return null;
+  }
+
   public void addAttachmentToPage(Attachment attachment, Page page) throws WikiException;
 
   public void deleteAttachmentOfPage(String attachmentId, Page page) throws WikiException;
 
   public Page getHelpSyntaxPage(String syntaxId, boolean fullContent, List<ValuesParam> syntaxHelpParams, ConfigurationManager configurationManager) throws WikiException;
 
+  /**
+   * Get the permissions of several pages in one lookup
+   *
+   * @param pageIds ids of the pages
+   * @return view and edit permissions by page id
+   * @throws WikiException if an error occured
+   */
+  public Map<Long, List<PermissionEntry>> getPermissionsOfPages(Collection<Long> pageIds) throws WikiException;
+
   /**
    * Check if the identity has the given permission type on a page
    * @param page Page
@@ -185,10 +362,59 @@ public interface DataStorage {
 
   public List<PageHistory> getHistoryOfPage(Page page) throws WikiException;
 
+  /**
+   * Get a page of the versions history of a page, without the versions content
+   *
+   * @param page the page
+   * @param offset the offset of the first version, starting from the latest
+   * @param limit the maximum number of versions, 0 for all
+   * @return the versions, latest first
+   * @throws WikiException if the page does not exist
+   */
+  public List<PageHistory> getHistoryOfPage(Page page, int offset, int limit) throws WikiException;
+
+  /**
+   * @param page the page
+   * @return the number of the latest version of the page, null if it has no
+   *         version
+   * @throws WikiException if the page does not exist
+   */
+  public Long getLatestVersionNumberOfPage(Page page) throws WikiException;
+
+  /**
+   * @param page the page
+   * @return the number of versions of the page
+   * @throws WikiException if the page does not exist
+   */
+  public long countVersionsOfPage(Page page) throws WikiException;
+
+  /**
+   * @param page the page
+   * @param versionNumber the version number
+   * @return the content of the version, null if the version does not exist
+   * @throws WikiException if the page does not exist
+   */
+  public String getVersionContentOfPage(Page page, long versionNumber) throws WikiException;
+
   public void addPageVersion(Page page, String userName) throws WikiException;
 
   public void restoreVersionOfPage(String versionName, Page page) throws WikiException;
 
+  /**
+   * Convert the versions stored with their full content to the compressed
+   * versions storage, when it is enabled. The versions of each page are
+   * converted in their own transaction and the pages whose versions cannot be
+   * converted are skipped.
+   *
+   * @param fromPageId the id of the last page of the previous batch, 0 to
+   *          start from the first page
+   * @param maxPages the maximum number of pages to convert the versions of
+   * @return the id of the last page of the batch, 0 when there is nothing left
+   *         to convert
+   * @throws WikiException if an error occured
+   */
+  public long compressPageVersions(long fromPageId, int maxPages) throws WikiException;
+
   public Page updatePage(Page page) throws WikiException;
 
   public List<String> getPreviousNamesOfPage(Page page) throws WikiException;
@@ -0,0 +1,135 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress metrics of a notes export: the number of exported notes, the number
+ * of bytes written to the zip file, the time spent processing the notes
+ * content and the time spent in each {@link ExportAction} phase. The metrics
+ * are updated by the export threads and read by the status requests.
+ */
+public class ExportMetrics {
+
+  private final AtomicInteger     exportedNotes      = new AtomicInteger();
+
+  private final AtomicLong        bytesWritten       = new AtomicLong();
+
+  private final AtomicLong        noteProcessingTime = new AtomicLong();
+
+  private final Map<String, Long> phaseDurations     = new LinkedHashMap<>();
+
+  private long                    startTime;
+
+  private long                    endTime;
+
+  private String                  currentPhase;
+
+  private long                    currentPhaseStartTime;
+
+  /**
+   * Start a new phase of the export, ending the current one
+   *
+   * @param phase the phase name, one of the {@link ExportAction} constants
+   */
+  public synchronized void startPhase(String phase) {
+    long now = System.currentTimeMillis();
+    if (startTime == 0) {
+      startTime = now;
+    }
+    endCurrentPhase(now);
+    currentPhase = phase;
+    currentPhaseStartTime = now;
+  }
+
+  /**
+   * End the export, and its current phase
+   */
+  public synchronized void end() {
+    long now = System.currentTimeMillis();
+    endCurrentPhase(now);
+    endTime = now;
+  }
+
+  public void addExportedNote() {
+    exportedNotes.incrementAndGet();
+  }
+
+  public void addBytesWritten(long bytes) {
+    bytesWritten.addAndGet(bytes);
+  }
+
+  public void addNoteProcessingTime(long duration) {
+    noteProcessingTime.addAndGet(duration);
+  }
+
+  public int getExportedNotes() {
+    return exportedNotes.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return the cumulated time in milliseconds spent by the processing threads
+   *         on the notes content, which can exceed the export duration
+   */
+  public long getNoteProcessingTime() {
+    return noteProcessingTime.get();
+  }
+
+  /**
+   * @return the duration of the export in milliseconds, up to now if it is
+   *         not ended
+   */
+  public synchronized long getDuration() {
+    if (startTime == 0) {
+      return 0;
+    }
+    return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+  }
+
+  public double getNotesPerSecond() {
+    long duration = getDuration();
+    return duration == 0 ? 0 : getExportedNotes() * 1000d / duration;
+  }
+
+  /**
+   * @return the duration in milliseconds of each phase, including the elapsed
+   *         time of the current one
+   */
+  public synchronized Map<String, Long> getPhaseDurations() {
+    Map<String, Long> durations = new LinkedHashMap<>(phaseDurations);
+    if (currentPhase != null) {
+      durations.merge(currentPhase, System.currentTimeMillis() - currentPhaseStartTime, Long::sum);
+    }
+    return durations;
+  }
+
+  private void endCurrentPhase(long now) {
+    if (currentPhase != null) {
+      phaseDurations.merge(currentPhase, now - currentPhaseStartTime, Long::sum);
+      currentPhase = null;
+    }
+  }
+}
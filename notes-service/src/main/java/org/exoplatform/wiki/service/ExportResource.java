@@ -18,24 +18,91 @@
 
 package org.exoplatform.wiki.service;
 
-import lombok.Data;
-import org.exoplatform.wiki.model.ExportList;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
-@Data
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * State of a notes export shared between the request threads and the export
+ * thread. The status is updated atomically and the cancellation is a volatile
+ * flag, so that the export thread can check it after each note without any
+ * lookup.
+ */
+@Getter
+@Setter
 public class ExportResource {
 
-  private int exportId;
+  private int                             exportId;
+
+  private String                          userId;
+
+  private ExportAction                    action;
+
+  private final AtomicReference<String>   status             = new AtomicReference<>();
+
+  private volatile boolean                cancelled;
+
+  private final AtomicInteger             exportedNotesCount = new AtomicInteger();
+
+  private int                             totalNumber;
+
+  private volatile File                   zipFile;
+
+  private ExportMetrics                   metrics            = new ExportMetrics();
+
+  private volatile long                   lastAccessTime     = System.currentTimeMillis();
+
+  public String getStatus() {
+    return status.get();
+  }
+
+  public void setStatus(String status) {
+    this.status.set(status);
+  }
 
-  private ExportAction action;
+  /**
+   * Update the status if it has not been changed meanwhile, by a cancellation
+   * for example
+   *
+   * @param expectedStatus the current status
+   * @param newStatus the new status
+   * @return true if the status has been updated
+   */
+  public boolean updateStatus(String expectedStatus, String newStatus) {
+    return status.compareAndSet(expectedStatus, newStatus);
+  }
 
-  private String status;
+  /**
+   * Cancel the export
+   *
+   * @return the status of the export before its cancellation
+   */
+  public String cancel() {
+    cancelled = true;
+    return status.getAndSet(ExportStatus.CANCELLED.name());
+  }
 
-  private ExportList notesExport;
+  public int getExportedNotesCount() {
+    return exportedNotesCount.get();
+  }
 
-  private int exportedNotesCount = 0;
+  public void setExportedNotesCount(int exportedNotesCount) {
+    this.exportedNotesCount.set(exportedNotesCount);
+  }
 
-  private int totalNumber;
+  public int incrementExportedNotesCount() {
+    return exportedNotesCount.incrementAndGet();
+  }
 
-  private File zipFile;
+  /**
+   * @return true if the export is waiting or running
+   */
+  public boolean isActive() {
+    String currentStatus = getStatus();
+    return !cancelled && (ExportStatus.STARTED.name().equals(currentStatus)
+        || ExportStatus.IN_PROGRESS.name().equals(currentStatus));
+  }
 }
@@ -15,6 +15,7 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 
+
 package org.exoplatform.wiki.service;
 
 import java.io.*;
@@ -22,14 +23,18 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.component.RequestLifeCycle;
 import org.exoplatform.services.log.ExoLogger;
@@ -39,6 +44,15 @@ import org.exoplatform.social.common.service.HTMLUploadImageProcessor;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.model.*;
 
+/**
+ * Export of notes into a zip file. The notes tree is walked one note at a time
+ * and each note is written to the JSON entry of the zip as soon as its content
+ * is processed, so that only the note being exported and the names of the
+ * files it references are kept in memory. The files referenced by the exported
+ * notes are added to the zip once the JSON entry is complete. The content of
+ * the notes is processed by a shared executor, ahead of the note being
+ * written, while the notes are written in the tree order.
+ */
 public class ExportThread implements Runnable {
 
   private static final Log               log                          = ExoLogger.getLogger(ExportThread.class);
@@ -63,16 +77,24 @@ public class ExportThread implements Runnable {
 
   private final ExportData               exportData;
 
+  private final ExecutorService          noteProcessingExecutor;
+
+  private final int                      notesProcessingWindow;
+
   public ExportThread(NoteService noteService,
                       WikiService wikiService,
                       NotesExportService notesExportService,
                       HTMLUploadImageProcessor htmlUploadImageProcessor,
-                      ExportData exportData) {
+                      ExportData exportData,
+                      ExecutorService noteProcessingExecutor,
+                      int notesProcessingWindow) {
     this.noteService = noteService;
     this.wikiService = wikiService;
     this.notesExportService = notesExportService;
     this.htmlUploadImageProcessor = htmlUploadImageProcessor;
     this.exportData = exportData;
+    this.noteProcessingExecutor = noteProcessingExecutor;
+    this.notesProcessingWindow = Math.max(1, notesProcessingWindow);
   }
 
   public static void cleanUp(File file) throws IOException {
@@ -81,44 +103,6 @@ public class ExportThread implements Runnable {
     }
   }
 
-  public static File zipFiles(String zipFileName,
-                              List<File> addToZip,
-                              NotesExportService notesExportService,
-                              int exportId) throws IOException {
-
-    String zipPath = System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + zipFileName;
-    FileOutputStream fos = new FileOutputStream(zipPath);
-    try (ZipOutputStream zipOut = new ZipOutputStream(fos)) {
-      for (File fileToZip : addToZip) {
-        ExportResource exportResource = notesExportService.getExportRessourceById(exportId);
-        if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-          return null;
-        }
-        try (FileInputStream fis = new FileInputStream(fileToZip)) {
-          ZipEntry zipEntry = new ZipEntry(fileToZip.getName());
-          zipOut.putNextEntry(zipEntry);
-          byte[] bytes = new byte[1024];
-          int length;
-          while ((length = fis.read(bytes)) >= 0) {
-            zipOut.write(bytes, 0, length);
-          }
-          fis.close();
-        } catch (IOException e) {
-          log.warn("cannot add the file: {} to the zip", fileToZip.getName());
-        }
-      }
-      zipOut.close();
-      fos.close();
-    } catch (IOException e) {
-      log.warn("cannot zip files");
-    }
-    File zip = new File(zipPath);
-    if (!zip.exists()) {
-      throw new FileNotFoundException("The created zip file could not be found");
-    }
-    return zip;
-  }
-
   @Override
   public void run() {
     try {
@@ -135,285 +119,404 @@ public class ExportThread implements Runnable {
   }
 
   public void processExport(int exportId, String[] notesToExportIds, boolean exportAll, Identity identity) throws IOException {
-
-    File zipFile = null;
     ExportResource exportResource = notesExportService.getExportRessourceById(exportId);
-    if (exportResource != null) {
-      exportResource.setStatus(ExportStatus.IN_PROGRESS.name());
-      exportResource.getAction().setStarted(true);
-      exportResource.getAction().setAction(ExportAction.GETTING_NOTES);
-      Page note_ = null;
-      List<NoteToExport> noteToExportList = new ArrayList();
-      if (exportAll) {
-        for (String noteId : notesToExportIds) {
-          try {
-            Page note = noteService.getNoteById(noteId, identity);
-            if (note == null) {
-              log.warn("Failed to export note {}: note not find ", noteId);
-              continue;
-            }
-            if (note_ == null)
-              note_ = note;
-            NoteToExport noteToExport = getNoteToExport(new NoteToExport(note.getId(),
-                                                                         note.getName(),
-                                                                         note.getOwner(),
-                                                                         note.getAuthor(),
-                                                                         note.getContent(),
-                                                                         note.getSyntax(),
-                                                                         note.getTitle(),
-                                                                         note.getComment(),
-                                                                         note.getWikiId(),
-                                                                         note.getWikiType(),
-                                                                         note.getWikiOwner()),
-                                                        exportId,
-                                                        identity);
-            if (noteToExport == null) {
-              exportResource = notesExportService.getExportRessourceById(exportId);
-              if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-                return;
-              }
-            }
-            noteToExportList.add(noteToExport);
-            exportResource.getAction().setNotesGetted(true);
-          } catch (IllegalAccessException e) {
-            log.error("User does not have  permissions on the note {}", noteId, e);
-          } catch (Exception ex) {
-            log.warn("Failed to export note {} ", noteId, ex);
-            Thread.currentThread().interrupt();
-          }
-        }
-      } else {
-        List<NoteToExport> allNotesToExport = new ArrayList<>();
-        int maxAncestors = 0;
-        for (String noteId : notesToExportIds) {
-          Page note;
-          try {
-            note = noteService.getNoteById(noteId, identity);
-            if (note == null) {
-              log.warn("Failed to export note {}: note not find ", noteId);
-              continue;
-            }
-            NoteToExport noteToExport = new NoteToExport(note.getId(),
-                                                         note.getName(),
-                                                         note.getOwner(),
-                                                         note.getAuthor(),
-                                                         note.getContent(),
-                                                         note.getSyntax(),
-                                                         note.getTitle(),
-                                                         note.getComment(),
-                                                         note.getWikiId(),
-                                                         note.getWikiType(),
-                                                         note.getWikiOwner());
-            noteToExport.setContent(processImagesForExport(note));
-            noteToExport.setContent(processNotesLinkForExport(noteToExport));
-            LinkedList<String> ancestors = getNoteAncestorsIds(noteToExport.getId());
-            noteToExport.setAncestors(ancestors);
-            if (ancestors.size() > maxAncestors) {
-              maxAncestors = ancestors.size();
-            }
-            allNotesToExport.add(noteToExport);
-            exportResource = notesExportService.getExportRessourceById(exportId);
-            if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-              notesExportService.removeExportResource(exportId);
-              return;
-            }
-            exportResource.setExportedNotesCount(exportResource.getExportedNotesCount() + 1);
-          } catch (IllegalAccessException e) {
-            log.error("User does not have  permissions on the note {}", noteId, e);
-          } catch (Exception ex) {
-            log.warn("Failed to export note {} ", noteId, ex);
-          }
+    if (exportResource == null) {
+      return;
+    }
+    if (!exportResource.updateStatus(ExportStatus.STARTED.name(), ExportStatus.IN_PROGRESS.name())) {
+      // cancelled while waiting for an export thread
+      notesExportService.removeExportResource(exportId);
+      return;
+    }
+    exportResource.getAction().setStarted(true);
+    startPhase(exportResource, ExportAction.GETTING_NOTES);
+
+    ExportContext context = new ExportContext(exportResource, exportAll, identity);
+    List<Page> rootNotes = new ArrayList<>();
+    List<Callable<Page>> rootNoteLoaders = new ArrayList<>();
+    if (exportAll) {
+      for (String noteId : notesToExportIds) {
+        Page note = getNoteToExport(noteId, identity);
+        if (note != null) {
+          rootNotes.add(note);
+          rootNoteLoaders.add(() -> note);
         }
-        exportResource.getAction().setNotesGetted(true);
-        exportResource.getAction().setAction(ExportAction.UPDATING_NOTES_PARENTS);
-        for (NoteToExport noteToExport : allNotesToExport) {
-          noteToExport.setParent(getParentOfNoteFromExistingNotes(noteToExport.getAncestors(),
-                                                                  allNotesToExport,
-                                                                  notesToExportIds));
+      }
+    } else {
+      for (String noteId : notesToExportIds) {
+        Page note = getNoteToExport(noteId, identity);
+        if (note == null) {
+          continue;
         }
-        if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
+        context.ancestorsByNoteId.put(note.getId(), getNoteAncestorsIds(note.getId()));
+        if (exportResource.isCancelled()) {
           notesExportService.removeExportResource(exportId);
           return;
         }
-        for (int level = maxAncestors; level >= 0; level--) {
-          List<NoteToExport> bottomNotes = getBottomNotesToExport(allNotesToExport, level);
-          for (NoteToExport bottomNote : bottomNotes) {
-            NoteToExport parent = bottomNote.getParent();
-            if (parent != null) {
-              List<NoteToExport> children = parent.getChildren();
-              if (children != null) {
-                children.add(bottomNote);
-              } else {
-                children = new ArrayList<>(Collections.singletonList(bottomNote));
-              }
-              for (NoteToExport child : children) {
-                NoteToExport currentParent = new NoteToExport(parent);
-                currentParent.setChildren(null);
-                currentParent.setParent(null);
-                child.setParent(currentParent);
-              }
-              parent.setChildren(children);
-              allNotesToExport.remove(bottomNote);
-              allNotesToExport.set(allNotesToExport.indexOf(parent), parent);
-            }
-          }
-        }
-        noteToExportList.addAll(allNotesToExport);
       }
-      exportResource = notesExportService.getExportRessourceById(exportId);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        notesExportService.removeExportResource(exportId);
-        return;
+      exportResource.getAction().setNotesGetted(true);
+      startPhase(exportResource, ExportAction.UPDATING_NOTES_PARENTS);
+      for (String noteId : context.ancestorsByNoteId.keySet()) {
+        context.childrenIdsByNoteId.put(noteId, new ArrayList<>());
       }
-      exportResource.getAction().setNotesPrepared(true);
-      exportResource.getAction().setAction(ExportAction.CREATING_CONTENT_DATA);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        notesExportService.removeExportResource(exportId);
-        return;
+      for (String noteId : context.ancestorsByNoteId.keySet()) {
+        String parentId = getParentIdFromExportedNotes(context.ancestorsByNoteId.get(noteId),
+                                                       context.ancestorsByNoteId.keySet());
+        if (parentId != null) {
+          // notes having an exported ancestor are written under it
+          context.childrenIdsByNoteId.get(parentId).add(noteId);
+        } else {
+          rootNoteLoaders.add(() -> noteService.getNoteById(noteId));
+        }
       }
-      ExportList notesExport = new ExportList(new Date().getTime(), noteToExportList);
-      exportResource.setNotesExport(notesExport);
-      List<File> files = new ArrayList<>();
-      File temp;
-      temp = File.createTempFile("notesExport_" + new Date().getTime(), ".json");
+    }
+    if (exportResource.isCancelled()) {
+      notesExportService.removeExportResource(exportId);
+      return;
+    }
+    exportResource.getAction().setNotesPrepared(true);
+    startPhase(exportResource, ExportAction.CREATING_CONTENT_DATA);
+
+    File zipFile = new File(System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + EXPORT_ZIP_PREFIX + exportId
+        + EXPORT_ZIP_EXTENSION);
+    boolean completed = false;
+    try (ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(new MeteredOutputStream(new FileOutputStream(zipFile),
+                                                                                                       context.metrics)))) {
+      zipOut.putNextEntry(new ZipEntry("notesExport_" + new Date().getTime() + ".json"));
       ObjectMapper mapper = new ObjectMapper();
-      String json = mapper.writeValueAsString(notesExport);
-      String contentUpdated = json;
-      String fileName = "";
-      String filePath = "";
-      exportResource.getAction().setJsonCreated(true);
-      exportResource.getAction().setAction(ExportAction.UPDATING_IMAGES_URLS);
-      while (contentUpdated.contains(IMAGE_URL_REPLACEMENT_PREFIX)) {
-        fileName = contentUpdated.split(IMAGE_URL_REPLACEMENT_PREFIX)[1].split(IMAGE_URL_REPLACEMENT_SUFFIX)[0];
-        filePath = System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + fileName;
-        files.add(new File(filePath));
-        contentUpdated = contentUpdated.replace(IMAGE_URL_REPLACEMENT_PREFIX + fileName + IMAGE_URL_REPLACEMENT_SUFFIX, "");
-      }
-      exportResource = notesExportService.getExportRessourceById(exportId);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        for (File file : files) {
-          cleanUp(file);
+      try (JsonGenerator generator = mapper.getFactory().createGenerator(zipOut, JsonEncoding.UTF8)) {
+        // the zip stream stays open to add the exported files after the JSON
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeNumberField("version", 0);
+        generator.writeNumberField("exportDate", new Date().getTime());
+        generator.writeArrayFieldStart("notes");
+        if (!writeNotes(generator, rootNoteLoaders, null, context)) {
+          return;
         }
-        notesExportService.removeExportResource(exportId);
-        return;
+        generator.writeEndArray();
+        generator.writeEndObject();
       }
+      zipOut.closeEntry();
+      exportResource.getAction().setNotesGetted(true);
+      exportResource.getAction().setJsonCreated(true);
       exportResource.getAction().setImageUrlsUpdated(true);
-      try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
-        bw.write(json);
-      }
-      files.add(temp);
-      exportResource = notesExportService.getExportRessourceById(exportId);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        for (File file : files) {
-          cleanUp(file);
+      startPhase(exportResource, ExportAction.CREATING_ZIP_FILE);
+      for (String fileName : context.exportedFiles) {
+        if (exportResource.isCancelled()) {
+          return;
         }
+        addFileToZip(zipOut, new File(System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + fileName));
+      }
+      completed = true;
+    } catch (WikiException e) {
+      throw new IOException("Cannot export notes", e);
+    } finally {
+      for (String fileName : context.exportedFiles) {
+        cleanUp(new File(System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + fileName));
+      }
+      if (!completed) {
+        cleanUp(zipFile);
         notesExportService.removeExportResource(exportId);
-        return;
       }
-      exportResource.getAction().setAction(ExportAction.CREATING_ZIP_FILE);
-      String zipName = EXPORT_ZIP_PREFIX + exportId + EXPORT_ZIP_EXTENSION;
-      exportResource.setZipFile(zipFile);
-      zipFile = zipFiles(zipName, files, notesExportService, exportId);
-      exportResource.setZipFile(zipFile);
-      exportResource = notesExportService.getExportRessourceById(exportId);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        for (File file : files) {
-          cleanUp(file);
+    }
+    exportResource.setZipFile(zipFile);
+    if (exportResource.isCancelled()) {
+      cleanUp(zipFile);
+      notesExportService.removeExportResource(exportId);
+      return;
+    }
+    String date = new SimpleDateFormat("dd_MM_yyyy").format(new Date());
+    Page uploadNote = rootNotes.isEmpty() ? null : rootNotes.get(0);
+    if (uploadNote != null && uploadNote.getWikiType().toUpperCase().equals(WikiType.GROUP.name())) {
+      htmlUploadImageProcessor.uploadSpaceFile(zipFile.getPath(),
+                                               uploadNote.getWikiOwner(),
+                                               "notesExport_" + date + ".zip",
+                                               "Documents/Notes/exports");
+    }
+    if (uploadNote != null && uploadNote.getWikiType().toUpperCase().equals(WikiType.USER.name())) {
+      htmlUploadImageProcessor.uploadUserFile(zipFile.getPath(),
+                                              uploadNote.getWikiOwner(),
+                                              "notesExport_" + date + ".zip",
+                                              "Documents/Notes/exports");
+    }
+    if (!exportResource.updateStatus(ExportStatus.IN_PROGRESS.name(), ExportStatus.ZIP_CREATED.name())) {
+      cleanUp(zipFile);
+      notesExportService.removeExportResource(exportId);
+      return;
+    }
+    exportResource.getAction().setZipCreated(true);
+    exportResource.getAction().setAction(ExportAction.EXPORT_DATA_CREATED);
+    context.metrics.end();
+    log.info("Notes export {} done: {} notes exported in {} ms ({} notes/s), {} bytes written, phases durations {}",
+             exportId,
+             context.metrics.getExportedNotes(),
+             context.metrics.getDuration(),
+             String.format("%.1f", context.metrics.getNotesPerSecond()),
+             context.metrics.getBytesWritten(),
+             context.metrics.getPhaseDurations());
+  }
+
+  /**
+   * Write sibling notes in order. The content of the notes is processed by the
+   * note processing executor ahead of the note being written, within a window
+   * bounded by the number of processing threads, so that the processing of
+   * the next notes overlaps the writing of the current note and its
+   * descendants.
+   *
+   * @param generator the JSON generator of the export entry
+   * @param noteLoaders the loaders of the notes to write, in order
+   * @param parent the parent of the notes, null for the exported roots
+   * @param context the export context
+   * @return false if the export has been cancelled
+   */
+  private boolean writeNotes(JsonGenerator generator,
+                             List<Callable<Page>> noteLoaders,
+                             Page parent,
+                             ExportContext context) throws IOException, WikiException {
+    Iterator<Callable<Page>> noteLoadersIterator = noteLoaders.iterator();
+    Deque<Future<Page>> processedNotes = new ArrayDeque<>();
+    try {
+      submitNotesProcessing(noteLoadersIterator, processedNotes, context);
+      while (!processedNotes.isEmpty()) {
+        Page note = getProcessedNote(processedNotes.poll());
+        submitNotesProcessing(noteLoadersIterator, processedNotes, context);
+        if (note != null && !writeNote(generator, note, parent, context)) {
+          return false;
         }
-        if (zipFile != null) {
-          cleanUp(zipFile);
+      }
+      return true;
+    } finally {
+      for (Future<Page> processedNote : processedNotes) {
+        processedNote.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Write a note, its parent reference and its exported children
+   *
+   * @param generator the JSON generator of the export entry
+   * @param note the note to write, with its processed content
+   * @param parent the parent of the note, null for the exported roots
+   * @param context the export context
+   * @return false if the export has been cancelled
+   */
+  private boolean writeNote(JsonGenerator generator, Page note, Page parent, ExportContext context) throws IOException,
+                                                                                                   WikiException {
+    generator.writeStartObject();
+    writeNoteFields(generator, note);
+    if (parent == null && context.exportAll) {
+      writeParentField(generator, noteService.getParentNoteOf(note));
+    } else {
+      writeParentField(generator, parent);
+    }
+    List<Callable<Page>> childrenLoaders = new ArrayList<>();
+    if (context.exportAll) {
+      generator.writeNullField("ancestors");
+      for (Page child : noteService.getChildrenNoteOf(note, context.identity.getUserId(), false, false)) {
+        if (child != null) {
+          childrenLoaders.add(() -> child);
         }
-        notesExportService.removeExportResource(exportId);
-        return;
       }
-      String date = new SimpleDateFormat("dd_MM_yyyy").format(new Date());
-      if (zipFile != null && note_ != null && note_.getWikiType().toUpperCase().equals(WikiType.GROUP.name())) {
-        htmlUploadImageProcessor.uploadSpaceFile(zipFile.getPath(),
-                                                 note_.getWikiOwner(),
-                                                 "notesExport_" + date + ".zip",
-                                                 "Documents/Notes/exports");
+    } else {
+      generator.writeArrayFieldStart("ancestors");
+      for (String ancestorId : context.ancestorsByNoteId.get(note.getId())) {
+        generator.writeString(ancestorId);
       }
-      if (zipFile != null && note_ != null && note_.getWikiType().toUpperCase().equals(WikiType.USER.name())) {
-        htmlUploadImageProcessor.uploadUserFile(zipFile.getPath(),
-                                                note_.getWikiOwner(),
-                                                "notesExport_" + date + ".zip",
-                                                "Documents/Notes/exports");
+      generator.writeEndArray();
+      for (String childId : context.childrenIdsByNoteId.get(note.getId())) {
+        childrenLoaders.add(() -> noteService.getNoteById(childId));
       }
-      exportResource.setStatus(ExportStatus.ZIP_CREATED.name());
-      exportResource.getAction().setZipCreated(true);
-      exportResource.getAction().setAction(ExportAction.CLEANING_TEMP_FILE);
-      for (File file : files) {
-        cleanUp(file);
+    }
+    if (!incrementExportedNotesCount(context)) {
+      return false;
+    }
+    if (childrenLoaders.isEmpty() && !context.exportAll) {
+      generator.writeNullField("children");
+    } else {
+      generator.writeArrayFieldStart("children");
+      if (!writeNotes(generator, childrenLoaders, note, context)) {
+        return false;
       }
-      exportResource.getAction().setAction(ExportAction.EXPORT_DATA_CREATED);
+      generator.writeEndArray();
     }
+    generator.writeEndObject();
+    return true;
   }
 
-  private List<NoteToExport> getBottomNotesToExport(List<NoteToExport> allNotesToExport, int level) {
-    return allNotesToExport.stream().filter(export -> export.getAncestors().size() == level).collect(Collectors.toList());
+  private void submitNotesProcessing(Iterator<Callable<Page>> noteLoaders,
+                                     Deque<Future<Page>> processedNotes,
+                                     ExportContext context) {
+    while (noteLoaders.hasNext() && processedNotes.size() < notesProcessingWindow) {
+      Callable<Page> noteLoader = noteLoaders.next();
+      processedNotes.add(noteProcessingExecutor.submit(() -> processNote(noteLoader, context)));
+    }
   }
 
-  private NoteToExport getParentOfNoteFromExistingNotes(LinkedList<String> ancestors,
-                                                        List<NoteToExport> exports,
-                                                        String[] noteIds) {
-    NoteToExport parent = null;
-    Iterator<String> descendingIterator = ancestors.descendingIterator();
-    String parentId = null;
-    boolean parentFound = false;
-    while (descendingIterator.hasNext() && !parentFound) {
-      String current = descendingIterator.next();
-      if (Arrays.asList(noteIds).contains(current)) {
-        parentId = current;
-        parentFound = true;
+  private Page processNote(Callable<Page> noteLoader, ExportContext context) {
+    ExoContainerContext.setCurrentContainer(context.container);
+    RequestLifeCycle.begin(context.container);
+    try {
+      Page note = noteLoader.call();
+      if (note != null) {
+        long startTime = System.currentTimeMillis();
+        note.setContent(processContent(note, context.exportedFiles));
+        context.metrics.addNoteProcessingTime(System.currentTimeMillis() - startTime);
       }
+      return note;
+    } catch (Exception e) {
+      log.warn("Failed to load a note to export", e);
+      return null;
+    } finally {
+      RequestLifeCycle.end();
+    }
+  }
+
+  private Page getProcessedNote(Future<Page> processedNote) throws IOException {
+    try {
+      return processedNote.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Notes export interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException("Cannot process a note to export", e.getCause());
     }
-    if (parentId != null) {
-      String finalParentId = parentId;
-      Optional<NoteToExport> parentToExport = exports.stream().filter(export -> export.getId().equals(finalParentId)).findFirst();
-      if (parentToExport.isPresent()) {
-        parent = parentToExport.get();
+  }
+
+  private Page getNoteToExport(String noteId, Identity identity) {
+    try {
+      Page note = noteService.getNoteById(noteId, identity);
+      if (note == null) {
+        log.warn("Failed to export note {}: note not find ", noteId);
       }
+      return note;
+    } catch (IllegalAccessException e) {
+      log.error("User does not have  permissions on the note {}", noteId, e);
+    } catch (Exception ex) {
+      log.warn("Failed to export note {} ", noteId, ex);
     }
-    return parent;
+    return null;
   }
 
-  /**
-   * Recursive method to build the children and parent of a note
-   *
-   * @param note get the note details to be exported
-   * @return
-   * @throws WikiException
-   */
-  public NoteToExport getNoteToExport(NoteToExport note, int exportId, Identity identity) throws WikiException,
-                                                                                          IOException,
-                                                                                          InterruptedException {
+  private String processContent(Page note, Set<String> exportedFiles) {
+    NoteToExport noteToExport = new NoteToExport(note.getId(),
+                                                 note.getName(),
+                                                 note.getOwner(),
+                                                 note.getAuthor(),
+                                                 note.getContent(),
+                                                 note.getSyntax(),
+                                                 note.getTitle(),
+                                                 note.getComment(),
+                                                 note.getWikiId(),
+                                                 note.getWikiType(),
+                                                 note.getWikiOwner());
     try {
-      note.setContent(processImagesForExport(noteService.getNoteById(note.getId())));
+      noteToExport.setContent(processImagesForExport(note));
+      addExportedFiles(noteToExport.getContent(), exportedFiles);
     } catch (Exception e) {
       log.warn("Cannot process images for note {}", note.getId());
     }
     try {
-      note.setContent(processNotesLinkForExport(note));
+      noteToExport.setContent(processNotesLinkForExport(noteToExport));
     } catch (Exception e) {
       log.warn("Cannot process notes link for note {}", note.getId());
     }
-    ExportResource exportResource = notesExportService.getExportRessourceById(exportId);
-    if (exportResource != null) {
-      exportResource.setExportedNotesCount(exportResource.getExportedNotesCount() + 1);
-      if (exportResource.getStatus().equals(ExportStatus.CANCELLED.name())) {
-        return null;
+    return noteToExport.getContent();
+  }
+
+  private void writeNoteFields(JsonGenerator generator, Page note) throws IOException {
+    generator.writeStringField("id", note.getId());
+    generator.writeStringField("name", note.getName());
+    generator.writeStringField("owner", note.getOwner());
+    generator.writeStringField("author", note.getAuthor());
+    generator.writeStringField("content", note.getContent());
+    generator.writeStringField("syntax", note.getSyntax());
+    generator.writeStringField("title", note.getTitle());
+    generator.writeStringField("comment", note.getComment());
+    generator.writeStringField("wikiId", note.getWikiId());
+    generator.writeStringField("wikiType", note.getWikiType());
+    generator.writeStringField("wikiOwner", note.getWikiOwner());
+  }
+
+  private void writeParentField(JsonGenerator generator, Page parent) throws IOException {
+    if (parent == null) {
+      generator.writeNullField("parent");
+      return;
+    }
+    // the parent is only written as a reference, without its content
+    generator.writeObjectFieldStart("parent");
+    generator.writeStringField("id", parent.getId());
+    generator.writeStringField("name", parent.getName());
+    generator.writeStringField("owner", parent.getOwner());
+    generator.writeStringField("author", parent.getAuthor());
+    generator.writeStringField("syntax", parent.getSyntax());
+    generator.writeStringField("title", parent.getTitle());
+    generator.writeStringField("comment", parent.getComment());
+    generator.writeStringField("wikiId", parent.getWikiId());
+    generator.writeStringField("wikiType", parent.getWikiType());
+    generator.writeStringField("wikiOwner", parent.getWikiOwner());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Collect the names of the files referenced by a note content processed by
+   * {@link #processImagesForExport(Page)}
+   *
+   * @param content the processed content
+   * @param exportedFiles the names of the files to add to the export
+   */
+  private void addExportedFiles(String content, Set<String> exportedFiles) {
+    if (content == null) {
+      return;
+    }
+    int start = content.indexOf(IMAGE_URL_REPLACEMENT_PREFIX);
+    while (start >= 0) {
+      int end = content.indexOf(IMAGE_URL_REPLACEMENT_SUFFIX, start + IMAGE_URL_REPLACEMENT_PREFIX.length());
+      if (end < 0) {
+        break;
+      }
+      String fileName = content.substring(start + IMAGE_URL_REPLACEMENT_PREFIX.length(), end);
+      if (StringUtils.isNotBlank(fileName)) {
+        exportedFiles.add(fileName);
       }
+      start = content.indexOf(IMAGE_URL_REPLACEMENT_PREFIX, end + IMAGE_URL_REPLACEMENT_SUFFIX.length());
     }
-    List<NoteToExport> children = noteService.getChildrenNoteOf(note, identity.getUserId());
-    for (NoteToExport child : children) {
-      child.setParent(note);
+  }
+
+  private void addFileToZip(ZipOutputStream zipOut, File fileToZip) throws IOException {
+    if (!fileToZip.exists()) {
+      log.warn("cannot add the file: {} to the zip", fileToZip.getName());
+      return;
     }
-    note.setChildren(children);
-    note.setParent(noteService.getParentNoteOf(note));
-    for (NoteToExport child : children) {
-      getNoteToExport(child, exportId, identity);
+    zipOut.putNextEntry(new ZipEntry(fileToZip.getName()));
+    Files.copy(fileToZip.toPath(), zipOut);
+    zipOut.closeEntry();
+  }
+
+  private boolean incrementExportedNotesCount(ExportContext context) {
+    if (context.exportResource.isCancelled()) {
+      return false;
     }
-    return note;
+    context.exportResource.incrementExportedNotesCount();
+    context.metrics.addExportedNote();
+    return true;
+  }
+
+  private void startPhase(ExportResource exportResource, String action) {
+    exportResource.getAction().setAction(action);
+    exportResource.getMetrics().startPhase(action);
+  }
+
+  private String getParentIdFromExportedNotes(LinkedList<String> ancestors, Set<String> exportedNoteIds) {
+    Iterator<String> descendingIterator = ancestors.descendingIterator();
+    while (descendingIterator.hasNext()) {
+      String ancestorId = descendingIterator.next();
+      if (exportedNoteIds.contains(ancestorId)) {
+        return ancestorId;
+      }
+    }
+    return null;
   }
 
   public String processNotesLinkForExport(NoteToExport note) throws WikiException {
@@ -448,22 +551,6 @@ public class ExportThread implements Runnable {
     return content;
   }
 
-  public List<File> getFilesfromContent(NoteToExport note, List<File> files, String userId) throws WikiException {
-    String contentUpdated = note.getContent();
-    String fileName = "";
-    String filePath = "";
-    while (contentUpdated.contains("//-")) {
-      fileName = contentUpdated.split("//-")[1].split("-//")[0];
-      filePath = System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + fileName;
-      files.add(new File(filePath));
-      contentUpdated = contentUpdated.replace("//-" + fileName + "-//", "");
-    }
-    List<NoteToExport> children = noteService.getChildrenNoteOf(note, userId);
-    for (NoteToExport child : children) {
-      getFilesfromContent(child, files, userId);
-    }
-    return files;
-  }
 
   /**
    * Process images by creting images found in the content
@@ -482,11 +569,18 @@ public class ExportThread implements Runnable {
       urlToReplace = restUploadUrl + urlToReplace;
       String attachmentId = StringUtils.substringAfterLast(urlToReplace, "/");
       Attachment attachment = wikiService.getAttachmentOfPageByName(attachmentId, note, true);
-      if (attachment != null && attachment.getContent() != null) {
-        InputStream bis = new ByteArrayInputStream(attachment.getContent());
-        File tempFile = new File(System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + attachmentId);
-        Files.copy(bis, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        urlToReplaces.put(urlToReplace, IMAGE_URL_REPLACEMENT_PREFIX + tempFile.getName() + IMAGE_URL_REPLACEMENT_SUFFIX);
+      if (attachment != null) {
+        // the attachment content is streamed from the file storage to the file
+        try (InputStream contentStream = attachment.openContentStream()) {
+          if (contentStream != null) {
+            File tempFile = new File(System.getProperty(TEMP_DIRECTORY_PATH) + File.separator + attachmentId);
+            // notes of the same export are processed concurrently
+            synchronized (this) {
+              Files.copy(contentStream, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            urlToReplaces.put(urlToReplace, IMAGE_URL_REPLACEMENT_PREFIX + tempFile.getName() + IMAGE_URL_REPLACEMENT_SUFFIX);
+          }
+        }
       }
       content = content.replace(urlToReplace, "");
       if (content.equals(checkContent)) {
@@ -541,25 +635,63 @@ public class ExportThread implements Runnable {
   }
 
   private LinkedList<String> getNoteAncestorsIds(String noteId) throws WikiException {
-    return getNoteAncestorsIds(null, noteId);
+    LinkedList<String> ancestorsIds = new LinkedList<>();
+    if (noteId == null) {
+      return ancestorsIds;
+    }
+    for (Page ancestor : noteService.getAncestorsOfNote(noteId)) {
+      ancestorsIds.add(ancestor.getId());
+    }
+    return ancestorsIds;
   }
 
-  private LinkedList<String> getNoteAncestorsIds(LinkedList<String> ancestorsIds, String noteId) throws WikiException {
-    if (ancestorsIds == null) {
-      ancestorsIds = new LinkedList<>();
+  private static class ExportContext {
+
+    private final ExportResource                  exportResource;
+
+    private final boolean                         exportAll;
+
+    private final Identity                        identity;
+
+    private final ExportMetrics                   metrics;
+
+    private final ExoContainer                    container                = PortalContainer.getInstance();
+
+    private final Map<String, LinkedList<String>> ancestorsByNoteId        = new LinkedHashMap<>();
+
+    private final Map<String, List<String>>       childrenIdsByNoteId      = new HashMap<>();
+
+    // filled by the note processing threads
+    private final Set<String>                     exportedFiles            = ConcurrentHashMap.newKeySet();
+
+    private ExportContext(ExportResource exportResource, boolean exportAll, Identity identity) {
+      this.exportResource = exportResource;
+      this.exportAll = exportAll;
+      this.identity = identity;
+      this.metrics = exportResource.getMetrics();
     }
-    if (noteId == null) {
-      return ancestorsIds;
+  }
+
+  private static class MeteredOutputStream extends FilterOutputStream {
+
+    private final ExportMetrics metrics;
+
+    private MeteredOutputStream(OutputStream out, ExportMetrics metrics) {
+      super(out);
+      this.metrics = metrics;
     }
-    Page note = noteService.getNoteById(noteId);
-    String parentId = note.getParentPageId();
 
-    if (parentId != null) {
-      ancestorsIds.push(parentId);
-      getNoteAncestorsIds(ancestorsIds, parentId);
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      metrics.addBytesWritten(1);
     }
 
-    return ancestorsIds;
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      metrics.addBytesWritten(len);
+    }
   }
 
 }
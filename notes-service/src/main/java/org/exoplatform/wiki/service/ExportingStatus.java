@@ -31,4 +31,6 @@ public class ExportingStatus {
   private ExportAction action;
 
   private int    exportedNotesCount;
+
+  private ExportMetrics metrics;
 }
@@ -18,7 +18,9 @@
 package org.exoplatform.wiki.service;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.gatein.api.EntityNotFoundException;
 
@@ -134,6 +136,24 @@ public interface NoteService {
                                Identity userIdentity,
                                String source) throws WikiException, IllegalAccessException;
 
+  /**
+   * Gets the notes of a notebook by their names, loading the notes in one
+   * query and checking the permissions of the user once for the notebook.
+   * Notes which do not exist or which the user is not allowed to view are
+   * skipped.
+   *
+   * @param noteType It can be Portal, Group, or User.
+   * @param noteOwner The NoteBook owner.
+   * @param noteNames Names of the notes.
+   * @param userIdentity The identity of the user.
+   * @return The notes the user can view, by note name.
+   * @throws WikiException if an error occured
+   */
+  Map<String, Page> getNotesOfNoteBookByNames(String noteType,
+                                              String noteOwner,
+                                              Collection<String> noteNames,
+                                              Identity userIdentity) throws WikiException;
+
   /**
    * Gets a note based on its unique id.
    *
@@ -187,6 +207,42 @@ public interface NoteService {
    */
   List<Page> getChildrenNoteOf(Page note, String userId, boolean withDrafts, boolean withChild) throws WikiException;
 
+  /**
+   * Get the descendant notes of a note in one lookup of the notes tree
+   *
+   * @param note note.
+   * @param userId the user whose draft notes are retrieved
+   * @param depth maximum depth of descendants, a negative value for the whole
+   *          subtree
+   * @param withDrafts if set to true returns the draft notes too
+   * @return The list of descendant notes ordered by depth and name, followed by
+   *         the draft notes
+   * @throws WikiException if an error occured
+   */
+  List<Page> getDescendantsNoteOf(Page note, String userId, int depth, boolean withDrafts) throws WikiException;
+
+  /**
+   * Get the ancestor notes of a note in one lookup of the notes tree
+   *
+   * @param noteId id of the note
+   * @return The list of ancestor notes, from the note book home to the parent
+   *         note
+   * @throws WikiException if an error occured
+   */
+  List<Page> getAncestorsOfNote(String noteId) throws WikiException;
+
+  /**
+   * Count the children notes of several notes in one lookup
+   *
+   * @param noteIds ids of the parent notes
+   * @param userId the user whose draft notes are counted
+   * @param withDrafts if set to true counts the draft notes too
+   * @return number of children by note id, notes without children are not in
+   *         the map
+   * @throws WikiException if an error occured
+   */
+  Map<Long, Long> countChildrenNotes(Collection<Long> noteIds, String userId, boolean withDrafts) throws WikiException;
+
   /**
    * Gets a list of data which is used for composing the breadcrumb.
    *
@@ -223,6 +279,14 @@ public interface NoteService {
    */
   void removeDraft(String draftName) throws WikiException;
 
+  /**
+   * Writes the buffered updates of a draft note to the database, the draft
+   * updates being otherwise written periodically.
+   *
+   * @param draftId Id of the draft note.
+   */
+  void flushDraftNote(String draftId);
+
 
   /**
    * Gets all the Histories of the given note
@@ -234,6 +298,52 @@ public interface NoteService {
    */
   List<PageHistory> getVersionsHistoryOfNote(Page note, String userName) throws WikiException;
 
+  /**
+   * Gets a page of the histories of the given note, latest first and without
+   * the versions content. As {@link #getVersionsHistoryOfNote(Page, String)},
+   * a first version is created if the note has none.
+   *
+   * @param note The note
+   * @param userName the author name
+   * @param offset the offset of the first version, starting from the latest
+   * @param limit the maximum number of versions, 0 for all
+   * @return The histories of the note
+   * @throws WikiException if an error occured
+   */
+  List<PageHistory> getVersionsHistoryOfNote(Page note, String userName, int offset, int limit) throws WikiException;
+
+  /**
+   * Gets the number of the latest version of the note, a first version is
+   * created if the note has none
+   *
+   * @param note The note
+   * @param userName the author name
+   * @return the latest version number
+   * @throws WikiException if an error occured
+   */
+  long getLatestVersionNumberOfNote(Page note, String userName) throws WikiException;
+
+  /**
+   * Counts the versions of the note, a first version is created if the note
+   * has none
+   *
+   * @param note The note
+   * @param userName the author name
+   * @return the number of versions
+   * @throws WikiException if an error occured
+   */
+  long countVersionsOfNote(Page note, String userName) throws WikiException;
+
+  /**
+   * Gets the content of a version of the note
+   *
+   * @param note The note
+   * @param versionNumber the version number
+   * @return the content of the version, null if it does not exist
+   * @throws WikiException if an error occured
+   */
+  String getVersionContentOfNote(Page note, long versionNumber) throws WikiException;
+
   /**
    * Creates a version of a note. This method only tag the current note data as a
    * new version, it does not update the note data
@@ -436,6 +546,24 @@ public interface NoteService {
    */
   Page getNoteByRootPermission(String wikiType, String wikiOwner, String pageId) throws WikiException;
 
+  /**
+   * Get the permissions of several notes in one lookup
+   *
+   * @param noteIds ids of the notes
+   * @return view and edit permissions by note id
+   * @throws WikiException if an error occured
+   */
+  Map<Long, List<PermissionEntry>> getPermissionsOfNotes(Collection<Long> noteIds) throws WikiException;
+
+  /**
+   * Create an evaluator of the permissions of an identity on notes, which
+   * memoizes its decisions. It must be used for one request only.
+   *
+   * @param identity the identity whose permissions are evaluated
+   * @return the permission evaluator
+   */
+  PermissionEvaluator getPermissionEvaluator(Identity identity);
+
   /**
    * Checks if the given user has the permission on a page
    * @param user the userName
@@ -20,16 +20,16 @@ package org.exoplatform.wiki.service;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
 
 import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.security.Identity;
@@ -38,27 +38,77 @@ import org.exoplatform.wiki.WikiException;
 
 public class NotesExportService implements Startable {
 
-  private static final Log                  log                = ExoLogger.getLogger(NotesExportService.class);
+  private static final Log                   log                           = ExoLogger.getLogger(NotesExportService.class);
 
-  private static final List<ExportResource> exportResourceList = new ArrayList<>();
+  private static final String                EXPORT_THREADS_PARAM          = "exportThreads";
 
-  private final NoteService                 noteService;
+  private static final String                NOTE_PROCESSING_THREADS_PARAM = "noteProcessingThreads";
 
-  private final WikiService                 wikiService;
+  private static final String                EXPORT_TTL_PARAM              = "exportTTL";
 
-  private final HTMLUploadImageProcessor    htmlUploadImageProcessor;
+  private static final String                MAX_EXPORTS_PER_USER_PARAM    = "maxExportsPerUser";
 
-  private ExecutorService                   exportThreadPool;
+  private final Map<Integer, ExportResource> exportResources               = new ConcurrentHashMap<>();
 
-  public NotesExportService(NoteService noteService, WikiService wikiService, HTMLUploadImageProcessor htmlUploadImageProcessor) {
+  private final NoteService                  noteService;
+
+  private final WikiService                  wikiService;
+
+  private final HTMLUploadImageProcessor     htmlUploadImageProcessor;
+
+  private int                                exportThreads                 = 2;
+
+  private int                                noteProcessingThreads         = Runtime.getRuntime().availableProcessors();
+
+  private ExecutorService                    exportThreadPool;
+
+  private ExecutorService                    noteProcessingThreadPool;
+
+  private ScheduledExecutorService           exportCleanupExecutor;
+
+  private long                               exportTTL                     = 3600;
+
+  private int                                maxExportsPerUser             = 2;
+
+  public NotesExportService(NoteService noteService,
+                            WikiService wikiService,
+                            HTMLUploadImageProcessor htmlUploadImageProcessor,
+                            InitParams initParams) {
     this.noteService = noteService;
     this.wikiService = wikiService;
     this.htmlUploadImageProcessor = htmlUploadImageProcessor;
+    if (initParams != null) {
+      if (initParams.getValueParam(EXPORT_THREADS_PARAM) != null) {
+        this.exportThreads = Integer.parseInt(initParams.getValueParam(EXPORT_THREADS_PARAM).getValue());
+      }
+      if (initParams.getValueParam(NOTE_PROCESSING_THREADS_PARAM) != null) {
+        this.noteProcessingThreads = Integer.parseInt(initParams.getValueParam(NOTE_PROCESSING_THREADS_PARAM).getValue());
+      }
+      if (initParams.getValueParam(EXPORT_TTL_PARAM) != null) {
+        this.exportTTL = Long.parseLong(initParams.getValueParam(EXPORT_TTL_PARAM).getValue());
+      }
+      if (initParams.getValueParam(MAX_EXPORTS_PER_USER_PARAM) != null) {
+        this.maxExportsPerUser = Integer.parseInt(initParams.getValueParam(MAX_EXPORTS_PER_USER_PARAM).getValue());
+      }
+    }
   }
 
   @Override
   public void start() {
-    exportThreadPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Notes-Export-File-%d").build());
+    // exports exceeding the pool size wait in the queue with a STARTED status
+    exportThreadPool = Executors.newFixedThreadPool(Math.max(1, exportThreads),
+                                                    new ThreadFactoryBuilder().setNameFormat("Notes-Export-File-%d").build());
+    // shared by all the exports to process the notes content
+    noteProcessingThreadPool = Executors.newFixedThreadPool(Math.max(1, noteProcessingThreads),
+                                                            new ThreadFactoryBuilder().setNameFormat("Notes-Export-Note-%d")
+                                                                                      .build());
+    long cleanupPeriod = Math.max(60, exportTTL / 2);
+    exportCleanupExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-Export-Cleanup-%d")
+                                                                                                 .build());
+    exportCleanupExecutor.scheduleAtFixedRate(() -> removeExpiredExportResources(System.currentTimeMillis()),
+                                              cleanupPeriod,
+                                              cleanupPeriod,
+                                              TimeUnit.SECONDS);
   }
 
   @Override
@@ -66,6 +116,12 @@ public class NotesExportService implements Startable {
     if (exportThreadPool != null) {
       exportThreadPool.shutdownNow();
     }
+    if (noteProcessingThreadPool != null) {
+      noteProcessingThreadPool.shutdownNow();
+    }
+    if (exportCleanupExecutor != null) {
+      exportCleanupExecutor.shutdownNow();
+    }
   }
 
   public static void cleanUp(File file) throws IOException {
@@ -74,56 +130,157 @@ public class NotesExportService implements Startable {
     }
   }
 
-  public void startExportNotes(int exportId, String[] notesToExportIds, boolean exportAll, Identity identity) throws Exception {
+  /**
+   * Start an export of notes in background
+   *
+   * @param exportId the export id
+   * @param notesToExportIds the ids of the notes to export
+   * @param exportAll whether to export the descendants of the notes
+   * @param identity the identity of the user exporting the notes
+   * @throws IllegalStateException if the user already has the maximum number
+   *           of running exports
+   * @throws IllegalArgumentException if an export with the same id exists
+   */
+  public synchronized void startExportNotes(int exportId,
+                                            String[] notesToExportIds,
+                                            boolean exportAll,
+                                            Identity identity) throws Exception {
+    if (exportResources.containsKey(exportId)) {
+      throw new IllegalArgumentException("Notes export " + exportId + " already exists");
+    }
+    String userId = identity.getUserId();
+    long userActiveExports = exportResources.values()
+                                            .stream()
+                                            .filter(resource -> userId.equals(resource.getUserId()) && resource.isActive())
+                                            .count();
+    if (userActiveExports >= maxExportsPerUser) {
+      throw new IllegalStateException("User " + userId + " already has " + userActiveExports + " running notes exports");
+    }
     ExportResource exportResource = new ExportResource();
     exportResource.setExportId(exportId);
+    exportResource.setUserId(userId);
     exportResource.setStatus(ExportStatus.STARTED.name());
     exportResource.setAction(new ExportAction());
-    exportResourceList.add(exportResource);
+    exportResources.put(exportId, exportResource);
     exportThreadPool.execute(new ExportThread(noteService,
                                               wikiService,
                                               this,
                                               htmlUploadImageProcessor,
-                                              new ExportData(exportId, notesToExportIds, exportAll, identity)));
+                                              new ExportData(exportId, notesToExportIds, exportAll, identity),
+                                              noteProcessingThreadPool,
+                                              Math.max(1, noteProcessingThreads) * 2));
   }
 
   public void cancelExportNotes(int exportId) {
     ExportResource exportResource = getExportRessourceById(exportId);
     if (exportResource != null) {
-      exportResource.setStatus(ExportStatus.CANCELLED.name());
+      String previousStatus = exportResource.cancel();
+      if (ExportStatus.ZIP_CREATED.name().equals(previousStatus)) {
+        // the export thread is done, nothing else will release it
+        removeExportResource(exportId);
+        releaseExportResource(exportResource);
+      }
     }
   }
 
   public void removeExportResource(int exportId) {
-    ExportResource exportResource = getExportRessourceById(exportId);
-    if (exportResource != null) {
-      exportResourceList.remove(exportResource);
+    exportResources.remove(exportId);
+  }
+
+  /**
+   * Get the zip file of a created export and release the export resource. The
+   * caller is responsible for deleting the file once it has been sent.
+   *
+   * @param exportId the export id
+   * @return the zip file, null if the export does not exist
+   */
+  public File getExportedNotesFile(int exportId) {
+    ExportResource exportResource = exportResources.remove(exportId);
+    if (exportResource == null) {
+      return null;
     }
+    exportResource.setStatus(ExportStatus.DONE.name());
+    return exportResource.getZipFile();
   }
 
+  /**
+   * Read the zip file of a created export in memory, prefer
+   * {@link #getExportedNotesFile(int)} to stream it.
+   *
+   * @param exportId the export id
+   * @return the zip file content, null if the export does not exist
+   * @throws IOException if the zip file cannot be read
+   */
   public byte[] getExportedNotes(int exportId) throws IOException {
-    ExportResource exportResource = getExportRessourceById(exportId);
-    if (exportResource != null) {
-      File zipped = exportResource.getZipFile();
-      byte[] filesBytes = FileUtils.readFileToByteArray(zipped);
-      cleanUp(zipped);
-      exportResource.setStatus(ExportStatus.DONE.name());
-      exportResourceList.remove(exportResource);
-      return filesBytes;
-    } else
+    File zipped = getExportedNotesFile(exportId);
+    if (zipped == null) {
       return null;
+    }
+    byte[] filesBytes = FileUtils.readFileToByteArray(zipped);
+    cleanUp(zipped);
+    return filesBytes;
   }
 
   public ExportingStatus getStatus(int exportId) {
     ExportResource exportResource = getExportRessourceById(exportId);
     if (exportResource != null) {
-      return new ExportingStatus(exportResource.getStatus(), exportResource.getAction(), exportResource.getExportedNotesCount());
+      exportResource.setLastAccessTime(System.currentTimeMillis());
+      return new ExportingStatus(exportResource.getStatus(),
+                                 exportResource.getAction(),
+                                 exportResource.getExportedNotesCount(),
+                                 exportResource.getMetrics());
     }
     return new ExportingStatus();
   }
 
   public ExportResource getExportRessourceById(int id) {
-    return exportResourceList.stream().filter(resource -> id == resource.getExportId()).findFirst().orElse(null);
+    return exportResources.get(id);
+  }
+
+  /**
+   * @param exportId the export id
+   * @param userId the user id
+   * @return true if the export exists and has been started by another user
+   */
+  public boolean isExportOfOtherUser(int exportId, String userId) {
+    ExportResource exportResource = exportResources.get(exportId);
+    return exportResource != null && !exportResource.getUserId().equals(userId);
+  }
+
+  /**
+   * Remove the exports which are not running and whose status has not been
+   * requested for longer than the export TTL, and delete their zip files
+   *
+   * @param now the current time in milliseconds
+   * @return the number of removed exports
+   */
+  public int removeExpiredExportResources(long now) {
+    int removedExports = 0;
+    Iterator<ExportResource> exportResourcesIterator = exportResources.values().iterator();
+    while (exportResourcesIterator.hasNext()) {
+      ExportResource exportResource = exportResourcesIterator.next();
+      if (!exportResource.isActive() && now - exportResource.getLastAccessTime() > exportTTL * 1000) {
+        exportResourcesIterator.remove();
+        releaseExportResource(exportResource);
+        removedExports++;
+      }
+    }
+    if (removedExports > 0) {
+      log.info("{} abandoned notes exports removed", removedExports);
+    }
+    return removedExports;
+  }
+
+  private void releaseExportResource(ExportResource exportResource) {
+    exportResource.cancel();
+    File zipFile = exportResource.getZipFile();
+    if (zipFile != null) {
+      try {
+        cleanUp(zipFile);
+      } catch (IOException e) {
+        log.warn("Cannot delete the zip file {} of the notes export {}", zipFile.getPath(), exportResource.getExportId(), e);
+      }
+    }
   }
 
 }
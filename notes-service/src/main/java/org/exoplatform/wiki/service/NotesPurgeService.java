@@ -0,0 +1,270 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.service;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Background job hard deleting the notes deleted for more than the retention
+ * period, with their versions, attachments, moves history and drafts. The job
+ * runs periodically and purges the notes by batches, each batch in its own
+ * transaction, with a pause between two batches so that it does not compete
+ * with the users requests. As the deleted notes are purged from the database,
+ * an interrupted run resumes where it stopped on the next run. Each run then
+ * reconciles the references count of the attachment files shared by the
+ * attachments with the same content, and deletes the orphan files. The files
+ * updated during the last reconcile delay are left for the next run, as the
+ * attachments referencing them may not be committed yet.
+ * In cluster mode, the job only runs on the nodes where it is enabled in
+ * cluster, so that the nodes do not purge the same notes concurrently.
+ */
+public class NotesPurgeService implements Startable {
+
+  private static final Log         log                               = ExoLogger.getLogger(NotesPurgeService.class);
+
+  private static final String      ENABLED_PARAM                     = "enabled";
+
+  private static final String      ENABLED_IN_CLUSTER_PARAM          = "enabledInCluster";
+
+  private static final String      CLUSTER_PROFILE                   = "cluster";
+
+  private static final String      RETENTION_DAYS_PARAM              = "retentionDays";
+
+  private static final String      BATCH_SIZE_PARAM                  = "batchSize";
+
+  private static final String      BATCH_DELAY_PARAM                 = "batchDelay";
+
+  private static final String      INITIAL_DELAY_PARAM               = "initialDelay";
+
+  private static final String      PERIOD_PARAM                      = "period";
+
+  private static final String      ATTACHMENT_FILES_BATCH_SIZE_PARAM = "attachmentFilesBatchSize";
+
+  private static final String      ATTACHMENT_FILES_DELAY_PARAM      = "attachmentFilesDelay";
+
+  private final DataStorage        dataStorage;
+
+  private boolean                  enabled                           = true;
+
+  private boolean                  enabledInCluster                  = false;
+
+  private int                      retentionDays                     = 30;
+
+  private int                      batchSize                         = 20;
+
+  private long                     batchDelay                        = 1000;
+
+  private long                     initialDelay                      = 600;
+
+  private long                     period                            = 86400;
+
+  private int                      attachmentFilesBatchSize          = 100;
+
+  private long                     attachmentFilesDelay              = 3600;
+
+  private final AtomicLong         purgedNotes                       = new AtomicLong();
+
+  private volatile long            remainingNotes                    = -1;
+
+  private volatile long            lastRunStartTime;
+
+  private volatile long            lastRunEndTime;
+
+  private volatile boolean         running;
+
+  private ScheduledExecutorService purgeExecutor;
+
+  private volatile boolean         stopped;
+
+  public NotesPurgeService(DataStorage dataStorage, InitParams initParams) {
+    this.dataStorage = dataStorage;
+    if (initParams != null) {
+      if (initParams.getValueParam(ENABLED_PARAM) != null) {
+        this.enabled = Boolean.parseBoolean(initParams.getValueParam(ENABLED_PARAM).getValue());
+      }
+      if (initParams.getValueParam(ENABLED_IN_CLUSTER_PARAM) != null) {
+        this.enabledInCluster = Boolean.parseBoolean(initParams.getValueParam(ENABLED_IN_CLUSTER_PARAM).getValue());
+      }
+      if (initParams.getValueParam(RETENTION_DAYS_PARAM) != null) {
+        this.retentionDays = Integer.parseInt(initParams.getValueParam(RETENTION_DAYS_PARAM).getValue());
+      }
+      if (initParams.getValueParam(BATCH_SIZE_PARAM) != null) {
+        this.batchSize = Integer.parseInt(initParams.getValueParam(BATCH_SIZE_PARAM).getValue());
+      }
+      if (initParams.getValueParam(BATCH_DELAY_PARAM) != null) {
+        this.batchDelay = Long.parseLong(initParams.getValueParam(BATCH_DELAY_PARAM).getValue());
+      }
+      if (initParams.getValueParam(INITIAL_DELAY_PARAM) != null) {
+        this.initialDelay = Long.parseLong(initParams.getValueParam(INITIAL_DELAY_PARAM).getValue());
+      }
+      if (initParams.getValueParam(PERIOD_PARAM) != null) {
+        this.period = Long.parseLong(initParams.getValueParam(PERIOD_PARAM).getValue());
+      }
+      if (initParams.getValueParam(ATTACHMENT_FILES_BATCH_SIZE_PARAM) != null) {
+        this.attachmentFilesBatchSize = Integer.parseInt(initParams.getValueParam(ATTACHMENT_FILES_BATCH_SIZE_PARAM).getValue());
+      }
+      if (initParams.getValueParam(ATTACHMENT_FILES_DELAY_PARAM) != null) {
+        this.attachmentFilesDelay = Long.parseLong(initParams.getValueParam(ATTACHMENT_FILES_DELAY_PARAM).getValue());
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (!enabledInCluster && ExoContainer.hasProfile(CLUSTER_PROFILE)) {
+      log.info("Purge of the deleted notes disabled on this cluster node, it runs on the nodes where it is enabled in cluster");
+      return;
+    }
+    PortalContainer container = PortalContainer.getInstance();
+    purgeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-Purge-%d")
+                                                                                         .build());
+    purgeExecutor.scheduleWithFixedDelay(() -> {
+      purgeDeletedNotes(container);
+      reconcileAttachmentFiles(container);
+    }, initialDelay, period, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    if (purgeExecutor != null) {
+      purgeExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Purge the notes deleted for more than the retention period, batch by
+   * batch, until there is nothing left to purge or the service is stopped
+   *
+   * @param container the container to run the transactions in
+   * @return the number of purged notes
+   */
+  public int purgeDeletedNotes(PortalContainer container) {
+    running = true;
+    lastRunStartTime = System.currentTimeMillis();
+    Date deletedBefore = new Date(lastRunStartTime - TimeUnit.DAYS.toMillis(retentionDays));
+    int runPurgedNotes = 0;
+    try {
+      int batchPurgedNotes;
+      do {
+        RequestLifeCycle.begin(container);
+        try {
+          batchPurgedNotes = dataStorage.purgeDeletedPages(deletedBefore, batchSize);
+          runPurgedNotes += batchPurgedNotes;
+          purgedNotes.addAndGet(batchPurgedNotes);
+          remainingNotes = dataStorage.countDeletedPages(deletedBefore);
+        } catch (Exception e) {
+          log.error("Error while purging the deleted notes, {} notes purged, the remaining ones will be purged on next run",
+                    runPurgedNotes,
+                    e);
+          return runPurgedNotes;
+        } finally {
+          RequestLifeCycle.end();
+        }
+        if (batchPurgedNotes > 0 && batchDelay > 0 && !stopped) {
+          Thread.sleep(batchDelay);
+        }
+      } while (batchPurgedNotes > 0 && !stopped);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lastRunEndTime = System.currentTimeMillis();
+      running = false;
+    }
+    if (runPurgedNotes > 0) {
+      log.info("{} deleted notes purged in {} ms", runPurgedNotes, lastRunEndTime - lastRunStartTime);
+    }
+    return runPurgedNotes;
+  }
+
+  /**
+   * Reconcile the references count of all the shared attachment files not
+   * updated during the reconcile delay, batch by batch, until all the files
+   * are checked or the service is stopped
+   *
+   * @param container the container to run the transactions in
+   */
+  public void reconcileAttachmentFiles(PortalContainer container) {
+    Date updatedBefore = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(attachmentFilesDelay));
+    long lastAttachmentFileId = 0;
+    try {
+      do {
+        RequestLifeCycle.begin(container);
+        try {
+          lastAttachmentFileId = dataStorage.reconcileAttachmentFiles(lastAttachmentFileId,
+                                                                      attachmentFilesBatchSize,
+                                                                      updatedBefore);
+        } catch (Exception e) {
+          log.error("Error while reconciling the attachment files after file {}", lastAttachmentFileId, e);
+          return;
+        } finally {
+          RequestLifeCycle.end();
+        }
+        if (lastAttachmentFileId > 0 && batchDelay > 0 && !stopped) {
+          Thread.sleep(batchDelay);
+        }
+      } while (lastAttachmentFileId > 0 && !stopped);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of notes purged since the server startup
+   */
+  public long getPurgedNotes() {
+    return purgedNotes.get();
+  }
+
+  /**
+   * @return the number of deleted notes left to purge at the end of the last
+   *         batch, -1 if no batch has run yet
+   */
+  public long getRemainingNotes() {
+    return remainingNotes;
+  }
+
+  public long getLastRunStartTime() {
+    return lastRunStartTime;
+  }
+
+  public long getLastRunEndTime() {
+    return lastRunEndTime;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Upgrade computing the tree path of the pages created before the tree path
+ * existed, by batches of pages, each batch in its own transaction. It runs in
+ * background once after the startup, so it does not delay the startup on large
+ * instances. Meanwhile, the tree paths of the pages deleted, moved or listed
+ * with their descendants are computed on the fly. When all the pages have
+ * their tree path, it only runs one query.
+ */
+public class NotesTreePathsUpgradeService implements Startable {
+
+  private static final Log    log              = ExoLogger.getLogger(NotesTreePathsUpgradeService.class);
+
+  private static final String BATCH_SIZE_PARAM = "batchSize";
+
+  private final DataStorage   dataStorage;
+
+  private int                 batchSize        = 100;
+
+  private ExecutorService     upgradeExecutor;
+
+  private volatile boolean    stopped;
+
+  public NotesTreePathsUpgradeService(DataStorage dataStorage, InitParams initParams) {
+    this.dataStorage = dataStorage;
+    if (initParams != null) {
+      if (initParams.getValueParam(BATCH_SIZE_PARAM) != null) {
+        this.batchSize = Integer.parseInt(initParams.getValueParam(BATCH_SIZE_PARAM).getValue());
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    PortalContainer container = PortalContainer.getInstance();
+    upgradeExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-TreePaths-Upgrade-%d")
+                                                                                  .build());
+    upgradeExecutor.execute(() -> initPagesTreePaths(container));
+    upgradeExecutor.shutdown();
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    if (upgradeExecutor != null) {
+      upgradeExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Compute the tree path of all the pages without one, batch by batch, until
+   * all the pages have one or the service is stopped
+   *
+   * @param container the container to run the transactions in
+   * @return the number of batches processed
+   */
+  public int initPagesTreePaths(PortalContainer container) {
+    long startTime = System.currentTimeMillis();
+    int batches = 0;
+    long lastPageId = 0;
+    do {
+      RequestLifeCycle.begin(container);
+      try {
+        lastPageId = dataStorage.initPagesTreePaths(lastPageId, batchSize);
+      } catch (Exception e) {
+        log.error("Error while computing the tree path of the notes after note {}, the remaining ones will be computed on next startup",
+                  lastPageId,
+                  e);
+        return batches;
+      } finally {
+        RequestLifeCycle.end();
+      }
+      if (lastPageId > 0) {
+        batches++;
+      }
+    } while (lastPageId > 0 && !stopped);
+    if (batches > 0) {
+      log.info("Tree paths of notes computed in {} ms", System.currentTimeMillis() - startTime);
+    }
+    return batches;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Background job converting the page versions stored with their full content
+ * to the compressed versions storage, by batches of pages, each page in its
+ * own transaction. The job runs once after the server startup and stops when
+ * all the pages have been checked, so it resumes where it stopped on the next
+ * startup if it has been interrupted. The pages whose versions cannot be
+ * converted are skipped and checked again on the next startup. In cluster
+ * mode, the job only runs on the nodes where it is enabled in cluster, so that
+ * the nodes do not convert the same versions concurrently.
+ */
+public class NotesVersionsCompressionService implements Startable {
+
+  private static final Log         log                      = ExoLogger.getLogger(NotesVersionsCompressionService.class);
+
+  private static final String      ENABLED_PARAM            = "enabled";
+
+  private static final String      ENABLED_IN_CLUSTER_PARAM = "enabledInCluster";
+
+  private static final String      CLUSTER_PROFILE          = "cluster";
+
+  private static final String      BATCH_SIZE_PARAM         = "batchSize";
+
+  private static final String      INITIAL_DELAY_PARAM      = "initialDelay";
+
+  private final DataStorage        dataStorage;
+
+  private boolean                  enabled                  = true;
+
+  private boolean                  enabledInCluster         = false;
+
+  private int                      batchSize                = 20;
+
+  private long                     initialDelay             = 60;
+
+  private ScheduledExecutorService compressionExecutor;
+
+  private volatile boolean         stopped;
+
+  public NotesVersionsCompressionService(DataStorage dataStorage, InitParams initParams) {
+    this.dataStorage = dataStorage;
+    if (initParams != null) {
+      if (initParams.getValueParam(ENABLED_PARAM) != null) {
+        this.enabled = Boolean.parseBoolean(initParams.getValueParam(ENABLED_PARAM).getValue());
+      }
+      if (initParams.getValueParam(ENABLED_IN_CLUSTER_PARAM) != null) {
+        this.enabledInCluster = Boolean.parseBoolean(initParams.getValueParam(ENABLED_IN_CLUSTER_PARAM).getValue());
+      }
+      if (initParams.getValueParam(BATCH_SIZE_PARAM) != null) {
+        this.batchSize = Integer.parseInt(initParams.getValueParam(BATCH_SIZE_PARAM).getValue());
+      }
+      if (initParams.getValueParam(INITIAL_DELAY_PARAM) != null) {
+        this.initialDelay = Long.parseLong(initParams.getValueParam(INITIAL_DELAY_PARAM).getValue());
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (!enabledInCluster && ExoContainer.hasProfile(CLUSTER_PROFILE)) {
+      log.info("Compression of the notes versions disabled on this cluster node, it runs on the nodes where it is enabled in cluster");
+      return;
+    }
+    PortalContainer container = PortalContainer.getInstance();
+    compressionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-Versions-Compression-%d")
+                                                                                               .build());
+    compressionExecutor.schedule(() -> compressVersions(container), initialDelay, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    if (compressionExecutor != null) {
+      compressionExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Convert the versions of all the pages, batch by batch, until all the pages
+   * have been checked or the service is stopped
+   *
+   * @param container the container to run the transactions in
+   * @return the number of batches of pages processed
+   */
+  public int compressVersions(PortalContainer container) {
+    long startTime = System.currentTimeMillis();
+    int batches = 0;
+    long lastPageId = 0;
+    do {
+      RequestLifeCycle.begin(container);
+      try {
+        lastPageId = dataStorage.compressPageVersions(lastPageId, batchSize);
+      } catch (Exception e) {
+        log.error("Error while compressing the versions of notes after note {}, the remaining ones will be processed on next startup",
+                  lastPageId,
+                  e);
+        return batches;
+      } finally {
+        RequestLifeCycle.end();
+      }
+      if (lastPageId > 0) {
+        batches++;
+      }
+    } while (lastPageId > 0 && !stopped);
+    if (batches > 0) {
+      log.info("Versions of notes compressed in {} ms", System.currentTimeMillis() - startTime);
+    }
+    return batches;
+  }
+}
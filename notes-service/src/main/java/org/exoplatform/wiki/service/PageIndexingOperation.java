@@ -0,0 +1,145 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.service;
+
+import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.service.PageIndexingQueue.OperationType;
+
+/**
+ * Pending indexing operation of a page, resulting from the merge of the
+ * operations enqueued for the page since it was last flushed
+ */
+public class PageIndexingOperation {
+
+  private final String        handlerName;
+
+  private final OperationType type;
+
+  private final String        wikiType;
+
+  private final String        wikiOwner;
+
+  private final String        pageId;
+
+  private final Page          page;
+
+  private final long          firstQueuedTime;
+
+  private final long          lastQueuedTime;
+
+  public PageIndexingOperation(String handlerName,
+                               OperationType type,
+                               String wikiType,
+                               String wikiOwner,
+                               String pageId,
+                               Page page,
+                               long queuedTime) {
+    this(handlerName, type, wikiType, wikiOwner, pageId, page, queuedTime, queuedTime);
+  }
+
+  private PageIndexingOperation(String handlerName,
+                                OperationType type,
+                                String wikiType,
+                                String wikiOwner,
+                                String pageId,
+                                Page page,
+                                long firstQueuedTime,
+                                long lastQueuedTime) {
+    this.handlerName = handlerName;
+    this.type = type;
+    this.wikiType = wikiType;
+    this.wikiOwner = wikiOwner;
+    this.pageId = pageId;
+    this.page = page;
+    this.firstQueuedTime = firstQueuedTime;
+    this.lastQueuedTime = lastQueuedTime;
+  }
+
+  /**
+   * Merge this pending operation with a newer operation of the same page. The
+   * page is not indexed yet while its creation is pending so an update keeps
+   * the creation, a deletion wins over any pending operation, and a page
+   * indexed again after a pending deletion has to be reindexed.
+   *
+   * @param operation the newer operation
+   * @return the merged operation, holding the newest page
+   */
+  public PageIndexingOperation merge(PageIndexingOperation operation) {
+    OperationType mergedType;
+    if (operation.type == OperationType.UNINDEX) {
+      mergedType = OperationType.UNINDEX;
+    } else if (type == OperationType.UNINDEX) {
+      mergedType = OperationType.REINDEX;
+    } else if (type == OperationType.INDEX && operation.type == OperationType.REINDEX) {
+      mergedType = OperationType.INDEX;
+    } else {
+      mergedType = type == OperationType.REINDEX ? OperationType.REINDEX : operation.type;
+    }
+    return new PageIndexingOperation(handlerName,
+                                     mergedType,
+                                     wikiType,
+                                     wikiOwner,
+                                     pageId,
+                                     operation.page != null ? operation.page : page,
+                                     firstQueuedTime,
+                                     operation.lastQueuedTime);
+  }
+
+  /**
+   * @param now the current time
+   * @param delay the time without any new operation after which the operation
+   *          is due
+   * @param maxDelay the time after the first operation after which the
+   *          operation is due anyway
+   * @return true if the operation has to be flushed
+   */
+  public boolean isDue(long now, long delay, long maxDelay) {
+    return now - lastQueuedTime >= delay || now - firstQueuedTime >= maxDelay;
+  }
+
+  public String getHandlerName() {
+    return handlerName;
+  }
+
+  public OperationType getType() {
+    return type;
+  }
+
+  public String getWikiType() {
+    return wikiType;
+  }
+
+  public String getWikiOwner() {
+    return wikiOwner;
+  }
+
+  public String getPageId() {
+    return pageId;
+  }
+
+  public Page getPage() {
+    return page;
+  }
+
+  public long getFirstQueuedTime() {
+    return firstQueuedTime;
+  }
+
+  public long getLastQueuedTime() {
+    return lastQueuedTime;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.picocontainer.Startable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.wiki.model.Page;
+
+/**
+ * Queue coalescing the indexing operations of pages. The pages listeners
+ * enqueue an operation for each page event, the operations of a same page are
+ * merged while they are pending, and a page is handed to the indexing handler
+ * once it was not modified during the configured delay, or once it has been
+ * pending for the configured maximum delay. The due operations are flushed by
+ * batches, each batch in its own transaction. So a page saved several times in
+ * a row, or the pages touched by an import or a move, are indexed once. When
+ * the delay is 0, the operations are handled immediately.
+ * <p>
+ * The operations of a page are merged only while they target the same page
+ * name and the same page id, so a page deleted then created again with the
+ * same name is unindexed then indexed. The pending operations are kept in
+ * memory until they are handed to the handlers, which persist them in their
+ * own indexing queues. They are all flushed when the container stops, but the
+ * operations pending when the server crashes or is killed, at most those of
+ * the last maximum delay, are lost and the related pages have to be reindexed.
+ */
+public class PageIndexingQueue implements Startable {
+
+  private static final Log                            log                = ExoLogger.getLogger(PageIndexingQueue.class);
+
+  private static final String                         DELAY_PARAM        = "delay";
+
+  private static final String                         MAX_DELAY_PARAM    = "maxDelay";
+
+  private static final String                         PERIOD_PARAM       = "period";
+
+  private static final String                         BATCH_SIZE_PARAM   = "batchSize";
+
+  public enum OperationType {
+    INDEX, REINDEX, UNINDEX
+  }
+
+  /**
+   * Handler of the indexing operations of a pages listener
+   */
+  @FunctionalInterface
+  public interface PageIndexingHandler {
+    void handle(PageIndexingOperation operation) throws Exception;
+  }
+
+  private final Map<String, PageIndexingHandler>      handlers           = new ConcurrentHashMap<>();
+
+  private final Map<String, PageIndexingOperation>    pendingOperations  = new ConcurrentHashMap<>();
+
+  private long                                        delay              = 5000;
+
+  private long                                        maxDelay           = 60000;
+
+  private long                                        period             = 1000;
+
+  private int                                         batchSize          = 100;
+
+  private PortalContainer                             container;
+
+  private ScheduledExecutorService                    flushExecutor;
+
+  public PageIndexingQueue(InitParams initParams) {
+    if (initParams != null) {
+      if (initParams.getValueParam(DELAY_PARAM) != null) {
+        this.delay = Long.parseLong(initParams.getValueParam(DELAY_PARAM).getValue());
+      }
+      if (initParams.getValueParam(MAX_DELAY_PARAM) != null) {
+        this.maxDelay = Long.parseLong(initParams.getValueParam(MAX_DELAY_PARAM).getValue());
+      }
+      if (initParams.getValueParam(PERIOD_PARAM) != null) {
+        this.period = Long.parseLong(initParams.getValueParam(PERIOD_PARAM).getValue());
+      }
+      if (initParams.getValueParam(BATCH_SIZE_PARAM) != null) {
+        this.batchSize = Integer.parseInt(initParams.getValueParam(BATCH_SIZE_PARAM).getValue());
+      }
+    }
+  }
+
+  @Override
+  public void start() {
+    if (delay <= 0) {
+      return;
+    }
+    container = PortalContainer.getInstance();
+    flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-Indexing-Queue-%d")
+                                                                                         .build());
+    flushExecutor.scheduleWithFixedDelay(() -> flush(false), period, period, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+      try {
+        if (!flushExecutor.awaitTermination(period * 10, TimeUnit.MILLISECONDS)) {
+          flushExecutor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        flushExecutor.shutdownNow();
+      }
+    }
+    // do not lose the pending operations
+    int flushedOperations = flush(true);
+    if (flushedOperations > 0) {
+      log.info("{} pending page indexing operations flushed on stop", flushedOperations);
+    }
+  }
+
+  /**
+   * Register the handler of the indexing operations of a listener
+   *
+   * @param handlerName the unique name of the handler
+   * @param handler the handler
+   */
+  public void addHandler(String handlerName, PageIndexingHandler handler) {
+    handlers.put(handlerName, handler);
+  }
+
+  /**
+   * Enqueue an indexing operation of a page, merged with the pending operation
+   * of the same page name and page id for the same handler if any
+   *
+   * @param handlerName the name of the handler of the operation
+   * @param type the operation type
+   * @param wikiType the wiki type of the page
+   * @param wikiOwner the wiki owner of the page
+   * @param pageId the page id as given to the listeners
+   * @param page the page
+   */
+  public void enqueue(String handlerName, OperationType type, String wikiType, String wikiOwner, String pageId, Page page) {
+    PageIndexingOperation operation = new PageIndexingOperation(handlerName,
+                                                                type,
+                                                                wikiType,
+                                                                wikiOwner,
+                                                                pageId,
+                                                                page,
+                                                                System.currentTimeMillis());
+    if (delay <= 0) {
+      handle(operation);
+      return;
+    }
+    pendingOperations.merge(getOperationKey(operation), operation, PageIndexingOperation::merge);
+  }
+
+  /**
+   * Enqueue the same indexing operation for several pages at once, see
+   * {@link #enqueue(String, OperationType, String, String, String, Page)}.
+   * When the delay is 0, the operations are handled immediately.
+   *
+   * @param handlerName the name of the handler of the operations
+   * @param type the operations type
+   * @param pages the pages, identified by their name for the listeners
+   */
+  public void enqueue(String handlerName, OperationType type, List<Page> pages) {
+    long queuedTime = System.currentTimeMillis();
+    List<PageIndexingOperation> operations = new ArrayList<>();
+    for (Page page : pages) {
+      operations.add(new PageIndexingOperation(handlerName,
+                                               type,
+                                               page.getWikiType(),
+                                               page.getWikiOwner(),
+                                               page.getName(),
+                                               page,
+                                               queuedTime));
+    }
+    if (delay <= 0) {
+      operations.forEach(this::handle);
+      return;
+    }
+    for (PageIndexingOperation operation : operations) {
+      pendingOperations.merge(getOperationKey(operation), operation, PageIndexingOperation::merge);
+    }
+  }
+
+  /**
+   * Hand the due pending operations to their handlers, by batches
+   *
+   * @param force true to flush all the pending operations, even those not due
+   *          yet
+   * @return the number of flushed operations
+   */
+  public int flush(boolean force) {
+    long now = System.currentTimeMillis();
+    List<Map.Entry<String, PageIndexingOperation>> dueOperations = new ArrayList<>();
+    for (Map.Entry<String, PageIndexingOperation> pendingOperation : pendingOperations.entrySet()) {
+      if (force || pendingOperation.getValue().isDue(now, delay, maxDelay)) {
+        dueOperations.add(pendingOperation);
+      }
+    }
+    dueOperations.sort(Comparator.comparingLong(operation -> operation.getValue().getFirstQueuedTime()));
+    int flushedOperations = 0;
+    for (int i = 0; i < dueOperations.size(); i += batchSize) {
+      List<Map.Entry<String, PageIndexingOperation>> batch = dueOperations.subList(i, Math.min(i + batchSize, dueOperations.size()));
+      if (container != null) {
+        RequestLifeCycle.begin(container);
+      }
+      try {
+        for (Map.Entry<String, PageIndexingOperation> dueOperation : batch) {
+          // the operation is left in the queue if it was merged meanwhile
+          if (pendingOperations.remove(dueOperation.getKey(), dueOperation.getValue())) {
+            handle(dueOperation.getValue());
+            flushedOperations++;
+          }
+        }
+      } finally {
+        if (container != null) {
+          RequestLifeCycle.end();
+        }
+      }
+    }
+    return flushedOperations;
+  }
+
+  /**
+   * @return the number of pending operations
+   */
+  public int getPendingOperations() {
+    return pendingOperations.size();
+  }
+
+  private String getOperationKey(PageIndexingOperation operation) {
+    Page page = operation.getPage();
+    // the page id is part of the key so that the operations of a page deleted
+    // then created again with the same name are not merged
+    return operation.getHandlerName() + ":" + operation.getWikiType() + ":" + operation.getWikiOwner() + ":"
+        + operation.getPageId() + ":" + (page == null ? "" : page.getId());
+  }
+
+  private void handle(PageIndexingOperation operation) {
+    PageIndexingHandler handler = handlers.get(operation.getHandlerName());
+    if (handler == null) {
+      log.warn("No indexing handler named {}, operation {} of page {} ignored",
+               operation.getHandlerName(),
+               operation.getType(),
+               operation.getPageId());
+      return;
+    }
+    try {
+      handler.handle(operation);
+    } catch (Exception e) {
+      log.error("Error while handling the indexing operation {} of page {}:{}:{}",
+                operation.getType(),
+                operation.getWikiType(),
+                operation.getWikiOwner(),
+                operation.getPageId(),
+                e);
+    }
+  }
+}
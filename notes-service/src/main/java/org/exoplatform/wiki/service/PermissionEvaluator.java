@@ -0,0 +1,178 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.exoplatform.portal.config.UserACL;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.wiki.WikiException;
+import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.model.Permission;
+import org.exoplatform.wiki.model.PermissionEntry;
+import org.exoplatform.wiki.model.PermissionType;
+
+/**
+ * Evaluates the permissions of one identity on notes for the duration of a
+ * request. Permission entries of pages are loaded in bulk, decisions are
+ * memoized by page and permission type, and the identity expressions of the
+ * permission entries are resolved once. It is not thread safe and must not
+ * outlive the request since permission changes are not reflected.
+ */
+public class PermissionEvaluator {
+
+  private final NoteService                       noteService;
+
+  private final Identity                          identity;
+
+  private final Map<Long, List<PermissionEntry>>  pagesPermissions   = new HashMap<>();
+
+  private final Map<String, Boolean>              pagesDecisions     = new HashMap<>();
+
+  private final Map<String, Boolean>              identityDecisions  = new HashMap<>();
+
+  public PermissionEvaluator(NoteService noteService, Identity identity) {
+    this.noteService = noteService;
+    this.identity = identity;
+  }
+
+  /**
+   * Creates an evaluator which is only able to evaluate permission entries
+   * with {@link #hasPermission(List, PermissionType)}
+   *
+   * @param identity the identity whose permissions are evaluated
+   */
+  public PermissionEvaluator(Identity identity) {
+    this(null, identity);
+  }
+
+  public Identity getIdentity() {
+    return identity;
+  }
+
+  /**
+   * Load in one lookup the permission entries of the given pages which have
+   * not been loaded with their permissions
+   *
+   * @param pages the pages which will be evaluated
+   * @throws WikiException if an error occured
+   */
+  public void loadPermissions(Collection<Page> pages) throws WikiException {
+    List<Long> pageIds = pages.stream()
+                              .filter(page -> !page.isDraftPage() && page.getPermissions() == null && page.getId() != null
+                                  && !page.getId().isEmpty())
+                              .map(page -> Long.parseLong(page.getId()))
+                              .filter(pageId -> !pagesPermissions.containsKey(pageId))
+                              .collect(Collectors.toList());
+    if (!pageIds.isEmpty()) {
+      pagesPermissions.putAll(noteService.getPermissionsOfNotes(pageIds));
+    }
+  }
+
+  /**
+   * Check if the identity has the given permission on a page
+   *
+   * @param page the page
+   * @param permissionType the permission type
+   * @return true if the identity has the permission
+   * @throws WikiException if an error occured
+   */
+  public boolean hasPermissionOnPage(Page page, PermissionType permissionType) throws WikiException {
+    if (page.isDraftPage()) {
+      return page.getAuthor().equals(identity.getUserId());
+    }
+    String userId = identity.getUserId();
+    if (userId.equals(IdentityConstants.SYSTEM) || userId.equals(page.getOwner())) {
+      return true;
+    }
+    if (page.getId() == null || page.getId().isEmpty()) {
+      return noteService.hasPermissionOnPage(page, permissionType, identity);
+    }
+    String decisionKey = page.getId() + ":" + permissionType.name();
+    Boolean decision = pagesDecisions.get(decisionKey);
+    if (decision == null) {
+      List<PermissionEntry> pagePermissions = page.getPermissions();
+      if (pagePermissions == null) {
+        Long pageId = Long.parseLong(page.getId());
+        if (!pagesPermissions.containsKey(pageId)) {
+          pagesPermissions.putAll(noteService.getPermissionsOfNotes(List.of(pageId)));
+        }
+        pagePermissions = pagesPermissions.get(pageId);
+      }
+      decision = pagePermissions == null || pagePermissions.isEmpty() || hasPermission(pagePermissions, permissionType);
+      pagesDecisions.put(decisionKey, decision);
+    }
+    return decision;
+  }
+
+  /**
+   * Check if the identity is granted the given permission by a list of
+   * permission entries
+   *
+   * @param resourcePermissions the permission entries of the resource
+   * @param permissionType the permission type
+   * @return true if one of the entries grants the permission to the identity
+   */
+  public boolean hasPermission(List<PermissionEntry> resourcePermissions, PermissionType permissionType) {
+    // for each permission set on the page
+    for (PermissionEntry pagePermission : resourcePermissions) {
+      // for each type of permission (VIEWPAGE, EDITPAGE, ...)
+      for (Permission permission : pagePermission.getPermissions()) {
+        // if the permission type equals the type we want to test
+        if (permission.isAllowed() && permission.getPermissionType().equals(permissionType)
+            && isIdentityGranted(pagePermission)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean isIdentityGranted(PermissionEntry pagePermission) {
+    // if the user belongs to this identity (user, membership or any)
+    if (IdentityConstants.ANY.equals(pagePermission.getId())) {
+      return true;
+    }
+    String expressionKey = pagePermission.getIdType() + ":" + pagePermission.getId();
+    return identityDecisions.computeIfAbsent(expressionKey, key -> matchIdentity(pagePermission));
+  }
+
+  private boolean matchIdentity(PermissionEntry pagePermission) {
+    switch (pagePermission.getIdType()) {
+    case USER:
+      if (identity.getUserId().equals(pagePermission.getId())) {
+        return true;
+      }
+    case GROUP:
+      if (identity.isMemberOf(pagePermission.getId())) {
+        return true;
+      }
+    case MEMBERSHIP:
+      UserACL.Permission membershipPermission = new UserACL.Permission();
+      membershipPermission.setPermissionExpression(pagePermission.getId());
+      return identity.isMemberOf(membershipPermission.getGroupId(), membershipPermission.getMembership());
+    default:
+      return false;
+    }
+  }
+}
@@ -19,7 +19,9 @@
 
 package org.exoplatform.wiki.service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.exoplatform.container.component.ComponentPlugin;
 import org.exoplatform.services.security.Identity;
@@ -119,6 +121,21 @@ public interface WikiService {
    */
   public int getNbOfAttachmentsOfPage(Page page) throws WikiException;
 
+  /**
+   * Get the number of attachments of several pages, counting those not in
+   * cache in one query
+   * @param pages The wiki pages
+   * @return The number of attachments of each page, by page id
+   * @throws WikiException if an error occured
+   */
+  public default Map<String, Integer> getNbOfAttachmentsOfPages(List<Page> pages) throws WikiException {
+    Map<String, Integer> nbOfAttachmentsByPageId = new HashMap<>();
+    for (Page page : pages) {
+      nbOfAttachmentsByPageId.put(page.getId(), getNbOfAttachmentsOfPage(page));
+    }
+    return nbOfAttachmentsByPageId;
+  }
+
   /**
    * Get a attachment of a the given page by name, without loading its content
    *
@@ -0,0 +1,295 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.exoplatform.wiki.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.wiki.WikiException;
+import org.exoplatform.wiki.model.DraftPage;
+import org.exoplatform.wiki.service.DataStorage;
+
+/**
+ * Write-behind buffer of the draft updates: the latest state of each updated
+ * draft is kept in memory and written to the database periodically, so that
+ * the successive autosaves of a draft between two flushes lead to a single
+ * update. The drafts creations and the updates changing the target or the
+ * parent page of a draft are written through, as their result depends on the
+ * database. A flush writes a buffered draft only if it still exists, so the
+ * drafts deleted in between are not recreated. As the buffered drafts are only
+ * readable from the node buffering them, the buffer is only correct on a
+ * single node and is disabled in cluster mode.
+ */
+public class DraftPageWriteBuffer {
+
+  private static final Log                 log          = ExoLogger.getLogger(DraftPageWriteBuffer.class);
+
+  private final DataStorage                dataStorage;
+
+  private final long                       flushInterval;
+
+  private final int                        maxBufferedDrafts;
+
+  private final Map<String, BufferedDraft> drafts       = new ConcurrentHashMap<>();
+
+  private final Object                     flushLock    = new Object();
+
+  private PortalContainer                  container;
+
+  private ScheduledExecutorService         flushExecutor;
+
+  /**
+   * @param dataStorage the storage to write the drafts to
+   * @param flushInterval the interval in seconds between two flushes, the
+   *          updates are written through when it is 0
+   * @param maxBufferedDrafts the maximum number of buffered drafts, the
+   *          updates of the other drafts are written through
+   */
+  public DraftPageWriteBuffer(DataStorage dataStorage, long flushInterval, int maxBufferedDrafts) {
+    this.dataStorage = dataStorage;
+    this.flushInterval = flushInterval;
+    this.maxBufferedDrafts = maxBufferedDrafts;
+  }
+
+  public void start() {
+    if (flushInterval <= 0) {
+      return;
+    }
+    container = PortalContainer.getInstance();
+    flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("Notes-Drafts-Flush-%d")
+                                                                                         .build());
+    flushExecutor.scheduleWithFixedDelay(this::flushInContainer, flushInterval, flushInterval, TimeUnit.SECONDS);
+  }
+
+  public void stop() {
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+      try {
+        flushExecutor.awaitTermination(flushInterval, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      flushInContainer();
+    }
+  }
+
+  /**
+   * Buffer the update of an existing draft, or write it through if it cannot
+   * be buffered
+   *
+   * @param draftPage the new state of the draft, with its id set
+   * @param username the draft author
+   * @return the updated draft
+   * @throws WikiException if the draft cannot be written
+   */
+  public DraftPage update(DraftPage draftPage, String username) throws WikiException {
+    BufferedDraft bufferedDraft = drafts.get(draftPage.getId());
+    DraftPage currentDraft = bufferedDraft == null ? null : bufferedDraft.draftPage;
+    if (flushInterval > 0 && currentDraft == null && drafts.size() < maxBufferedDrafts) {
+      currentDraft = dataStorage.getDraftPageById(draftPage.getId());
+    }
+    if (currentDraft == null || !Objects.equals(currentDraft.getTargetPageId(), draftPage.getTargetPageId())
+        || !Objects.equals(currentDraft.getParentPageId(), draftPage.getParentPageId())
+        || !Objects.equals(currentDraft.getAuthor(), username)) {
+      return write(draftPage, username);
+    }
+    DraftPage updatedDraft = copy(currentDraft);
+    updatedDraft.setName(draftPage.getName());
+    updatedDraft.setTitle(draftPage.getTitle() != null ? draftPage.getTitle() : "");
+    updatedDraft.setContent(draftPage.getContent());
+    updatedDraft.setSyntax(draftPage.getSyntax());
+    updatedDraft.setCreatedDate(draftPage.getCreatedDate());
+    updatedDraft.setUpdatedDate(draftPage.getUpdatedDate());
+    updatedDraft.setNewPage(draftPage.isNewPage());
+    if (updatedDraft.getTargetPageId() != null) {
+      updatedDraft.setTargetPageRevision(draftPage.getTargetPageRevision());
+    }
+    drafts.put(draftPage.getId(), new BufferedDraft(draftPage, updatedDraft, username));
+    return copy(updatedDraft);
+  }
+
+  /**
+   * @param draftId the draft id
+   * @return a copy of the buffered state of the draft, null if it has no
+   *         buffered update
+   */
+  public DraftPage getDraft(String draftId) {
+    BufferedDraft bufferedDraft = draftId == null ? null : drafts.get(draftId);
+    return bufferedDraft == null ? null : copy(bufferedDraft.draftPage);
+  }
+
+  /**
+   * @param targetPageId the target page id
+   * @param username the drafts author
+   * @return copies of the buffered drafts of the user targeting the page
+   */
+  public List<DraftPage> getDraftsOfPage(String targetPageId, String username) {
+    List<DraftPage> draftsOfPage = new ArrayList<>();
+    for (BufferedDraft bufferedDraft : drafts.values()) {
+      if (Objects.equals(bufferedDraft.username, username) && Objects.equals(bufferedDraft.draftPage.getTargetPageId(), targetPageId)) {
+        draftsOfPage.add(copy(bufferedDraft.draftPage));
+      }
+    }
+    return draftsOfPage;
+  }
+
+  /**
+   * Forget the buffered update of a deleted draft
+   *
+   * @param draftId the draft id
+   */
+  public void discard(String draftId) {
+    if (draftId != null) {
+      drafts.remove(draftId);
+    }
+  }
+
+  /**
+   * Forget the buffered updates of the drafts of a user matching a name or a
+   * target page
+   *
+   * @param username the drafts author
+   * @param draftName the draft name, null to match any name
+   * @param targetPageId the target page id, null to match any target page
+   */
+  public void discard(String username, String draftName, String targetPageId) {
+    drafts.values()
+          .removeIf(bufferedDraft -> Objects.equals(bufferedDraft.username, username)
+              && (draftName == null || draftName.equals(bufferedDraft.draftPage.getName()))
+              && (targetPageId == null || targetPageId.equals(bufferedDraft.draftPage.getTargetPageId())));
+  }
+
+  /**
+   * Write the buffered update of a draft
+   *
+   * @param draftId the draft id
+   */
+  public void flush(String draftId) {
+    synchronized (flushLock) {
+      BufferedDraft bufferedDraft = draftId == null ? null : drafts.get(draftId);
+      if (bufferedDraft != null) {
+        flush(draftId, bufferedDraft);
+      }
+    }
+  }
+
+  /**
+   * Write all the buffered updates
+   *
+   * @return the number of written drafts
+   */
+  public int flush() {
+    int flushedDrafts = 0;
+    synchronized (flushLock) {
+      for (Map.Entry<String, BufferedDraft> draft : drafts.entrySet()) {
+        if (flush(draft.getKey(), draft.getValue())) {
+          flushedDrafts++;
+        }
+      }
+    }
+    return flushedDrafts;
+  }
+
+  public int size() {
+    return drafts.size();
+  }
+
+  private boolean flush(String draftId, BufferedDraft bufferedDraft) {
+    try {
+      if (dataStorage.getDraftPageById(draftId) != null) {
+        dataStorage.updateDraftPageForUser(bufferedDraft.update, bufferedDraft.username);
+        return true;
+      }
+      return false;
+    } catch (Exception e) {
+      log.warn("Error while writing the draft {} of user {}", draftId, bufferedDraft.username, e);
+      return false;
+    } finally {
+      // keep the draft if it has been updated in between
+      drafts.remove(draftId, bufferedDraft);
+    }
+  }
+
+  private DraftPage write(DraftPage draftPage, String username) throws WikiException {
+    synchronized (flushLock) {
+      // an older buffered update must not overwrite this one
+      drafts.remove(draftPage.getId());
+      return dataStorage.updateDraftPageForUser(draftPage, username);
+    }
+  }
+
+  private void flushInContainer() {
+    RequestLifeCycle.begin(container);
+    try {
+      flush();
+    } finally {
+      RequestLifeCycle.end();
+    }
+  }
+
+  private static DraftPage copy(DraftPage draftPage) {
+    DraftPage copy = new DraftPage();
+    copy.setId(draftPage.getId());
+    copy.setName(draftPage.getName());
+    copy.setTitle(draftPage.getTitle());
+    copy.setAuthor(draftPage.getAuthor());
+    copy.setOwner(draftPage.getOwner());
+    copy.setContent(draftPage.getContent());
+    copy.setSyntax(draftPage.getSyntax());
+    copy.setCreatedDate(draftPage.getCreatedDate());
+    copy.setUpdatedDate(draftPage.getUpdatedDate());
+    copy.setNewPage(draftPage.isNewPage());
+    copy.setTargetPageId(draftPage.getTargetPageId());
+    copy.setTargetPageRevision(draftPage.getTargetPageRevision());
+    copy.setParentPageId(draftPage.getParentPageId());
+    copy.setParentPageName(draftPage.getParentPageName());
+    copy.setWikiId(draftPage.getWikiId());
+    copy.setWikiType(draftPage.getWikiType());
+    copy.setWikiOwner(draftPage.getWikiOwner());
+    return copy;
+  }
+
+  private static class BufferedDraft {
+
+    /** The update to write, as received */
+    private final DraftPage update;
+
+    /** The state of the draft once updated, as read from the database */
+    private final DraftPage draftPage;
+
+    private final String    username;
+
+    private BufferedDraft(DraftPage update, DraftPage draftPage, String username) {
+      this.update = update;
+      this.draftPage = draftPage;
+      this.username = username;
+    }
+  }
+}
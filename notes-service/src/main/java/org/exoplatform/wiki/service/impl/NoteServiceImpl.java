@@ -24,8 +24,10 @@ import org.apache.commons.lang.StringUtils;
 import org.exoplatform.commons.utils.CommonsUtils;
 import org.exoplatform.commons.utils.ObjectPageList;
 import org.exoplatform.commons.utils.PageList;
+import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.configuration.ConfigurationManager;
+import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.portal.config.UserACL;
 import org.exoplatform.services.cache.CacheService;
 import org.exoplatform.services.cache.ExoCache;
@@ -55,6 +57,7 @@ import org.exoplatform.wiki.service.search.WikiSearchData;
 import org.exoplatform.wiki.utils.NoteConstants;
 import org.exoplatform.wiki.utils.Utils;
 import org.gatein.api.EntityNotFoundException;
+import org.picocontainer.Startable;
 
 import java.io.*;
 import java.net.MalformedURLException;
@@ -63,10 +66,11 @@ import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-public class NoteServiceImpl implements NoteService {
+public class NoteServiceImpl implements NoteService, Startable {
 
   public static final String                              CACHE_NAME                   = "wiki.PageRenderingCache";
 
@@ -76,6 +80,12 @@ public class NoteServiceImpl implements NoteService {
 
   private static final String                             TEMP_DIRECTORY_PATH          = "java.io.tmpdir";
 
+  private static final String                             DRAFTS_FLUSH_INTERVAL_PARAM  = "draftsFlushInterval";
+
+  private static final String                             CLUSTER_PROFILE              = "cluster";
+
+  private static final String                             MAX_BUFFERED_DRAFTS_PARAM    = "maxBufferedDrafts";
+
   private static final Log                                log                          =
                                                               ExoLogger.getLogger(NoteServiceImpl.class);
 
@@ -89,9 +99,9 @@ public class NoteServiceImpl implements NoteService {
 
   private final DataStorage                               dataStorage;
 
-  private final ExoCache<Integer, MarkupData>             renderingCache;
+  private final ExoCache<MarkupKey, MarkupData>           renderingCache;
 
-  private final ExoCache<Integer, AttachmentCountData>    attachmentCountCache;
+  private final ExoCache<MarkupKey, AttachmentCountData>  attachmentCountCache;
 
   private final Map<WikiPageParams, List<WikiPageParams>> pageLinksMap                 = new ConcurrentHashMap<>();
 
@@ -99,6 +109,8 @@ public class NoteServiceImpl implements NoteService {
 
   private final SpaceService                              spaceService;
 
+  private final DraftPageWriteBuffer                      draftWriteBuffer;
+
   public NoteServiceImpl(ConfigurationManager configManager,
                          UserACL userACL,
                          DataStorage dataStorage,
@@ -106,7 +118,8 @@ public class NoteServiceImpl implements NoteService {
                          OrganizationService orgService,
                          WikiService wikiService,
                          IdentityManager identityManager,
-                         SpaceService spaceService) {
+                         SpaceService spaceService,
+                         InitParams initParams) {
     this.configManager = configManager;
     this.userACL = userACL;
     this.dataStorage = dataStorage;
@@ -116,6 +129,32 @@ public class NoteServiceImpl implements NoteService {
     this.renderingCache = cacheService.getCacheInstance(CACHE_NAME);
     this.attachmentCountCache = cacheService.getCacheInstance(ATT_CACHE_NAME);
     this.spaceService = spaceService;
+    long draftsFlushInterval = 0;
+    int maxBufferedDrafts = 1000;
+    if (initParams != null) {
+      if (initParams.getValueParam(DRAFTS_FLUSH_INTERVAL_PARAM) != null) {
+        draftsFlushInterval = Long.parseLong(initParams.getValueParam(DRAFTS_FLUSH_INTERVAL_PARAM).getValue());
+      }
+      if (initParams.getValueParam(MAX_BUFFERED_DRAFTS_PARAM) != null) {
+        maxBufferedDrafts = Integer.parseInt(initParams.getValueParam(MAX_BUFFERED_DRAFTS_PARAM).getValue());
+      }
+    }
+    if (draftsFlushInterval > 0 && ExoContainer.hasProfile(CLUSTER_PROFILE)) {
+      // the buffered drafts would only be readable from the node buffering them
+      log.info("Draft updates are written immediately in cluster mode");
+      draftsFlushInterval = 0;
+    }
+    this.draftWriteBuffer = new DraftPageWriteBuffer(dataStorage, draftsFlushInterval, maxBufferedDrafts);
+  }
+
+  @Override
+  public void start() {
+    draftWriteBuffer.start();
+  }
+
+  @Override
+  public void stop() {
+    draftWriteBuffer.stop();
   }
 
   public static File zipFiles(String zipFileName, List<File> addToZip) throws IOException {
@@ -146,7 +185,7 @@ public class NoteServiceImpl implements NoteService {
     return zip;
   }
 
-  public ExoCache<Integer, MarkupData> getRenderingCache() {
+  public ExoCache<MarkupKey, MarkupData> getRenderingCache() {
     return renderingCache;
   }
 
@@ -284,31 +323,16 @@ public class NoteServiceImpl implements NoteService {
           throw new IllegalAccessException("User does not have edit permissions on the note.");
         }
 
-        invalidateCachesOfPageTree(note, userIdentity.getUserId());
-        invalidateAttachmentCache(note);
-
-        // Store all children to launch post deletion listeners
-        List<Page> allChrildrenPages = new ArrayList<>();
-        Queue<Page> queue = new LinkedList<>();
-        queue.add(note);
-        Page tempPage;
-        while (!queue.isEmpty()) {
-          tempPage = queue.poll();
-          List<Page> childrenPages = getChildrenNoteOf(tempPage, userIdentity.getUserId(), false, false);
-          for (Page childPage : childrenPages) {
-            queue.add(childPage);
-            allChrildrenPages.add(childPage);
-          }
-        }
+        // Store the note and all its descendants to launch post deletion
+        // listeners
+        List<Page> deletedNotes = new ArrayList<>();
+        deletedNotes.add(note);
+        deletedNotes.addAll(getDescendantsNoteOf(note, userIdentity.getUserId(), -1, false));
+        invalidateCachesOfPageTree(deletedNotes);
 
         deleteNote(noteType, noteOwner, noteName);
 
-        postDeletePage(noteType, noteOwner, noteName, note);
-
-        // Post delete activity for all children pages
-        for (Page childNote : allChrildrenPages) {
-          postDeletePage(childNote.getWikiType(), childNote.getWikiOwner(), childNote.getName(), childNote);
-        }
+        postDeletePages(deletedNotes);
 
       } else {
         log.error("Can't delete note '" + noteName + "'. This note does not exist.");
@@ -444,6 +468,52 @@ public class NoteServiceImpl implements NoteService {
     return page;
   }
 
+  @Override
+  public Map<String, Page> getNotesOfNoteBookByNames(String noteType,
+                                                     String noteOwner,
+                                                     Collection<String> noteNames,
+                                                     Identity userIdentity) throws WikiException {
+    Map<String, Page> pages = dataStorage.getPagesOfWikiByNames(noteType, noteOwner, noteNames);
+    if (pages.isEmpty()) {
+      return pages;
+    }
+    String userId = userIdentity.getUserId();
+    Space space = spaceService.getSpaceByGroupId(pages.values().iterator().next().getWikiOwner());
+    Map<String, Page> viewablePages = new HashMap<>();
+    if (space != null) {
+      // the permissions on the notes of a space only depend on the space roles
+      Page firstPage = pages.values().iterator().next();
+      if (!canViewNotes(userId, space, firstPage)) {
+        return viewablePages;
+      }
+      boolean canManage = canManageNotes(userId, space, firstPage);
+      boolean canImport = canImportNotes(userId, space, firstPage);
+      for (Page page : pages.values()) {
+        page.setCanManage(canManage);
+        page.setCanImport(canImport);
+        viewablePages.put(page.getName(), page);
+      }
+    } else {
+      for (Page page : pages.values()) {
+        if (canViewNotes(userId, null, page)) {
+          page.setCanManage(canManageNotes(userId, null, page));
+          page.setCanImport(canImportNotes(userId, null, page));
+          viewablePages.put(page.getName(), page);
+        }
+      }
+    }
+    if (viewablePages.isEmpty()) {
+      return viewablePages;
+    }
+    long currentUserId = Long.parseLong(identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, userId).getId());
+    for (Page page : viewablePages.values()) {
+      checkToRemoveDomainInUrl(page);
+      page.setCanView(true);
+      page.setMetadatas(retrieveMetadataItems(page.getId(), currentUserId));
+    }
+    return viewablePages;
+  }
+
   @Override
   public Page getNoteById(String id) throws WikiException {
     if (id == null) {
@@ -459,6 +529,14 @@ public class NoteServiceImpl implements NoteService {
       return null;
     }
     DraftPage draftPage = dataStorage.getDraftPageById(id);
+    if (draftPage == null) {
+      draftWriteBuffer.discard(id);
+    } else {
+      DraftPage bufferedDraftPage = draftWriteBuffer.getDraft(id);
+      if (bufferedDraftPage != null) {
+        draftPage = bufferedDraftPage;
+      }
+    }
 
     if (draftPage != null) {
       Space space = spaceService.getSpaceByGroupId(draftPage.getWikiOwner());
@@ -482,7 +560,21 @@ public class NoteServiceImpl implements NoteService {
       return null;
     }
 
-    return dataStorage.getLatestDraftOfPage(targetPage, username);
+    DraftPage latestDraft = dataStorage.getLatestDraftOfPage(targetPage, username);
+    if (latestDraft != null) {
+      DraftPage bufferedDraft = draftWriteBuffer.getDraft(latestDraft.getId());
+      if (bufferedDraft != null) {
+        latestDraft = bufferedDraft;
+      }
+    }
+    // a buffered update can make another draft the latest one
+    for (DraftPage bufferedDraft : draftWriteBuffer.getDraftsOfPage(targetPage.getId(), username)) {
+      if ((latestDraft == null || bufferedDraft.getUpdatedDate().after(latestDraft.getUpdatedDate()))
+          && dataStorage.getDraftPageById(bufferedDraft.getId()) != null) {
+        latestDraft = bufferedDraft;
+      }
+    }
+    return latestDraft;
   }
 
   @Override
@@ -569,14 +661,33 @@ public class NoteServiceImpl implements NoteService {
   public List<Page> getChildrenNoteOf(Page note, String userId, boolean withDrafts, boolean withChild) throws WikiException {
     List<Page> pages = dataStorage.getChildrenPageOf(note, userId, withDrafts);
     if (withChild) {
+      List<Long> pageIds = pages.stream()
+                                .filter(page -> !page.isDraftPage())
+                                .map(page -> Long.parseLong(page.getId()))
+                                .collect(Collectors.toList());
+      Map<Long, Long> childrenCount = dataStorage.countChildren(pageIds);
       for (Page page : pages) {
-        long pageId = Long.parseLong(page.getId());
-        page.setHasChild(dataStorage.hasChildren(pageId));
+        page.setHasChild(!page.isDraftPage() && childrenCount.getOrDefault(Long.parseLong(page.getId()), 0L) > 0);
       }
     }
     return pages;
   }
 
+  @Override
+  public Map<Long, Long> countChildrenNotes(Collection<Long> noteIds, String userId, boolean withDrafts) throws WikiException {
+    return dataStorage.countChildren(noteIds, userId, withDrafts);
+  }
+
+  @Override
+  public List<Page> getDescendantsNoteOf(Page note, String userId, int depth, boolean withDrafts) throws WikiException {
+    return dataStorage.getDescendantsOfPage(note, userId, depth, withDrafts);
+  }
+
+  @Override
+  public List<Page> getAncestorsOfNote(String noteId) throws WikiException {
+    return dataStorage.getAncestorsOfPage(noteId);
+  }
+
   @Override
   public List<NoteToExport> getChildrenNoteOf(NoteToExport note, String userId) throws WikiException {
 
@@ -614,7 +725,7 @@ public class NoteServiceImpl implements NoteService {
                                             String noteOwner,
                                             String noteName,
                                             boolean isDraftNote) throws WikiException {
-    return getBreadCrumb(null, noteType, noteOwner, noteName, isDraftNote);
+    return buildBreadCrumb(noteType, noteOwner, noteName, isDraftNote);
   }
 
   @Override
@@ -648,11 +759,20 @@ public class NoteServiceImpl implements NoteService {
   public void removeDraftOfNote(WikiPageParams param) throws WikiException {
     Page page = getNoteOfNoteBookByName(param.getType(), param.getOwner(), param.getPageName());
     dataStorage.deleteDraftOfPage(page, Utils.getCurrentUser());
+    if (page != null) {
+      draftWriteBuffer.discard(Utils.getCurrentUser(), null, page.getId());
+    }
   }
 
   @Override
   public void removeDraft(String draftName) throws WikiException {
     dataStorage.deleteDraftByName(draftName, Utils.getCurrentUser());
+    draftWriteBuffer.discard(Utils.getCurrentUser(), draftName, null);
+  }
+
+  @Override
+  public void flushDraftNote(String draftId) {
+    draftWriteBuffer.flush(draftId);
   }
 
   @Override
@@ -673,6 +793,42 @@ public class NoteServiceImpl implements NoteService {
     return versionsHistory;
   }
 
+  @Override
+  public List<PageHistory> getVersionsHistoryOfNote(Page note, String userName, int offset, int limit) throws WikiException {
+    getLatestVersionNumberOfNote(note, userName);
+    List<PageHistory> versionsHistory = dataStorage.getHistoryOfPage(note, offset, limit);
+    for (PageHistory version : versionsHistory) {
+      if (version.getAuthor() != null) {
+        org.exoplatform.social.core.identity.model.Identity authorIdentity =
+                                                                           identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
+                                                                                                               version.getAuthor());
+        version.setAuthorFullName(authorIdentity.getProfile().getFullName());
+      }
+    }
+    return versionsHistory;
+  }
+
+  @Override
+  public long getLatestVersionNumberOfNote(Page note, String userName) throws WikiException {
+    Long latestVersionNumber = dataStorage.getLatestVersionNumberOfPage(note);
+    if (latestVersionNumber == null) {
+      dataStorage.addPageVersion(note, userName);
+      latestVersionNumber = dataStorage.getLatestVersionNumberOfPage(note);
+    }
+    return latestVersionNumber == null ? 0 : latestVersionNumber;
+  }
+
+  @Override
+  public long countVersionsOfNote(Page note, String userName) throws WikiException {
+    getLatestVersionNumberOfNote(note, userName);
+    return dataStorage.countVersionsOfPage(note);
+  }
+
+  @Override
+  public String getVersionContentOfNote(Page note, long versionNumber) throws WikiException {
+    return dataStorage.getVersionContentOfPage(note, versionNumber);
+  }
+
   @Override
   public void createVersionOfNote(Page note, String userName) throws WikiException {
     dataStorage.addPageVersion(note, userName);
@@ -721,17 +877,13 @@ public class NoteServiceImpl implements NoteService {
     newDraftPage.setCreatedDate(new Date(clientTime));
     newDraftPage.setUpdatedDate(new Date(clientTime));
     if (StringUtils.isEmpty(revision)) {
-      List<PageHistory> versions = getVersionsHistoryOfNote(targetPage, username);
-      if (versions != null && !versions.isEmpty()) {
-        newDraftPage.setTargetPageRevision(String.valueOf(versions.get(0).getVersionNumber()));
-      } else {
-        newDraftPage.setTargetPageRevision("1");
-      }
+      long latestVersionNumber = getLatestVersionNumberOfNote(targetPage, username);
+      newDraftPage.setTargetPageRevision(latestVersionNumber > 0 ? String.valueOf(latestVersionNumber) : "1");
     } else {
       newDraftPage.setTargetPageRevision(revision);
     }
 
-    newDraftPage = dataStorage.updateDraftPageForUser(newDraftPage, Utils.getCurrentUser());
+    newDraftPage = draftWriteBuffer.update(newDraftPage, Utils.getCurrentUser());
 
     return newDraftPage;
   }
@@ -754,7 +906,7 @@ public class NoteServiceImpl implements NoteService {
     newDraftPage.setCreatedDate(new Date(clientTime));
     newDraftPage.setUpdatedDate(new Date(clientTime));
 
-    newDraftPage = dataStorage.updateDraftPageForUser(newDraftPage, Utils.getCurrentUser());
+    newDraftPage = draftWriteBuffer.update(newDraftPage, Utils.getCurrentUser());
 
     return newDraftPage;
   }
@@ -779,12 +931,8 @@ public class NoteServiceImpl implements NoteService {
     newDraftPage.setCreatedDate(new Date(clientTime));
     newDraftPage.setUpdatedDate(new Date(clientTime));
     if (StringUtils.isEmpty(revision)) {
-      List<PageHistory> versions = getVersionsHistoryOfNote(targetPage, username);
-      if (versions != null && !versions.isEmpty()) {
-        newDraftPage.setTargetPageRevision(String.valueOf(versions.get(0).getVersionNumber()));
-      } else {
-        newDraftPage.setTargetPageRevision("1");
-      }
+      long latestVersionNumber = getLatestVersionNumberOfNote(targetPage, username);
+      newDraftPage.setTargetPageRevision(latestVersionNumber > 0 ? String.valueOf(latestVersionNumber) : "1");
     } else {
       newDraftPage.setTargetPageRevision(revision);
     }
@@ -829,19 +977,8 @@ public class NoteServiceImpl implements NoteService {
     for (WikiPageParams wikiPageParams : linkedPages) {
       try {
         MarkupKey key = new MarkupKey(wikiPageParams, false);
-        renderingCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        renderingCache.remove(new Integer(key.hashCode()));
-
-        key = new MarkupKey(wikiPageParams, false);
-        renderingCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        renderingCache.remove(new Integer(key.hashCode()));
-
-        key = new MarkupKey(wikiPageParams, false);
-        renderingCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        renderingCache.remove(new Integer(key.hashCode()));
+        renderingCache.remove(key);
+        renderingCache.remove(key.withSupportSectionEdit(true));
       } catch (Exception e) {
         log.warn(String.format("Failed to invalidate cache of page [%s:%s:%s]",
                                wikiPageParams.getType(),
@@ -854,20 +991,12 @@ public class NoteServiceImpl implements NoteService {
   /**
    * Invalidate all caches of a page and all its descendants
    *
-   * @param note root page
-   * @param userId
-   * @throws WikiException if an error occured
+   * @param notes root page and its descendants
    */
-  protected void invalidateCachesOfPageTree(Page note, String userId) throws WikiException {
-    Queue<Page> queue = new LinkedList<>();
-    queue.add(note);
-    while (!queue.isEmpty()) {
-      Page currentPage = queue.poll();
-      invalidateCache(currentPage);
-      List<Page> childrenPages = getChildrenNoteOf(currentPage, userId, false,false);
-      for (Page child : childrenPages) {
-        queue.add(child);
-      }
+  protected void invalidateCachesOfPageTree(List<Page> notes) {
+    for (Page note : notes) {
+      invalidateCache(note);
+      invalidateAttachmentCache(note);
     }
   }
 
@@ -887,14 +1016,8 @@ public class NoteServiceImpl implements NoteService {
     for (WikiPageParams linkedWikiPageParams : linkedPages) {
       try {
         MarkupKey key = new MarkupKey(linkedWikiPageParams, false);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-
-        key = new MarkupKey(linkedWikiPageParams, false);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
+        attachmentCountCache.remove(key);
+        attachmentCountCache.remove(key.withSupportSectionEdit(true));
       } catch (Exception e) {
         log.warn(String.format("Failed to invalidate cache of note [%s:%s:%s]",
                                linkedWikiPageParams.getType(),
@@ -947,6 +1070,19 @@ public class NoteServiceImpl implements NoteService {
     }
   }
 
+  public void postDeletePages(List<Page> pages) throws WikiException {
+    List<PageWikiListener> listeners = wikiService.getPageListeners();
+    for (PageWikiListener l : listeners) {
+      try {
+        l.postDeletePages(pages);
+      } catch (WikiException e) {
+        if (log.isWarnEnabled()) {
+          log.warn(String.format("Executing listener [%s] on [%s] failed", l, pages.get(0).getName()), e);
+        }
+      }
+    }
+  }
+
   public void postOpenByTree(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
     List<PageWikiListener> listeners = wikiService.getPageListeners();
     for (PageWikiListener l : listeners) {
@@ -1028,11 +1164,20 @@ public class NoteServiceImpl implements NoteService {
     return dataStorage.hasPermissionOnPage(page, permissionType, user);
   }
 
+  @Override
+  public Map<Long, List<PermissionEntry>> getPermissionsOfNotes(Collection<Long> noteIds) throws WikiException {
+    return dataStorage.getPermissionsOfPages(noteIds);
+  }
+
+  @Override
+  public PermissionEvaluator getPermissionEvaluator(Identity identity) {
+    return new PermissionEvaluator(this, identity);
+  }
+
 
   /**
-   * Recursive method to build the breadcump of a note
+   * Build the breadcrumb of a note from its ancestors
    *
-   * @param list
    * @param noteType
    * @param noteOwner
    * @param noteName
@@ -1040,14 +1185,11 @@ public class NoteServiceImpl implements NoteService {
    * @return
    * @throws WikiException
    */
-  private List<BreadcrumbData> getBreadCrumb(List<BreadcrumbData> list,
-                                             String noteType,
-                                             String noteOwner,
-                                             String noteName,
-                                             boolean isDraftNote) throws WikiException {
-    if (list == null) {
-      list = new ArrayList<>(5);
-    }
+  private List<BreadcrumbData> buildBreadCrumb(String noteType,
+                                               String noteOwner,
+                                               String noteName,
+                                               boolean isDraftNote) throws WikiException {
+    List<BreadcrumbData> list = new ArrayList<>(5);
     if (noteName == null) {
       return list;
     }
@@ -1055,34 +1197,31 @@ public class NoteServiceImpl implements NoteService {
     if (note == null) {
       return list;
     }
-    list.add(0, new BreadcrumbData(note.getName(), note.getId(), note.getTitle(), noteType, noteOwner));
-    Page parentNote = isDraftNote ? getNoteById(note.getParentPageId()) : getParentNoteOf(note);
-    if (parentNote != null) {
-      getBreadCrumb(list, noteType, noteOwner, parentNote.getName(), false);
+    List<Page> ancestors = new ArrayList<>();
+    if (!isDraftNote) {
+      ancestors.addAll(getAncestorsOfNote(note.getId()));
+    } else if (note.getParentPageId() != null) {
+      Page parentNote = getNoteById(note.getParentPageId());
+      if (parentNote != null) {
+        ancestors.addAll(getAncestorsOfNote(parentNote.getId()));
+        ancestors.add(parentNote);
+      }
     }
-
+    for (Page ancestor : ancestors) {
+      list.add(new BreadcrumbData(ancestor.getName(), ancestor.getId(), ancestor.getTitle(), noteType, noteOwner));
+    }
+    list.add(new BreadcrumbData(note.getName(), note.getId(), note.getTitle(), noteType, noteOwner));
     return list;
   }
 
   private LinkedList<String> getNoteAncestorsIds(String noteId) throws WikiException {
-    return getNoteAncestorsIds(null, noteId);
-  }
-
-  private LinkedList<String> getNoteAncestorsIds(LinkedList<String> ancestorsIds, String noteId) throws WikiException {
-    if (ancestorsIds == null) {
-      ancestorsIds = new LinkedList<>();
-    }
+    LinkedList<String> ancestorsIds = new LinkedList<>();
     if (noteId == null) {
       return ancestorsIds;
     }
-    Page note = getNoteById(noteId);
-    String parentId = note.getParentPageId();
-    
-    if (parentId != null) {
-      ancestorsIds.push(parentId);
-      getNoteAncestorsIds(ancestorsIds, parentId);
+    for (Page ancestor : getAncestorsOfNote(noteId)) {
+      ancestorsIds.add(ancestor.getId());
     }
-    
     return ancestorsIds;
   }
 
@@ -1101,12 +1240,12 @@ public class NoteServiceImpl implements NoteService {
     String renderedContent = StringUtils.EMPTY;
     try {
       MarkupKey key = new MarkupKey(new WikiPageParams(note.getWikiType(), note.getWikiOwner(), note.getName()), false);
-      MarkupData cachedData = renderingCache.get(key.hashCode());
+      MarkupData cachedData = renderingCache.get(key);
       if (cachedData != null) {
         return cachedData.build();
       }
       renderedContent = note.getContent();
-      renderingCache.put(key.hashCode(), new MarkupData(renderedContent));
+      renderingCache.put(key, new MarkupData(renderedContent));
     } catch (Exception e) {
       log.error(String.format("Failed to get rendered content of note [%s:%s:%s]", note.getWikiType(), note.getWikiOwner(), note.getName()), e);
     }
@@ -1382,7 +1521,10 @@ public class NoteServiceImpl implements NoteService {
     org.exoplatform.social.core.identity.model.Identity currentIdentity =
                                                                         identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME,
                                                                                                             username);
-    long currentUserId = Long.parseLong(currentIdentity.getId());
+    return retrieveMetadataItems(noteId, Long.parseLong(currentIdentity.getId()));
+  }
+
+  private Map<String, List<MetadataItem>> retrieveMetadataItems(String noteId, long currentUserId) {
     MetadataService metadataService = CommonsUtils.getService(MetadataService.class);
     MetadataObject metadataObject = new MetadataObject(Utils.NOTES_METADATA_OBJECT_TYPE, noteId);
     List<MetadataItem> metadataItems = metadataService.getMetadataItemsByObject(metadataObject);
@@ -57,9 +57,9 @@ public class WikiServiceImpl implements WikiService {
 
   private String                                    wikiWebappUri;
 
-  private final ExoCache<Integer, MarkupData>             renderingCache;
+  private final ExoCache<MarkupKey, MarkupData>           renderingCache;
 
-  private final ExoCache<Integer, AttachmentCountData>    attachmentCountCache;
+  private final ExoCache<MarkupKey, AttachmentCountData>  attachmentCountCache;
 
   private final Map<WikiPageParams, List<WikiPageParams>> pageLinksMap                     = new ConcurrentHashMap<>();
 
@@ -82,7 +82,7 @@ public class WikiServiceImpl implements WikiService {
     }
   }
 
-  public ExoCache<Integer, MarkupData> getRenderingCache() {
+  public ExoCache<MarkupKey, MarkupData> getRenderingCache() {
     return renderingCache;
   }
 
@@ -307,14 +307,8 @@ public class WikiServiceImpl implements WikiService {
     for (WikiPageParams linkedWikiPageParams : linkedPages) {
       try {
         MarkupKey key = new MarkupKey(linkedWikiPageParams, false);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-
-        key = new MarkupKey(linkedWikiPageParams, false);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
-        key.setSupportSectionEdit(true);
-        attachmentCountCache.remove(new Integer(key.hashCode()));
+        attachmentCountCache.remove(key);
+        attachmentCountCache.remove(key.withSupportSectionEdit(true));
       } catch (Exception e) {
         LOG.warn(String.format("Failed to invalidate cache of page [%s:%s:%s]",
                                linkedWikiPageParams.getType(),
@@ -342,15 +336,13 @@ public class WikiServiceImpl implements WikiService {
 
     WikiPageParams wikiPageParams = new WikiPageParams(page.getWikiType(), page.getWikiOwner(), page.getName());
     MarkupKey key = new MarkupKey(wikiPageParams, false);
-    Integer cacheKey = new Integer(key.hashCode());
-    AttachmentCountData cachedNbOfAttachments = attachmentCountCache.get(cacheKey);
+    AttachmentCountData cachedNbOfAttachments = attachmentCountCache.get(key);
     if (cachedNbOfAttachments != null) {
       nbOfAttachments = cachedNbOfAttachments.build();
     } else {
       try {
-        List<Attachment> attachments = dataStorage.getAttachmentsOfPage(page, false);
-        nbOfAttachments = attachments == null ? 0 : attachments.size();
-        attachmentCountCache.put(cacheKey, new AttachmentCountData(nbOfAttachments));
+        nbOfAttachments = dataStorage.countAttachments(page);
+        attachmentCountCache.put(key, new AttachmentCountData(nbOfAttachments));
       } catch (WikiException e) {
         log.error("Cannot get number of attachments of " + page.getWikiType() + ":" + page.getWikiOwner() + ":" + page.getName()
             + " - Cause : " + e.getMessage(), e);
@@ -359,6 +351,35 @@ public class WikiServiceImpl implements WikiService {
     return nbOfAttachments;
   }
 
+  @Override
+  public Map<String, Integer> getNbOfAttachmentsOfPages(List<Page> pages) throws WikiException {
+    Map<String, Integer> nbOfAttachmentsByPageId = new HashMap<>();
+    Map<String, MarkupKey> uncachedPagesKeys = new HashMap<>();
+    for (Page page : pages) {
+      if (page.isDraftPage()) {
+        nbOfAttachmentsByPageId.put(page.getId(), getNbOfAttachmentsOfPage(page));
+        continue;
+      }
+      WikiPageParams wikiPageParams = new WikiPageParams(page.getWikiType(), page.getWikiOwner(), page.getName());
+      MarkupKey key = new MarkupKey(wikiPageParams, false);
+      AttachmentCountData cachedNbOfAttachments = attachmentCountCache.get(key);
+      if (cachedNbOfAttachments != null) {
+        nbOfAttachmentsByPageId.put(page.getId(), cachedNbOfAttachments.build());
+      } else {
+        uncachedPagesKeys.put(page.getId(), key);
+      }
+    }
+    if (!uncachedPagesKeys.isEmpty()) {
+      Map<String, Integer> nbOfAttachments = dataStorage.countAttachments(new ArrayList<>(uncachedPagesKeys.keySet()));
+      for (Map.Entry<String, MarkupKey> uncachedPageKey : uncachedPagesKeys.entrySet()) {
+        int nbOfPageAttachments = nbOfAttachments.getOrDefault(uncachedPageKey.getKey(), 0);
+        attachmentCountCache.put(uncachedPageKey.getValue(), new AttachmentCountData(nbOfPageAttachments));
+        nbOfAttachmentsByPageId.put(uncachedPageKey.getKey(), nbOfPageAttachments);
+      }
+    }
+    return nbOfAttachmentsByPageId;
+  }
+
   @Override
   public Attachment getAttachmentOfPageByName(String attachmentName, Page page) throws WikiException {
     return getAttachmentOfPageByName(attachmentName, page, false);
@@ -366,15 +387,7 @@ public class WikiServiceImpl implements WikiService {
 
   @Override
   public Attachment getAttachmentOfPageByName(String attachmentName, Page page, boolean loadContent) throws WikiException {
-    Attachment attachment = null;
-    List<Attachment> attachments = dataStorage.getAttachmentsOfPage(page, loadContent);
-    for (Attachment att : attachments) {
-      if (att.getName().equals(attachmentName)) {
-        attachment = att;
-        break;
-      }
-    }
-    return attachment;
+    return dataStorage.getAttachmentOfPageByName(attachmentName, page, loadContent);
   }
 
   @Override
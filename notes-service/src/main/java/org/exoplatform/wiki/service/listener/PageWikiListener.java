@@ -19,7 +19,11 @@
 
 package org.exoplatform.wiki.service.listener;
 
+import java.util.List;
+
 import org.exoplatform.container.component.BaseComponentPlugin;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.service.PageUpdateType;
@@ -28,12 +32,34 @@ import org.exoplatform.wiki.service.PageUpdateType;
  * Listener to trigger actions on page operations
  */
 public abstract class PageWikiListener extends BaseComponentPlugin {
+
+  private static final Log LOG = ExoLogger.getLogger(PageWikiListener.class);
+
   public abstract void postAddPage(final String wikiType, final String wikiOwner, final String pageId, Page page) throws WikiException;
 
   public abstract void postUpdatePage(final String wikiType, final String wikiOwner, final String pageId, Page page, PageUpdateType wikiUpdateType) throws WikiException;
 
   public abstract void postDeletePage(final String wikiType, final String wikiOwner, final String pageId, Page page) throws WikiException;
 
+  /**
+   * Called once when a page is deleted with all its descendants. Calls
+   * {@link #postDeletePage(String, String, String, Page)} for each deleted page
+   * by default, a failure on a page does not prevent processing the next ones.
+   * Listeners able to process the deleted pages at once should override it.
+   *
+   * @param pages the deleted pages, the root page first
+   * @throws WikiException if an error occured
+   */
+  public void postDeletePages(List<Page> pages) throws WikiException {
+    for (Page page : pages) {
+      try {
+        postDeletePage(page.getWikiType(), page.getWikiOwner(), page.getName(), page);
+      } catch (Exception e) {
+        LOG.warn("Executing listener [{}] on [{}] failed", this, page.getName(), e);
+      }
+    }
+  }
+
   public abstract void postgetPagefromTree(final String wikiType, final String wikiOwner, final String pageId, Page page) throws WikiException;
 
   public abstract void postgetPagefromBreadCrumb(final String wikiType, final String wikiOwner, final String pageId, Page page) throws WikiException;
@@ -17,7 +17,10 @@
 
 package org.exoplatform.wiki.service.rest;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.URLDecoder;
+import java.nio.file.Files;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -28,6 +31,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -78,9 +82,17 @@ import io.swagger.jaxrs.PATCH;
 
 public class NotesRestService implements ResourceContainer {
 
-  private static final String         NOTE_NAME_EXISTS = "Note name already exists";
+  private static final String         NOTE_NAME_EXISTS       = "Note name already exists";
 
-  private static final Log            log              = ExoLogger.getLogger(NotesRestService.class);
+  private static final Log            log                    = ExoLogger.getLogger(NotesRestService.class);
+
+  private static final String         BYTES_RANGE_PREFIX     = "bytes=";
+
+  private static final String         CONTENT_RANGE_HEADER   = "Content-Range";
+
+  private static final String         ACCEPT_RANGES_HEADER   = "Accept-Ranges";
+
+  private static final int            ATTACHMENT_BUFFER_SIZE = 8192;
 
   private final NoteService           noteService;
 
@@ -94,6 +106,8 @@ public class NotesRestService implements ResourceContainer {
 
   private final CacheControl          cc;
 
+  private final CacheControl          attachmentCacheControl;
+
   public NotesRestService(NoteService noteService,
                           WikiService noteBookService,
                           UploadService uploadService,
@@ -107,6 +121,11 @@ public class NotesRestService implements ResourceContainer {
     cc = new CacheControl();
     cc.setNoCache(true);
     cc.setNoStore(true);
+    // the attachments can be cached by the browser, provided they are
+    // revalidated with their ETag
+    attachmentCacheControl = new CacheControl();
+    attachmentCacheControl.setPrivate(true);
+    attachmentCacheControl.setNoCache(true);
   }
 
   @GET
@@ -307,13 +326,22 @@ public class NotesRestService implements ResourceContainer {
       @ApiResponse(code = 404, message = "Resource not found") })
   public Response getNoteVersions(@ApiParam(value = "Note id", required = true)
   @PathParam("noteId")
-  String noteId) {
+  String noteId,
+                                  @ApiParam(value = "Offset of the first version, starting from the latest")
+                                  @QueryParam("offset")
+                                  int offset,
+                                  @ApiParam(value = "Maximum number of versions without their content, latest first, all the versions with their content, oldest first, if not set")
+                                  @QueryParam("limit")
+                                  int limit) {
     try {
       Identity identity = ConversationState.getCurrent().getIdentity();
       Page note = noteService.getNoteById(noteId, identity);
       if (note == null) {
         return Response.status(Response.Status.NOT_FOUND).build();
       }
+      if (limit > 0) {
+        return Response.ok(noteService.getVersionsHistoryOfNote(note, identity.getUserId(), offset, limit)).build();
+      }
       return Response.ok(noteService.getVersionsHistoryOfNote(note, identity.getUserId())).build();
     } catch (IllegalAccessException e) {
       log.error("User does not have view permissions on the note {}", noteId, e);
@@ -324,6 +352,124 @@ public class NotesRestService implements ResourceContainer {
     }
   }
 
+  @GET
+  @Path("/versions/{noteId}/{versionNumber}")
+  @Produces(MediaType.TEXT_HTML)
+  @RolesAllowed("users")
+  @ApiOperation(value = "Get the content of a version of note", httpMethod = "GET", response = Response.class, notes = "This gets the content of a version of a note if the authenticated user has permissions to view the note.")
+  @ApiResponses(value = { @ApiResponse(code = 200, message = "Request fulfilled"),
+      @ApiResponse(code = 400, message = "Invalid query input"), @ApiResponse(code = 403, message = "Unauthorized operation"),
+      @ApiResponse(code = 404, message = "Resource not found") })
+  public Response getNoteVersionContent(@ApiParam(value = "Note id", required = true)
+  @PathParam("noteId")
+  String noteId,
+                                        @ApiParam(value = "Version number", required = true)
+                                        @PathParam("versionNumber")
+                                        long versionNumber) {
+    try {
+      Identity identity = ConversationState.getCurrent().getIdentity();
+      Page note = noteService.getNoteById(noteId, identity);
+      if (note == null) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      String content = noteService.getVersionContentOfNote(note, versionNumber);
+      if (content == null) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      return Response.ok(content).build();
+    } catch (IllegalAccessException e) {
+      log.error("User does not have view permissions on the note {}", noteId, e);
+      return Response.status(Response.Status.UNAUTHORIZED).build();
+    } catch (Exception e) {
+      log.error("Can't get version {} of note {}", versionNumber, noteId, e);
+      return Response.serverError().entity(e.getMessage()).build();
+    }
+  }
+
+  @GET
+  @Path("/attachments/{noteId}/{attachmentName}")
+  @RolesAllowed("users")
+  @ApiOperation(value = "Download an attachment of a note", httpMethod = "GET", response = Response.class, notes = "This streams the content of an attachment of a note, or the requested bytes range of it, if the authenticated user has permissions to view the note.")
+  @ApiResponses(value = { @ApiResponse(code = 200, message = "Request fulfilled"),
+      @ApiResponse(code = 206, message = "Partial content"), @ApiResponse(code = 304, message = "Not modified"),
+      @ApiResponse(code = 403, message = "Unauthorized operation"), @ApiResponse(code = 404, message = "Resource not found"),
+      @ApiResponse(code = 416, message = "Requested range not satisfiable") })
+  public Response getNoteAttachment(@Context
+  Request request,
+                                    @ApiParam(value = "Note id", required = true)
+                                    @PathParam("noteId")
+                                    String noteId,
+                                    @ApiParam(value = "Attachment name", required = true)
+                                    @PathParam("attachmentName")
+                                    String attachmentName,
+                                    @ApiParam(value = "Requested bytes range", required = false)
+                                    @HeaderParam("Range")
+                                    String range) {
+    try {
+      Identity identity = ConversationState.getCurrent().getIdentity();
+      Page note = noteService.getNoteById(noteId, identity);
+      if (note == null || note.isDeleted()) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      Attachment attachment = noteBookService.getAttachmentOfPageByName(attachmentName, note, true);
+      if (attachment == null) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      EntityTag entityTag = new EntityTag(getAttachmentTag(attachment));
+      Response.ResponseBuilder notModifiedResponse = request.evaluatePreconditions(entityTag);
+      if (notModifiedResponse != null) {
+        return notModifiedResponse.tag(entityTag).cacheControl(attachmentCacheControl).build();
+      }
+      long size = attachment.getWeightInBytes();
+      long[] bytesRange = null;
+      // multiple ranges are not supported, the whole content is sent instead
+      if (StringUtils.startsWith(range, BYTES_RANGE_PREFIX) && !range.contains(",")) {
+        try {
+          bytesRange = getBytesRange(range.substring(BYTES_RANGE_PREFIX.length()), size);
+          if (bytesRange == null) {
+            return Response.status(HTTPStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                           .header(CONTENT_RANGE_HEADER, "bytes */" + size)
+                           .build();
+          }
+        } catch (NumberFormatException e) {
+          // an invalid range is ignored
+          bytesRange = null;
+        }
+      }
+      long offset = bytesRange == null ? 0 : bytesRange[0];
+      long length = bytesRange == null ? size : bytesRange[1] - bytesRange[0] + 1;
+      StreamingOutput contentStream = output -> {
+        try (InputStream inputStream = attachment.openContentStream()) {
+          if (inputStream != null) {
+            IOUtils.copyLarge(inputStream, output, offset, length, new byte[ATTACHMENT_BUFFER_SIZE]);
+          }
+        }
+      };
+      Response.ResponseBuilder responseBuilder = Response.status(bytesRange == null ? HTTPStatus.OK : HTTPStatus.PARTIAL)
+                                                         .entity(contentStream)
+                                                         .type(StringUtils.defaultIfBlank(attachment.getMimeType(),
+                                                                                          MediaType.APPLICATION_OCTET_STREAM))
+                                                         .tag(entityTag)
+                                                         .cacheControl(attachmentCacheControl)
+                                                         .header(HttpHeaders.CONTENT_LENGTH, length)
+                                                         .header(ACCEPT_RANGES_HEADER, "bytes")
+                                                         .header("Content-Disposition",
+                                                                 "inline; filename=\""
+                                                                     + StringUtils.replace(attachment.getName(), "\"", "")
+                                                                     + "\"");
+      if (bytesRange != null) {
+        responseBuilder.header(CONTENT_RANGE_HEADER, "bytes " + bytesRange[0] + "-" + bytesRange[1] + "/" + size);
+      }
+      return responseBuilder.build();
+    } catch (IllegalAccessException e) {
+      log.error("User does not have view permissions on the note {}", noteId, e);
+      return Response.status(Response.Status.UNAUTHORIZED).build();
+    } catch (Exception e) {
+      log.error("Can't get attachment {} of note {}", attachmentName, noteId, e);
+      return Response.serverError().entity(e.getMessage()).build();
+    }
+  }
+
   @POST
   @Path("/note")
   @RolesAllowed("users")
@@ -373,6 +519,7 @@ public class NotesRestService implements ResourceContainer {
       note.setName(TitleResolver.getId(note.getTitle(), false));
       note.setUrl("");
       Page createdNote = noteService.createNote(noteBook, note.getParentPageName(), note, identity);
+      createdNote.loadContent();
       return Response.ok(createdNote, MediaType.APPLICATION_JSON).cacheControl(cc).build();
     } catch (IllegalAccessException e) {
       log.error("User does not have view permissions on the note {}", note.getName(), e);
@@ -391,7 +538,10 @@ public class NotesRestService implements ResourceContainer {
       @ApiResponse(code = 400, message = "Invalid query input"), @ApiResponse(code = 403, message = "Unauthorized operation"),
       @ApiResponse(code = 404, message = "Resource not found") })
   public Response saveDraft(@ApiParam(value = "Note draft page object to be created", required = true)
-  DraftPage draftNoteToSave) {
+  DraftPage draftNoteToSave,
+                            @ApiParam(value = "Whether to write the draft immediately, when the editor is closed", defaultValue = "false")
+                            @QueryParam("flush")
+                            boolean flush) {
     if (draftNoteToSave == null) {
       return Response.status(Response.Status.BAD_REQUEST).build();
     }
@@ -438,6 +588,9 @@ public class NotesRestService implements ResourceContainer {
                                                                                    System.currentTimeMillis(),
                                                                                    currentUser)
                                              : noteService.updateDraftForNewPage(draftNoteToSave, System.currentTimeMillis());
+        if (flush) {
+          noteService.flushDraftNote(draftNoteToSave.getId());
+        }
       } else {
         draftNoteToSave = targetNote != null
                                              ? noteService.createDraftForExistPage(draftNoteToSave,
@@ -523,6 +676,7 @@ public class NotesRestService implements ResourceContainer {
         note_ = noteService.updateNote(note_, PageUpdateType.EDIT_PAGE_CONTENT, identity);
         noteService.createVersionOfNote(note_, identity.getUserId());
       }
+      note_.loadContent();
       return Response.ok(note_, MediaType.APPLICATION_JSON).cacheControl(cc).build();
     } catch (IllegalAccessException e) {
       log.error("User does not have view permissions on the note {}", noteId, e);
@@ -605,6 +759,7 @@ public class NotesRestService implements ResourceContainer {
         // url in front side, we compute it here
         note_.setUrl(Utils.getPageUrl(note));
       }
+      note_.loadContent();
       return Response.ok(note_, MediaType.APPLICATION_JSON).cacheControl(cc).build();
     } catch (IllegalAccessException e) {
       log.error("User does not have edit permissions on the note {}", noteId, e);
@@ -645,6 +800,7 @@ public class NotesRestService implements ResourceContainer {
         return Response.status(Response.Status.FORBIDDEN).build();
       }
       noteService.restoreVersionOfNote(noteVersion, note, currentUser);
+      note_.loadContent();
       return Response.ok(note_, MediaType.APPLICATION_JSON).cacheControl(cc).build();
     } catch (IllegalAccessException e) {
       log.error("User does not have permissions to restore the note {} version", note.getId(), e);
@@ -817,6 +973,13 @@ public class NotesRestService implements ResourceContainer {
       notesExportService.startExportNotes(exportId, notes, exportAll, identity);
       return Response.ok().build();
 
+    } catch (IllegalStateException ex) {
+      log.warn("Notes export {} refused: {}", exportId, ex.getMessage());
+      // too many requests
+      return Response.status(429).cacheControl(cc).build();
+    } catch (IllegalArgumentException ex) {
+      log.warn("Notes export {} refused: {}", exportId, ex.getMessage());
+      return Response.status(Response.Status.CONFLICT).cacheControl(cc).build();
     } catch (Exception ex) {
       log.warn("Failed to export notes ", ex);
       return Response.status(HTTPStatus.INTERNAL_ERROR).cacheControl(cc).build();
@@ -835,9 +998,24 @@ public class NotesRestService implements ResourceContainer {
   int exportId) {
 
     try {
-      byte[] filesBytes = notesExportService.getExportedNotes(exportId);
-      return Response.ok(filesBytes)
+      Identity identity = ConversationState.getCurrent().getIdentity();
+      if (notesExportService.isExportOfOtherUser(exportId, identity.getUserId())) {
+        return Response.status(Response.Status.UNAUTHORIZED).build();
+      }
+      File zipFile = notesExportService.getExportedNotesFile(exportId);
+      if (zipFile == null || !zipFile.exists()) {
+        return Response.status(Response.Status.NOT_FOUND).build();
+      }
+      StreamingOutput zipStream = output -> {
+        try {
+          Files.copy(zipFile.toPath(), output);
+        } finally {
+          NotesExportService.cleanUp(zipFile);
+        }
+      };
+      return Response.ok(zipStream)
                      .type("application/zip")
+                     .header(HttpHeaders.CONTENT_LENGTH, zipFile.length())
                      .header("Content-Disposition", "attachment; filename=\"notesExport_" + new Date().getTime() + ".zip\"")
                      .build();
     } catch (Exception ex) {
@@ -859,6 +1037,10 @@ public class NotesRestService implements ResourceContainer {
   int exportId) {
 
     try {
+      Identity identity = ConversationState.getCurrent().getIdentity();
+      if (notesExportService.isExportOfOtherUser(exportId, identity.getUserId())) {
+        return Response.status(Response.Status.UNAUTHORIZED).build();
+      }
       return Response.ok(notesExportService.getStatus(exportId)).build();
     } catch (Exception ex) {
       log.warn("Failed to export notes ", ex);
@@ -879,6 +1061,10 @@ public class NotesRestService implements ResourceContainer {
   int exportId) {
 
     try {
+      Identity identity = ConversationState.getCurrent().getIdentity();
+      if (notesExportService.isExportOfOtherUser(exportId, identity.getUserId())) {
+        return Response.status(Response.Status.UNAUTHORIZED).build();
+      }
       notesExportService.cancelExportNotes(exportId);
       return Response.ok().build();
     } catch (Exception ex) {
@@ -997,6 +1183,7 @@ public class NotesRestService implements ResourceContainer {
         if (depth == null)
           depth = "1";
         context.put(TreeNode.DEPTH, depth);
+        TreeUtils.loadChildrenIndex(context, note, identity.getUserId(), Integer.parseInt(depth));
         responseData = getJsonDescendants(noteParam, context);
       }
 
@@ -1062,6 +1249,11 @@ public class NotesRestService implements ResourceContainer {
       context.put(TreeNode.SHOW_EXCERPT, null);
       Deque<WikiPageParams> stk = Utils.getStackParams(note);
       context.put(TreeNode.STACK_PARAMS, stk);
+      // load the whole notes tree at once instead of querying children node by node
+      Wiki noteBook = noteBookService.getWikiByTypeAndOwner(noteParam.getType(), noteParam.getOwner());
+      if (noteBook != null && noteBook.getWikiHome() != null) {
+        TreeUtils.loadChildrenIndex(context, noteBook.getWikiHome(), identity.getUserId(), -1);
+      }
 
       List<JsonNodeData> finalTree = new ArrayList<>();
       responseData = getJsonTree(noteParam, context);
@@ -1228,14 +1420,28 @@ public class NotesRestService implements ResourceContainer {
       data.setLimit(limit);
       data.setFavorites(favorites);
       List<SearchResult> results = noteService.search(data).getAll();
+      // load the pages of the results notebook by notebook
+      Map<WikiPageParams, Set<String>> pageNamesByNoteBook = new LinkedHashMap<>();
+      for (SearchResult searchResult : results) {
+        pageNamesByNoteBook.computeIfAbsent(new WikiPageParams(searchResult.getWikiType(), searchResult.getWikiOwner(), null),
+                                            key -> new HashSet<>())
+                           .add(searchResult.getPageName());
+      }
+      Map<WikiPageParams, Map<String, Page>> pagesByNoteBook = new HashMap<>();
+      for (Map.Entry<WikiPageParams, Set<String>> noteBookPageNames : pageNamesByNoteBook.entrySet()) {
+        WikiPageParams noteBookParams = noteBookPageNames.getKey();
+        Map<String, Page> pages = noteService.getNotesOfNoteBookByNames(noteBookParams.getType(),
+                                                                        noteBookParams.getOwner(),
+                                                                        noteBookPageNames.getValue(),
+                                                                        currentIdentity);
+        pages.values().forEach(page -> page.setUrl(Utils.getPageUrl(page)));
+        pagesByNoteBook.put(noteBookParams, pages);
+      }
       List<TitleSearchResult> titleSearchResults = new ArrayList<>();
       for (SearchResult searchResult : results) {
-        Page page = noteService.getNoteOfNoteBookByName(searchResult.getWikiType(),
-                searchResult.getWikiOwner(),
-                searchResult.getPageName(),
-                currentIdentity);
+        Page page = pagesByNoteBook.get(new WikiPageParams(searchResult.getWikiType(), searchResult.getWikiOwner(), null))
+                                   .get(searchResult.getPageName());
         if (page != null) {
-          page.setUrl(Utils.getPageUrl(page));
           if (SearchResultType.ATTACHMENT.equals(searchResult.getType())) {
             Attachment attachment = noteBookService.getAttachmentOfPageByName(searchResult.getAttachmentName(),
                             page);
@@ -1338,4 +1544,49 @@ public class NotesRestService implements ResourceContainer {
     return wikiOwner;
   }
 
+
+  private String getAttachmentTag(Attachment attachment) {
+    long updatedTime = attachment.getUpdatedDate() == null ? 0 : attachment.getUpdatedDate().getTimeInMillis();
+    return Integer.toHexString(attachment.getName().hashCode()) + "-" + Long.toHexString(updatedTime) + "-"
+        + Long.toHexString(attachment.getWeightInBytes());
+  }
+
+  /**
+   * Parse a bytes range, of the form first-last, first- or -suffixLength
+   *
+   * @param range the bytes range
+   * @param size the size of the content
+   * @return the first and last bytes of the range, null if the range cannot be
+   *         satisfied
+   * @throws NumberFormatException if the range is invalid
+   */
+  private static long[] getBytesRange(String range, long size) {
+    int separatorIndex = range.indexOf('-');
+    if (separatorIndex < 0) {
+      throw new NumberFormatException("Invalid bytes range " + range);
+    }
+    String first = range.substring(0, separatorIndex).trim();
+    String last = range.substring(separatorIndex + 1).trim();
+    long start;
+    long end;
+    if (first.isEmpty()) {
+      long suffixLength = Long.parseLong(last);
+      if (suffixLength <= 0 || size == 0) {
+        return null;
+      }
+      start = Math.max(0, size - suffixLength);
+      end = size - 1;
+    } else {
+      start = Long.parseLong(first);
+      end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+      if (end < start) {
+        throw new NumberFormatException("Invalid bytes range " + range);
+      }
+      if (start >= size) {
+        return null;
+      }
+      end = Math.min(end, size - 1);
+    }
+    return new long[] { start, end };
+  }
 }
@@ -25,6 +25,7 @@ import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.model.PermissionType;
 import org.exoplatform.wiki.service.NoteService;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.tree.utils.TreeUtils;
 import org.exoplatform.wiki.utils.Utils;
@@ -41,6 +42,10 @@ public class PageTreeNode extends TreeNode {
   private NoteService noteService;
 
   public PageTreeNode(Page page) throws Exception {
+    this(page, null);
+  }
+
+  public PageTreeNode(Page page, HashMap<String, Object> context) throws Exception {
     super(page.getTitle(), TreeNodeType.PAGE);
 
     this.noteService = ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(NoteService.class);
@@ -48,7 +53,13 @@ public class PageTreeNode extends TreeNode {
     this.page = page;
     this.id = page.getId();
     this.path = buildPath();
-    this.hasChild = !page.isDraftPage() && !noteService.getChildrenNoteOf(page, ConversationState.getCurrent().getIdentity().getUserId(), true, false).isEmpty();
+    if (page.isDraftPage()) {
+      this.hasChild = false;
+    } else {
+      Boolean hasIndexedChildren = TreeUtils.hasIndexedChildren(context, page);
+      this.hasChild = hasIndexedChildren != null ? hasIndexedChildren
+                                                 : !noteService.getChildrenNoteOf(page, ConversationState.getCurrent().getIdentity().getUserId(), true, false).isEmpty();
+    }
   }
 
   public Page getPage() {
@@ -62,7 +73,13 @@ public class PageTreeNode extends TreeNode {
   @Override
   protected void addChildren(HashMap<String, Object> context, String userId) throws Exception {
     boolean withDrafts = context.containsKey(TreeNode.WITH_DRAFTS) && (boolean) context.get(TreeNode.WITH_DRAFTS);
-    Collection<Page> pages = noteService.getChildrenNoteOf(page, userId, withDrafts,false);
+    Collection<Page> pages = TreeUtils.getIndexedChildren(context, page, withDrafts);
+    if (pages == null) {
+      pages = noteService.getChildrenNoteOf(page, userId, withDrafts, false);
+    }
+    TreeUtils.loadChildrenCount(context, pages, userId);
+    PermissionEvaluator permissionEvaluator = getPermissionEvaluator(context);
+    permissionEvaluator.loadPermissions(pages);
     Iterator<Page> childPageIterator = pages.iterator();
     int count = 0;
     int size = getNumberOfChildren(context, pages.size());
@@ -70,9 +87,9 @@ public class PageTreeNode extends TreeNode {
     Page currentPage = (Page) context.get(TreeNode.SELECTED_PAGE);
     while (childPageIterator.hasNext() && count < size) {
       Page childPage = childPageIterator.next();
-      if (noteService.hasPermissionOnPage(childPage, PermissionType.VIEWPAGE, ConversationState.getCurrent().getIdentity())
+      if (permissionEvaluator.hasPermissionOnPage(childPage, PermissionType.VIEWPAGE)
               ||  (currentPage != null && Utils.isDescendantPage(currentPage, childPage))) {
-        PageTreeNode child = new PageTreeNode(childPage);
+        PageTreeNode child = new PageTreeNode(childPage, context);
         this.children.add(child);
       }
       count++;
@@ -20,8 +20,12 @@
 package org.exoplatform.wiki.tree;
 
 import org.apache.commons.lang.StringUtils;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.model.Wiki;
+import org.exoplatform.wiki.service.NoteService;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.utils.Utils;
 
@@ -69,6 +73,15 @@ public class TreeNode {
   public static final String CHILDREN_NUMBER = "childrenNumber";
 
   public static final String DEPTH           = "depth";
+
+  /** Children of the prefetched pages, indexed by parent page id */
+  public static final String CHILDREN_INDEX  = "childrenIndex";
+
+  /** Number of children of the pages already counted, indexed by page id */
+  public static final String CHILDREN_COUNT_INDEX = "childrenCountIndex";
+
+  /** Evaluator of the current user permissions, shared by all the nodes of the tree */
+  public static final String PERMISSION_EVALUATOR = "permissionEvaluator";
   
   public enum TREETYPE {
     ALL, CHILDREN
@@ -234,7 +247,7 @@ public class TreeNode {
           pushChild(context, userId);
         } else if (this instanceof WikiHomeTreeNode || this instanceof PageTreeNode) {
           Page page = (Page) Utils.getObjectFromParams(params);
-          PageTreeNode pageNode = new PageTreeNode(page);
+          PageTreeNode pageNode = new PageTreeNode(page, context);
           pushChild(pageNode, context, userId);
         }
       }
@@ -273,4 +286,24 @@ public class TreeNode {
   public String buildPath() {
     return null;
   }
+
+  /**
+   * Get the permission evaluator of the current user stored in the tree
+   * context, creating it on first use
+   *
+   * @param context is the page tree context
+   * @return the permission evaluator
+   */
+  public static PermissionEvaluator getPermissionEvaluator(HashMap<String, Object> context) {
+    PermissionEvaluator permissionEvaluator = context == null ? null
+                                                              : (PermissionEvaluator) context.get(PERMISSION_EVALUATOR);
+    if (permissionEvaluator == null) {
+      NoteService noteService = ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(NoteService.class);
+      permissionEvaluator = noteService.getPermissionEvaluator(ConversationState.getCurrent().getIdentity());
+      if (context != null) {
+        context.put(PERMISSION_EVALUATOR, permissionEvaluator);
+      }
+    }
+    return permissionEvaluator;
+  }
 }
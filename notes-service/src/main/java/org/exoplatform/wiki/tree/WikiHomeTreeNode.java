@@ -27,6 +27,7 @@ import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.model.Wiki;
 import org.exoplatform.wiki.model.PermissionType;
 import org.exoplatform.wiki.service.NoteService;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.service.WikiService;
 import org.exoplatform.wiki.tree.utils.TreeUtils;
@@ -48,6 +49,10 @@ public class WikiHomeTreeNode extends TreeNode {
   private WikiService wikiService;
 
   public WikiHomeTreeNode(Page wikiHome) throws Exception {
+    this(wikiHome, null);
+  }
+
+  public WikiHomeTreeNode(Page wikiHome, HashMap<String, Object> context) throws Exception {
     super(wikiHome.getTitle(), TreeNodeType.WIKIHOME);
 
     noteService = ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(NoteService.class);
@@ -55,22 +60,34 @@ public class WikiHomeTreeNode extends TreeNode {
 
     this.wikiHome = wikiHome;
     this.path = this.buildPath();
-    this.hasChild = !wikiHome.isDraftPage() && !noteService.getChildrenNoteOf(wikiHome, ConversationState.getCurrent().getIdentity().getUserId(), true, true).isEmpty();
+    if (wikiHome.isDraftPage()) {
+      this.hasChild = false;
+    } else {
+      Boolean hasIndexedChildren = TreeUtils.hasIndexedChildren(context, wikiHome);
+      this.hasChild = hasIndexedChildren != null ? hasIndexedChildren
+                                                 : !noteService.getChildrenNoteOf(wikiHome, ConversationState.getCurrent().getIdentity().getUserId(), true, true).isEmpty();
+    }
   }
 
   @Override
   protected void addChildren(HashMap<String, Object> context, String userId) throws Exception {
     boolean withDrafts = context.containsKey(TreeNode.WITH_DRAFTS) && (boolean) context.get(TreeNode.WITH_DRAFTS);
-    Collection<Page> pages = noteService.getChildrenNoteOf(wikiHome, userId, withDrafts,false);
+    Collection<Page> pages = TreeUtils.getIndexedChildren(context, wikiHome, withDrafts);
+    if (pages == null) {
+      pages = noteService.getChildrenNoteOf(wikiHome, userId, withDrafts, false);
+    }
+    TreeUtils.loadChildrenCount(context, pages, userId);
+    PermissionEvaluator permissionEvaluator = getPermissionEvaluator(context);
+    permissionEvaluator.loadPermissions(pages);
     Iterator<Page> childPageIterator = pages.iterator();
     int count = 0;
     int size = getNumberOfChildren(context, pages.size());
     Page currentPage = (Page) context.get(TreeNode.SELECTED_PAGE);
     while (childPageIterator.hasNext() && count < size) {
       Page childPage = childPageIterator.next();
-      if (noteService.hasPermissionOnPage(childPage, PermissionType.VIEWPAGE, ConversationState.getCurrent().getIdentity())
+      if (permissionEvaluator.hasPermissionOnPage(childPage, PermissionType.VIEWPAGE)
               ||  (currentPage != null && Utils.isDescendantPage(currentPage, childPage))) {
-        PageTreeNode child = new PageTreeNode(childPage);
+        PageTreeNode child = new PageTreeNode(childPage, context);
         this.children.add(child);
       }
       count++;
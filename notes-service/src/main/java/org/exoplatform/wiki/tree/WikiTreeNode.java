@@ -42,7 +42,7 @@ public class WikiTreeNode extends TreeNode {
   @Override
   protected void addChildren(HashMap<String, Object> context, String userId) throws Exception {
 
-    this.children.add(new WikiHomeTreeNode(wiki.getWikiHome()));
+    this.children.add(new WikiHomeTreeNode(wiki.getWikiHome(), context));
     super.addChildren(context, userId);
   }
 
@@ -25,19 +25,23 @@ import org.apache.commons.lang3.StringUtils;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.portal.config.model.PortalConfig;
 import org.exoplatform.services.organization.OrganizationService;
-import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.model.Wiki;
 import org.exoplatform.wiki.model.PermissionType;
 import org.exoplatform.wiki.service.NoteService;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.tree.*;
 import org.exoplatform.wiki.utils.Utils;
 import org.exoplatform.wiki.utils.NoteConstants;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class TreeUtils {
   
@@ -49,14 +53,27 @@ public class TreeUtils {
    * @throws Exception if an error occured
    */
   public static TreeNode getTreeNode(WikiPageParams params) throws Exception {
+    return getTreeNode(params, null);
+  }
+
+  /**
+   * Create a tree node with a given {@link WikiPageParams}, using the children
+   * index of the tree context when it has been prefetched
+   *
+   * @param params is the wiki page parameters
+   * @param context is the page tree context
+   * @return <code>TreeNode</code>
+   * @throws Exception if an error occured
+   */
+  public static TreeNode getTreeNode(WikiPageParams params, HashMap<String, Object> context) throws Exception {
     Object wikiObject = Utils.getObjectFromParams(params);
     if (wikiObject instanceof Page) {
       Page page = (Page) wikiObject;
       if(params.getPageName().equals(NoteConstants.NOTE_HOME_NAME)) {
-        WikiHomeTreeNode wikiHomeNode = new WikiHomeTreeNode(page);
+        WikiHomeTreeNode wikiHomeNode = new WikiHomeTreeNode(page, context);
         return wikiHomeNode;
       } else {
-        PageTreeNode pageNode = new PageTreeNode(page);
+        PageTreeNode pageNode = new PageTreeNode(page, context);
         return pageNode;
       }
     } else if (wikiObject instanceof Wiki) {
@@ -80,14 +97,120 @@ public class TreeUtils {
    * @throws Exception if error occured
    */
   public static TreeNode getDescendants(WikiPageParams params, HashMap<String, Object> context, String userId) throws Exception {
-    TreeNode treeNode = getTreeNode(params);
+    TreeNode treeNode = getTreeNode(params, context);
     treeNode.pushDescendants(context, userId);
     return treeNode;
   }
-  
-  public static List<JsonNodeData> tranformToJson(TreeNode treeNode, HashMap<String, Object> context) throws Exception {
+
+  /**
+   * Prefetch the descendants of a page and the draft pages of the user in one
+   * lookup, and put them in the tree context indexed by parent page id
+   *
+   * @param context is the page tree context
+   * @param page the root page of the prefetched subtree
+   * @param userId the user whose draft pages are prefetched
+   * @param depth number of levels whose children are prefetched, a negative
+   *          value for the whole subtree
+   * @throws WikiException if an error occured
+   */
+  public static void loadChildrenIndex(HashMap<String, Object> context, Page page, String userId, int depth) throws WikiException {
     NoteService noteService = ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(NoteService.class);
+    // one more level is loaded so that the nodes of the last level know whether they have children
+    List<Page> descendants = noteService.getDescendantsNoteOf(page, userId, depth < 0 ? depth : depth + 1, true);
+
+    Map<String, List<Page>> childrenIndex = new HashMap<>();
+    Map<String, Integer> depths = new HashMap<>();
+    childrenIndex.put(page.getId(), new ArrayList<>());
+    depths.put(page.getId(), 0);
+    for (Page descendant : descendants) {
+      List<Page> siblings = childrenIndex.get(descendant.getParentPageId());
+      if (siblings != null) {
+        siblings.add(descendant);
+      }
+      if (!descendant.isDraftPage()) {
+        int descendantDepth = depths.getOrDefault(descendant.getParentPageId(), 0) + 1;
+        depths.put(descendant.getId(), descendantDepth);
+        if (depth < 0 || descendantDepth <= depth) {
+          childrenIndex.put(descendant.getId(), new ArrayList<>());
+        }
+      }
+    }
+    context.put(TreeNode.CHILDREN_INDEX, childrenIndex);
+  }
 
+  /**
+   * Count in one lookup the children, with the draft pages of the user, of the
+   * given pages which are not in the children index yet, and put them in the
+   * tree context
+   *
+   * @param context is the page tree context
+   * @param pages the pages whose children are counted
+   * @param userId the user whose draft pages are counted
+   * @throws WikiException if an error occured
+   */
+  public static void loadChildrenCount(HashMap<String, Object> context, Collection<Page> pages, String userId) throws WikiException {
+    List<Long> pageIds = pages.stream()
+                              .filter(page -> !page.isDraftPage() && getIndexedChildren(context, page, true) == null)
+                              .map(page -> Long.parseLong(page.getId()))
+                              .collect(Collectors.toList());
+    if (pageIds.isEmpty()) {
+      return;
+    }
+    NoteService noteService = ExoContainerContext.getCurrentContainer().getComponentInstanceOfType(NoteService.class);
+    Map<Long, Long> childrenCount = noteService.countChildrenNotes(pageIds, userId, true);
+    Map<Long, Long> childrenCountIndex = (Map<Long, Long>) context.computeIfAbsent(TreeNode.CHILDREN_COUNT_INDEX,
+                                                                                    key -> new HashMap<Long, Long>());
+    for (Long pageId : pageIds) {
+      childrenCountIndex.put(pageId, childrenCount.getOrDefault(pageId, 0L));
+    }
+  }
+
+  /**
+   * Check from the children index or the children count index of the tree
+   * context if a page has children, draft pages included
+   *
+   * @param context is the page tree context
+   * @param page the parent page
+   * @return whether the page has children, or null if they have not been
+   *         prefetched nor counted
+   */
+  public static Boolean hasIndexedChildren(HashMap<String, Object> context, Page page) {
+    List<Page> children = getIndexedChildren(context, page, true);
+    if (children != null) {
+      return !children.isEmpty();
+    }
+    if (context == null || page == null || page.getId() == null || page.isDraftPage()) {
+      return null;
+    }
+    Map<Long, Long> childrenCountIndex = (Map<Long, Long>) context.get(TreeNode.CHILDREN_COUNT_INDEX);
+    Long childrenCount = childrenCountIndex == null ? null : childrenCountIndex.get(Long.parseLong(page.getId()));
+    return childrenCount == null ? null : childrenCount > 0;
+  }
+
+  /**
+   * Get the children of a page from the children index of the tree context
+   *
+   * @param context is the page tree context
+   * @param page the parent page
+   * @param withDrafts if set to true returns the draft pages too
+   * @return the children of the page, or null if they have not been prefetched
+   */
+  public static List<Page> getIndexedChildren(HashMap<String, Object> context, Page page, boolean withDrafts) {
+    if (context == null || page == null || page.getId() == null || page.isDraftPage()) {
+      return null;
+    }
+    Map<String, List<Page>> childrenIndex = (Map<String, List<Page>>) context.get(TreeNode.CHILDREN_INDEX);
+    if (childrenIndex == null) {
+      return null;
+    }
+    List<Page> children = childrenIndex.get(page.getId());
+    if (children == null || withDrafts) {
+      return children;
+    }
+    return children.stream().filter(child -> !child.isDraftPage()).collect(Collectors.toList());
+  }
+  
+  public static List<JsonNodeData> tranformToJson(TreeNode treeNode, HashMap<String, Object> context) throws Exception {
     int counter = 1;
     Boolean showExcerpt = false;
     Page currentPage = null;
@@ -100,6 +223,7 @@ public class TreeUtils {
       canEdit     = (Boolean)context.get(TreeNode.CAN_EDIT);
     }
     
+    PermissionEvaluator permissionEvaluator = TreeNode.getPermissionEvaluator(context);
     List<JsonNodeData> children = new ArrayList<JsonNodeData>();
     for (TreeNode child : treeNode.getChildren()) {
       boolean isSelectable = true;
@@ -116,22 +240,22 @@ public class TreeUtils {
           isSelectable = false;
         }
         
-        if (!noteService.hasPermissionOnPage(page, PermissionType.VIEWPAGE, ConversationState.getCurrent().getIdentity())) {
+        if (!permissionEvaluator.hasPermissionOnPage(page, PermissionType.VIEWPAGE)) {
           isSelectable = false;
           child.setRetricted(true);
         }
-        if(BooleanUtils.isTrue(canEdit) && !noteService.hasPermissionOnPage(page, PermissionType.EDITPAGE, ConversationState.getCurrent().getIdentity())){
+        if(BooleanUtils.isTrue(canEdit) && !permissionEvaluator.hasPermissionOnPage(page, PermissionType.EDITPAGE)){
           isSelectable = false;
           child.setRetricted(true);
         }
       } else if (child.getNodeType().equals(TreeNodeType.WIKIHOME)) {
         Page page = ((WikiHomeTreeNode) child).getWikiHome();
-        if (!noteService.hasPermissionOnPage(page, PermissionType.VIEWPAGE, ConversationState.getCurrent().getIdentity())) {
+        if (!permissionEvaluator.hasPermissionOnPage(page, PermissionType.VIEWPAGE)) {
           isSelectable = false;
           child.setRetricted(true);
         }
 
-        if(BooleanUtils.isTrue(canEdit) && !noteService.hasPermissionOnPage(page, PermissionType.EDITPAGE, ConversationState.getCurrent().getIdentity())){
+        if(BooleanUtils.isTrue(canEdit) && !permissionEvaluator.hasPermissionOnPage(page, PermissionType.EDITPAGE)){
           isSelectable = false;
           child.setRetricted(true);
         }
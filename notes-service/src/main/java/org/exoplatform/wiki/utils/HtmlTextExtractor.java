@@ -0,0 +1,255 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.utils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jsoup.parser.Parser;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+/**
+ * Extracts the text of an HTML content in a single pass, without building a
+ * DOM. The text is the same as the one of a parsed Jsoup document: tags,
+ * comments, scripts and styles are dropped, entities are decoded, whitespaces
+ * are collapsed and block elements are separated by a space. The extraction
+ * buffer is reused per thread, and the texts of large contents are cached by
+ * content hash in the {@value #HTML_TEXT_CACHE_NAME} cache so that a content
+ * indexed several times, for instance when only the metadata of a note
+ * changed, is extracted once.
+ */
+public final class HtmlTextExtractor {
+
+  public static final String                      HTML_TEXT_CACHE_NAME     = "wiki.HtmlTextCache";
+
+  private static final int                        CACHE_MIN_CONTENT_LENGTH = 4096;
+
+  private static final int                        CACHE_MAX_TEXT_LENGTH    = 16384;
+
+  private static final int                        MAX_REUSED_BUFFER_SIZE   = 1024 * 1024;
+
+  /** Elements separated from their siblings by a space, as in Jsoup */
+  private static final Set<String>                BLOCK_TAGS               = new HashSet<>(Arrays.asList(
+      "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title", "frame", "noframes",
+      "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2", "h3", "h4", "h5", "h6", "ul", "ol", "pre",
+      "div", "blockquote", "hr", "address", "figure", "figcaption", "form", "fieldset", "ins", "del", "dl", "dt", "dd", "li",
+      "table", "caption", "thead", "tfoot", "tbody", "colgroup", "col", "tr", "th", "td", "video", "audio", "canvas",
+      "details", "menu", "plaintext", "template", "article", "main", "svg", "math", "center", "br"));
+
+  private static final Set<String>                SKIPPED_CONTENT_TAGS     = new HashSet<>(Arrays.asList("script", "style"));
+
+  private static final Set<String>                RAW_TEXT_TAGS            = new HashSet<>(Arrays.asList("title", "textarea"));
+
+  private static final ThreadLocal<StringBuilder> BUFFER                   = ThreadLocal.withInitial(StringBuilder::new);
+
+  private HtmlTextExtractor() {
+  }
+
+  /**
+   * @param html the HTML content
+   * @return the text of the content, an empty string if the content is null
+   */
+  public static String extract(String html) {
+    if (html == null || html.isEmpty()) {
+      return "";
+    }
+    ExoCache<String, String> textCache = html.length() < CACHE_MIN_CONTENT_LENGTH ? null : getTextCache();
+    if (textCache == null) {
+      return doExtract(html);
+    }
+    String contentHash = getContentHash(html);
+    String text = textCache.get(contentHash);
+    if (text == null) {
+      text = doExtract(html);
+      if (text.length() <= CACHE_MAX_TEXT_LENGTH) {
+        textCache.put(contentHash, text);
+      }
+    }
+    return text;
+  }
+
+  /**
+   * @return the texts cache of the current container, null when there is no
+   *         container, for instance in unit tests
+   */
+  private static ExoCache<String, String> getTextCache() {
+    ExoContainer container = ExoContainerContext.getCurrentContainerIfPresent();
+    CacheService cacheService = container == null ? null : container.getComponentInstanceOfType(CacheService.class);
+    return cacheService == null ? null : cacheService.getCacheInstance(HTML_TEXT_CACHE_NAME);
+  }
+
+  private static String doExtract(String html) {
+    StringBuilder buffer = BUFFER.get();
+    buffer.setLength(0);
+    TextAccumulator text = new TextAccumulator(buffer);
+    int length = html.length();
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (c != '<' || i + 1 >= length) {
+        int end = html.indexOf('<', i + 1);
+        end = end < 0 ? length : end;
+        text.appendText(html, i, end);
+        i = end;
+        continue;
+      }
+      char next = html.charAt(i + 1);
+      if (next == '!' && html.startsWith("<!--", i)) {
+        int end = html.indexOf("-->", i + 4);
+        i = end < 0 ? length : end + 3;
+      } else if (next == '!' || next == '?') {
+        int end = html.indexOf('>', i + 2);
+        i = end < 0 ? length : end + 1;
+      } else if (next == '/' && i + 2 < length && Character.isLetter(html.charAt(i + 2))) {
+        int nameEnd = readTagName(html, i + 2);
+        if (BLOCK_TAGS.contains(html.substring(i + 2, nameEnd).toLowerCase())) {
+          text.appendBlockBoundary();
+        }
+        int end = html.indexOf('>', nameEnd);
+        i = end < 0 ? length : end + 1;
+      } else if (Character.isLetter(next)) {
+        int nameEnd = readTagName(html, i + 1);
+        String tagName = html.substring(i + 1, nameEnd).toLowerCase();
+        if (BLOCK_TAGS.contains(tagName)) {
+          text.appendBlockBoundary();
+        }
+        i = skipTag(html, nameEnd);
+        if (SKIPPED_CONTENT_TAGS.contains(tagName) || RAW_TEXT_TAGS.contains(tagName)) {
+          int end = indexOfEndTag(html, tagName, i);
+          if (RAW_TEXT_TAGS.contains(tagName)) {
+            text.appendText(html, i, end < 0 ? length : end);
+          }
+          i = end < 0 ? length : end;
+        }
+      } else {
+        // a lone '<' is text
+        int end = html.indexOf('<', i + 1);
+        end = end < 0 ? length : end;
+        text.appendText(html, i, end);
+        i = end;
+      }
+    }
+    String result = buffer.toString();
+    if (buffer.capacity() > MAX_REUSED_BUFFER_SIZE) {
+      BUFFER.remove();
+    }
+    return result;
+  }
+
+  private static int readTagName(String html, int start) {
+    int i = start;
+    while (i < html.length()) {
+      char c = html.charAt(i);
+      if (Character.isWhitespace(c) || c == '>' || c == '/') {
+        break;
+      }
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return the index following the end of the tag, attributes values may
+   *         contain a '&gt;'
+   */
+  private static int skipTag(String html, int start) {
+    char quote = 0;
+    for (int i = start; i < html.length(); i++) {
+      char c = html.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i + 1;
+      }
+    }
+    return html.length();
+  }
+
+  private static int indexOfEndTag(String html, String tagName, int start) {
+    int i = html.indexOf("</", start);
+    while (i >= 0) {
+      if (html.regionMatches(true, i + 2, tagName, 0, tagName.length())) {
+        return i;
+      }
+      i = html.indexOf("</", i + 2);
+    }
+    return -1;
+  }
+
+  private static String getContentHash(String content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return String.format("%064x", new BigInteger(1, digest.digest(content.getBytes(StandardCharsets.UTF_8))));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 algorithm is not available", e);
+    }
+  }
+
+  /**
+   * Appends text runs to the buffer, collapsing whitespaces and trimming the
+   * text
+   */
+  private static class TextAccumulator {
+    private final StringBuilder buffer;
+
+    private boolean             pendingSpace;
+
+    private TextAccumulator(StringBuilder buffer) {
+      this.buffer = buffer;
+    }
+
+    private void appendText(String html, int start, int end) {
+      String run = html.substring(start, end);
+      if (run.indexOf('&') >= 0) {
+        run = Parser.unescapeEntities(run, false);
+      }
+      for (int i = 0; i < run.length(); i++) {
+        char c = run.charAt(i);
+        if (isWhitespace(c)) {
+          pendingSpace = true;
+        } else if (c != '\u200B' && c != '\u00AD') {
+          if (pendingSpace && buffer.length() > 0) {
+            buffer.append(' ');
+          }
+          pendingSpace = false;
+          buffer.append(c);
+        }
+      }
+    }
+
+    private void appendBlockBoundary() {
+      pendingSpace = true;
+    }
+
+    private boolean isWhitespace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00A0';
+    }
+  }
+}
@@ -61,8 +61,6 @@ import org.exoplatform.wiki.service.*;
 import org.exoplatform.wiki.service.impl.WikiPageHistory;
 import org.exoplatform.wiki.service.search.SearchResult;
 import org.exoplatform.wiki.service.search.WikiSearchData;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.suigeneris.jrcs.diff.DifferentiationFailedException;
 
 import javax.mail.internet.AddressException;
@@ -379,19 +377,25 @@ public class Utils {
             && page.getName().equals(parentPage.getName())) {
       return true;
     }
-    Page parentOfPage = noteService.getParentNoteOf(page);
-    // we reach the Wiki root
-    if(parentOfPage == null) {
-      return false;
+    if (page.isDraftPage()) {
+      // draft pages are not in the page tree, their parent page is used instead
+      Page parentOfDraft = page.getParentPageId() == null ? null : noteService.getNoteById(page.getParentPageId());
+      return parentOfDraft != null && isDescendantPage(parentOfDraft, parentPage);
     }
-    // if the parent of the given page is the same than the parentPage, page is a descendant of parentPage
-    if(parentOfPage.getWikiType().equals(parentPage.getWikiType()) && parentOfPage.getWikiOwner().equals(parentPage.getWikiOwner())
-            && parentOfPage.getName().equals(parentPage.getName())) {
-      return true;
-    } else {
-      // otherwise we continue to go up in the page tree
-      return isDescendantPage(parentOfPage, parentPage);
+    if (StringUtils.isBlank(page.getId())) {
+      page = noteService.getNoteOfNoteBookByName(page.getWikiType(), page.getWikiOwner(), page.getName());
+      if (page == null) {
+        return false;
+      }
+    }
+    // page is a descendant of parentPage if parentPage is one of its ancestors
+    for (Page ancestor : noteService.getAncestorsOfNote(page.getId())) {
+      if (ancestor.getWikiType().equals(parentPage.getWikiType()) && ancestor.getWikiOwner().equals(parentPage.getWikiOwner())
+          && ancestor.getName().equals(parentPage.getName())) {
+        return true;
+      }
     }
+    return false;
   }
   
   public static Object getObjectFromParams(WikiPageParams param) throws WikiException {
@@ -433,10 +437,18 @@ public class Utils {
     Deque<WikiPageParams> stack = new ArrayDeque<>();
     Wiki wiki = wikiService.getWikiByTypeAndOwner(page.getWikiType(), page.getWikiOwner());
     if (wiki != null) {
-      while (page != null) {
-        stack.push(new WikiPageParams(wiki.getType(), wiki.getOwner(), page.getName()));
-        page = noteService.getParentNoteOf(page);
-      }      
+      if (StringUtils.isBlank(page.getId())) {
+        page = noteService.getNoteOfNoteBookByName(page.getWikiType(), page.getWikiOwner(), page.getName());
+        if (page == null) {
+          return stack;
+        }
+      }
+      stack.push(new WikiPageParams(wiki.getType(), wiki.getOwner(), page.getName()));
+      List<Page> ancestors = noteService.getAncestorsOfNote(page.getId());
+      // push the ancestors from the parent page up to the wiki home
+      for (int i = ancestors.size() - 1; i >= 0; i--) {
+        stack.push(new WikiPageParams(wiki.getType(), wiki.getOwner(), ancestors.get(i).getName()));
+      }
     }
     return stack;
   }
@@ -464,11 +476,11 @@ public class Utils {
     
     // Get differences
     String currentVersionContent = page.getContent() != null ? new String(page.getContent()) : StringUtils.EMPTY;
-    List<PageHistory> versions = wikiService.getVersionsHistoryOfNote(page,"");
-    String previousVersionContent = StringUtils.EMPTY;
-    if(versions != null && !versions.isEmpty()) {
-      PageHistory previousVersion = versions.get(0);
-      previousVersionContent = previousVersion.getContent();
+    // the version of the new content is not created yet
+    long previousVersionNumber = wikiService.getLatestVersionNumberOfNote(page, "");
+    String previousVersionContent = wikiService.getVersionContentOfNote(page, previousVersionNumber);
+    if (previousVersionContent == null) {
+      previousVersionContent = StringUtils.EMPTY;
     }
     DiffResult diffResult = diffService.getDifferencesAsHTML(previousVersionContent,
                                                              currentVersionContent,
@@ -706,8 +718,7 @@ public class Utils {
   }
 
   public static String html2text(String html) {
-    Document doc = Jsoup.parse(html);
-    return doc.text();
+    return HtmlTextExtractor.extract(html);
   }
 
 }
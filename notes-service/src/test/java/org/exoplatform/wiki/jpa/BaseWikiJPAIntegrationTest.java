@@ -22,6 +22,7 @@ package org.exoplatform.wiki.jpa;
 import org.exoplatform.commons.api.persistence.DataInitializer;
 import org.exoplatform.commons.file.services.FileService;
 import org.exoplatform.container.PortalContainer;
+import org.exoplatform.wiki.jpa.cache.PageCache;
 import org.exoplatform.wiki.jpa.dao.*;
 
 /**
@@ -38,6 +39,7 @@ public abstract class BaseWikiJPAIntegrationTest extends BaseTest {
   protected PageMoveDAO    pageMoveDAO;
   protected TemplateDAO    templateDAO;
   protected EmotionIconDAO emotionIconDAO;
+  protected AttachmentFileDAO attachmentFileDAO;
   protected FileService fileService;
 
   public void setUp() throws Exception {
@@ -59,6 +61,7 @@ public abstract class BaseWikiJPAIntegrationTest extends BaseTest {
     pageMoveDAO = PortalContainer.getInstance().getComponentInstanceOfType(PageMoveDAO.class);
     templateDAO = PortalContainer.getInstance().getComponentInstanceOfType(TemplateDAO.class);
     emotionIconDAO = PortalContainer.getInstance().getComponentInstanceOfType(EmotionIconDAO.class);
+    attachmentFileDAO = PortalContainer.getInstance().getComponentInstanceOfType(AttachmentFileDAO.class);
     // Clean Data
     cleanDB();
   }
@@ -77,7 +80,9 @@ public abstract class BaseWikiJPAIntegrationTest extends BaseTest {
     draftPageAttachmentDAO.deleteAll();
     draftPageDAO.deleteAll();
     pageAttachmentDAO.deleteAll();
+    attachmentFileDAO.deleteAll();
     pageDAO.deleteAll();
     wikiDAO.deleteAll();
+    PortalContainer.getInstance().getComponentInstanceOfType(PageCache.class).clearCache();
   }
 }
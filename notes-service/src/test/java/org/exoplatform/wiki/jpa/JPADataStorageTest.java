@@ -31,8 +31,14 @@ import org.exoplatform.container.PortalContainer;
 import org.exoplatform.portal.config.model.PortalConfig;
 import org.exoplatform.services.security.*;
 import org.exoplatform.wiki.WikiException;
+import org.exoplatform.wiki.jpa.cache.PageCache;
+import org.exoplatform.commons.file.model.FileInfo;
+import org.exoplatform.wiki.jpa.entity.AttachmentFileEntity;
 import org.exoplatform.wiki.jpa.entity.PageEntity;
+import org.exoplatform.wiki.jpa.entity.PageVersionEntity;
+import org.exoplatform.wiki.jpa.entity.PageVersionEntity.ContentStorage;
 import org.exoplatform.wiki.service.IDType;
+import org.exoplatform.wiki.service.PermissionEvaluator;
 import org.exoplatform.wiki.service.WikiPageParams;
 import org.exoplatform.wiki.service.search.TemplateSearchData;
 import org.exoplatform.wiki.service.search.TemplateSearchResult;
@@ -115,6 +121,56 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertTrue(storage.hasAdminSpacePermission(wiki.getType(), wiki.getOwner(), adminIdentity));
   }
 
+  @Test
+  public void testPagesPermissions() throws Exception {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Identity userIdentity = new Identity("user", Arrays.asList(
+            new MembershipEntry("/platform/users", "*")));
+    Identity adminIdentity = new Identity("admin", Arrays.asList(
+            new MembershipEntry("/platform/users", "*"),
+            new MembershipEntry("/platform/administrators", "manager")));
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    List<PermissionEntry> page1Permissions = new ArrayList<>();
+    page1Permissions.add(new PermissionEntry("user", null, IDType.USER, new Permission[] {
+            new Permission(PermissionType.VIEWPAGE, true) }));
+    page1Permissions.add(new PermissionEntry("*:/platform/administrators", null, IDType.MEMBERSHIP, new Permission[] {
+            new Permission(PermissionType.VIEWPAGE, true),
+            new Permission(PermissionType.EDITPAGE, true) }));
+    page1.setPermissions(page1Permissions);
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+    page2.setPermissions(new ArrayList<>());
+
+    // When
+    page1 = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    page2 = storage.createPage(wiki, wiki.getWikiHome(), page2);
+    Map<Long, List<PermissionEntry>> pagesPermissions = storage.getPermissionsOfPages(Arrays.asList(Long.parseLong(page1.getId()),
+                                                                                                    Long.parseLong(page2.getId())));
+
+    // Then
+    assertEquals(2, pagesPermissions.size());
+    List<PermissionEntry> fetchedPage1Permissions = pagesPermissions.get(Long.parseLong(page1.getId()));
+    assertEquals(2, fetchedPage1Permissions.size());
+    assertTrue(pagesPermissions.get(Long.parseLong(page2.getId())).isEmpty());
+    PermissionEvaluator userEvaluator = new PermissionEvaluator(userIdentity);
+    PermissionEvaluator adminEvaluator = new PermissionEvaluator(adminIdentity);
+    assertTrue(userEvaluator.hasPermission(fetchedPage1Permissions, PermissionType.VIEWPAGE));
+    assertFalse(userEvaluator.hasPermission(fetchedPage1Permissions, PermissionType.EDITPAGE));
+    assertTrue(adminEvaluator.hasPermission(fetchedPage1Permissions, PermissionType.VIEWPAGE));
+    assertTrue(adminEvaluator.hasPermission(fetchedPage1Permissions, PermissionType.EDITPAGE));
+    assertEquals(storage.hasPermissionOnPage(page1, PermissionType.EDITPAGE, userIdentity),
+                 userEvaluator.hasPermission(fetchedPage1Permissions, PermissionType.EDITPAGE));
+  }
+
   @Test
   public void testUpdateWikiPermissions() throws Exception {
     // Given
@@ -257,6 +313,49 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertEquals(2, childrenPages.size());
   }
 
+  @Test
+  public void testChildrenPagesContentLoading() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setWikiId(wiki.getId());
+    page1.setWikiType(wiki.getType());
+    page1.setWikiOwner(wiki.getOwner());
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    page1.setContent("Page 1 content");
+    List<PermissionEntry> page1Permissions = new ArrayList<>();
+    page1Permissions.add(new PermissionEntry("user", null, IDType.USER, new Permission[] {
+            new Permission(PermissionType.VIEWPAGE, true) }));
+    page1.setPermissions(page1Permissions);
+
+    // When
+    storage.createPage(wiki, wiki.getWikiHome(), page1);
+    List<Page> childrenPages = storage.getChildrenPageOf(wiki.getWikiHome(), "root", false);
+    List<Page> pagesOfWiki = storage.getPagesOfWiki(wiki.getType(), wiki.getOwner());
+
+    // Then
+    assertEquals(1, childrenPages.size());
+    Page childPage = childrenPages.get(0);
+    assertEquals("page1", childPage.getName());
+    assertEquals(wiki.getWikiHome().getName(), childPage.getParentPageName());
+    assertEquals(1, childPage.getPermissions().size());
+    assertEquals("Page 1 content", childPage.getContent());
+    assertEquals(2, pagesOfWiki.size());
+    childPage = pagesOfWiki.stream().filter(page -> page.getName().equals("page1")).findFirst().orElse(null);
+    assertNotNull(childPage);
+    assertNull(childPage.getLoadedContent());
+    childPage.loadContent();
+    assertEquals("Page 1 content", childPage.getLoadedContent());
+    assertEquals(childrenPages.get(0), childPage);
+    childPage.setContent("Page 1 content updated");
+    assertEquals("Page 1 content updated", childPage.getContent());
+  }
+
   @Test
   public void testDeletePage() throws WikiException {
     // Given
@@ -324,6 +423,44 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertEquals(1, pageDAO.findAllIds(0, 0).size());
   }
 
+  @Test
+  public void testDeletePageTreeWithoutTreePaths() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setWikiId(wiki.getId());
+    page1.setWikiType(wiki.getType());
+    page1.setWikiOwner(wiki.getOwner());
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+
+    Page page2 = new Page();
+    page2.setWikiId(wiki.getId());
+    page2.setWikiType(wiki.getType());
+    page2.setWikiOwner(wiki.getOwner());
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+
+    storage.createPage(wiki, wiki.getWikiHome(), page1);
+    storage.createPage(wiki, page1, page2);
+    // pages created before the tree paths upgrade
+    for (PageEntity pageEntity : pageDAO.findAll()) {
+      pageEntity.setTreePath(null);
+      pageEntity.setTreeDepth(null);
+      pageDAO.update(pageEntity);
+    }
+
+    // When
+    storage.deletePage(wiki.getType(), wiki.getOwner(), page1.getName());
+
+    // Then
+    assertEquals(1, pageDAO.findAllIds(0, 0).size());
+  }
+
   @Test
   public void testMovePage() throws WikiException {
     // Given
@@ -371,6 +508,393 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertEquals("page11", fetchedPage11.getName());
   }
 
+  @Test
+  public void testDescendantsOfPage() throws WikiException {
+    // Given
+    Wiki wiki1 = new Wiki();
+    wiki1.setType("portal");
+    wiki1.setOwner("wiki1");
+    wiki1 = storage.createWiki(wiki1);
+    Wiki wiki2 = new Wiki();
+    wiki2.setType("portal");
+    wiki2.setOwner("wiki2");
+    wiki2 = storage.createWiki(wiki2);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page11 = new Page();
+    page11.setName("page11");
+    page11.setTitle("Page 11");
+    Page page111 = new Page();
+    page111.setName("page111");
+    page111.setTitle("Page 111");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+
+    // When
+    page1 = storage.createPage(wiki1, wiki1.getWikiHome(), page1);
+    page11 = storage.createPage(wiki1, page1, page11);
+    storage.createPage(wiki1, page11, page111);
+    storage.createPage(wiki1, wiki1.getWikiHome(), page2);
+    List<Page> allDescendants = storage.getDescendantsOfPage(wiki1.getWikiHome(), "root", -1, false);
+    List<Page> firstLevelDescendants = storage.getDescendantsOfPage(wiki1.getWikiHome(), "root", 1, false);
+    List<Page> page1Descendants = storage.getDescendantsOfPage(page1, "root", -1, false);
+
+    // Then
+    assertEquals(4, allDescendants.size());
+    assertEquals("page1", allDescendants.get(0).getName());
+    assertEquals("page2", allDescendants.get(1).getName());
+    assertEquals("page11", allDescendants.get(2).getName());
+    assertEquals("page111", allDescendants.get(3).getName());
+    assertEquals(2, firstLevelDescendants.size());
+    assertEquals(2, page1Descendants.size());
+
+    // When
+    storage.movePage(new WikiPageParams(wiki1.getType(), wiki1.getOwner(), page11.getName()),
+                     new WikiPageParams(wiki2.getType(), wiki2.getOwner(), wiki2.getWikiHome().getName()));
+
+    // Then
+    assertEquals(2, storage.getDescendantsOfPage(wiki1.getWikiHome(), "root", -1, false).size());
+    assertEquals(0, storage.getDescendantsOfPage(page1, "root", -1, false).size());
+    List<Page> wiki2Descendants = storage.getDescendantsOfPage(wiki2.getWikiHome(), "root", -1, false);
+    assertEquals(2, wiki2Descendants.size());
+    assertEquals("page11", wiki2Descendants.get(0).getName());
+    assertEquals("page111", wiki2Descendants.get(1).getName());
+  }
+
+  @Test
+  public void testMoveAndDeletePageSubtree() throws WikiException {
+    // Given
+    Wiki wiki1 = new Wiki();
+    wiki1.setType("portal");
+    wiki1.setOwner("wiki1");
+    wiki1 = storage.createWiki(wiki1);
+    Wiki wiki2 = new Wiki();
+    wiki2.setType("portal");
+    wiki2.setOwner("wiki2");
+    wiki2 = storage.createWiki(wiki2);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page11 = new Page();
+    page11.setName("page11");
+    page11.setTitle("Page 11");
+    Page page111 = new Page();
+    page111.setName("page111");
+    page111.setTitle("Page 111");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+    Page page21 = new Page();
+    page21.setName("page21");
+    page21.setTitle("Page 21");
+
+    page1 = storage.createPage(wiki1, wiki1.getWikiHome(), page1);
+    page11 = storage.createPage(wiki1, page1, page11);
+    page111 = storage.createPage(wiki1, page11, page111);
+    page2 = storage.createPage(wiki2, wiki2.getWikiHome(), page2);
+    storage.createPage(wiki2, page2, page21);
+
+    // When
+    storage.movePage(new WikiPageParams(wiki1.getType(), wiki1.getOwner(), page1.getName()),
+                     new WikiPageParams(wiki2.getType(), wiki2.getOwner(), page2.getName()));
+
+    // Then
+    assertEquals(0, storage.getDescendantsOfPage(wiki1.getWikiHome(), "root", -1, false).size());
+    List<Page> page2Descendants = storage.getDescendantsOfPage(page2, "root", -1, false);
+    assertEquals(4, page2Descendants.size());
+    for (Page page2Descendant : page2Descendants) {
+      assertEquals("wiki2", page2Descendant.getWikiOwner());
+    }
+    assertEquals(2, storage.getDescendantsOfPage(page2, "root", 1, false).size());
+    List<Page> page111Ancestors = storage.getAncestorsOfPage(page111.getId());
+    assertEquals(4, page111Ancestors.size());
+    assertEquals(wiki2.getWikiHome().getName(), page111Ancestors.get(0).getName());
+    assertEquals("page2", page111Ancestors.get(1).getName());
+    assertEquals("page1", page111Ancestors.get(2).getName());
+    assertEquals("page11", page111Ancestors.get(3).getName());
+
+    // When
+    storage.deletePage(wiki2.getType(), wiki2.getOwner(), page1.getName());
+
+    // Then
+    page2Descendants = storage.getDescendantsOfPage(page2, "root", -1, false);
+    assertEquals(1, page2Descendants.size());
+    assertEquals("page21", page2Descendants.get(0).getName());
+    assertNull(storage.getPageOfWikiByName(wiki2.getType(), wiki2.getOwner(), page11.getName()));
+    assertNull(storage.getPageOfWikiByName(wiki2.getType(), wiki2.getOwner(), page111.getName()));
+    assertEquals(3, pageDAO.getPagesOfWiki(wiki2.getType(), wiki2.getOwner(), true).size());
+  }
+
+  @Test
+  public void testPurgeDeletedPages() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page11 = new Page();
+    page11.setName("page11");
+    page11.setTitle("Page 11");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+
+    page1 = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    page11 = storage.createPage(wiki, page1, page11);
+    page2 = storage.createPage(wiki, wiki.getWikiHome(), page2);
+    storage.addPageVersion(page11, "user1");
+    storage.addRelatedPage(page2, page11);
+    storage.renamePage(wiki.getType(), wiki.getOwner(), "page11", "page11Renamed", "Page 11 renamed");
+
+    DraftPage draftPage = new DraftPage();
+    draftPage.setAuthor("user1");
+    draftPage.setName("draftOfPage11");
+    draftPage.setTitle("Draft of page 11");
+    draftPage.setTargetPageId(page11.getId());
+    draftPage.setTargetPageRevision("1");
+    draftPage.setCreatedDate(new Date());
+    draftPage.setUpdatedDate(new Date());
+    storage.createDraftPageForUser(draftPage, "user1");
+
+    storage.deletePage(wiki.getType(), wiki.getOwner(), page1.getName());
+    Date now = new Date(System.currentTimeMillis() + 1000);
+
+    // When
+    int purgedPagesWithRetention = storage.purgeDeletedPages(new Date(System.currentTimeMillis() - 60000), 10);
+
+    // Then
+    assertEquals(0, purgedPagesWithRetention);
+    assertEquals(2, storage.countDeletedPages(now));
+
+    // When
+    int firstPurgedPages = storage.purgeDeletedPages(now, 1);
+
+    // Then
+    assertEquals(1, firstPurgedPages);
+    assertNull(pageDAO.find(Long.parseLong(page11.getId())));
+    assertNotNull(pageDAO.find(Long.parseLong(page1.getId())));
+    assertEquals(1, storage.countDeletedPages(now));
+    assertEquals(0, pageVersionDAO.countVersionsOfPage(Long.parseLong(page11.getId())));
+    assertTrue(pageMoveDAO.findInPageMoves(wiki.getType(), wiki.getOwner(), "page11").isEmpty());
+    assertTrue(draftPageDAO.findDraftPagesOfPage(Long.parseLong(page11.getId())).isEmpty());
+    assertTrue(storage.getRelatedPagesOfPage(page2).isEmpty());
+
+    // When
+    int secondPurgedPages = storage.purgeDeletedPages(now, 10);
+
+    // Then
+    assertEquals(1, secondPurgedPages);
+    assertNull(pageDAO.find(Long.parseLong(page1.getId())));
+    assertEquals(0, storage.countDeletedPages(now));
+    assertEquals(0, storage.purgeDeletedPages(now, 10));
+    assertNotNull(storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), page2.getName()));
+  }
+
+  @Test
+  public void testAttachmentContentDeduplication() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+    page1 = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    page2 = storage.createPage(wiki, wiki.getWikiHome(), page2);
+
+    Attachment attachment1 = new Attachment();
+    attachment1.setName("image1.png");
+    attachment1.setContent("image".getBytes());
+    attachment1.setMimeType("image/png");
+    attachment1.setCreator("user1");
+    Attachment attachment2 = new Attachment();
+    attachment2.setName("image2.png");
+    attachment2.setContent("image".getBytes());
+    attachment2.setMimeType("image/png");
+    attachment2.setCreator("user2");
+    Attachment attachment3 = new Attachment();
+    attachment3.setName("image3.png");
+    attachment3.setContent("other image".getBytes());
+    attachment3.setMimeType("image/png");
+    attachment3.setCreator("user2");
+
+    // When
+    storage.addAttachmentToPage(attachment1, page1);
+    storage.addAttachmentToPage(attachment2, page2);
+    storage.addAttachmentToPage(attachment3, page2);
+
+    // Then
+    Long sharedFileId = pageAttachmentDAO.getAttachmentOfPageByName(Long.parseLong(page1.getId()), "image1.png")
+                                         .getAttachmentFileID();
+    assertEquals(sharedFileId,
+                 pageAttachmentDAO.getAttachmentOfPageByName(Long.parseLong(page2.getId()), "image2.png").getAttachmentFileID());
+    assertFalse(sharedFileId.equals(pageAttachmentDAO.getAttachmentOfPageByName(Long.parseLong(page2.getId()), "image3.png")
+                                                     .getAttachmentFileID()));
+    assertEquals("image2.png", storage.getAttachmentOfPageByName("image2.png", page2, false).getName());
+    assertEquals(2, getAttachmentFile(sharedFileId).getRefCount());
+
+    // When
+    storage.deleteAttachmentOfPage("image1.png", page1);
+
+    // Then
+    assertEquals(1, getAttachmentFile(sharedFileId).getRefCount());
+    assertFalse(fileService.getFileInfo(sharedFileId).isDeleted());
+
+    // When
+    AttachmentFileEntity attachmentFile = getAttachmentFile(sharedFileId);
+    attachmentFile.setRefCount(5);
+    attachmentFileDAO.update(attachmentFile);
+    long lastAttachmentFileId = storage.reconcileAttachmentFiles(0, 10, new Date(System.currentTimeMillis() - 3600000));
+
+    // Then the recently updated files are left unchanged
+    assertEquals(0, lastAttachmentFileId);
+    assertEquals(5, getAttachmentFile(sharedFileId).getRefCount());
+
+    // When
+    Date updatedBefore = new Date(System.currentTimeMillis() + 1000);
+    lastAttachmentFileId = storage.reconcileAttachmentFiles(0, 10, updatedBefore);
+
+    // Then
+    assertTrue(lastAttachmentFileId > 0);
+    assertEquals(0, storage.reconcileAttachmentFiles(lastAttachmentFileId, 10, updatedBefore));
+    assertEquals(1, getAttachmentFile(sharedFileId).getRefCount());
+
+    // When
+    storage.deleteAttachmentOfPage("image2.png", page2);
+
+    // Then
+    assertNull(getAttachmentFile(sharedFileId));
+    FileInfo fileInfo = fileService.getFileInfo(sharedFileId);
+    assertTrue(fileInfo == null || fileInfo.isDeleted());
+  }
+
+  @Test
+  public void testGetPagesOfWikiByNames() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+    storage.createPage(wiki, wiki.getWikiHome(), page1);
+    storage.createPage(wiki, wiki.getWikiHome(), page2);
+
+    // When
+    Map<String, Page> pages = storage.getPagesOfWikiByNames("portal", "wiki1", Arrays.asList("page1", "page2", "Page1", "page3"));
+
+    // Then
+    assertEquals(2, pages.size());
+    assertEquals("Page 1", pages.get("page1").getTitle());
+    assertEquals("Page 2", pages.get("page2").getTitle());
+  }
+
+  @Test
+  public void testCountAttachments() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page2 = new Page();
+    page2.setName("page2");
+    page2.setTitle("Page 2");
+    page1 = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    page2 = storage.createPage(wiki, wiki.getWikiHome(), page2);
+    for (String name : Arrays.asList("file1.txt", "file2.txt")) {
+      Attachment attachment = new Attachment();
+      attachment.setName(name);
+      attachment.setContent(name.getBytes());
+      attachment.setMimeType("text/plain");
+      storage.addAttachmentToPage(attachment, page1);
+    }
+
+    // When
+    int nbOfAttachmentsOfPage1 = storage.countAttachments(page1);
+    int nbOfAttachmentsOfPage2 = storage.countAttachments(page2);
+    Map<String, Integer> nbOfAttachments = storage.countAttachments(Arrays.asList(page1.getId(), page2.getId()));
+
+    // Then
+    assertEquals(2, nbOfAttachmentsOfPage1);
+    assertEquals(0, nbOfAttachmentsOfPage2);
+    assertEquals(2, nbOfAttachments.size());
+    assertEquals(2, nbOfAttachments.get(page1.getId()).intValue());
+    assertEquals(0, nbOfAttachments.get(page2.getId()).intValue());
+
+    // When
+    storage.deleteAttachmentOfPage("file1.txt", page1);
+
+    // Then
+    assertEquals(1, storage.countAttachments(page1));
+  }
+
+  private AttachmentFileEntity getAttachmentFile(Long attachmentFileId) {
+    AttachmentFileEntity attachmentFile = attachmentFileDAO.getAttachmentFiles(0, new Date(System.currentTimeMillis() + 60000), 100)
+                                                           .stream()
+                                                           .filter(file -> file.getAttachmentFileId().equals(attachmentFileId))
+                                                           .findFirst()
+                                                           .orElse(null);
+    if (attachmentFile != null) {
+      // the references count is updated by bulk queries
+      attachmentFileDAO.getEntityManager().refresh(attachmentFile);
+    }
+    return attachmentFile;
+  }
+
+  @Test
+  public void testAncestorsOfPage() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page page11 = new Page();
+    page11.setName("page11");
+    page11.setTitle("Page 11");
+    Page page111 = new Page();
+    page111.setName("page111");
+    page111.setTitle("Page 111");
+
+    // When
+    page1 = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    page11 = storage.createPage(wiki, page1, page11);
+    page111 = storage.createPage(wiki, page11, page111);
+    List<Page> page111Ancestors = storage.getAncestorsOfPage(page111.getId());
+
+    // Then
+    assertEquals(3, page111Ancestors.size());
+    assertEquals(wiki.getWikiHome().getName(), page111Ancestors.get(0).getName());
+    assertEquals("page1", page111Ancestors.get(1).getName());
+    assertEquals("page11", page111Ancestors.get(2).getName());
+    assertEquals(1, storage.getAncestorsOfPage(page1.getId()).size());
+    assertTrue(storage.getAncestorsOfPage(wiki.getWikiHome().getId()).isEmpty());
+  }
+
   @Test
   public void testUpdatePage() throws WikiException {
     // Given
@@ -428,6 +952,74 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertEquals("New Title", renamedPage.getTitle());
   }
 
+  @Test
+  public void testPageCache() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page1 = new Page();
+    page1.setWikiId(wiki.getId());
+    page1.setWikiType(wiki.getType());
+    page1.setWikiOwner(wiki.getOwner());
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page createdPage = storage.createPage(wiki, wiki.getWikiHome(), page1);
+
+    // When
+    Page cachedPage = storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), "page1");
+    cachedPage.setTitle("Page 1 not saved");
+
+    // Then
+    assertEquals("Page 1", storage.getPageById(createdPage.getId()).getTitle());
+    assertEquals("Page 1", storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), "page1").getTitle());
+
+    // When
+    storage.renamePage(wiki.getType(), wiki.getOwner(), "page1", "newName", "New Title");
+
+    // Then
+    assertNull(storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), "page1"));
+    assertEquals("New Title", storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), "newName").getTitle());
+    assertEquals("New Title", storage.getPageById(createdPage.getId()).getTitle());
+
+    // When
+    storage.deletePage(wiki.getType(), wiki.getOwner(), "newName");
+
+    // Then
+    assertNull(storage.getPageOfWikiByName(wiki.getType(), wiki.getOwner(), "newName"));
+    assertTrue(storage.getPageById(createdPage.getId()).isDeleted());
+  }
+
+  @Test
+  public void testPageCacheRemovesPagesAgainAfterCommit() throws WikiException {
+    // Given
+    PageCache pageCache = PortalContainer.getInstance().getComponentInstanceOfType(PageCache.class);
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+    Page page1 = new Page();
+    page1.setWikiId(wiki.getId());
+    page1.setWikiType(wiki.getType());
+    page1.setWikiOwner(wiki.getOwner());
+    page1.setName("page1");
+    page1.setTitle("Page 1");
+    Page createdPage = storage.createPage(wiki, wiki.getWikiHome(), page1);
+    long pageId = Long.parseLong(createdPage.getId());
+
+    // When
+    pageCache.startInvalidation();
+    pageCache.removePage(pageId);
+    // a concurrent read caches the page before the commit
+    pageCache.putPage(createdPage);
+    pageCache.endInvalidation();
+
+    // Then
+    assertNull(pageCache.getPageById(pageId));
+  }
+
   @Test
   public void testPermissionsOnPage() throws WikiException {
     // Given
@@ -1012,6 +1604,153 @@ public class JPADataStorageTest extends BaseWikiJPAIntegrationTest {
     assertEquals("2", Long.toString(pageVersions2.get(1).getVersionNumber()));
   }
 
+  @Test
+  public void testPageVersionsMetadata() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page = new Page();
+    page.setWikiId(wiki.getId());
+    page.setWikiType(wiki.getType());
+    page.setWikiOwner(wiki.getOwner());
+    page.setName("page1");
+    page.setTitle("Page 1");
+    page.setContent("Content Page Version 1");
+    Page createdPage = storage.createPage(wiki, wiki.getWikiHome(), page);
+    org.exoplatform.social.core.identity.model.Identity identity = Mockito.mock( org.exoplatform.social.core.identity.model.Identity.class);
+    Long latestVersionBefore = storage.getLatestVersionNumberOfPage(createdPage);
+
+    // When
+    storage.addPageVersion(createdPage, identity.getId());
+    createdPage.setContent("Content Page Version 2");
+    storage.updatePage(createdPage);
+    storage.addPageVersion(createdPage, identity.getId());
+    List<PageHistory> firstPage = storage.getHistoryOfPage(createdPage, 0, 1);
+    List<PageHistory> secondPage = storage.getHistoryOfPage(createdPage, 1, 1);
+
+    // Then
+    assertNull(latestVersionBefore);
+    assertEquals(Long.valueOf(2), storage.getLatestVersionNumberOfPage(createdPage));
+    assertEquals(2, storage.countVersionsOfPage(createdPage));
+    assertEquals("Content Page Version 1", storage.getVersionContentOfPage(createdPage, 1));
+    assertEquals("Content Page Version 2", storage.getVersionContentOfPage(createdPage, 2));
+    assertNull(storage.getVersionContentOfPage(createdPage, 3));
+    assertEquals(1, firstPage.size());
+    assertEquals(Long.valueOf(2), firstPage.get(0).getVersionNumber());
+    assertNull(firstPage.get(0).getContent());
+    assertEquals(1, secondPage.size());
+    assertEquals(Long.valueOf(1), secondPage.get(0).getVersionNumber());
+  }
+
+  @Test
+  public void testCompressedPageVersions() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      content.append("<p>Paragraph ").append(i).append(" of the page content</p>");
+    }
+    Page page = new Page();
+    page.setWikiId(wiki.getId());
+    page.setWikiType(wiki.getType());
+    page.setWikiOwner(wiki.getOwner());
+    page.setName("page1");
+    page.setTitle("Page 1");
+    page.setContent(content.toString());
+    Page createdPage = storage.createPage(wiki, wiki.getWikiHome(), page);
+    List<String> contents = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < 12; i++) {
+      content.insert(content.length() / 2, "<p>Edition " + i + "</p>");
+      createdPage.setContent(content.toString());
+      storage.updatePage(createdPage);
+      storage.addPageVersion(createdPage, USERNAME_TEST);
+      contents.add(content.toString());
+    }
+    List<PageVersion> pageVersions = storage.getVersionsOfPage(createdPage);
+    List<PageHistory> pageHistory = storage.getHistoryOfPage(createdPage);
+    storage.restoreVersionOfPage("5", createdPage);
+
+    // Then
+    long pageId = Long.parseLong(createdPage.getId());
+    assertEquals(ContentStorage.SNAPSHOT, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 1L).getContentStorage());
+    PageVersionEntity deltaVersion = pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 2L);
+    assertEquals(ContentStorage.DELTA, deltaVersion.getContentStorage());
+    assertEquals(Long.valueOf(1), deltaVersion.getBaseVersionNumber());
+    assertEquals(ContentStorage.SNAPSHOT, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 11L).getContentStorage());
+    assertEquals(ContentStorage.DELTA, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 12L).getContentStorage());
+    assertEquals(12, pageVersions.size());
+    assertEquals(12, pageHistory.size());
+    for (int i = 0; i < 12; i++) {
+      assertEquals(contents.get(i), storage.getVersionContentOfPage(createdPage, i + 1));
+      assertEquals(contents.get(11 - i), pageVersions.get(i).getContent());
+      assertEquals(contents.get(i), pageHistory.get(i).getContent());
+    }
+    assertEquals(contents.get(4), storage.getPageById(createdPage.getId()).getContent());
+  }
+
+  @Test
+  public void testCompressPageVersions() throws WikiException {
+    // Given
+    Wiki wiki = new Wiki();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = storage.createWiki(wiki);
+
+    Page page = new Page();
+    page.setWikiId(wiki.getId());
+    page.setWikiType(wiki.getType());
+    page.setWikiOwner(wiki.getOwner());
+    page.setName("page1");
+    page.setTitle("Page 1");
+    page.setContent("Content Page 1");
+    Page createdPage = storage.createPage(wiki, wiki.getWikiHome(), page);
+    PageEntity pageEntity = pageDAO.find(Long.parseLong(createdPage.getId()));
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      content.append("<p>Paragraph ").append(i).append(" of the page content</p>");
+    }
+    List<String> contents = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      content.append("<p>Edition ").append(i).append("</p>");
+      PageVersionEntity pageVersionEntity = new PageVersionEntity();
+      pageVersionEntity.setPage(pageEntity);
+      pageVersionEntity.setVersionNumber(i);
+      pageVersionEntity.setName(pageEntity.getName());
+      pageVersionEntity.setAuthor(USERNAME_TEST);
+      pageVersionEntity.setContent(content.toString());
+      pageVersionEntity.setCreatedDate(new Date());
+      pageVersionEntity.setUpdatedDate(new Date());
+      pageVersionDAO.create(pageVersionEntity);
+      contents.add(content.toString());
+    }
+
+    // When
+    long lastPageId = storage.compressPageVersions(0, 10);
+    long lastPageIdOfNextBatch = storage.compressPageVersions(lastPageId, 10);
+    long lastPageIdAfterMigration = storage.compressPageVersions(0, 10);
+
+    // Then
+    long pageId = pageEntity.getId();
+    assertEquals(pageId, lastPageId);
+    assertEquals(0, lastPageIdOfNextBatch);
+    assertEquals(0, lastPageIdAfterMigration);
+    assertEquals(ContentStorage.SNAPSHOT, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 1L).getContentStorage());
+    assertEquals(ContentStorage.DELTA, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 2L).getContentStorage());
+    assertEquals(ContentStorage.DELTA, pageVersionDAO.getPageversionByPageIdAndVersion(pageId, 3L).getContentStorage());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(contents.get(i), storage.getVersionContentOfPage(createdPage, i + 1));
+    }
+  }
+
   @Test
   public void testRestorePageVersions() throws WikiException {
     // Given
@@ -28,8 +28,11 @@ import org.exoplatform.wiki.model.PermissionType;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by The eXo Platform SAS Author : eXoPlatform exo@exoplatform.com
@@ -130,4 +133,111 @@ public class PageDAOTest extends BaseWikiJPAIntegrationTest {
     }
   }
 
+  @Test
+  public void testCountPagesChildrenByIds() {
+    // Given
+    WikiEntity wiki = new WikiEntity();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = wikiDAO.create(wiki);
+    PageEntity parentPage1 = createPage(wiki, null, "parentPage1", false);
+    PageEntity parentPage2 = createPage(wiki, null, "parentPage2", false);
+    PageEntity emptyPage = createPage(wiki, null, "emptyPage", false);
+    createPage(wiki, parentPage1, "page11", false);
+    createPage(wiki, parentPage1, "page12", false);
+    createPage(wiki, parentPage1, "page13", true);
+    createPage(wiki, parentPage2, "page21", false);
+
+    // When
+    Map<Long, Long> childrenCount = pageDAO.countPagesChildrenByIds(Arrays.asList(parentPage1.getId(),
+                                                                                   parentPage2.getId(),
+                                                                                   emptyPage.getId()));
+
+    // Then
+    assertEquals(2, childrenCount.size());
+    assertEquals(2L, childrenCount.get(parentPage1.getId()).longValue());
+    assertEquals(1L, childrenCount.get(parentPage2.getId()).longValue());
+    assertNull(childrenCount.get(emptyPage.getId()));
+    assertTrue(pageDAO.countPagesChildrenByIds(Collections.emptyList()).isEmpty());
+  }
+
+  @Test
+  public void testFindAllIdsAfter() {
+    // Given
+    WikiEntity wiki = new WikiEntity();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = wikiDAO.create(wiki);
+    PageEntity page1 = createPage(wiki, null, "page1", false);
+    createPage(wiki, null, "page2", true);
+    PageEntity page3 = createPage(wiki, null, "page3", false);
+    PageEntity page4 = createPage(wiki, null, "page4", false);
+
+    // When
+    List<Long> firstIds = pageDAO.findAllIdsAfter(0, 2);
+    List<Long> nextIds = pageDAO.findAllIdsAfter(firstIds.get(firstIds.size() - 1), 2);
+
+    // Then
+    assertEquals(Arrays.asList(page1.getId(), page3.getId()), firstIds);
+    assertEquals(Collections.singletonList(page4.getId()), nextIds);
+  }
+
+  public void testGetPagesWithoutTreePath() {
+    // Given
+    WikiEntity wiki = new WikiEntity();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = wikiDAO.create(wiki);
+    PageEntity page1 = createPage(wiki, null, "page1", false);
+    PageEntity page2 = createPage(wiki, null, "page2", false);
+    page2.setTreePath("/");
+    page2.setTreeDepth(0);
+    pageDAO.update(page2);
+    PageEntity page3 = createPage(wiki, page1, "page3", false);
+    PageEntity page4 = createPage(wiki, page1, "page4", true);
+
+    // When
+    List<PageEntity> firstPages = pageDAO.getPagesWithoutTreePath(0, 2);
+    List<PageEntity> nextPages = pageDAO.getPagesWithoutTreePath(firstPages.get(firstPages.size() - 1).getId(), 2);
+
+    // Then
+    assertEquals(2, firstPages.size());
+    assertEquals(page1.getId(), firstPages.get(0).getId());
+    assertEquals(page3.getId(), firstPages.get(1).getId());
+    assertEquals(1, nextPages.size());
+    assertEquals(page4.getId(), nextPages.get(0).getId());
+  }
+
+  public void testPurgeableDeletedPages() {
+    // Given
+    WikiEntity wiki = new WikiEntity();
+    wiki.setType("portal");
+    wiki.setOwner("wiki1");
+    wiki = wikiDAO.create(wiki);
+    createPage(wiki, null, "page1", true);
+    PageEntity page2 = createPage(wiki, null, "page2", true);
+    page2.setDeletedDate(new Date(System.currentTimeMillis() - 60000));
+    pageDAO.update(page2);
+    createPage(wiki, null, "page3", false);
+
+    // When
+    Date deletedBefore = new Date();
+    List<Long> purgeablePagesIds = pageDAO.getPurgeableDeletedPagesIds(deletedBefore, 10);
+
+    // Then
+    assertEquals(Collections.singletonList(page2.getId()), purgeablePagesIds);
+    assertEquals(1, pageDAO.countDeletedPages(deletedBefore));
+  }
+
+  private PageEntity createPage(WikiEntity wiki, PageEntity parentPage, String name, boolean deleted) {
+    PageEntity page = new PageEntity();
+    page.setWiki(wiki);
+    page.setParentPage(parentPage);
+    page.setCreatedDate(new Date());
+    page.setUpdatedDate(new Date());
+    page.setName(name);
+    page.setDeleted(deleted);
+    return pageDAO.create(page);
+  }
+
 }
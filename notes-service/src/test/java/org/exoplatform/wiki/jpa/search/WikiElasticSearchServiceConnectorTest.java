@@ -7,33 +7,51 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import java.util.Set;
+
 import org.exoplatform.commons.api.notification.model.PluginKey;
 import org.exoplatform.commons.api.notification.service.storage.NotificationService;
 import org.exoplatform.commons.search.es.ElasticSearchServiceConnector;
 import org.exoplatform.commons.utils.CommonsUtils;
+import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.wiki.service.WikiService;
 import org.exoplatform.wiki.utils.Utils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.exoplatform.commons.search.es.client.ElasticSearchingClient;
-import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.organization.Membership;
 import org.exoplatform.services.security.ConversationState;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityConstants;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.SpaceListAccess;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.space.spi.SpaceLifeCycleEvent;
 import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
+import org.exoplatform.wiki.jpa.cache.UserPermissionIdentitiesCache;
+import org.exoplatform.wiki.jpa.organization.WikiSpaceGroupMembershipListener;
+import org.exoplatform.wiki.jpa.organization.WikiSpaceMembershipListener;
 import org.exoplatform.wiki.service.search.SearchResult;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
@@ -62,7 +80,10 @@ public class WikiElasticSearchServiceConnectorTest {
   private SpaceStorage                      spaceStorage;
 
   @Mock
-  private ConfigurationManager              configurationManager;
+  private CacheService                      cacheService;
+
+  @Mock
+  private ExoCache<String, HashSet<String>> permissionIdentitiesCache;
 
   @PrepareForTest({CommonsUtils.class, Utils.class})
   @Test
@@ -101,31 +122,15 @@ public class WikiElasticSearchServiceConnectorTest {
     properties.setProperty("titleField", "title");
     properties.setProperty("searchFields", "name,title,content,comment,file");
     initParams.put("constructor.params", properties);
-    this.searchServiceConnector = new WikiElasticSearchServiceConnector(configurationManager,
-                                                                        initParams,
+    this.searchServiceConnector = new WikiElasticSearchServiceConnector(initParams,
                                                                         elasticSearchingClient,
-                                                                        identityManager) {
+                                                                        identityManager,
+                                                                        mockPermissionIdentitiesCache()) {
       @Override
       protected String getPermissionFilter() {
         return "";
       }
     };
-    this.searchServiceConnector.setSearchQuery("{\n" + "  \"from\": \"@offset@\",\n" + "  \"size\": \"@limit@\",\n"
-        + "  \"query\":{\n" + "    \"bool\":{\n" + "      \"filter\":{\n" + "        \"terms\":{\n"
-        + "          \"permissions\": [@permissions@]\n" + "        }\n" + "      },\n" + "      \"should\": {\n"
-        + "        \"match_phrase\": {\n" + "          \"summary\": {\n" + "            \"query\": \"@term@\",\n"
-        + "            \"boost\": 3\n" + "          }\n" + "        }\n" + "      },\n" + "      \"must\":{\n"
-        + "        \"query_string\":{\n"
-        + "          \"fields\": [\"name\",\"title^5\",\"content\",\"comment\",\"attachment.content\"],\n"
-        + "          \"query\": \"@term_query@\"\n" + "        }\n" + "      },\n" + "      \"must_not\": {\n"
-        + "        \"exists\" : { \"field\" : \"sites\" }\n" + "      }\n" + "    }\n" + "  },\n" + "  \"highlight\" : {\n"
-        + "    \"number_of_fragments\" : 2,\n" + "    \"fragment_size\" : 150,\n" + "    \"no_match_size\" : 0,\n"
-        + "    \"order\": \"score\",\n" + "    \"fields\" : {\n" + "      \"description\" : {\n"
-        + "        \"pre_tags\" : [\"<span class='searchMatchExcerpt'>\"],\n" + "        \"post_tags\" : [\"</span>\"]\n"
-        + "      },\n" + "      \"summary\" : {\n" + "        \"pre_tags\" : [\"<span class='searchMatchExcerpt'>\"],\n"
-        + "        \"post_tags\" : [\"</span>\"]\n" + "      },\n" + "      \"location\" : {\n"
-        + "        \"pre_tags\" : [\"<span class='searchMatchExcerpt'>\"],\n" + "        \"post_tags\" : [\"</span>\"]\n"
-        + "      }\n" + "    }\n" + "  }\n" + "}");
     Mockito.when(spaceService.getMemberSpaces("__system")).thenReturn(new SpaceListAccess(spaceStorage,
                                                                                   "__system",
                                                                                   SpaceListAccess.Type.MEMBER));
@@ -142,4 +147,151 @@ public class WikiElasticSearchServiceConnectorTest {
     assertEquals("", searchResults.get(1).getExcerpt());
   }
 
+  @PrepareForTest({ CommonsUtils.class })
+  @Test
+  public void shouldCacheUserPermissionIdentities() throws Exception {
+    PowerMockito.mockStatic(CommonsUtils.class);
+    when(CommonsUtils.getService(SpaceService.class)).thenReturn(spaceService);
+    Mockito.when(spaceService.getMemberSpaces("john")).thenReturn(new SpaceListAccess(spaceStorage,
+                                                                                      "john",
+                                                                                      SpaceListAccess.Type.MEMBER));
+    Mockito.when(spaceStorage.getMemberSpacesCount("john")).thenReturn(0);
+    Mockito.when(identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, "john"))
+           .thenReturn(new org.exoplatform.social.core.identity.model.Identity("2"));
+    UserPermissionIdentitiesCache userPermissionIdentitiesCache = mockPermissionIdentitiesCache();
+    this.searchServiceConnector = new WikiElasticSearchServiceConnector(getInitParams(),
+                                                                        elasticSearchingClient,
+                                                                        identityManager,
+                                                                        userPermissionIdentitiesCache);
+
+    // When
+    Set<String> permissions = searchServiceConnector.getUserSpaceIds("john");
+    Set<String> cachedPermissions = searchServiceConnector.getUserSpaceIds("john");
+
+    // Then
+    assertEquals(Collections.singleton("2"), permissions);
+    assertEquals(permissions, cachedPermissions);
+    Mockito.verify(spaceService, Mockito.times(1)).getMemberSpaces("john");
+
+    // When
+    new WikiSpaceMembershipListener(userPermissionIdentitiesCache).joined(new SpaceLifeCycleEvent(new Space(),
+                                                                                                   "john",
+                                                                                                   SpaceLifeCycleEvent.Type.JOINED));
+    searchServiceConnector.getUserSpaceIds("john");
+
+    // Then
+    Mockito.verify(spaceService, Mockito.times(2)).getMemberSpaces("john");
+
+    // When
+    Membership membership = Mockito.mock(Membership.class);
+    Mockito.when(membership.getUserName()).thenReturn("john");
+    Mockito.when(membership.getGroupId()).thenReturn("/platform/users");
+    WikiSpaceGroupMembershipListener membershipListener = new WikiSpaceGroupMembershipListener(userPermissionIdentitiesCache);
+    membershipListener.postSave(membership, true);
+    searchServiceConnector.getUserSpaceIds("john");
+
+    // Then
+    Mockito.verify(spaceService, Mockito.times(2)).getMemberSpaces("john");
+
+    // When
+    Mockito.when(membership.getGroupId()).thenReturn("/spaces/space1");
+    membershipListener.postDelete(membership);
+    searchServiceConnector.getUserSpaceIds("john");
+
+    // Then
+    Mockito.verify(spaceService, Mockito.times(3)).getMemberSpaces("john");
+  }
+
+  @PrepareForTest({ CommonsUtils.class })
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldNotCachePermissionIdentitiesWhenSpacesLoadingFails() throws Exception {
+    PowerMockito.mockStatic(CommonsUtils.class);
+    when(CommonsUtils.getService(SpaceService.class)).thenReturn(spaceService);
+    ListAccess<Space> userSpaces = Mockito.mock(ListAccess.class);
+    Mockito.when(userSpaces.getSize()).thenReturn(1);
+    Mockito.when(userSpaces.load(0, 1)).thenThrow(new IllegalStateException("Spaces storage unavailable"));
+    Mockito.when(spaceService.getMemberSpaces("john")).thenReturn(userSpaces);
+    Mockito.when(identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, "john"))
+           .thenReturn(new org.exoplatform.social.core.identity.model.Identity("2"));
+    this.searchServiceConnector = new WikiElasticSearchServiceConnector(getInitParams(),
+                                                                        elasticSearchingClient,
+                                                                        identityManager,
+                                                                        mockPermissionIdentitiesCache());
+
+    // When
+    Set<String> permissions = searchServiceConnector.getUserSpaceIds("john");
+    searchServiceConnector.getUserSpaceIds("john");
+
+    // Then
+    assertEquals(Collections.singleton("2"), permissions);
+    Mockito.verify(spaceService, Mockito.times(2)).getMemberSpaces("john");
+  }
+
+  @PrepareForTest({ CommonsUtils.class, Utils.class })
+  @Test
+  public void shouldBuildQueryAndResolveEachIdentityOnce() throws Exception {
+    PowerMockito.mockStatic(CommonsUtils.class);
+    PowerMockito.mockStatic(Utils.class);
+    when(CommonsUtils.getService(SpaceService.class)).thenReturn(spaceService);
+    when(Utils.html2text(anyString())).thenReturn("");
+    Mockito.when(spaceService.getMemberSpaces("john")).thenReturn(new SpaceListAccess(spaceStorage,
+                                                                                      "john",
+                                                                                      SpaceListAccess.Type.MEMBER));
+    Mockito.when(spaceStorage.getMemberSpacesCount("john")).thenReturn(0);
+    Mockito.when(identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, "john"))
+           .thenReturn(new org.exoplatform.social.core.identity.model.Identity("2"));
+    Mockito.when(identityManager.getOrCreateIdentity(SpaceIdentityProvider.NAME, "space1", true))
+           .thenReturn(new org.exoplatform.social.core.identity.model.Identity("3"));
+    String hit = "{\"_type\": \"wiki-page\", \"_score\": 2.0, \"_source\": {\"wikiOwner\": \"/spaces/space1\","
+        + " \"owner\": \"john\", \"createdDate\": \"1494833363955\", \"updatedDate\": \"1494833363955\","
+        + " \"name\": \"@name@\", \"wikiType\": \"group\", \"title\": \"@name@\"},"
+        + " \"highlight\": {\"content\": [\"<em>note</em>\"]}}";
+    Mockito.when(elasticSearchingClient.sendRequest(anyString(), any()))
+           .thenReturn("{\"took\": 1, \"hits\": {\"total\": 2, \"hits\": [" + hit.replace("@name@", "Page_1") + ", "
+               + hit.replace("@name@", "Page_2") + "]}}");
+    this.searchServiceConnector = new WikiElasticSearchServiceConnector(getInitParams(),
+                                                                        elasticSearchingClient,
+                                                                        identityManager,
+                                                                        mockPermissionIdentitiesCache());
+
+    // When
+    List<SearchResult> searchResults = searchServiceConnector.searchWiki("my \"note", "john", false, 0, 20);
+
+    // Then
+    ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+    Mockito.verify(elasticSearchingClient).sendRequest(queryCaptor.capture(), any());
+    JsonNode query = new ObjectMapper().readTree(queryCaptor.getValue());
+    assertEquals(20, query.get("size").asInt());
+    assertEquals("my \"note", query.get("query").get("bool").get("should").get("match_phrase").get("attachment.content").get("query").asText());
+    assertEquals("2", query.at("/query/bool/filter/0/terms/permissions/0").asText());
+    assertEquals(2, searchResults.size());
+    assertEquals("Page_2", searchResults.get(1).getPageName());
+    assertEquals("2", searchResults.get(1).getPoster().getId());
+    assertEquals("3", searchResults.get(1).getWikiOwnerIdentity().getId());
+    Mockito.verify(identityManager, Mockito.times(1)).getOrCreateIdentity(SpaceIdentityProvider.NAME, "space1", true);
+  }
+
+  private InitParams getInitParams() {
+    InitParams initParams = new InitParams();
+    PropertiesParam properties = new PropertiesParam();
+    properties.setProperty("index", "wiki");
+    properties.setProperty("type", "wiki,wiki-page,wiki-attachment");
+    properties.setProperty("searchFields", "name,title,content,comment,file");
+    initParams.put("constructor.params", properties);
+    return initParams;
+  }
+
+  private UserPermissionIdentitiesCache mockPermissionIdentitiesCache() {
+    Map<String, HashSet<String>> entries = new HashMap<>();
+    when(permissionIdentitiesCache.get(anyString())).thenAnswer(invocation -> entries.get(invocation.getArgument(0)));
+    when(permissionIdentitiesCache.remove(anyString())).thenAnswer(invocation -> entries.remove(invocation.getArgument(0)));
+    Mockito.doAnswer(invocation -> entries.put(invocation.getArgument(0), invocation.getArgument(1)))
+           .when(permissionIdentitiesCache)
+           .put(anyString(), any());
+    Mockito.<ExoCache<String, HashSet<String>>> when(cacheService.getCacheInstance(UserPermissionIdentitiesCache.USER_PERMISSION_IDENTITIES_CACHE_NAME))
+           .thenReturn(permissionIdentitiesCache);
+    return new UserPermissionIdentitiesCache(cacheService);
+  }
+
 }
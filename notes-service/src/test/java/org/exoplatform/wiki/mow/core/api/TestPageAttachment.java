@@ -19,7 +19,12 @@
 
 package org.exoplatform.wiki.mow.core.api;
 
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
 
 import org.exoplatform.portal.config.model.PortalConfig;
 import org.exoplatform.wiki.jpa.BaseTest;
@@ -58,6 +63,59 @@ public class TestPageAttachment extends BaseTest {
     assertTrue(Arrays.equals(attachment.getContent(), storedAttachment.getContent()));
   }
 
+  public void testGetPageAttachmentByName() throws Exception {
+    // Given
+    Wiki wiki = getOrCreateWiki(wikiService, PortalConfig.PORTAL_TYPE, "wikiAttachement3");
+    Page wikiHome = wiki.getWikiHome();
+    for (String name : Arrays.asList("attachment1.png", "attachment2.png")) {
+      Attachment attachment = new Attachment();
+      attachment.setName(name);
+      attachment.setContent(name.getBytes());
+      attachment.setMimeType("image/png");
+      attachment.setCreator("root");
+      wikiService.addAttachmentToPage(attachment, wikiHome);
+    }
+
+    // When
+    Attachment storedAttachment = wikiService.getAttachmentOfPageByName("attachment2.png", wikiHome, true);
+    Attachment missingAttachment = wikiService.getAttachmentOfPageByName("attachment3.png", wikiHome, true);
+
+    // Then
+    assertNotNull(storedAttachment);
+    assertEquals("attachment2.png", storedAttachment.getName());
+    assertNotNull(storedAttachment.getDownloadURL());
+    try (InputStream contentStream = storedAttachment.openContentStream()) {
+      assertNotNull(contentStream);
+      assertTrue(Arrays.equals("attachment2.png".getBytes(), IOUtils.toByteArray(contentStream)));
+    }
+    assertNull(missingAttachment);
+  }
+
+  public void testGetNbOfAttachmentsOfPage() throws Exception {
+    // Given
+    Wiki wiki = getOrCreateWiki(wikiService, PortalConfig.PORTAL_TYPE, "wikiAttachement4");
+    Page wikiHome = wiki.getWikiHome();
+    Attachment attachment = new Attachment();
+    attachment.setName("attachment1.png");
+    attachment.setContent("logo".getBytes());
+    attachment.setMimeType("image/png");
+    attachment.setCreator("root");
+
+    // When
+    int nbOfAttachmentsBefore = wikiService.getNbOfAttachmentsOfPage(wikiHome);
+    wikiService.addAttachmentToPage(attachment, wikiHome);
+    int nbOfAttachmentsAfterAdd = wikiService.getNbOfAttachmentsOfPage(wikiHome);
+    Map<String, Integer> nbOfAttachments = wikiService.getNbOfAttachmentsOfPages(Collections.singletonList(wikiHome));
+    wikiService.deleteAttachmentOfPage("attachment1.png", wikiHome);
+    int nbOfAttachmentsAfterDelete = wikiService.getNbOfAttachmentsOfPage(wikiHome);
+
+    // Then
+    assertEquals(0, nbOfAttachmentsBefore);
+    assertEquals(1, nbOfAttachmentsAfterAdd);
+    assertEquals(1, nbOfAttachments.get(wikiHome.getId()).intValue());
+    assertEquals(0, nbOfAttachmentsAfterDelete);
+  }
+
 // FIXME Failing Test coming from JPA Impl bug comparing to JCR Impl
 //  public void testAttachmentPermission() throws Exception {
 //    startSessionAs("demo");
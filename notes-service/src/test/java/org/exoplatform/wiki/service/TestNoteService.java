@@ -23,17 +23,29 @@ package org.exoplatform.wiki.service;
 
 import org.apache.commons.io.FileUtils;
 import org.exoplatform.portal.config.model.PortalConfig;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.security.Identity;
 import org.exoplatform.services.security.IdentityConstants;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.jpa.BaseTest;
 import org.exoplatform.wiki.model.*;
+import org.exoplatform.wiki.rendering.cache.MarkupData;
+import org.exoplatform.wiki.rendering.cache.MarkupKey;
+import org.exoplatform.wiki.service.impl.DraftPageWriteBuffer;
+import org.exoplatform.wiki.service.impl.NoteServiceImpl;
 import org.junit.Assert;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 public class TestNoteService extends BaseTest {
   private WikiService wService;
@@ -224,6 +236,34 @@ public class TestNoteService extends BaseTest {
     assertEquals("new page updated_", page.getTitle());
   }
 
+  public void testGetNoteRenderedContent() throws WikiException, IllegalAccessException {
+    Identity root = new Identity("root");
+    Wiki portalWiki = getOrCreateWiki(wService, PortalConfig.PORTAL_TYPE, "classic");
+    Page page1 = new Page("renderedPage1_", "renderedPage1_");
+    page1.setContent("Page 1 content");
+    page1 = noteService.createNote(portalWiki, "Home", page1, root);
+    Page page2 = new Page("renderedPage2_", "renderedPage2_");
+    page2.setContent("Page 2 content");
+    page2 = noteService.createNote(portalWiki, "Home", page2, root);
+    ExoCache<MarkupKey, MarkupData> renderingCache = getService(CacheService.class).getCacheInstance(NoteServiceImpl.CACHE_NAME);
+    int cacheHits = renderingCache.getCacheHit();
+    int cacheMisses = renderingCache.getCacheMiss();
+
+    // rendered contents are cached by page
+    assertEquals("Page 1 content", noteService.getNoteRenderedContent(page1));
+    assertEquals("Page 2 content", noteService.getNoteRenderedContent(page2));
+    assertEquals(cacheMisses + 2, renderingCache.getCacheMiss());
+    page1.setContent("Page 1 content not saved");
+    assertEquals("Page 1 content", noteService.getNoteRenderedContent(page1));
+    assertEquals(cacheHits + 1, renderingCache.getCacheHit());
+
+    // updating the note invalidates its cached content only
+    page1.setContent("Page 1 content updated");
+    noteService.updateNote(page1, PageUpdateType.EDIT_PAGE_CONTENT, root);
+    assertEquals("Page 1 content updated", noteService.getNoteRenderedContent(page1));
+    assertEquals("Page 2 content", noteService.getNoteRenderedContent(page2));
+  }
+
   public void testDraftPage() throws WikiException, IllegalAccessException {
     Identity root = new Identity("root");
 
@@ -283,6 +323,53 @@ public class TestNoteService extends BaseTest {
 
   }
 
+  public void testDraftPageWriteBuffer() throws WikiException {
+    // Given
+    startSessionAs("root");
+    DataStorage dataStorage = getService(DataStorage.class);
+    DraftPageWriteBuffer draftWriteBuffer = new DraftPageWriteBuffer(dataStorage, 60, 10);
+    long now = new Date().getTime();
+    DraftPage draftPage = new DraftPage();
+    draftPage.setTitle("Buffered draft");
+    draftPage.setContent("Buffered draft content");
+    draftPage = noteService.createDraftForNewPage(draftPage, now);
+    DraftPage deletedDraftPage = noteService.createDraftForNewPage(new DraftPage(), now + 1);
+
+    // When
+    for (int i = 1; i <= 3; i++) {
+      DraftPage draftUpdate = new DraftPage();
+      draftUpdate.setId(draftPage.getId());
+      draftUpdate.setName(draftPage.getName());
+      draftUpdate.setNewPage(true);
+      draftUpdate.setTitle("Buffered draft " + i);
+      draftUpdate.setContent("Buffered draft content " + i);
+      draftUpdate.setCreatedDate(new Date(now + i));
+      draftUpdate.setUpdatedDate(new Date(now + i));
+      draftWriteBuffer.update(draftUpdate, "root");
+    }
+    DraftPage deletedDraftUpdate = new DraftPage();
+    deletedDraftUpdate.setId(deletedDraftPage.getId());
+    deletedDraftUpdate.setName(deletedDraftPage.getName());
+    deletedDraftUpdate.setNewPage(true);
+    deletedDraftUpdate.setContent("Deleted draft content");
+    draftWriteBuffer.update(deletedDraftUpdate, "root");
+    String persistedContentBeforeFlush = dataStorage.getDraftPageById(draftPage.getId()).getContent();
+    DraftPage bufferedDraftPage = draftWriteBuffer.getDraft(draftPage.getId());
+    int bufferedDraftsBeforeFlush = draftWriteBuffer.size();
+    dataStorage.deleteDraftByName(deletedDraftPage.getName(), "root");
+    int flushedDrafts = draftWriteBuffer.flush();
+
+    // Then
+    assertEquals("Buffered draft content", persistedContentBeforeFlush);
+    assertEquals("Buffered draft content 3", bufferedDraftPage.getContent());
+    assertEquals("Buffered draft 3", bufferedDraftPage.getTitle());
+    assertEquals(2, bufferedDraftsBeforeFlush);
+    assertEquals(1, flushedDrafts);
+    assertEquals(0, draftWriteBuffer.size());
+    assertEquals("Buffered draft content 3", dataStorage.getDraftPageById(draftPage.getId()).getContent());
+    assertNull(dataStorage.getDraftPageById(deletedDraftPage.getId()));
+  }
+
   private String getDraftNameSuffix(long clientTime) {
     return new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date(clientTime));
   }
@@ -399,6 +486,79 @@ public class TestNoteService extends BaseTest {
     assertEquals(noteService.getChildrenNoteOf(userWiki.getWikiHome(),"root",false, false).size(),childern+3);
   }
 
+  public void testExportSelectedNotesTree() throws Exception {
+    // Given
+    Identity root = new Identity("root");
+    Wiki portalWiki = getOrCreateWiki(wService, PortalConfig.PORTAL_TYPE, "exportTreePortal");
+    Page parent = noteService.createNote(portalWiki, "Home", new Page("exportedParent", "exportedParent"), root);
+    Page child = noteService.createNote(portalWiki, "exportedParent", new Page("exportedChild", "exportedChild"), root);
+    Page sibling = noteService.createNote(portalWiki, "Home", new Page("exportedSibling", "exportedSibling"), root);
+    String[] notes = new String[] { child.getId(), parent.getId(), sibling.getId() };
+
+    // When
+    notesExportService.startExportNotes(200232, notes, false, root);
+    long timeout = System.currentTimeMillis() + 30000;
+    while (!ExportStatus.ZIP_CREATED.name().equals(notesExportService.getStatus(200232).getStatus())
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    ExportMetrics metrics = notesExportService.getStatus(200232).getMetrics();
+    File zipFile = notesExportService.getExportedNotesFile(200232);
+
+    // Then
+    assertNotNull(zipFile);
+    assertTrue(zipFile.exists());
+    assertNotNull(metrics);
+    assertEquals(3, metrics.getExportedNotes());
+    assertEquals(zipFile.length(), metrics.getBytesWritten());
+    assertTrue(metrics.getPhaseDurations().containsKey(ExportAction.CREATING_CONTENT_DATA));
+    assertNull(notesExportService.getExportRessourceById(200232));
+    ImportList importList = null;
+    try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(zipFile))) {
+      ZipEntry entry = zipIn.getNextEntry();
+      while (entry != null && importList == null) {
+        if (entry.getName().startsWith("notesExport_")) {
+          ObjectMapper mapper = new ObjectMapper();
+          mapper.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+          importList = mapper.readValue(zipIn, ImportList.class);
+        }
+        entry = zipIn.getNextEntry();
+      }
+    } finally {
+      NotesExportService.cleanUp(zipFile);
+    }
+    assertNotNull(importList);
+    assertEquals(2, importList.getNotes().size());
+    Page exportedParent = importList.getNotes().get(0);
+    assertEquals("exportedParent", exportedParent.getName());
+    assertEquals(1, exportedParent.getChildren().size());
+    assertEquals("exportedChild", exportedParent.getChildren().get(0).getName());
+    assertEquals("exportedSibling", importList.getNotes().get(1).getName());
+  }
+
+  public void testCancelCreatedExport() throws Exception {
+    // Given
+    Identity root = new Identity("root");
+    Wiki portalWiki = getOrCreateWiki(wService, PortalConfig.PORTAL_TYPE, "exportCancelPortal");
+    Page note = noteService.createNote(portalWiki, "Home", new Page("exportedToCancel", "exportedToCancel"), root);
+    notesExportService.startExportNotes(200233, new String[] { note.getId() }, true, root);
+    long timeout = System.currentTimeMillis() + 30000;
+    while (!ExportStatus.ZIP_CREATED.name().equals(notesExportService.getStatus(200233).getStatus())
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(50);
+    }
+    File zipFile = notesExportService.getExportRessourceById(200233).getZipFile();
+    assertTrue(zipFile.exists());
+
+    // When
+    notesExportService.cancelExportNotes(200233);
+
+    // Then
+    assertNull(notesExportService.getExportRessourceById(200233));
+    assertFalse(zipFile.exists());
+    assertEquals(0, notesExportService.removeExpiredExportResources(System.currentTimeMillis()));
+  }
+
   public void testGetNotesOfWiki() throws WikiException, IllegalAccessException {
     Identity user = new Identity("user");
     Wiki portalWiki = getOrCreateWiki(wService, PortalConfig.PORTAL_TYPE, "testPortal1");
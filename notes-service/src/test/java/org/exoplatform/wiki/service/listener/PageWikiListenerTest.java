@@ -0,0 +1,52 @@
+package org.exoplatform.wiki.service.listener;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.exoplatform.wiki.WikiException;
+import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.service.PageUpdateType;
+import org.junit.Test;
+
+public class PageWikiListenerTest {
+
+  @Test
+  public void testPostDeletePagesContinuesAfterFailingPage() throws Exception {
+    // Given
+    List<String> deletedPages = new ArrayList<>();
+    PageWikiListener listener = new PageWikiListener() {
+      @Override
+      public void postAddPage(String wikiType, String wikiOwner, String pageId, Page page) {
+      }
+
+      @Override
+      public void postUpdatePage(String wikiType, String wikiOwner, String pageId, Page page, PageUpdateType wikiUpdateType) {
+      }
+
+      @Override
+      public void postDeletePage(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
+        if ("page1".equals(pageId)) {
+          throw new WikiException("Cannot process page1");
+        }
+        deletedPages.add(pageId);
+      }
+
+      @Override
+      public void postgetPagefromTree(String wikiType, String wikiOwner, String pageId, Page page) {
+      }
+
+      @Override
+      public void postgetPagefromBreadCrumb(String wikiType, String wikiOwner, String pageId, Page page) {
+      }
+    };
+
+    // When
+    listener.postDeletePages(Arrays.asList(new Page("page1"), new Page("page2"), new Page("page3")));
+
+    // Then
+    assertEquals(Arrays.asList("page2", "page3"), deletedPages);
+  }
+}
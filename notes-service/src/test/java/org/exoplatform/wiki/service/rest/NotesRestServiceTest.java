@@ -19,6 +19,7 @@
 
 package org.exoplatform.wiki.service.rest;
 
+import org.exoplatform.commons.utils.ObjectPageList;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.services.rest.impl.EnvironmentContext;
@@ -27,10 +28,15 @@ import org.exoplatform.services.security.Identity;
 import org.exoplatform.upload.UploadService;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.mock.MockResourceBundleService;
+import org.exoplatform.wiki.model.Attachment;
 import org.exoplatform.wiki.model.DraftPage;
 import org.exoplatform.wiki.model.Page;
 import org.exoplatform.wiki.model.Wiki;
 import org.exoplatform.wiki.service.*;
+import org.exoplatform.wiki.service.impl.BeanToJsons;
+import org.exoplatform.wiki.service.search.SearchResult;
+import org.exoplatform.wiki.service.search.SearchResultType;
+import org.exoplatform.wiki.service.search.TitleSearchResult;
 import org.exoplatform.wiki.tree.utils.TreeUtils;
 import org.exoplatform.wiki.utils.NoteConstants;
 import org.exoplatform.wiki.utils.Utils;
@@ -39,16 +45,25 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import java.io.ByteArrayOutputStream;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 
@@ -197,6 +212,7 @@ public class NotesRestServiceTest {
     doCallRealMethod().when(TreeUtils.class, "tranformToJson", ArgumentMatchers.any(), ArgumentMatchers.any());
     when(noteService.getChildrenNoteOf(homePage, ConversationState.getCurrent().getIdentity().getUserId(), true, false)).thenReturn(children);
     when(Utils.getObjectFromParams(pageParams)).thenReturn(homePage);
+    when(noteService.getPermissionEvaluator(identity)).thenReturn(new PermissionEvaluator(noteService, identity));
     when(Utils.isDescendantPage(homePage, page)).thenReturn(true);
     when(Utils.isDescendantPage(homePage, draftPage)).thenReturn(true);
 
@@ -223,4 +239,122 @@ public class NotesRestServiceTest {
     Response response2 = notesRestService.getFullTreeData("path", true);
     assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), response2.getStatus());
   }
+
+  @Test
+  public void getNoteAttachment() throws Exception {
+    Page page = new Page("testPage");
+    page.setId("1");
+    Attachment attachment = new Attachment();
+    attachment.setName("attachment.txt");
+    attachment.setMimeType("text/plain");
+    attachment.setContent("0123456789".getBytes());
+    attachment.setWeightInBytes(10);
+    Request request = mock(Request.class);
+    when(noteService.getNoteById("1", identity)).thenReturn(page);
+    when(noteBookService.getAttachmentOfPageByName("attachment.txt", page, true)).thenReturn(attachment);
+
+    Response response = notesRestService.getNoteAttachment(request, "1", "missing.txt", null);
+    assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", null);
+    assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+    assertEquals("0123456789", writeEntity(response));
+
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", "bytes=2-5");
+    assertEquals(206, response.getStatus());
+    assertEquals("bytes 2-5/10", response.getMetadata().getFirst("Content-Range"));
+    assertEquals("2345", writeEntity(response));
+
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", "bytes=-3");
+    assertEquals(206, response.getStatus());
+    assertEquals("789", writeEntity(response));
+
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", "bytes=10-");
+    assertEquals(416, response.getStatus());
+
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", "bytes=5-2");
+    assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+    when(request.evaluatePreconditions(ArgumentMatchers.any(EntityTag.class))).thenReturn(Response.notModified());
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", null);
+    assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+
+    doThrow(new IllegalAccessException()).when(noteService).getNoteById("1", identity);
+    response = notesRestService.getNoteAttachment(request, "1", "attachment.txt", null);
+    assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+  }
+
+  @Test
+  public void exportNotesOfOtherUser() throws Exception {
+    // Given
+    when(identity.getUserId()).thenReturn("john");
+    when(notesExportService.isExportOfOtherUser(1, "john")).thenReturn(true);
+    doThrow(new IllegalArgumentException("Notes export 2 already exists")).when(notesExportService)
+                                                                         .startExportNotes(ArgumentMatchers.eq(2),
+                                                                                           ArgumentMatchers.any(),
+                                                                                           ArgumentMatchers.anyBoolean(),
+                                                                                           ArgumentMatchers.eq(identity));
+
+    // When
+    Response zipResponse = notesRestService.getExportedZip(1);
+    Response statusResponse = notesRestService.getExportNoteStatus(1);
+    Response cancelResponse = notesRestService.cancelExportNote(1);
+    Response exportResponse = notesRestService.exportNote("1,2", 2, true);
+
+    // Then
+    assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), zipResponse.getStatus());
+    assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), statusResponse.getStatus());
+    assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), cancelResponse.getStatus());
+    assertEquals(Response.Status.CONFLICT.getStatusCode(), exportResponse.getStatus());
+    Mockito.verify(notesExportService, Mockito.never()).getExportedNotesFile(1);
+    Mockito.verify(notesExportService, Mockito.never()).cancelExportNotes(1);
+  }
+
+  @Test
+  public void searchData() throws Exception {
+    // Given
+    SearchResult attachmentResult = new SearchResult();
+    attachmentResult.setType(SearchResultType.ATTACHMENT);
+    attachmentResult.setWikiType("group");
+    attachmentResult.setWikiOwner("/spaces/space1");
+    attachmentResult.setPageName("page1");
+    attachmentResult.setAttachmentName("attachment.txt");
+    SearchResult hiddenPageResult = new SearchResult();
+    hiddenPageResult.setType(SearchResultType.ATTACHMENT);
+    hiddenPageResult.setWikiType("group");
+    hiddenPageResult.setWikiOwner("/spaces/space1");
+    hiddenPageResult.setPageName("page2");
+    hiddenPageResult.setAttachmentName("attachment.txt");
+    when(noteService.search(ArgumentMatchers.any())).thenReturn(new ObjectPageList<>(Arrays.asList(attachmentResult,
+                                                                                                 hiddenPageResult),
+                                                                                   10));
+    Page page = new Page("page1");
+    page.setId("1");
+    when(noteService.getNotesOfNoteBookByNames("group",
+                                               "/spaces/space1",
+                                               new HashSet<>(Arrays.asList("page1", "page2")),
+                                               identity)).thenReturn(Collections.singletonMap("page1", page));
+    Attachment attachment = new Attachment();
+    attachment.setName("attachment.txt");
+    when(noteBookService.getAttachmentOfPageByName("attachment.txt", page)).thenReturn(attachment);
+
+    // When
+    Response response = notesRestService.searchData(null, "attachment", 10, null, null, false);
+
+    // Then
+    assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+    List<?> titleSearchResults = ((BeanToJsons<?>) response.getEntity()).getJsonList();
+    assertEquals(1, titleSearchResults.size());
+    assertEquals("attachment.txt", ((TitleSearchResult) titleSearchResults.get(0)).getTitle());
+    Mockito.verify(noteService, Mockito.times(1)).getNotesOfNoteBookByNames(ArgumentMatchers.anyString(),
+                                                                            ArgumentMatchers.anyString(),
+                                                                            ArgumentMatchers.anyCollection(),
+                                                                            ArgumentMatchers.any());
+  }
+
+  private String writeEntity(Response response) throws Exception {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(outputStream);
+    return outputStream.toString();
+  }
 }
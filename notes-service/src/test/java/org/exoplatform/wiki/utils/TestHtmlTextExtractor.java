@@ -0,0 +1,95 @@
+/*
+ * This file is part of the Meeds project (https://meeds.io/).
+ * Copyright (C) 2022 Meeds Association
+ * contact@meeds.io
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.exoplatform.wiki.utils;
+
+import static org.mockito.ArgumentMatchers.anyString;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.mockito.Mockito;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import junit.framework.TestCase;
+
+public class TestHtmlTextExtractor extends TestCase {
+
+  private static final String[] CONTENTS = {
+      "<p>First paragraph</p><p>Second <b>bold</b> paragraph</p>",
+      "<div><h1>Title</h1><ul><li>one</li><li>two</li></ul></div>",
+      "line one<br>line two<br/>line three",
+      "<p>caf&eacute; &amp; cr&egrave;me &lt;tag&gt; &#233; &#x27;quoted&#x27;</p>",
+      "<p>before<!-- hidden <p>comment</p> -->after</p>",
+      "<script>var a = '<p>no</p>';</script><p>shown</p><style>p { color: red; }</style>",
+      "<p title=\"a > b\">attribute</p>",
+      "  <p>\n  spaced \t\n  text  </p>  ",
+      "<table><tr><td>cell 1</td><td>cell 2</td></tr></table>",
+      "plain text without tags",
+  };
+
+  public void testExtractLikeJsoup() {
+    for (String content : CONTENTS) {
+      assertEquals(content, Jsoup.parse(content).text(), HtmlTextExtractor.extract(content));
+    }
+  }
+
+  public void testExtractEmptyContent() {
+    assertEquals("", HtmlTextExtractor.extract(null));
+    assertEquals("", HtmlTextExtractor.extract(""));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testExtractCachedContent() {
+    // Given
+    Map<String, String> entries = new HashMap<>();
+    ExoCache<String, String> textCache = Mockito.mock(ExoCache.class);
+    Mockito.when(textCache.get(anyString())).thenAnswer(invocation -> entries.get(invocation.getArgument(0)));
+    Mockito.doAnswer(invocation -> entries.put(invocation.getArgument(0), invocation.getArgument(1)))
+           .when(textCache)
+           .put(anyString(), anyString());
+    CacheService cacheService = Mockito.mock(CacheService.class);
+    Mockito.<ExoCache<String, String>> when(cacheService.getCacheInstance(HtmlTextExtractor.HTML_TEXT_CACHE_NAME))
+           .thenReturn(textCache);
+    ExoContainer container = Mockito.mock(ExoContainer.class);
+    Mockito.when(container.getComponentInstanceOfType(CacheService.class)).thenReturn(cacheService);
+    StringBuilder content = new StringBuilder();
+    while (content.length() < 5000) {
+      content.append("<p>Paragraph ").append(content.length()).append("</p>");
+    }
+    String html = content.toString();
+
+    ExoContainerContext.setCurrentContainer(container);
+    try {
+      // When
+      String text = HtmlTextExtractor.extract(html);
+      String cachedText = HtmlTextExtractor.extract(new String(html));
+      HtmlTextExtractor.extract("<p>small content</p>");
+
+      // Then
+      assertEquals(Jsoup.parse(html).text(), text);
+      assertSame(text, cachedText);
+      assertEquals(1, entries.size());
+    } finally {
+      ExoContainerContext.setCurrentContainer(null);
+    }
+  }
+}
@@ -119,11 +119,7 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
     templateParams.put(PAGE_TITLE_KEY, page.getTitle());
     String pageURL = (page.getUrl() == null) ? (spaceUrl != null ? (spaceUrl + "/" + WIKI_PAGE_NAME) : "") : page.getUrl();
     templateParams.put(URL_KEY, pageURL);
-    int versionsTotal = 0;
-    List<PageHistory> versions = noteService.getVersionsHistoryOfNote(page,"");
-    if (versions != null && !versions.isEmpty()) {
-      versionsTotal = versions.size();
-    }
+    long versionsTotal = noteService.countVersionsOfNote(page, "");
     templateParams.put(WIKI_PAGE_VERSION, String.valueOf(versionsTotal));
     activity.setMetadataObjectType(Utils.NOTES_METADATA_OBJECT_TYPE);
     activity.setMetadataObjectId(page.getId());
@@ -142,8 +138,8 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
     templateParams.put(org.exoplatform.social.core.BaseActivityProcessorPlugin.TEMPLATE_PARAM_TO_PROCESS, PAGE_EXCERPT);
     if (!PageUpdateType.ADD_PAGE.equals(activityType)) {
       String verName = null;
-      if (versions != null && !versions.isEmpty()) {
-        verName = String.valueOf(versions.size() + 1);
+      if (versionsTotal > 0) {
+        verName = String.valueOf(versionsTotal + 1);
       }
       templateParams.put(VIEW_CHANGE_URL_KEY, Utils.getURL(page.getUrl(), verName));
     }
@@ -312,6 +308,21 @@ public class WikiSpaceActivityPublisher extends PageWikiListener {
     }
   }
 
+  @Override
+  public void postDeletePages(List<Page> pages) throws WikiException {
+    Set<String> activityIds = pages.stream()
+                                   .map(Page::getActivityId)
+                                   .filter(StringUtils::isNotEmpty)
+                                   .collect(Collectors.toCollection(LinkedHashSet::new));
+    for (String activityId : activityIds) {
+      try {
+        activityManager.deleteActivity(activityId);
+      } catch (Exception e) {
+        LOG.warn("Error while deleting the activity {} of a deleted note", activityId, e);
+      }
+    }
+  }
+
 
   @Override
   public void postgetPagefromTree(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
@@ -26,10 +26,14 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.wiki.WikiException;
 import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.service.PageIndexingOperation;
+import org.exoplatform.wiki.service.PageIndexingQueue;
+import org.exoplatform.wiki.service.PageIndexingQueue.OperationType;
 import org.exoplatform.wiki.service.PageUpdateType;
 import org.exoplatform.wiki.service.listener.PageWikiListener;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,37 +46,50 @@ public class UnifiedSearchPageWikiListener extends PageWikiListener {
 
   private static Log log = ExoLogger.getLogger(UnifiedSearchPageWikiListener.class);
 
+  public static final String INDEXING_HANDLER_NAME = "UnifiedSearchPageWikiListener";
+
   private final IndexingService indexingService;
 
+  private final PageIndexingQueue indexingQueue;
+
   public UnifiedSearchPageWikiListener(IndexingService indexingService) {
+    this(indexingService, null);
+  }
+
+  public UnifiedSearchPageWikiListener(IndexingService indexingService, PageIndexingQueue indexingQueue) {
     this.indexingService = indexingService;
+    this.indexingQueue = indexingQueue;
+    if (indexingQueue != null) {
+      indexingQueue.addHandler(INDEXING_HANDLER_NAME, this::handle);
+    }
   }
 
   @Override
   public void postAddPage(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
-    if(indexingService != null) {
-      Map<String, Object> content = new HashMap<String, Object>();
-      content.put("page", page);
-      SearchEntry searchEntry = new SearchEntry("wiki", wikiType, pageId, content);
-      indexingService.add(searchEntry);
-    }
+    enqueue(OperationType.INDEX, wikiType, wikiOwner, pageId, page);
   }
 
   @Override
   public void postUpdatePage(String wikiType, String wikiOwner, String pageId, Page page, PageUpdateType wikiUpdateType) throws WikiException {
-    if(indexingService != null) {
-      Map<String, Object> content = new HashMap<String, Object>();
-      content.put("page", page);
-      SearchEntryId searchEntryId = new SearchEntryId("wiki", wikiType, pageId);
-      indexingService.update(searchEntryId, content);
-    }
+    enqueue(OperationType.REINDEX, wikiType, wikiOwner, pageId, page);
   }
 
   @Override
   public void postDeletePage(String wikiType, String wikiOwner, String pageId, Page page) throws WikiException {
-    if(indexingService != null) {
-      SearchEntryId searchEntryId = new SearchEntryId("wiki", wikiType, pageId);
-      indexingService.delete(searchEntryId);
+    enqueue(OperationType.UNINDEX, wikiType, wikiOwner, pageId, page);
+  }
+
+  @Override
+  public void postDeletePages(List<Page> pages) throws WikiException {
+    if (indexingService == null) {
+      return;
+    }
+    if (indexingQueue == null) {
+      for (Page page : pages) {
+        postDeletePage(page.getWikiType(), page.getWikiOwner(), page.getName(), page);
+      }
+    } else {
+      indexingQueue.enqueue(INDEXING_HANDLER_NAME, OperationType.UNINDEX, pages);
     }
   }
 
@@ -87,4 +104,34 @@ public class UnifiedSearchPageWikiListener extends PageWikiListener {
 
   }
 
+  private void enqueue(OperationType type, String wikiType, String wikiOwner, String pageId, Page page) {
+    if (indexingService == null) {
+      return;
+    }
+    if (indexingQueue == null) {
+      handle(new PageIndexingOperation(INDEXING_HANDLER_NAME, type, wikiType, wikiOwner, pageId, page, System.currentTimeMillis()));
+    } else {
+      indexingQueue.enqueue(INDEXING_HANDLER_NAME, type, wikiType, wikiOwner, pageId, page);
+    }
+  }
+
+  private void handle(PageIndexingOperation operation) {
+    SearchEntryId searchEntryId = new SearchEntryId("wiki", operation.getWikiType(), operation.getPageId());
+    Map<String, Object> content = new HashMap<String, Object>();
+    content.put("page", operation.getPage());
+    switch (operation.getType()) {
+    case INDEX:
+      indexingService.add(new SearchEntry("wiki", operation.getWikiType(), operation.getPageId(), content));
+      break;
+    case REINDEX:
+      indexingService.update(searchEntryId, content);
+      break;
+    case UNINDEX:
+      indexingService.delete(searchEntryId);
+      break;
+    default:
+      break;
+    }
+  }
+
 }
@@ -24,6 +24,7 @@ import org.exoplatform.social.core.manager.ActivityManager;
 import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.space.spi.SpaceService;
 import org.exoplatform.wiki.model.Page;
+import org.exoplatform.wiki.service.PageIndexingQueue;
 import org.exoplatform.wiki.service.PageUpdateType;
 import org.exoplatform.wiki.service.WikiService;
 import org.junit.Test;
@@ -31,7 +32,12 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -103,4 +109,97 @@ public class UnifiedSearchPageWikiListenerTest {
     verify(indexingService, times(1)).delete(any());
   }
 
+  @Test
+  public void testCoalesceQueuedOperations() throws Exception {
+    // Given
+    PageIndexingQueue indexingQueue = new PageIndexingQueue(null);
+    UnifiedSearchPageWikiListener unifiedSearchPageWikiListener = new UnifiedSearchPageWikiListener(indexingService,
+                                                                                                    indexingQueue);
+    Page page = new Page();
+    page.setTitle("title");
+    page.setAuthor("root");
+    page.setId("id123");
+    Page otherPage = new Page();
+    otherPage.setId("id456");
+
+    // When
+    unifiedSearchPageWikiListener.postAddPage("wikiType", "root", "id123", page);
+    unifiedSearchPageWikiListener.postUpdatePage("wikiType", "root", "id123", page, PageUpdateType.EDIT_PAGE_CONTENT);
+    unifiedSearchPageWikiListener.postUpdatePage("wikiType", "root", "id123", page, PageUpdateType.EDIT_PAGE_TITLE);
+    unifiedSearchPageWikiListener.postUpdatePage("wikiType", "root", "id456", otherPage, PageUpdateType.EDIT_PAGE_CONTENT);
+    unifiedSearchPageWikiListener.postDeletePage("wikiType", "root", "id456", otherPage);
+
+    // Then
+    verify(indexingService, never()).add(any());
+    assertEquals(2, indexingQueue.getPendingOperations());
+
+    // When
+    int flushedOperations = indexingQueue.flush(true);
+
+    // Then
+    assertEquals(2, flushedOperations);
+    assertEquals(0, indexingQueue.getPendingOperations());
+    verify(indexingService, times(1)).add(any());
+    verify(indexingService, never()).update(any(), any());
+    verify(indexingService, times(1)).delete(any());
+  }
+
+  @Test
+  public void testNotCoalesceOperationsOfDifferentPageIds() throws Exception {
+    // Given
+    PageIndexingQueue indexingQueue = new PageIndexingQueue(null);
+    UnifiedSearchPageWikiListener unifiedSearchPageWikiListener = new UnifiedSearchPageWikiListener(indexingService,
+                                                                                                    indexingQueue);
+    Page deletedPage = new Page();
+    deletedPage.setId("id123");
+    Page createdPage = new Page();
+    createdPage.setId("id456");
+
+    // When
+    unifiedSearchPageWikiListener.postDeletePage("wikiType", "root", "page1", deletedPage);
+    unifiedSearchPageWikiListener.postAddPage("wikiType", "root", "page1", createdPage);
+
+    // Then
+    assertEquals(2, indexingQueue.getPendingOperations());
+
+    // When
+    int flushedOperations = indexingQueue.flush(true);
+
+    // Then
+    assertEquals(2, flushedOperations);
+    verify(indexingService, times(1)).delete(any());
+    verify(indexingService, times(1)).add(any());
+  }
+
+  @Test
+  public void testPostDeletePagesQueuedAtOnce() throws Exception {
+    // Given
+    PageIndexingQueue indexingQueue = new PageIndexingQueue(null);
+    UnifiedSearchPageWikiListener unifiedSearchPageWikiListener = new UnifiedSearchPageWikiListener(indexingService,
+                                                                                                    indexingQueue);
+    List<Page> deletedPages = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      Page page = new Page("page" + i);
+      page.setId("id" + i);
+      page.setWikiType("wikiType");
+      page.setWikiOwner("root");
+      deletedPages.add(page);
+    }
+    unifiedSearchPageWikiListener.postUpdatePage("wikiType", "root", "page1", deletedPages.get(0), PageUpdateType.EDIT_PAGE_CONTENT);
+
+    // When
+    unifiedSearchPageWikiListener.postDeletePages(deletedPages);
+
+    // Then
+    assertEquals(3, indexingQueue.getPendingOperations());
+
+    // When
+    int flushedOperations = indexingQueue.flush(true);
+
+    // Then
+    assertEquals(3, flushedOperations);
+    verify(indexingService, never()).update(any(), any());
+    verify(indexingService, times(3)).delete(any());
+  }
+
 }
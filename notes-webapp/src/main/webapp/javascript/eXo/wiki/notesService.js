@@ -117,11 +117,11 @@ export function createNote(page) {
   });
 }
 
-export function saveDraftNote(draftNote, parentPageId) {
+export function saveDraftNote(draftNote, parentPageId, flush) {
   if (parentPageId) {
     draftNote.parentPageId = parentPageId;
   }
-  return fetch(`${notesConstants.PORTAL}/${notesConstants.PORTAL_REST}/notes/saveDraft`, {
+  return fetch(`${notesConstants.PORTAL}/${notesConstants.PORTAL_REST}/notes/saveDraft${flush ? '?flush=true' : ''}`, {
     headers: {
       Accept: 'application/json',
       'Content-Type': 'application/json'